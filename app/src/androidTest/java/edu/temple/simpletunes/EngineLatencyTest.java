@@ -0,0 +1,154 @@
+package edu.temple.simpletunes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.Settings;
+import android.util.Log;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the playback engines over the same queue: the time from a skip to the start of
+ * the audio when the track is prepared from scratch and when it is promoted from a warm
+ * PlayerPool.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class EngineLatencyTest {
+    private static final String TAG = "EngineLatencyTest";
+    private static final int SKIPS = 10;
+
+    @Test
+    public void compareEngines() throws InterruptedException {
+        Context context = ApplicationProvider.getApplicationContext();
+        MusicTrack[] queue = {
+                new MusicTrack(context, Settings.System.DEFAULT_RINGTONE_URI.toString(), "ringtone", null, 0, 0, null),
+                new MusicTrack(context, Settings.System.DEFAULT_NOTIFICATION_URI.toString(), "notification", null, 0, 0, null),
+                new MusicTrack(context, Settings.System.DEFAULT_ALARM_ALERT_URI.toString(), "alarm", null, 0, 0, null),
+        };
+        int[] engines = {PlaybackEngine.ENGINE_MEDIA_PLAYER, PlaybackEngine.ENGINE_EXOPLAYER,
+                PlaybackEngine.ENGINE_CODEC};
+        String[] names = {"MediaPlayer", "ExoPlayer", "MediaCodec"};
+        StringBuilder report = new StringBuilder();
+        for (int type : engines) {
+            String name = names[type];
+            LatencyStats cold = new LatencyStats(name + " cold skip", SKIPS);
+            LatencyStats warm = new LatencyStats(name + " warm skip", SKIPS);
+            measureCold(context, type, queue, cold);
+            measureWarm(context, type, queue, warm);
+            assertEquals(SKIPS, cold.getCount());
+            assertEquals(SKIPS, warm.getCount());
+            report.append(cold).append('\n').append(warm).append('\n');
+        }
+        Log.i(TAG, report.toString());
+    }
+
+    /**
+     * Prepares every track on a single engine after the skip, as a skip without a warm
+     * player does.
+     */
+    private static void measureCold(Context context, int type, MusicTrack[] queue, LatencyStats stats)
+            throws InterruptedException {
+        Handler main = new Handler(Looper.getMainLooper());
+        PlaybackEngine[] engine = new PlaybackEngine[1];
+        CountDownLatch[] started = new CountDownLatch[1];
+        long[] start = new long[1];
+        PlaybackEngine.Listener listener = new Listener() {
+            @Override
+            public void onPrepared(PlaybackEngine prepared) {
+                prepared.start();
+                stats.record(SystemClock.elapsedRealtimeNanos() - start[0]);
+                started[0].countDown();
+            }
+        };
+        main.post(() -> {
+            engine[0] = PlaybackEngine.create(context, type);
+            engine[0].setListener(listener);
+        });
+        for (int i = 0; i < SKIPS; i++) {
+            MusicTrack track = queue[i % queue.length];
+            started[0] = new CountDownLatch(1);
+            main.post(() -> {
+                start[0] = SystemClock.elapsedRealtimeNanos();
+                engine[0].reset();
+                try {
+                    engine[0].setDataSource(context, track.getUri());
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+                engine[0].prepareAsync();
+            });
+            assertTrue(started[0].await(5, TimeUnit.SECONDS));
+        }
+        main.post(() -> engine[0].release());
+    }
+
+    /**
+     * Lets a pool of the engine prepare the next track before the skip, then promotes it.
+     */
+    private static void measureWarm(Context context, int type, MusicTrack[] queue, LatencyStats stats)
+            throws InterruptedException {
+        Handler main = new Handler(Looper.getMainLooper());
+        PlayerPool[] pool = new PlayerPool[1];
+        CountDownLatch[] prepared = new CountDownLatch[1];
+        PlaybackEngine.Listener listener = new Listener() {
+            @Override
+            public void onPrepared(PlaybackEngine engine) {
+                pool[0].onPrepared(engine);
+                prepared[0].countDown();
+            }
+        };
+        main.post(() -> pool[0] = new PlayerPool(context, PlayerPool.DEFAULT_CAPACITY, () -> {
+            PlaybackEngine engine = PlaybackEngine.create(context, type);
+            engine.setListener(listener);
+            return engine;
+        }));
+        for (int i = 0; i < SKIPS; i++) {
+            MusicTrack track = queue[i % queue.length];
+            prepared[0] = new CountDownLatch(1);
+            main.post(() -> pool[0].retarget(track));
+            assertTrue(prepared[0].await(5, TimeUnit.SECONDS));
+            CountDownLatch started = new CountDownLatch(1);
+            main.post(() -> {
+                long start = SystemClock.elapsedRealtimeNanos();
+                PlaybackEngine engine = pool[0].take(track);
+                assertNotNull(engine);
+                engine.start();
+                stats.record(SystemClock.elapsedRealtimeNanos() - start);
+                engine.pause();
+                pool[0].give(engine);
+                started.countDown();
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+        }
+        main.post(() -> pool[0].release());
+    }
+
+    /**
+     * A listener that ignores completions and errors.
+     */
+    private abstract static class Listener implements PlaybackEngine.Listener {
+        @Override
+        public void onCompletion(PlaybackEngine engine) {
+        }
+
+        @Override
+        public boolean onError(PlaybackEngine engine, int what, int extra) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package edu.temple.simpletunes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.documentfile.provider.DocumentFile;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the scan MainActivity used to run on the main thread, a DocumentFile listing and a
+ * MusicTrack built per file, with FolderScanner over the same generated folder. The files per
+ * second of each are logged. FolderScanner saves the scanned folder as the library of the app,
+ * like any other scan.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class FolderScanThroughputTest {
+    private static final String TAG = "FolderScanThroughput";
+    private static final int FILES = 2000;
+
+    @Test
+    public void compareWithMainThreadLoop() throws InterruptedException {
+        Context context = ApplicationProvider.getApplicationContext();
+        context.getContentResolver().call(Uri.parse("content://" + GeneratedFolderProvider.AUTHORITY),
+                GeneratedFolderProvider.METHOD_GENERATE, Integer.toString(FILES), null);
+        Uri tree = GeneratedFolderProvider.treeUri();
+        String report = mainThreadLoop(context, tree) + '\n'
+                + folderScanner(context, tree, false) + '\n'
+                + folderScanner(context, tree, true);
+        Log.i(TAG, report);
+    }
+
+    /**
+     * Lists the folder with DocumentFile and builds every track on the main thread, as
+     * MainActivity did before FolderScanner.
+     */
+    private static String mainThreadLoop(Context context, Uri tree) {
+        int[] tracks = new int[1];
+        long[] elapsed = new long[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            long start = SystemClock.elapsedRealtimeNanos();
+            DocumentFile directory = DocumentFile.fromTreeUri(context, tree);
+            DocumentFile[] contents = directory.listFiles();
+            ArrayList<MusicTrack> list = new ArrayList<>();
+            for(DocumentFile file : contents){
+                MusicTrack m = new MusicTrack(context, file);
+                if(m.getIsAudio()){
+                    list.add(m);
+                }
+            }
+            elapsed[0] = SystemClock.elapsedRealtimeNanos() - start;
+            tracks[0] = list.size();
+        });
+        assertEquals(FILES, tracks[0]);
+        return rate("main thread loop", tracks[0], elapsed[0]);
+    }
+
+    /**
+     * Scans the folder with a new FolderScanner and waits for onScanComplete. A lazy scan
+     * leaves the tags to be read after the scan.
+     */
+    private static String folderScanner(Context context, Uri tree, boolean lazy) throws InterruptedException {
+        FolderScanner scanner = new FolderScanner(context);
+        scanner.setLazyMetadata(lazy);
+        CountDownLatch done = new CountDownLatch(1);
+        int[] tracks = new int[1];
+        long[] elapsed = new long[1];
+        long start = SystemClock.elapsedRealtimeNanos();
+        scanner.scan(tree, new FolderScanner.ScanListener() {
+            @Override
+            public void onBatchScanned(List<MusicTrack> batch) {
+            }
+
+            @Override
+            public void onScanComplete(MusicTrack[] folder) {
+                elapsed[0] = SystemClock.elapsedRealtimeNanos() - start;
+                tracks[0] = folder.length;
+                done.countDown();
+            }
+
+            @Override
+            public void onTagsRead(MusicTrack[] folder, BrowseIndex browse) {
+            }
+        });
+        try {
+            assertTrue("the scan completed", done.await(5, TimeUnit.MINUTES));
+        } finally {
+            scanner.shutdown();
+        }
+        assertEquals(FILES, tracks[0]);
+        return rate(lazy ? "FolderScanner, lazy tags" : "FolderScanner", tracks[0], elapsed[0]);
+    }
+
+    private static String rate(String scan, int files, long nanos) {
+        return String.format(Locale.ROOT, "%s: %d files in %d ms, %.0f files/s",
+                scan, files, nanos / 1000000, files * 1e9 / nanos);
+    }
+}
@@ -0,0 +1,189 @@
+package edu.temple.simpletunes;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.provider.DocumentsContract;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A document tree of generated MP3 files for the instrumented scan tests. It answers the
+ * document and children queries that FolderScanner and DocumentFile send for a tree Uri, so a
+ * folder can be scanned without the folder picker. The provider runs in the test package, so
+ * the files are generated in its own storage through {@link #call(String, String, Bundle)}.
+ */
+public class GeneratedFolderProvider extends ContentProvider {
+    static final String AUTHORITY = "edu.temple.simpletunes.test.folder";
+    /**
+     * The method replacing the folder with as many files as its argument.
+     */
+    static final String METHOD_GENERATE = "generate";
+    private static final String ROOT_ID = "root";
+    private static final String MIME_TYPE = "audio/mpeg";
+    private static final int TRACKS_PER_ALBUM = 12;
+    private static final String[] DEFAULT_PROJECTION = {
+            DocumentsContract.Document.COLUMN_DOCUMENT_ID,
+            DocumentsContract.Document.COLUMN_DISPLAY_NAME,
+            DocumentsContract.Document.COLUMN_MIME_TYPE,
+            DocumentsContract.Document.COLUMN_SIZE,
+            DocumentsContract.Document.COLUMN_LAST_MODIFIED,
+            DocumentsContract.Document.COLUMN_FLAGS
+    };
+
+    private File mRoot;
+
+    /**
+     * The treeUri method returns the Uri of the generated folder as the folder picker would.
+     * @return The tree Uri of the folder.
+     */
+    static Uri treeUri() {
+        return DocumentsContract.buildTreeDocumentUri(AUTHORITY, ROOT_ID);
+    }
+
+    @Override
+    public boolean onCreate() {
+        mRoot = new File(getContext().getFilesDir(), "generated");
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public Bundle call(@NonNull String method, @Nullable String arg, @Nullable Bundle extras) {
+        if(!METHOD_GENERATE.equals(method) || arg == null){
+            return super.call(method, arg, extras);
+        }
+        try {
+            generate(Integer.parseInt(arg));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not generate the folder", e);
+        }
+        return new Bundle();
+    }
+
+    /**
+     * The generate method replaces the folder with tagged MP3 files of a second of silence,
+     * grouped in albums of twelve tracks.
+     */
+    private void generate(int count) throws IOException {
+        File[] old = mRoot.listFiles();
+        if(old != null){
+            for(File file : old){
+                file.delete();
+            }
+        }
+        if(!mRoot.isDirectory() && !mRoot.mkdirs()){
+            throw new IOException("Could not create " + mRoot);
+        }
+        byte[] audio = TagReaderThroughputTest.mp3Frames(39);
+        for(int i = 0; i < count; i++){
+            int track = i % TRACKS_PER_ALBUM + 1;
+            int album = i / TRACKS_PER_ALBUM;
+            String name = String.format(Locale.ROOT, "%05d - Track %d.mp3", i, track);
+            byte[] tag = TagReaderThroughputTest.id3Tag("Track " + i, "Artist " + album / 8,
+                    "Album " + album, track);
+            try (FileOutputStream out = new FileOutputStream(new File(mRoot, name))) {
+                out.write(tag);
+                out.write(audio);
+            }
+        }
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection,
+                        @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        MatrixCursor cursor = new MatrixCursor(projection != null ? projection : DEFAULT_PROJECTION);
+        String documentId = DocumentsContract.getDocumentId(uri);
+        List<String> path = uri.getPathSegments();
+        if("children".equals(path.get(path.size() - 1))){
+            File[] files = mRoot.listFiles();
+            if(files != null){
+                Arrays.sort(files);
+                for(File file : files){
+                    addRow(cursor, ROOT_ID + "/" + file.getName(), file);
+                }
+            }
+        }else{
+            addRow(cursor, documentId, file(documentId));
+        }
+        return cursor;
+    }
+
+    private void addRow(MatrixCursor cursor, String documentId, File file) {
+        MatrixCursor.RowBuilder row = cursor.newRow();
+        for(String column : cursor.getColumnNames()){
+            switch (column) {
+                case DocumentsContract.Document.COLUMN_DOCUMENT_ID:
+                    row.add(documentId);
+                    break;
+                case DocumentsContract.Document.COLUMN_DISPLAY_NAME:
+                    row.add(file.getName());
+                    break;
+                case DocumentsContract.Document.COLUMN_MIME_TYPE:
+                    row.add(file.isDirectory() ? DocumentsContract.Document.MIME_TYPE_DIR : MIME_TYPE);
+                    break;
+                case DocumentsContract.Document.COLUMN_SIZE:
+                    row.add(file.length());
+                    break;
+                case DocumentsContract.Document.COLUMN_LAST_MODIFIED:
+                    row.add(file.lastModified());
+                    break;
+                case DocumentsContract.Document.COLUMN_FLAGS:
+                    row.add(0);
+                    break;
+                default:
+                    row.add(null);
+                    break;
+            }
+        }
+    }
+
+    private File file(String documentId) {
+        return documentId.equals(ROOT_ID) ? mRoot : new File(mRoot, documentId.substring(ROOT_ID.length() + 1));
+    }
+
+    @Nullable
+    @Override
+    public ParcelFileDescriptor openFile(@NonNull Uri uri, @NonNull String mode) throws FileNotFoundException {
+        return ParcelFileDescriptor.open(file(DocumentsContract.getDocumentId(uri)),
+                ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull Uri uri) {
+        return file(DocumentsContract.getDocumentId(uri)).isDirectory()
+                ? DocumentsContract.Document.MIME_TYPE_DIR : MIME_TYPE;
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
+        throw new UnsupportedOperationException("The generated folder is read only");
+    }
+
+    @Override
+    public int delete(@NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
+        throw new UnsupportedOperationException("The generated folder is read only");
+    }
+
+    @Override
+    public int update(@NonNull Uri uri, @Nullable ContentValues values, @Nullable String selection,
+                      @Nullable String[] selectionArgs) {
+        throw new UnsupportedOperationException("The generated folder is read only");
+    }
+}
@@ -15,6 +15,8 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import static org.junit.Assert.assertEquals;
@@ -53,18 +55,30 @@ public class MediaPlayerServiceTest {
     }
 
 
+    /**
+     * The awaitCommands method waits until the playback thread ran the commands sent so far.
+     */
+    private void awaitCommands() throws InterruptedException {
+        CountDownLatch idle = new CountDownLatch(1);
+        ((MediaPlayerService.ControlsBinder) binder).whenIdle(idle::countDown);
+        assertTrue(idle.await(5, TimeUnit.SECONDS));
+    }
+
     @Test
     public void testIsPlayingFalse() {
         assertFalse(((MediaPlayerService.ControlsBinder) binder).isPlaying());
     }
     @Test
-    public void testIsPlaying() {
+    public void testIsPlaying() throws InterruptedException {
         ((MediaPlayerService.ControlsBinder) binder).play(Settings.System.DEFAULT_RINGTONE_URI);
+        awaitCommands();
         assertTrue(((MediaPlayerService.ControlsBinder) binder).isPlaying());
     }
     @Test
-    public void testRepeatStatusSingleTrack() {
-        int status = ((MediaPlayerService.ControlsBinder) binder).repeat();
+    public void testRepeatStatusSingleTrack() throws InterruptedException {
+        ((MediaPlayerService.ControlsBinder) binder).repeat();
+        awaitCommands();
+        int status = ((MediaPlayerService.ControlsBinder) binder).getRepeatStatus();
 
         assertEquals(2, status);
 
@@ -74,13 +88,15 @@ public class MediaPlayerServiceTest {
 
 
     @Test
-    public void testRepeatStatusFolder() {
+    public void testRepeatStatusFolder() throws InterruptedException {
         MusicTrack[] folder = new MusicTrack[2];
         folder[0] = new MusicTrack(null, DocumentFile.fromFile(new File(Settings.System.DEFAULT_NOTIFICATION_URI.getPath())));
         folder[1] = new MusicTrack(null, DocumentFile.fromFile(new File(Settings.System.DEFAULT_ALARM_ALERT_URI.getPath())));
         ((MediaPlayerService.ControlsBinder) binder).playFolder(folder);
 
-        int status = ((MediaPlayerService.ControlsBinder) binder).repeat();
+        ((MediaPlayerService.ControlsBinder) binder).repeat();
+        awaitCommands();
+        int status = ((MediaPlayerService.ControlsBinder) binder).getRepeatStatus();
 
         assertEquals("it does this", 1, status);
     }
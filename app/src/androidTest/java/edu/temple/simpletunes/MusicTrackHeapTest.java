@@ -0,0 +1,151 @@
+package edu.temple.simpletunes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import android.content.Context;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.util.Log;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.MediumTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares the compact MusicTrack with the layout it replaced, which kept a parsed Uri and a
+ * TrackMetadata holding its own copy of every tag. The heap used per track is logged, since
+ * it depends on when the garbage collector runs, and the sharing of the tags is asserted.
+ */
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class MusicTrackHeapTest {
+    private static final String TAG = "MusicTrackHeapTest";
+    private static final int TRACKS = 30000;
+    private static final int TRACKS_PER_ALBUM = 12;
+    private static final Uri TREE = Uri.parse(
+            "content://com.android.externalstorage.documents/tree/primary%3AMusic");
+
+    /**
+     * The fields of a track before it was made compact. The folder was shared by the tracks
+     * listed from one directory.
+     */
+    private static class PreviousTrack {
+        final Uri uri;
+        final String name;
+        final String folder;
+        final boolean isAudio;
+        final PreviousMetadata metadata;
+        final Context ctx;
+        final TrackMetadataCache cache;
+        final long size;
+        final long lastModified;
+
+        PreviousTrack(Uri uri, String name, String folder, PreviousMetadata metadata) {
+            this.uri = uri;
+            this.name = name;
+            this.folder = folder;
+            this.isAudio = true;
+            this.metadata = metadata;
+            this.ctx = null;
+            this.cache = null;
+            this.size = 0;
+            this.lastModified = 0;
+        }
+    }
+
+    /**
+     * The fields of the tags before they were pooled.
+     */
+    private static class PreviousMetadata {
+        final String title;
+        final String track;
+        final String artist;
+        final String album;
+        final boolean isAudio;
+
+        PreviousMetadata(String title, String track, String artist, String album) {
+            this.title = title;
+            this.track = track;
+            this.artist = artist;
+            this.album = album;
+            this.isAudio = true;
+        }
+    }
+
+    @Test
+    public void compactTracksShareTheirTags() {
+        Context context = ApplicationProvider.getApplicationContext();
+        String[] documentIds = new String[TRACKS];
+        String[] names = new String[TRACKS];
+        for(int i = 0; i < TRACKS; i++){
+            names[i] = String.format("%02d - Track %d.mp3", i % TRACKS_PER_ALBUM + 1, i);
+            documentIds[i] = "primary:Music/Artist " + album(i) / 8 + "/Album " + album(i) + "/" + names[i];
+        }
+
+        long before = usedHeap();
+        PreviousTrack[] previous = new PreviousTrack[TRACKS];
+        String folder = null;
+        for(int i = 0; i < TRACKS; i++){
+            Uri uri = DocumentsContract.buildDocumentUriUsingTree(TREE, documentIds[i]);
+            uri.toString();
+            if(i % TRACKS_PER_ALBUM == 0){
+                folder = "primary:Music/Album " + album(i);
+            }
+            // Every tag was a separate string read from the file.
+            PreviousMetadata metadata = new PreviousMetadata("Track " + i,
+                    Integer.toString(i % TRACKS_PER_ALBUM + 1), "Artist " + album(i) / 8, "Album " + album(i));
+            previous[i] = new PreviousTrack(uri, names[i], folder, metadata);
+        }
+        long previousBytes = (usedHeap() - before) / TRACKS;
+        assertEquals(TRACKS, previous.length);
+        // Every previous track of an album had its own copy of the artist and album.
+        assertNotSame(previous[0].metadata.artist, previous[1].metadata.artist);
+        assertNotSame(previous[0].metadata.album, previous[1].metadata.album);
+        previous = null;
+
+        before = usedHeap();
+        MusicTrack[] compact = new MusicTrack[TRACKS];
+        for(int i = 0; i < TRACKS; i++){
+            String uri = DocumentsContract.buildDocumentUriUsingTree(TREE, documentIds[i]).toString();
+            TrackMetadata metadata = new TrackMetadata("Track " + i, Integer.toString(i % TRACKS_PER_ALBUM + 1),
+                    "Artist " + album(i) / 8, "Album " + album(i), true);
+            compact[i] = new MusicTrack(context, uri, names[i], "primary:Music/Album " + album(i),
+                    0, 0, metadata);
+        }
+        long compactBytes = (usedHeap() - before) / TRACKS;
+        Log.i(TAG, "Heap per track: previous " + previousBytes + " bytes, compact " + compactBytes + " bytes");
+
+        assertEquals(DocumentsContract.buildDocumentUriUsingTree(TREE, documentIds[7]), compact[7].getUri());
+        assertEquals(names[7], compact[7].getName());
+        // The tracks of an album share one instance of the artist, album and folder.
+        for(int i = 1; i < TRACKS_PER_ALBUM; i++){
+            assertSame(compact[0].getArtist(), compact[i].getArtist());
+            assertSame(compact[0].getAlbum(), compact[i].getAlbum());
+            assertSame(compact[0].getFolder(), compact[i].getFolder());
+        }
+        assertSame(compact[0].getArtist(), compact[TRACKS_PER_ALBUM].getArtist());
+        assertNotSame(compact[0].getAlbum(), compact[TRACKS_PER_ALBUM].getAlbum());
+    }
+
+    private static int album(int track) {
+        return track / TRACKS_PER_ALBUM;
+    }
+
+    /**
+     * The usedHeap method returns the heap in use after a garbage collection.
+     * @return The used heap in bytes.
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for(int i = 0; i < 3; i++){
+            runtime.gc();
+            runtime.runFinalization();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,118 @@
+package edu.temple.simpletunes;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.media.MediaPlayer;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.Settings;
+import android.util.Log;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.MediumTest;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time from a skip to the start of the audio, when the track is prepared from
+ * scratch as before and when it is promoted from the PlayerPool.
+ */
+@MediumTest
+@RunWith(AndroidJUnit4.class)
+public class SkipLatencyTest {
+    private static final String TAG = "SkipLatencyTest";
+    private static final int SKIPS = 10;
+
+    @Test
+    public void warmSkipStartsFaster() throws InterruptedException {
+        Context context = ApplicationProvider.getApplicationContext();
+        MusicTrack[] tracks = {
+                new MusicTrack(context, Settings.System.DEFAULT_RINGTONE_URI.toString(), "ringtone", null, 0, 0, null),
+                new MusicTrack(context, Settings.System.DEFAULT_NOTIFICATION_URI.toString(), "notification", null, 0, 0, null),
+        };
+        LatencyStats cold = new LatencyStats("Cold skip", SKIPS);
+        LatencyStats warm = new LatencyStats("Warm skip", SKIPS);
+        Handler main = new Handler(Looper.getMainLooper());
+
+        // Before: reset, set the data source and prepare on every skip.
+        for(int i = 0; i < SKIPS; i++){
+            MusicTrack track = tracks[i % tracks.length];
+            CountDownLatch started = new CountDownLatch(1);
+            MediaPlayer[] player = new MediaPlayer[1];
+            long[] start = new long[1];
+            main.post(() -> {
+                player[0] = new MediaPlayer();
+                player[0].setOnPreparedListener(mp -> {
+                    mp.start();
+                    cold.record(SystemClock.elapsedRealtimeNanos() - start[0]);
+                    started.countDown();
+                });
+                start[0] = SystemClock.elapsedRealtimeNanos();
+                try {
+                    MediaPlayerEngine.setAudioAttributes(player[0]);
+                    player[0].setDataSource(context, track.getUri());
+                    player[0].prepareAsync();
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            main.post(() -> player[0].release());
+        }
+
+        // After: the pool prepared the track while the previous one played.
+        CountDownLatch[] prepared = new CountDownLatch[1];
+        PlayerPool[] pool = new PlayerPool[1];
+        PlaybackEngine.Listener listener = new PlaybackEngine.Listener() {
+            @Override
+            public void onPrepared(PlaybackEngine engine) {
+                pool[0].onPrepared(engine);
+                prepared[0].countDown();
+            }
+
+            @Override
+            public void onCompletion(PlaybackEngine engine) {
+            }
+
+            @Override
+            public boolean onError(PlaybackEngine engine, int what, int extra) {
+                return false;
+            }
+        };
+        main.post(() -> pool[0] = new PlayerPool(context, PlayerPool.DEFAULT_CAPACITY, () -> {
+            PlaybackEngine engine = new MediaPlayerEngine();
+            engine.setListener(listener);
+            return engine;
+        }));
+        for(int i = 0; i < SKIPS; i++){
+            MusicTrack track = tracks[i % tracks.length];
+            prepared[0] = new CountDownLatch(1);
+            main.post(() -> pool[0].retarget(track));
+            assertTrue(prepared[0].await(5, TimeUnit.SECONDS));
+            CountDownLatch started = new CountDownLatch(1);
+            main.post(() -> {
+                long start = SystemClock.elapsedRealtimeNanos();
+                PlaybackEngine player = pool[0].take(track);
+                assertNotNull(player);
+                player.start();
+                warm.record(SystemClock.elapsedRealtimeNanos() - start);
+                pool[0].give(player);
+                started.countDown();
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+        }
+        main.post(() -> pool[0].release());
+
+        Log.i(TAG, cold.toString());
+        Log.i(TAG, warm.toString());
+        assertTrue(warm.percentile(50) < cold.percentile(50));
+    }
+}
@@ -0,0 +1,387 @@
+package edu.temple.simpletunes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.media.MediaMetadataRetriever;
+import android.media.MediaMuxer;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+
+/**
+ * Compares the TagReader with MediaMetadataRetriever on the same generated files: MP3 files
+ * with an ID3v2.3 tag, FLAC files with a Vorbis comment and M4A files with an ilst atom, each
+ * holding a second of silence. The files read per second are logged for each reader and
+ * format. The files were just written, so both readers find them in the page cache.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class TagReaderThroughputTest {
+    private static final String TAG = "TagReaderThroughput";
+    private static final int FILES_PER_FORMAT = 1000;
+    private static final int SAMPLE_RATE = 44100;
+    /**
+     * The size of an MPEG-1 Layer III frame at 128 kbit/s and 44.1 kHz without padding.
+     */
+    private static final int MP3_FRAME_SIZE = 417;
+    private static final int FLAC_BLOCK_SIZE = 4096;
+    /**
+     * The size of a FLAC frame of {@link #flacFrames(int)}: a 6 byte header with its CRC-8,
+     * a constant subframe of a 16 bit zero and the CRC-16.
+     */
+    private static final int FLAC_FRAME_SIZE = 11;
+    private static final String[] EXTENSIONS = {"mp3", "flac", "m4a"};
+
+    private File mDir;
+
+    @Before
+    public void createFiles() throws IOException {
+        Context context = ApplicationProvider.getApplicationContext();
+        mDir = new File(context.getCacheDir(), "tag-throughput");
+        deleteFiles();
+        assertTrue(mDir.mkdirs());
+        byte[] mp3 = mp3Frames(SAMPLE_RATE / 1152 + 1);
+        byte[] flac = flacFrames(SAMPLE_RATE / FLAC_BLOCK_SIZE + 1);
+        byte[] m4a = encodeM4a(new File(mDir, "template.m4a"));
+        for(int i = 0; i < FILES_PER_FORMAT; i++){
+            String title = "Track " + i;
+            String artist = "Artist " + i / 100;
+            String album = "Album " + i / 10;
+            int track = i % 10 + 1;
+            write("mp3", i, concat(id3Tag(title, artist, album, track), mp3));
+            write("flac", i, concat(flacHeader(flac.length, title, artist, album, track), flac));
+            write("m4a", i, withIlst(m4a, title, artist, album, track));
+        }
+        new File(mDir, "template.m4a").delete();
+    }
+
+    @After
+    public void deleteFiles() {
+        File[] files = mDir.listFiles();
+        if(files != null){
+            for(File file : files){
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void compareWithMediaMetadataRetriever() throws IOException {
+        StringBuilder report = new StringBuilder();
+        for(String extension : EXTENSIONS){
+            File[] files = new File[FILES_PER_FORMAT];
+            for(int i = 0; i < FILES_PER_FORMAT; i++){
+                files[i] = file(extension, i);
+            }
+            report.append(timeTagReader(extension, files)).append('\n');
+            report.append(timeRetriever(extension, files)).append('\n');
+        }
+        Log.i(TAG, report.toString());
+    }
+
+    /**
+     * Reads every file with one TagReader through a FileChannel, as a scanning thread does.
+     */
+    private static String timeTagReader(String extension, File[] files) throws IOException {
+        TagReader reader = new TagReader();
+        int titles = 0;
+        long start = SystemClock.elapsedRealtimeNanos();
+        for(File file : files){
+            try (FileInputStream in = new FileInputStream(file)) {
+                TrackMetadata m = reader.read(in.getChannel());
+                if(m != null && m.getTitle() != null){
+                    titles++;
+                }
+            }
+        }
+        long elapsed = SystemClock.elapsedRealtimeNanos() - start;
+        assertEquals("TagReader titles of " + extension, files.length, titles);
+        return rate("TagReader", extension, files.length, titles, elapsed);
+    }
+
+    /**
+     * Reads every file with a new MediaMetadataRetriever, as the MusicTrack fallback does.
+     */
+    private static String timeRetriever(String extension, File[] files) {
+        int titles = 0;
+        long start = SystemClock.elapsedRealtimeNanos();
+        for(File file : files){
+            try (MediaMetadataRetriever mmr = new MediaMetadataRetriever()) {
+                mmr.setDataSource(file.getPath());
+                if(mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_TITLE) != null){
+                    titles++;
+                }
+            } catch (RuntimeException e) {
+                Log.w(TAG, "timeRetriever: could not read " + file.getName(), e);
+            }
+        }
+        long elapsed = SystemClock.elapsedRealtimeNanos() - start;
+        return rate("MediaMetadataRetriever", extension, files.length, titles, elapsed);
+    }
+
+    private static String rate(String reader, String extension, int files, int titles, long nanos) {
+        return String.format(Locale.ROOT, "%s %s: %d files in %d ms, %.0f files/s, %d titles read",
+                reader, extension, files, nanos / 1000000, files * 1e9 / nanos, titles);
+    }
+
+    private File file(String extension, int i) {
+        return new File(mDir, String.format(Locale.ROOT, "%04d.%s", i, extension));
+    }
+
+    private void write(String extension, int i, byte[] data) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file(extension, i))) {
+            out.write(data);
+        }
+    }
+
+    /**
+     * Builds MPEG-1 Layer III frames with empty side info, which decode to silence.
+     */
+    static byte[] mp3Frames(int count) {
+        byte[] frames = new byte[count * MP3_FRAME_SIZE];
+        for(int i = 0; i < count; i++){
+            // Sync, MPEG-1 Layer III without CRC, 128 kbit/s at 44.1 kHz, mono.
+            frames[i * MP3_FRAME_SIZE] = (byte) 0xFF;
+            frames[i * MP3_FRAME_SIZE + 1] = (byte) 0xFB;
+            frames[i * MP3_FRAME_SIZE + 2] = (byte) 0x90;
+            frames[i * MP3_FRAME_SIZE + 3] = (byte) 0xC0;
+        }
+        return frames;
+    }
+
+    /**
+     * Builds an ID3v2.3 tag with Latin-1 title, artist, album and track number frames.
+     */
+    static byte[] id3Tag(String title, String artist, String album, int track) {
+        byte[] frames = concat(id3Frame("TIT2", title), id3Frame("TPE1", artist),
+                id3Frame("TALB", album), id3Frame("TRCK", track + "/10"));
+        ByteBuffer header = ByteBuffer.allocate(10);
+        header.put("ID3".getBytes(StandardCharsets.US_ASCII)).put((byte) 3).put((byte) 0).put((byte) 0);
+        int size = frames.length;
+        header.put((byte) ((size >> 21) & 0x7F)).put((byte) ((size >> 14) & 0x7F))
+                .put((byte) ((size >> 7) & 0x7F)).put((byte) (size & 0x7F));
+        return concat(header.array(), frames);
+    }
+
+    private static byte[] id3Frame(String id, String text) {
+        byte[] value = text.getBytes(StandardCharsets.ISO_8859_1);
+        ByteBuffer frame = ByteBuffer.allocate(11 + value.length);
+        frame.put(id.getBytes(StandardCharsets.US_ASCII)).putInt(value.length + 1).putShort((short) 0);
+        frame.put((byte) 0).put(value);
+        return frame.array();
+    }
+
+    /**
+     * Builds the fLaC marker, the STREAMINFO block and a Vorbis comment block for the frames
+     * of {@link #flacFrames(int)}.
+     */
+    private static byte[] flacHeader(int frameBytes, String title, String artist, String album, int track) {
+        long samples = (long) (frameBytes / FLAC_FRAME_SIZE) * FLAC_BLOCK_SIZE;
+        ByteBuffer info = ByteBuffer.allocate(34);
+        info.putShort((short) FLAC_BLOCK_SIZE).putShort((short) FLAC_BLOCK_SIZE);
+        info.put(new byte[]{0, 0, FLAC_FRAME_SIZE, 0, 0, FLAC_FRAME_SIZE});
+        // 44.1 kHz, mono, 16 bit and the total sample count, the MD5 is left unset.
+        info.putLong(((long) SAMPLE_RATE << 44) | (15L << 36) | samples);
+        byte[] comment = vorbisComment("TITLE=" + title, "ARTIST=" + artist, "ALBUM=" + album,
+                "TRACKNUMBER=" + track);
+        return concat("fLaC".getBytes(StandardCharsets.US_ASCII), flacBlock(0, false, info.array()),
+                flacBlock(4, true, comment));
+    }
+
+    private static byte[] flacBlock(int type, boolean last, byte[] data) {
+        byte[] header = {(byte) (type | (last ? 0x80 : 0)), (byte) (data.length >> 16),
+                (byte) (data.length >> 8), (byte) data.length};
+        return concat(header, data);
+    }
+
+    private static byte[] vorbisComment(String... comments) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] vendor = "SimpleTunes".getBytes(StandardCharsets.UTF_8);
+        out.write(le(vendor.length), 0, 4);
+        out.write(vendor, 0, vendor.length);
+        out.write(le(comments.length), 0, 4);
+        for(String comment : comments){
+            byte[] bytes = comment.getBytes(StandardCharsets.UTF_8);
+            out.write(le(bytes.length), 0, 4);
+            out.write(bytes, 0, bytes.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] le(int value) {
+        return ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array();
+    }
+
+    /**
+     * Builds FLAC frames of 4096 silent mono samples, each a single constant subframe.
+     */
+    private static byte[] flacFrames(int count) {
+        byte[] frames = new byte[count * FLAC_FRAME_SIZE];
+        for(int i = 0; i < count; i++){
+            int offset = i * FLAC_FRAME_SIZE;
+            // Fixed block size, 4096 samples, 44.1 kHz, mono, 16 bit and the frame number.
+            frames[offset] = (byte) 0xFF;
+            frames[offset + 1] = (byte) 0xF8;
+            frames[offset + 2] = (byte) 0xC9;
+            frames[offset + 3] = (byte) 0x08;
+            frames[offset + 4] = (byte) i;
+            frames[offset + 5] = (byte) crc8(frames, offset, 5);
+            // A constant subframe without wasted bits and its 16 bit value.
+            frames[offset + 6] = 0;
+            frames[offset + 7] = 0;
+            frames[offset + 8] = 0;
+            int crc = crc16(frames, offset, 9);
+            frames[offset + 9] = (byte) (crc >> 8);
+            frames[offset + 10] = (byte) crc;
+        }
+        return frames;
+    }
+
+    private static int crc8(byte[] data, int offset, int length) {
+        int crc = 0;
+        for(int i = offset; i < offset + length; i++){
+            crc ^= data[i] & 0xFF;
+            for(int bit = 0; bit < 8; bit++){
+                crc = (crc & 0x80) != 0 ? ((crc << 1) ^ 0x07) & 0xFF : (crc << 1) & 0xFF;
+            }
+        }
+        return crc;
+    }
+
+    private static int crc16(byte[] data, int offset, int length) {
+        int crc = 0;
+        for(int i = offset; i < offset + length; i++){
+            crc ^= (data[i] & 0xFF) << 8;
+            for(int bit = 0; bit < 8; bit++){
+                crc = (crc & 0x8000) != 0 ? ((crc << 1) ^ 0x8005) & 0xFFFF : (crc << 1) & 0xFFFF;
+            }
+        }
+        return crc;
+    }
+
+    /**
+     * Encodes a second of silence to AAC in an M4A file with the platform encoder and muxer.
+     */
+    private static byte[] encodeM4a(File file) throws IOException {
+        MediaFormat format = MediaFormat.createAudioFormat(MediaFormat.MIMETYPE_AUDIO_AAC, SAMPLE_RATE, 1);
+        format.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, 64000);
+        MediaCodec codec = MediaCodec.createEncoderByType(MediaFormat.MIMETYPE_AUDIO_AAC);
+        MediaMuxer muxer = new MediaMuxer(file.getPath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        try {
+            codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            codec.start();
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            int track = -1;
+            long samples = 0;
+            boolean inputDone = false;
+            while(true){
+                if(!inputDone){
+                    int input = codec.dequeueInputBuffer(10000);
+                    if(input >= 0){
+                        ByteBuffer buffer = codec.getInputBuffer(input);
+                        int bytes = (int) Math.min(buffer.capacity(), (SAMPLE_RATE - samples) * 2);
+                        buffer.clear();
+                        buffer.put(new byte[bytes]);
+                        long time = samples * 1000000 / SAMPLE_RATE;
+                        samples += bytes / 2;
+                        inputDone = samples >= SAMPLE_RATE;
+                        codec.queueInputBuffer(input, 0, bytes, time,
+                                inputDone ? MediaCodec.BUFFER_FLAG_END_OF_STREAM : 0);
+                    }
+                }
+                int output = codec.dequeueOutputBuffer(info, 10000);
+                if(output == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED){
+                    track = muxer.addTrack(codec.getOutputFormat());
+                    muxer.start();
+                }else if(output >= 0){
+                    if((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0 && info.size > 0){
+                        muxer.writeSampleData(track, codec.getOutputBuffer(output), info);
+                    }
+                    codec.releaseOutputBuffer(output, false);
+                    if((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0){
+                        break;
+                    }
+                }
+            }
+            muxer.stop();
+        } finally {
+            codec.release();
+            muxer.release();
+        }
+        return Files.readAllBytes(file.toPath());
+    }
+
+    /**
+     * Adds a udta/meta/ilst atom to the moov atom of an M4A file. The muxer writes the moov
+     * atom after the media, so it can grow without moving the sample offsets.
+     */
+    private static byte[] withIlst(byte[] m4a, String title, String artist, String album, int track) {
+        ByteBuffer file = ByteBuffer.wrap(m4a);
+        int moov = 0;
+        while(moov + 8 <= m4a.length && file.getInt(moov) >= 8 && !isAtom(m4a, moov, "moov")){
+            moov += file.getInt(moov);
+        }
+        assertTrue("the moov atom is the last atom", moov + 8 <= m4a.length
+                && isAtom(m4a, moov, "moov") && moov + file.getInt(moov) == m4a.length);
+        byte[] hdlr = concat(new byte[8], "mdirappl".getBytes(StandardCharsets.US_ASCII), new byte[9]);
+        byte[] ilst = atom("ilst", concat(
+                atom("©nam", dataAtom(1, title.getBytes(StandardCharsets.UTF_8))),
+                atom("©ART", dataAtom(1, artist.getBytes(StandardCharsets.UTF_8))),
+                atom("©alb", dataAtom(1, album.getBytes(StandardCharsets.UTF_8))),
+                atom("trkn", dataAtom(0, new byte[]{0, 0, 0, (byte) track, 0, 10, 0, 0}))));
+        byte[] udta = atom("udta", atom("meta", concat(new byte[4], atom("hdlr", hdlr), ilst)));
+        byte[] tagged = concat(m4a, udta);
+        ByteBuffer.wrap(tagged).putInt(moov, m4a.length - moov + udta.length);
+        return tagged;
+    }
+
+    private static boolean isAtom(byte[] file, int position, String type) {
+        return new String(file, position + 4, 4, StandardCharsets.ISO_8859_1).equals(type);
+    }
+
+    private static byte[] atom(String type, byte[] content) {
+        ByteBuffer atom = ByteBuffer.allocate(8 + content.length);
+        atom.putInt(8 + content.length).put(type.getBytes(StandardCharsets.ISO_8859_1)).put(content);
+        return atom.array();
+    }
+
+    private static byte[] dataAtom(int typeIndicator, byte[] value) {
+        ByteBuffer data = ByteBuffer.allocate(8 + value.length);
+        data.putInt(typeIndicator).putInt(0).put(value);
+        return atom("data", data.array());
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for(byte[] part : parts){
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+}
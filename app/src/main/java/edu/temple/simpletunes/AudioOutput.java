@@ -0,0 +1,288 @@
+package edu.temple.simpletunes;
+
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Process;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The AudioOutput class runs the mixer thread, which mixes the PCM of the current and the next
+ * CodecEngine with a Mixer and writes it to an AudioTrack. The engines decoding into the
+ * output share a single instance. Commands from the playback thread are recorded under a
+ * lock and picked up by the mixer thread before its next block, the mixer thread only takes
+ * the lock when a command is waiting or a track ended, and a block is mixed and written
+ * without allocating.
+ */
+public class AudioOutput {
+    /**
+     * The channels of the output, decoders convert every track to them.
+     */
+    public static final int CHANNELS = 2;
+    /**
+     * The frames mixed and written at a time.
+     */
+    private static final int BLOCK_FRAMES = 1024;
+    /**
+     * The time the mixer thread waits for a decoder that is behind.
+     */
+    private static final long UNDERRUN_WAIT_NANOS = 2000000;
+
+    private static AudioOutput sShared;
+    private static int sUsers = 0;
+
+    /**
+     * The acquire method returns the shared output, starting it if no engine uses it yet.
+     * @return The output.
+     */
+    public static synchronized AudioOutput acquire() {
+        if (sShared == null) {
+            sShared = new AudioOutput();
+        }
+        sUsers++;
+        return sShared;
+    }
+
+    /**
+     * The release method stops the shared output once the last engine using it is released.
+     */
+    public static synchronized void release() {
+        if (--sUsers == 0) {
+            sShared.shutdown();
+            sShared = null;
+        }
+    }
+
+    private final int mSampleRate;
+    private final AudioTrack mTrack;
+    private final Thread mThread;
+    private volatile boolean mRunning = true;
+
+    /**
+     * The state wanted by the playback thread, guarded by mLock. mChanged tells the mixer
+     * thread to pick it up.
+     */
+    private final Object mLock = new Object();
+    private volatile boolean mChanged = false;
+    private CodecEngine mCurrent;
+    private CodecEngine mNext;
+    private boolean mPlaying = false;
+    private int mCrossfadeFrames = 0;
+
+    /**
+     * The state of the mixer thread. The engines are kept with the rings the mixer plays, so
+     * a finished ring is reported to its engine.
+     */
+    private final Mixer mMixer = new Mixer(CHANNELS, BLOCK_FRAMES);
+    private final short[] mBlock = new short[BLOCK_FRAMES * CHANNELS];
+    private CodecEngine mMixCurrent;
+    private CodecEngine mMixNext;
+    private boolean mMixPlaying = false;
+
+    private AudioOutput() {
+        mSampleRate = AudioTrack.getNativeOutputSampleRate(AudioManager.STREAM_MUSIC);
+        int minBuffer = AudioTrack.getMinBufferSize(mSampleRate, AudioFormat.CHANNEL_OUT_STEREO,
+                AudioFormat.ENCODING_PCM_16BIT);
+        mTrack = new AudioTrack.Builder()
+                .setAudioAttributes(new AudioAttributes.Builder()
+                        .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                        .setUsage(AudioAttributes.USAGE_MEDIA)
+                        .build())
+                .setAudioFormat(new AudioFormat.Builder()
+                        .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                        .setSampleRate(mSampleRate)
+                        .setChannelMask(AudioFormat.CHANNEL_OUT_STEREO)
+                        .build())
+                .setTransferMode(AudioTrack.MODE_STREAM)
+                .setBufferSizeInBytes(Math.max(minBuffer, BLOCK_FRAMES * CHANNELS * 2 * 2))
+                .build();
+        mThread = new Thread(this::mixLoop, "Mixer");
+        mThread.start();
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    /**
+     * The play method makes an engine the current one, with the engine linked to it as the
+     * next one, and plays it.
+     * @param engine The engine.
+     */
+    public void play(CodecEngine engine) {
+        synchronized (mLock) {
+            if (mCurrent != engine) {
+                mCurrent = engine;
+                mNext = engine.getNext();
+            }
+            mPlaying = true;
+        }
+        changed();
+    }
+
+    /**
+     * The pause method pauses the output if an engine is the current one.
+     * @param engine The engine.
+     */
+    public void pause(CodecEngine engine) {
+        synchronized (mLock) {
+            if (mCurrent != engine) {
+                return;
+            }
+            mPlaying = false;
+        }
+        changed();
+    }
+
+    /**
+     * The setNext method updates the engine following an engine, if it is the current one.
+     * @param engine The engine.
+     * @param next The engine that follows it or null.
+     */
+    public void setNext(CodecEngine engine, CodecEngine next) {
+        synchronized (mLock) {
+            if (mCurrent != engine) {
+                return;
+            }
+            mNext = next;
+        }
+        changed();
+    }
+
+    /**
+     * The remove method stops using an engine whose ring is about to be dropped.
+     * @param engine The engine.
+     */
+    public void remove(CodecEngine engine) {
+        synchronized (mLock) {
+            if (mCurrent == engine) {
+                mCurrent = null;
+                mNext = null;
+                mPlaying = false;
+            } else if (mNext == engine) {
+                mNext = null;
+            } else {
+                return;
+            }
+        }
+        changed();
+    }
+
+    /**
+     * The isPlaying method tells if an engine is the current one and is not paused.
+     * @param engine The engine.
+     * @return True if it is playing.
+     */
+    public boolean isPlaying(CodecEngine engine) {
+        synchronized (mLock) {
+            return mCurrent == engine && mPlaying;
+        }
+    }
+
+    /**
+     * The setCrossfade method sets the overlap of a track with the next one.
+     * @param millis The overlap in milliseconds or 0 for gapless playback.
+     */
+    public void setCrossfade(int millis) {
+        synchronized (mLock) {
+            mCrossfadeFrames = (int) ((long) millis * mSampleRate / 1000);
+        }
+        changed();
+    }
+
+    private void changed() {
+        mChanged = true;
+        LockSupport.unpark(mThread);
+    }
+
+    private void shutdown() {
+        mRunning = false;
+        LockSupport.unpark(mThread);
+    }
+
+    /**
+     * The mixLoop method is the mixer thread.
+     */
+    private void mixLoop() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        try {
+            while (mRunning) {
+                if (mChanged) {
+                    applyChanges();
+                }
+                if (!mMixPlaying || mMixer.getCurrent() == null) {
+                    LockSupport.park(this);
+                    continue;
+                }
+                int frames = mMixer.mix(mBlock, BLOCK_FRAMES);
+                PcmRing finished = mMixer.takeFinished();
+                if (finished != null) {
+                    onFinished(finished);
+                }
+                if (frames > 0) {
+                    mTrack.write(mBlock, 0, frames * CHANNELS);
+                } else if (finished == null) {
+                    LockSupport.parkNanos(this, UNDERRUN_WAIT_NANOS);
+                }
+            }
+        } finally {
+            mTrack.release();
+        }
+    }
+
+    /**
+     * The applyChanges method hands the state wanted by the playback thread to the mixer.
+     */
+    private void applyChanges() {
+        boolean playing;
+        synchronized (mLock) {
+            mChanged = false;
+            mMixCurrent = mCurrent;
+            mMixNext = mNext;
+            playing = mPlaying && mCurrent != null;
+            PcmRing current = mCurrent != null ? mCurrent.getRing() : null;
+            if (mMixer.getCurrent() != current) {
+                mMixer.setCurrent(current);
+            }
+            PcmRing next = mNext != null ? mNext.getRing() : null;
+            if (mMixer.getNext() != next) {
+                mMixer.setNext(next);
+            }
+            mMixer.setCrossfadeFrames(mCrossfadeFrames);
+        }
+        if (playing != mMixPlaying) {
+            mMixPlaying = playing;
+            if (playing) {
+                mTrack.play();
+            } else {
+                mTrack.pause();
+            }
+        }
+    }
+
+    /**
+     * The onFinished method moves on to the next engine after the mixer played the ring of
+     * the current one to its end, and tells the engine.
+     * @param ring The ring that ended.
+     */
+    private void onFinished(PcmRing ring) {
+        CodecEngine finished = null;
+        synchronized (mLock) {
+            if (mMixCurrent != null && mMixCurrent.getRing() == ring) {
+                finished = mMixCurrent;
+                mMixCurrent = mMixNext;
+                mMixNext = null;
+                if (mCurrent == finished) {
+                    mCurrent = mMixCurrent;
+                    mNext = null;
+                    mPlaying = mCurrent != null;
+                }
+            }
+        }
+        if (finished != null) {
+            finished.onOutputFinished(ring);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package edu.temple.simpletunes;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * The BrowseIndex class groups the tracks of a folder by artist and album. It is built in one
+ * pass over the tracks into flat int arrays: the albums of each artist and the tracks of each
+ * album are stored back to back, with a start offset per artist and per album, so opening an
+ * artist or an album is an array lookup instead of a filter over the whole folder.
+ * <p>
+ * Tracks are referred to by their position in the array the index was built from. Tracks of
+ * the same album name in different folders are different albums, so compilations stay
+ * together while unrelated albums sharing a name do not.
+ */
+public class BrowseIndex {
+    /**
+     * The name of each artist, sorted, null for tracks without an artist tag.
+     */
+    private final String[] mArtists;
+    /**
+     * The albums of artist a are mArtistAlbums[mArtistStarts[a]] to mArtistAlbums[mArtistStarts[a + 1] - 1].
+     */
+    private final int[] mArtistStarts;
+    private final int[] mArtistAlbums;
+    /**
+     * The name of each album in order of first appearance, null for tracks without an album tag.
+     */
+    private final String[] mAlbums;
+    /**
+     * The tracks of album b are mAlbumTracks[mAlbumStarts[b]] to mAlbumTracks[mAlbumStarts[b + 1] - 1].
+     */
+    private final int[] mAlbumStarts;
+    private final int[] mAlbumTracks;
+    /**
+     * The album of each track.
+     */
+    private final int[] mTrackAlbums;
+    /**
+     * The ID of each artist name.
+     */
+    private final HashMap<String, Integer> mArtistIds;
+
+    /**
+     * Initialize the index from the tags of a list of tracks.
+     * @param artists The artist tag of each track or null.
+     * @param albums The album tag of each track or null.
+     * @param folders The folder of each track or null.
+     * @param trackNumbers The track number of each track or -1 if unknown.
+     */
+    BrowseIndex(String[] artists, String[] albums, String[] folders, int[] trackNumbers) {
+        int count = artists.length;
+        HashMap<String, Integer> artistIds = new HashMap<>();
+        HashMap<String, Integer> albumIds = new HashMap<>();
+        String[] albumNames = new String[16];
+        int[] trackArtists = new int[count];
+        mTrackAlbums = new int[count];
+        int[] albumSizes = new int[16];
+        // Artist and album pairs, packed as artist << 32 | album.
+        long[] pairs = new long[count];
+        String[] artistNames = new String[16];
+
+        // The single pass over the tracks assigns the IDs and counts the tracks of each album.
+        for(int t = 0; t < count; t++){
+            String artistKey = artists[t] == null ? "" : artists[t];
+            Integer artist = artistIds.get(artistKey);
+            if(artist == null){
+                artist = artistIds.size();
+                artistIds.put(artistKey, artist);
+                if(artist == artistNames.length){
+                    artistNames = Arrays.copyOf(artistNames, artist * 2);
+                }
+                artistNames[artist] = artists[t];
+            }
+            String albumKey = (albums[t] == null ? "" : albums[t]) + '\u0000' + (folders[t] == null ? "" : folders[t]);
+            Integer album = albumIds.get(albumKey);
+            if(album == null){
+                album = albumIds.size();
+                albumIds.put(albumKey, album);
+                if(album == albumNames.length){
+                    albumNames = Arrays.copyOf(albumNames, album * 2);
+                    albumSizes = Arrays.copyOf(albumSizes, album * 2);
+                }
+                albumNames[album] = albums[t];
+            }
+            trackArtists[t] = artist;
+            mTrackAlbums[t] = album;
+            albumSizes[album]++;
+            pairs[t] = (long) artist << 32 | album;
+        }
+        int albumCount = albumIds.size();
+        int artistCount = artistIds.size();
+
+        // Place the tracks of each album after the ones before it, then order each album.
+        mAlbums = Arrays.copyOf(albumNames, albumCount);
+        mAlbumStarts = new int[albumCount + 1];
+        for(int b = 0; b < albumCount; b++){
+            mAlbumStarts[b + 1] = mAlbumStarts[b] + albumSizes[b];
+        }
+        mAlbumTracks = new int[count];
+        int[] fill = Arrays.copyOf(mAlbumStarts, albumCount);
+        for(int t = 0; t < count; t++){
+            mAlbumTracks[fill[mTrackAlbums[t]]++] = t;
+        }
+        long[] keys = new long[count];
+        for(int b = 0; b < albumCount; b++){
+            int from = mAlbumStarts[b];
+            int to = mAlbumStarts[b + 1];
+            // Track number first, tracks without one keep their folder order at the end.
+            for(int i = from; i < to; i++){
+                int t = mAlbumTracks[i];
+                long number = trackNumbers[t] < 0 ? Integer.MAX_VALUE : trackNumbers[t];
+                keys[i] = number << 32 | t;
+            }
+            Arrays.sort(keys, from, to);
+            for(int i = from; i < to; i++){
+                mAlbumTracks[i] = (int) keys[i];
+            }
+        }
+
+        // Sort artists by name and give each the albums it has tracks on, in album order.
+        Integer[] order = new Integer[artistCount];
+        for(int a = 0; a < artistCount; a++){
+            order[a] = a;
+        }
+        String[] names = artistNames;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                if(names[a] == null || names[b] == null){
+                    return names[a] == null ? (names[b] == null ? 0 : 1) : -1;
+                }
+                int c = names[a].compareToIgnoreCase(names[b]);
+                return c != 0 ? c : names[a].compareTo(names[b]);
+            }
+        });
+        int[] rank = new int[artistCount];
+        mArtists = new String[artistCount];
+        mArtistIds = new HashMap<>();
+        for(int r = 0; r < artistCount; r++){
+            rank[order[r]] = r;
+            mArtists[r] = names[order[r]];
+            mArtistIds.put(names[order[r]] == null ? "" : names[order[r]], r);
+        }
+        for(int t = 0; t < count; t++){
+            pairs[t] = (long) rank[trackArtists[t]] << 32 | mTrackAlbums[t];
+        }
+        Arrays.sort(pairs);
+        mArtistStarts = new int[artistCount + 1];
+        int[] artistAlbums = new int[count];
+        int n = 0;
+        for(int i = 0; i < count; i++){
+            if(i > 0 && pairs[i] == pairs[i - 1]){
+                continue;
+            }
+            artistAlbums[n++] = (int) pairs[i];
+            mArtistStarts[(int) (pairs[i] >>> 32) + 1] = n;
+        }
+        for(int a = 1; a <= artistCount; a++){
+            mArtistStarts[a] = Math.max(mArtistStarts[a], mArtistStarts[a - 1]);
+        }
+        mArtistAlbums = Arrays.copyOf(artistAlbums, n);
+    }
+
+    /**
+     * The build method creates the index of a list of tracks from their tags. Tracks whose
+     * tags were not read yet are grouped as unknown.
+     * @param tracks The tracks, usually the playlist of a folder.
+     * @return The index, referring to tracks by their position in the array.
+     */
+    public static BrowseIndex build(@NonNull MusicTrack[] tracks) {
+        String[] artists = new String[tracks.length];
+        String[] albums = new String[tracks.length];
+        String[] folders = new String[tracks.length];
+        int[] trackNumbers = new int[tracks.length];
+        for(int t = 0; t < tracks.length; t++){
+            TrackMetadata m = tracks[t].peekMetadata();
+            artists[t] = m == null ? null : m.getArtist();
+            albums[t] = m == null ? null : m.getAlbum();
+            folders[t] = tracks[t].getFolder();
+            trackNumbers[t] = m == null ? -1 : TrackMetadata.parseTrackNumber(m.getTrack());
+        }
+        return new BrowseIndex(artists, albums, folders, trackNumbers);
+    }
+
+    public int getArtistCount() {
+        return mArtists.length;
+    }
+
+    /**
+     * The getArtist method returns the name of an artist.
+     * @param artist The ID of the artist, artists are sorted by name.
+     * @return The name or null for tracks without an artist tag.
+     */
+    public String getArtist(int artist) {
+        return mArtists[artist];
+    }
+
+    /**
+     * The findArtist method looks up an artist by name.
+     * @param name The artist tag or null.
+     * @return The ID of the artist or -1 if no track has this artist.
+     */
+    public int findArtist(String name) {
+        Integer artist = mArtistIds.get(name == null ? "" : name);
+        return artist == null ? -1 : artist;
+    }
+
+    /**
+     * The getAlbumsOfArtist method returns the albums an artist has tracks on.
+     * @param artist The ID of the artist.
+     * @return The IDs of the albums in the order they first appear in the folder.
+     */
+    public int[] getAlbumsOfArtist(int artist) {
+        return Arrays.copyOfRange(mArtistAlbums, mArtistStarts[artist], mArtistStarts[artist + 1]);
+    }
+
+    public int getAlbumCount() {
+        return mAlbums.length;
+    }
+
+    /**
+     * The getAlbum method returns the name of an album.
+     * @param album The ID of the album.
+     * @return The name or null for tracks without an album tag.
+     */
+    public String getAlbum(int album) {
+        return mAlbums[album];
+    }
+
+    /**
+     * The getAlbumOfTrack method returns the album a track belongs to.
+     * @param track The position of the track.
+     * @return The ID of the album.
+     */
+    public int getAlbumOfTrack(int track) {
+        return mTrackAlbums[track];
+    }
+
+    /**
+     * The getTracksOfAlbum method returns the tracks of an album.
+     * @param album The ID of the album.
+     * @return The positions of the tracks, ordered by track number.
+     */
+    public int[] getTracksOfAlbum(int album) {
+        return Arrays.copyOfRange(mAlbumTracks, mAlbumStarts[album], mAlbumStarts[album + 1]);
+    }
+}
@@ -0,0 +1,443 @@
+package edu.temple.simpletunes;
+
+import android.content.Context;
+import android.media.AudioFormat;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The CodecEngine class decodes a track with MediaExtractor and MediaCodec on its own thread
+ * into a PcmRing, converted to the format of the shared AudioOutput, whose mixer thread plays
+ * it. Linked engines follow each other sample-accurately or with a crossfade, since the mixer
+ * reads the next ring in the same block the current one ends. Prepared means the first part
+ * of the track is decoded, a warm engine then keeps its ring full and waits. The decode loop
+ * reuses its buffers and does not allocate once it is running.
+ */
+public class CodecEngine implements PlaybackEngine {
+    private static final String TAG = "CodecEngine";
+    /**
+     * The frames a ring holds, about five seconds. The mixer holds back up to half of them
+     * for a crossfade.
+     */
+    private static final int RING_FRAMES = 1 << 18;
+    /**
+     * The frames decoded before the engine counts as prepared.
+     */
+    private static final int START_FRAMES = 4096;
+    /**
+     * The time the decoder waits for a codec buffer, and for room in the ring.
+     */
+    private static final long CODEC_TIMEOUT_US = 10000;
+    private static final long FULL_WAIT_NANOS = 5000000;
+
+    private final AudioOutput mOutput;
+    private final Handler mHandler = new Handler(Looper.myLooper());
+    private Listener mListener;
+    private Context mContext;
+    private Uri mUri;
+    /**
+     * The ring and the thread decoding the current data source, new for every prepare, so a
+     * ring the mixer may still read is never reused.
+     */
+    private volatile PcmRing mRing;
+    private Decoder mDecoder;
+    /**
+     * The engine linked to follow this one or null.
+     */
+    private CodecEngine mNext;
+    private boolean mReleased = false;
+    private volatile boolean mLooping = false;
+    /**
+     * A seek waiting for the decoder in milliseconds or -1.
+     */
+    private volatile long mSeekRequest = -1;
+    /**
+     * The length of the track in milliseconds or -1, and the write position of the ring
+     * where the track was at mBaseMillis, after the last seek or loop.
+     */
+    private volatile int mDuration = -1;
+    private volatile long mBaseSample = 0;
+    private volatile int mBaseMillis = 0;
+
+    /**
+     * Initialize an engine, it calls its listener on the looper of the current thread.
+     */
+    public CodecEngine() {
+        mOutput = AudioOutput.acquire();
+    }
+
+    @Override
+    public int getType() {
+        return ENGINE_CODEC;
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    public void setDataSource(Context context, Uri uri) {
+        mContext = context.getApplicationContext();
+        mUri = uri;
+    }
+
+    @Override
+    public void prepareAsync() {
+        stopDecoder();
+        mRing = new PcmRing(RING_FRAMES * AudioOutput.CHANNELS);
+        mBaseSample = 0;
+        mBaseMillis = 0;
+        mDecoder = new Decoder(mContext, mUri, mRing);
+        mDecoder.start();
+    }
+
+    @Override
+    public void start() {
+        mOutput.play(this);
+    }
+
+    @Override
+    public void pause() {
+        mOutput.pause(this);
+    }
+
+    @Override
+    public void stop() {
+        mOutput.remove(this);
+        stopDecoder();
+    }
+
+    @Override
+    public void reset() {
+        stop();
+        mRing = null;
+        mUri = null;
+        mNext = null;
+        mDuration = -1;
+    }
+
+    @Override
+    public void release() {
+        if (mReleased) {
+            return;
+        }
+        reset();
+        mReleased = true;
+        AudioOutput.release();
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return mOutput.isPlaying(this);
+    }
+
+    @Override
+    public void setLooping(boolean looping) {
+        mLooping = looping;
+    }
+
+    @Override
+    public boolean setNext(PlaybackEngine next) {
+        if (next != null && !(next instanceof CodecEngine)) {
+            return false;
+        }
+        mNext = (CodecEngine) next;
+        mOutput.setNext(this, mNext);
+        return true;
+    }
+
+    @Override
+    public void setCrossfade(int millis) {
+        mOutput.setCrossfade(millis);
+    }
+
+    /**
+     * The getCurrentPosition method returns the position the mixer read up to. While the
+     * mixer still plays the end of the track before a loop it counts back from the end.
+     * @return The position in milliseconds.
+     */
+    @Override
+    public int getCurrentPosition() {
+        PcmRing ring = mRing;
+        if (ring == null) {
+            return 0;
+        }
+        long frames = (ring.getReadPosition() - mBaseSample) / AudioOutput.CHANNELS;
+        int position = mBaseMillis + (int) (frames * 1000 / mOutput.getSampleRate());
+        if (frames < 0 && mDuration > 0) {
+            position += mDuration;
+        }
+        return Math.max(0, position);
+    }
+
+    @Override
+    public int getDuration() {
+        return mDuration;
+    }
+
+    @Override
+    public void seekTo(int millis) {
+        mSeekRequest = Math.max(0, millis);
+        if (mDecoder != null) {
+            LockSupport.unpark(mDecoder);
+        }
+    }
+
+    /**
+     * @return The engine linked to follow this one or null.
+     */
+    CodecEngine getNext() {
+        return mNext;
+    }
+
+    /**
+     * @return The ring the mixer reads the track from or null.
+     */
+    PcmRing getRing() {
+        return mRing;
+    }
+
+    /**
+     * The onOutputFinished method is called on the mixer thread once the whole track was
+     * played. It is dropped if the engine was reset by then.
+     * @param ring The ring of the track.
+     */
+    void onOutputFinished(PcmRing ring) {
+        mHandler.post(() -> {
+            if (mListener != null && mRing == ring) {
+                mListener.onCompletion(this);
+            }
+        });
+    }
+
+    private void stopDecoder() {
+        if (mDecoder != null) {
+            mDecoder.mStopped = true;
+            LockSupport.unpark(mDecoder);
+            mDecoder = null;
+        }
+        mSeekRequest = -1;
+    }
+
+    /**
+     * The Decoder class is the thread decoding one data source into one ring. Its events are
+     * dropped once the engine moved on to another decoder.
+     */
+    private class Decoder extends Thread {
+        private final Context mSourceContext;
+        private final Uri mSourceUri;
+        private final PcmRing mTarget;
+        private final PcmConverter mConverter;
+        private final MediaCodec.BufferInfo mInfo = new MediaCodec.BufferInfo();
+        private volatile boolean mStopped = false;
+        private boolean mPrepareSent = false;
+        private int mInChannels = 2;
+        /**
+         * The decoded samples of a codec buffer and the same samples after conversion. They
+         * grow to the largest buffer of the codec once and are reused.
+         */
+        private short[] mPcm = new short[0];
+        private short[] mConverted = new short[0];
+
+        Decoder(Context context, Uri uri, PcmRing target) {
+            super("Decoder");
+            mSourceContext = context;
+            mSourceUri = uri;
+            mTarget = target;
+            mConverter = new PcmConverter(AudioOutput.CHANNELS, mOutput.getSampleRate());
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_AUDIO);
+            MediaExtractor extractor = new MediaExtractor();
+            MediaCodec codec = null;
+            try {
+                extractor.setDataSource(mSourceContext, mSourceUri, null);
+                MediaFormat format = null;
+                for (int i = 0; i < extractor.getTrackCount() && format == null; i++) {
+                    MediaFormat candidate = extractor.getTrackFormat(i);
+                    String mime = candidate.getString(MediaFormat.KEY_MIME);
+                    if (mime != null && mime.startsWith("audio/")) {
+                        extractor.selectTrack(i);
+                        format = candidate;
+                    }
+                }
+                if (format == null) {
+                    throw new IOException("No audio track in " + mSourceUri);
+                }
+                if (format.containsKey(MediaFormat.KEY_DURATION)) {
+                    mDuration = (int) (format.getLong(MediaFormat.KEY_DURATION) / 1000);
+                }
+                configure(format);
+                format.setInteger(MediaFormat.KEY_PCM_ENCODING, AudioFormat.ENCODING_PCM_16BIT);
+                codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+                codec.configure(format, null, null, 0);
+                codec.start();
+                decode(extractor, codec);
+            } catch (IOException | RuntimeException e) {
+                Log.d(TAG, "run: Could not decode " + mSourceUri + ": " + e);
+                post(() -> {
+                    if (mListener != null && !mListener.onError(CodecEngine.this, MediaPlayer.MEDIA_ERROR_UNKNOWN, 0)) {
+                        mListener.onCompletion(CodecEngine.this);
+                    }
+                });
+            } finally {
+                if (codec != null) {
+                    codec.release();
+                }
+                extractor.release();
+            }
+        }
+
+        /**
+         * The decode method feeds the codec and writes its output to the ring until the
+         * decoder is stopped. At the end of the track it waits for a seek, or starts over
+         * if the engine loops.
+         */
+        private void decode(MediaExtractor extractor, MediaCodec codec) {
+            boolean inputDone = false;
+            boolean outputDone = false;
+            while (!mStopped) {
+                long seek = mSeekRequest;
+                if (seek >= 0) {
+                    mSeekRequest = -1;
+                    extractor.seekTo(seek * 1000, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+                    codec.flush();
+                    mConverter.reset();
+                    mTarget.discard();
+                    mBaseSample = mTarget.getWritePosition();
+                    mBaseMillis = (int) seek;
+                    inputDone = false;
+                    outputDone = false;
+                }
+                if (outputDone) {
+                    LockSupport.park(this);
+                    continue;
+                }
+                if (!inputDone) {
+                    int index = codec.dequeueInputBuffer(CODEC_TIMEOUT_US);
+                    if (index >= 0) {
+                        ByteBuffer buffer = codec.getInputBuffer(index);
+                        int size = extractor.readSampleData(buffer, 0);
+                        if (size < 0) {
+                            codec.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            codec.queueInputBuffer(index, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+                int index = codec.dequeueOutputBuffer(mInfo, CODEC_TIMEOUT_US);
+                if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    configure(codec.getOutputFormat());
+                } else if (index >= 0) {
+                    int samples = readOutput(codec.getOutputBuffer(index));
+                    codec.releaseOutputBuffer(index, false);
+                    int frames = mConverter.convert(mPcm, samples / mInChannels, mConverted);
+                    if (!push(frames * AudioOutput.CHANNELS)) {
+                        continue;
+                    }
+                    if ((mInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                        if (mLooping) {
+                            // Start over behind the end of the track, without a gap.
+                            extractor.seekTo(0, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+                            codec.flush();
+                            mBaseSample = mTarget.getWritePosition();
+                            mBaseMillis = 0;
+                            inputDone = false;
+                        } else {
+                            mTarget.finish();
+                            outputDone = true;
+                            sendPrepared();
+                        }
+                    } else if (mTarget.getWritePosition() >= START_FRAMES * AudioOutput.CHANNELS) {
+                        sendPrepared();
+                    }
+                }
+            }
+        }
+
+        /**
+         * The readOutput method copies the 16-bit samples of a codec buffer into mPcm.
+         * @return The number of samples.
+         */
+        private int readOutput(ByteBuffer buffer) {
+            int samples = mInfo.size / 2;
+            if (mPcm.length < samples) {
+                mPcm = new short[samples];
+            }
+            buffer.order(ByteOrder.nativeOrder());
+            for (int i = 0; i < samples; i++) {
+                mPcm[i] = buffer.getShort(mInfo.offset + i * 2);
+            }
+            int converted = mConverter.maxOutputFrames(samples / mInChannels) * AudioOutput.CHANNELS;
+            if (mConverted.length < converted) {
+                mConverted = new short[converted];
+            }
+            return samples;
+        }
+
+        /**
+         * The push method writes converted samples to the ring, waiting while it is full.
+         * @return False if the decoder was stopped or a seek is waiting.
+         */
+        private boolean push(int count) {
+            int written = 0;
+            while (written < count) {
+                if (mStopped || mSeekRequest >= 0) {
+                    return false;
+                }
+                int n = mTarget.write(mConverted, written, count - written);
+                written += n;
+                if (n == 0) {
+                    LockSupport.parkNanos(this, FULL_WAIT_NANOS);
+                }
+            }
+            return true;
+        }
+
+        private void configure(MediaFormat format) {
+            mInChannels = Math.max(1, format.getInteger(MediaFormat.KEY_CHANNEL_COUNT));
+            mConverter.configure(mInChannels, format.getInteger(MediaFormat.KEY_SAMPLE_RATE));
+        }
+
+        private void sendPrepared() {
+            if (mPrepareSent) {
+                return;
+            }
+            mPrepareSent = true;
+            post(() -> {
+                if (mListener != null) {
+                    mListener.onPrepared(CodecEngine.this);
+                }
+            });
+        }
+
+        /**
+         * The post method runs an event on the thread of the engine, unless the engine moved
+         * on to another decoder by then.
+         */
+        private void post(Runnable event) {
+            mHandler.post(() -> {
+                if (mDecoder == this) {
+                    event.run();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package edu.temple.simpletunes;
+
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+
+import androidx.annotation.NonNull;
+import androidx.documentfile.provider.DocumentFile;
+
+/**
+ * The DocumentEntry class holds the values of a document read in a single query so they can be
+ * used without asking the document provider again.
+ */
+public class DocumentEntry {
+    /**
+     * The columns queried for every document. The column order matches the indexes used by
+     * {@link #DocumentEntry(Uri, String, Cursor)}.
+     */
+    public static final String[] PROJECTION = {
+            DocumentsContract.Document.COLUMN_DOCUMENT_ID,
+            DocumentsContract.Document.COLUMN_DISPLAY_NAME,
+            DocumentsContract.Document.COLUMN_MIME_TYPE,
+            DocumentsContract.Document.COLUMN_SIZE,
+            DocumentsContract.Document.COLUMN_LAST_MODIFIED
+    };
+    /**
+     * The Uri of the document.
+     */
+    private final Uri uri;
+    /**
+     * The ID of the document within its provider.
+     */
+    private final String documentId;
+    /**
+     * The document ID of the directory the document was listed from or null if unknown.
+     */
+    private final String folder;
+    /**
+     * The display name of the document.
+     */
+    private final String displayName;
+    /**
+     * The MIME type of the document or null if unknown.
+     */
+    private final String mimeType;
+    /**
+     * The size of the document in bytes.
+     */
+    private final long size;
+    /**
+     * The last modified time of the document.
+     */
+    private final long lastModified;
+
+    /**
+     * Initialize the entry from the current row of a cursor queried with {@link #PROJECTION}.
+     * @param treeUri The Uri of the tree the document was listed from.
+     * @param folder The document ID of the directory the document was listed from.
+     * @param cursor The cursor positioned on the document.
+     */
+    public DocumentEntry(@NonNull Uri treeUri, String folder, @NonNull Cursor cursor) {
+        this.folder = folder;
+        this.documentId = cursor.getString(0);
+        this.displayName = cursor.getString(1);
+        this.mimeType = cursor.getString(2);
+        this.size = cursor.isNull(3) ? 0 : cursor.getLong(3);
+        this.lastModified = cursor.isNull(4) ? 0 : cursor.getLong(4);
+        this.uri = DocumentsContract.buildDocumentUriUsingTree(treeUri, documentId);
+    }
+
+    /**
+     * Initialize the entry from a DocumentFile, querying each value once.
+     * @param df The document.
+     */
+    public DocumentEntry(@NonNull DocumentFile df) {
+        this.uri = df.getUri();
+        this.folder = null;
+        this.documentId = uri.toString();
+        this.displayName = df.getName();
+        this.mimeType = df.isFile() ? df.getType() : null;
+        this.size = df.length();
+        this.lastModified = df.lastModified();
+    }
+
+    public Uri getUri() {
+        return uri;
+    }
+
+    public String getDocumentId() {
+        return documentId;
+    }
+
+    public String getFolder() {
+        return folder;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * The isDirectory method checks if the document is a directory.
+     * @return True if the document is a directory.
+     */
+    public boolean isDirectory() {
+        return DocumentsContract.Document.MIME_TYPE_DIR.equals(mimeType);
+    }
+
+    /**
+     * The isAudio method checks if the MIME type of the document is an audio type.
+     * @return True if the document is an audio file.
+     */
+    public boolean isAudio() {
+        return mimeType != null && mimeType.startsWith("audio/");
+    }
+}
@@ -0,0 +1,64 @@
+package edu.temple.simpletunes;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The DocumentLister class lists the children of a document tree with a single
+ * ContentResolver query instead of one provider call per file and value.
+ */
+public final class DocumentLister {
+    /**
+     * Tag used for DocumentLister.
+     */
+    private static final String TAG = "DocumentLister";
+
+    private DocumentLister() {
+    }
+
+    /**
+     * The listChildren method lists the direct children of the root of a tree.
+     * @param resolver The ContentResolver used for the query.
+     * @param treeUri The Uri of the tree returned by the folder picker.
+     * @return The children of the root, empty if the tree could not be read.
+     */
+    public static List<DocumentEntry> listChildren(@NonNull ContentResolver resolver, @NonNull Uri treeUri) {
+        String rootId = DocumentsContract.getTreeDocumentId(treeUri);
+        return listChildren(resolver, treeUri, rootId, rootId);
+    }
+
+    /**
+     * The listChildren method lists the direct children of a directory within a tree.
+     * @param resolver The ContentResolver used for the query.
+     * @param treeUri The Uri of the tree returned by the folder picker.
+     * @param parentDocumentId The document ID of the directory to list.
+     * @param folder The folder recorded in the entries, used to keep the files of a
+     *               directory together in the playlist.
+     * @return The children of the directory, empty if it could not be read.
+     */
+    public static List<DocumentEntry> listChildren(@NonNull ContentResolver resolver, @NonNull Uri treeUri,
+                                                   @NonNull String parentDocumentId, String folder) {
+        Uri childrenUri = DocumentsContract.buildChildDocumentsUriUsingTree(treeUri, parentDocumentId);
+        ArrayList<DocumentEntry> entries = new ArrayList<>();
+        try (Cursor c = resolver.query(childrenUri, DocumentEntry.PROJECTION, null, null, null)) {
+            if(c == null){
+                Log.d(TAG, "listChildren: no cursor for " + parentDocumentId);
+                return entries;
+            }
+            while(c.moveToNext()){
+                entries.add(new DocumentEntry(treeUri, folder, c));
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "listChildren: could not list " + parentDocumentId, e);
+        }
+        return entries;
+    }
+}
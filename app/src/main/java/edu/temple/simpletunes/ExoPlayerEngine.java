@@ -0,0 +1,176 @@
+package edu.temple.simpletunes;
+
+import android.content.Context;
+import android.media.MediaPlayer;
+import android.net.Uri;
+
+import androidx.annotation.OptIn;
+import androidx.media3.common.AudioAttributes;
+import androidx.media3.common.C;
+import androidx.media3.common.MediaItem;
+import androidx.media3.common.PlaybackException;
+import androidx.media3.common.Player;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.exoplayer.DefaultLoadControl;
+import androidx.media3.exoplayer.ExoPlayer;
+
+/**
+ * The ExoPlayerEngine class plays tracks with the Media3 ExoPlayer. Its buffers are tuned for
+ * local files: playback starts once a quarter second is buffered and no more than five
+ * seconds are read ahead, so a warm engine holds little memory. ExoPlayers can't be linked
+ * like MediaPlayers, the next engine is started when this one completes.
+ */
+@OptIn(markerClass = UnstableApi.class)
+public class ExoPlayerEngine implements PlaybackEngine {
+    /**
+     * The least and the most audio buffered ahead of the position, in milliseconds.
+     */
+    private static final int MIN_BUFFER_MS = 2500;
+    private static final int MAX_BUFFER_MS = 5000;
+    /**
+     * The audio buffered before playback starts, and before it resumes after running dry.
+     */
+    private static final int START_BUFFER_MS = 250;
+    private static final int REBUFFER_MS = 1000;
+
+    private final ExoPlayer mPlayer;
+    private Listener mListener;
+    /**
+     * The state of a prepareAsync waiting for the player to become ready.
+     */
+    private boolean mPreparing = false;
+
+    /**
+     * Initialize an engine, it calls its listener on the looper of the current thread.
+     * @param context The context used to open the tracks.
+     */
+    public ExoPlayerEngine(Context context) {
+        mPlayer = new ExoPlayer.Builder(context)
+                .setLoadControl(new DefaultLoadControl.Builder()
+                        .setBufferDurationsMs(MIN_BUFFER_MS, MAX_BUFFER_MS, START_BUFFER_MS, REBUFFER_MS)
+                        .setPrioritizeTimeOverSizeThresholds(true)
+                        .build())
+                .setAudioAttributes(new AudioAttributes.Builder()
+                        .setContentType(C.CONTENT_TYPE_MUSIC)
+                        .setUsage(C.USAGE_MEDIA)
+                        .build(), false)
+                .build();
+        mPlayer.addListener(new Player.Listener() {
+            @Override
+            public void onPlaybackStateChanged(int state) {
+                if (mListener == null) {
+                    return;
+                }
+                if (state == Player.STATE_READY && mPreparing) {
+                    mPreparing = false;
+                    mListener.onPrepared(ExoPlayerEngine.this);
+                } else if (state == Player.STATE_ENDED) {
+                    mListener.onCompletion(ExoPlayerEngine.this);
+                }
+            }
+
+            @Override
+            public void onPlayerError(PlaybackException error) {
+                mPreparing = false;
+                // Like a MediaPlayer, an unhandled error completes the track.
+                if (mListener != null && !mListener.onError(ExoPlayerEngine.this,
+                        MediaPlayer.MEDIA_ERROR_UNKNOWN, error.errorCode)) {
+                    mListener.onCompletion(ExoPlayerEngine.this);
+                }
+            }
+        });
+    }
+
+    @Override
+    public int getType() {
+        return ENGINE_EXOPLAYER;
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    public void setDataSource(Context context, Uri uri) {
+        mPlayer.setMediaItem(MediaItem.fromUri(uri));
+    }
+
+    @Override
+    public void prepareAsync() {
+        mPreparing = true;
+        mPlayer.prepare();
+    }
+
+    @Override
+    public void start() {
+        mPlayer.play();
+    }
+
+    @Override
+    public void pause() {
+        mPlayer.pause();
+    }
+
+    @Override
+    public void stop() {
+        mPreparing = false;
+        mPlayer.stop();
+    }
+
+    @Override
+    public void reset() {
+        mPreparing = false;
+        mPlayer.pause();
+        mPlayer.stop();
+        mPlayer.clearMediaItems();
+    }
+
+    @Override
+    public void release() {
+        mPreparing = false;
+        mPlayer.release();
+    }
+
+    /**
+     * The isPlaying method returns true from start to pause like a MediaPlayer, including
+     * while the player waits for data.
+     * @return True if playing or false if not.
+     */
+    @Override
+    public boolean isPlaying() {
+        int state = mPlayer.getPlaybackState();
+        return mPlayer.getPlayWhenReady() && state != Player.STATE_IDLE && state != Player.STATE_ENDED;
+    }
+
+    @Override
+    public void setLooping(boolean looping) {
+        mPlayer.setRepeatMode(looping ? Player.REPEAT_MODE_ONE : Player.REPEAT_MODE_OFF);
+    }
+
+    @Override
+    public boolean setNext(PlaybackEngine next) {
+        return next == null;
+    }
+
+    @Override
+    public void setCrossfade(int millis) {
+        // Separate ExoPlayers can't be mixed.
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        return (int) mPlayer.getCurrentPosition();
+    }
+
+    @Override
+    public int getDuration() {
+        long duration = mPlayer.getDuration();
+        return duration == C.TIME_UNSET ? -1 : (int) duration;
+    }
+
+    @Override
+    public void seekTo(int millis) {
+        mPlayer.seekTo(millis);
+    }
+}
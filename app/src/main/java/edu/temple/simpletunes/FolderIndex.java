@@ -0,0 +1,213 @@
+package edu.temple.simpletunes;
+
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * The FolderIndex class remembers the documents of a scanned folder and the sorted playlist
+ * built from them. When the same folder is scanned again the new listing is compared with the
+ * index by document ID and last modified time, so only added and changed documents need their
+ * metadata read and the tracks of unchanged documents are reused in the sorted playlist.
+ */
+public class FolderIndex {
+    /**
+     * The Uri of the folder that was indexed.
+     */
+    private final Uri mFolderUri;
+    /**
+     * The state showing if the subdirectories of the folder were indexed.
+     */
+    private final boolean mRecursive;
+    /**
+     * The indexed documents by document ID, including the ones that are not audio files.
+     */
+    private final HashMap<String, Entry> mEntries = new HashMap<>();
+    /**
+     * The audio tracks of the folder in playlist order.
+     */
+    private final ArrayList<MusicTrack> mSorted = new ArrayList<>();
+    /**
+     * The order of the playlist.
+     */
+    private final MusicTrackComparator mComparator = new MusicTrackComparator();
+
+    /**
+     * Initialize an empty index.
+     * @param folderUri The Uri of the folder being indexed.
+     * @param recursive True if the subdirectories of the folder are indexed too.
+     */
+    public FolderIndex(@NonNull Uri folderUri, boolean recursive) {
+        mFolderUri = folderUri;
+        mRecursive = recursive;
+    }
+
+    /**
+     * The isFor method checks if this index belongs to a folder.
+     * @param folderUri The Uri of the folder.
+     * @param recursive True if the subdirectories of the folder are scanned too.
+     * @return True if the index was built for the folder in the same mode.
+     */
+    public boolean isFor(Uri folderUri, boolean recursive) {
+        return mFolderUri.equals(folderUri) && mRecursive == recursive;
+    }
+
+    /**
+     * The isEmpty method checks if nothing has been indexed yet.
+     * @return True if no documents are in the index.
+     */
+    public boolean isEmpty() {
+        return mEntries.isEmpty();
+    }
+
+    /**
+     * The diff method compares a new listing of the folder with the index.
+     * @param contents The current contents of the folder.
+     * @return The documents that were added, changed or removed since the index was updated.
+     */
+    public Diff diff(List<DocumentEntry> contents) {
+        Diff diff = new Diff();
+        HashSet<String> seen = new HashSet<>();
+        for(DocumentEntry document : contents){
+            seen.add(document.getDocumentId());
+            Entry entry = mEntries.get(document.getDocumentId());
+            if(entry == null){
+                diff.added.add(document);
+            }else if(entry.lastModified != document.getLastModified()){
+                diff.changed.add(document);
+            }
+        }
+        for(String documentId : mEntries.keySet()){
+            if(!seen.contains(documentId)){
+                diff.removed.add(documentId);
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * The apply method patches the index and the sorted playlist with the result of a diff.
+     * @param diff The diff computed by this index.
+     * @param scanned The tracks built for {@link Diff#getToScan()}, in the same order. A null
+     *                track is a document that could not be read, it is left out of the index so
+     *                the next scan reads it again.
+     */
+    public void apply(Diff diff, List<MusicTrack> scanned) {
+        HashSet<MusicTrack> stale = new HashSet<>();
+        for(String documentId : diff.removed){
+            stale.add(mEntries.remove(documentId).track);
+        }
+        for(DocumentEntry document : diff.changed){
+            stale.add(mEntries.get(document.getDocumentId()).track);
+        }
+        if(!stale.isEmpty()){
+            mSorted.removeAll(stale);
+        }
+
+        List<DocumentEntry> toScan = diff.getToScan();
+        ArrayList<MusicTrack> inserted = new ArrayList<>();
+        for(int i = 0; i < toScan.size(); i++){
+            MusicTrack track = scanned.get(i);
+            if(track == null){
+                mEntries.remove(toScan.get(i).getDocumentId());
+                continue;
+            }
+            mEntries.put(toScan.get(i).getDocumentId(), new Entry(toScan.get(i).getLastModified(), track));
+            if(track.getIsAudio()){
+                inserted.add(track);
+            }
+        }
+        if(!inserted.isEmpty()){
+            // Tags read since the last sort may have moved tracks, so the playlist is not
+            // searched for the new tracks but sorted again on keys read once per track.
+            mSorted.addAll(inserted);
+            sort();
+        }
+    }
+
+    /**
+     * The sort method sorts the playlist again, after the tags of lazy tracks were read.
+     */
+    public void sort() {
+        MusicTrack[] sorted = mSorted.toArray(new MusicTrack[0]);
+        mComparator.sort(sorted);
+        mSorted.clear();
+        mSorted.addAll(Arrays.asList(sorted));
+    }
+
+    /**
+     * The getTracks method returns the audio tracks of the folder in playlist order.
+     * @return A copy of the sorted playlist.
+     */
+    public MusicTrack[] getTracks() {
+        return mSorted.toArray(new MusicTrack[0]);
+    }
+
+    /**
+     * The Diff class holds the differences between a folder listing and the index.
+     */
+    public static class Diff {
+        /**
+         * The documents that are not in the index.
+         */
+        private final ArrayList<DocumentEntry> added = new ArrayList<>();
+        /**
+         * The documents whose last modified time changed.
+         */
+        private final ArrayList<DocumentEntry> changed = new ArrayList<>();
+        /**
+         * The IDs of indexed documents that are no longer in the folder.
+         */
+        private final ArrayList<String> removed = new ArrayList<>();
+
+        public List<DocumentEntry> getAdded() {
+            return added;
+        }
+
+        public List<DocumentEntry> getChanged() {
+            return changed;
+        }
+
+        public List<String> getRemoved() {
+            return removed;
+        }
+
+        /**
+         * The getToScan method returns the documents that need their metadata read.
+         * @return The added documents followed by the changed documents.
+         */
+        public List<DocumentEntry> getToScan() {
+            ArrayList<DocumentEntry> toScan = new ArrayList<>(added.size() + changed.size());
+            toScan.addAll(added);
+            toScan.addAll(changed);
+            return toScan;
+        }
+
+        /**
+         * The isEmpty method checks if the folder is unchanged.
+         * @return True if nothing was added, changed or removed.
+         */
+        public boolean isEmpty() {
+            return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    /**
+     * The Entry class holds an indexed document.
+     */
+    private static class Entry {
+        private final long lastModified;
+        private final MusicTrack track;
+
+        Entry(long lastModified, MusicTrack track) {
+            this.lastModified = lastModified;
+            this.track = track;
+        }
+    }
+}
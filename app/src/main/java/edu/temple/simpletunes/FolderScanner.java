@@ -0,0 +1,489 @@
+package edu.temple.simpletunes;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * The FolderScanner class lists a folder with the DocumentLister and builds the MusicTrack
+ * objects for it on a bounded pool of worker threads so the main thread is never blocked by metadata extraction. Results are
+ * delivered back to the main thread in batches, in the same order as the folder listing.
+ * Starting a new scan cancels the one that is still running. Tags of files that have not
+ * changed since an earlier scan are read from the TrackMetadataCache, and scanning the same
+ * folder again only reads the documents that changed since the last scan. In recursive mode
+ * the whole tree below the folder is listed with a TreeWalker. The playlist of every complete
+ * scan is saved as the LibraryIndex.
+ */
+public class FolderScanner {
+    /**
+     * Tag used for FolderScanner.
+     */
+    private static final String TAG = "FolderScanner";
+    /**
+     * The number of files handed to a single worker task.
+     */
+    private static final int BATCH_SIZE = 32;
+    /**
+     * The number of worker threads, sized to the CPU count of the device.
+     */
+    private static final int POOL_SIZE = Math.max(1, Runtime.getRuntime().availableProcessors());
+    /**
+     * The application context used to read metadata.
+     */
+    private final Context mContext;
+    /**
+     * The persistent cache checked before reading the tags of a file.
+     */
+    private final TrackMetadataCache mCache;
+    /**
+     * The bounded pool that builds the MusicTrack objects.
+     */
+    private final ExecutorService mWorkers = Executors.newFixedThreadPool(POOL_SIZE);
+    /**
+     * The single thread that lists folders and collects the batches in order.
+     */
+    private final ExecutorService mCoordinator = Executors.newSingleThreadExecutor();
+    /**
+     * The handler used to deliver results on the main thread.
+     */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    /**
+     * The scan that is currently running or null if there is none.
+     */
+    private ScanTask mCurrentScan;
+    /**
+     * The index of the last folder that was scanned completely, only used by the coordinator.
+     */
+    private FolderIndex mIndex;
+    /**
+     * The deepest level of subdirectories listed by a recursive scan.
+     */
+    private int mMaxDepth = TreeWalker.DEFAULT_MAX_DEPTH;
+    /**
+     * The maximum number of directory queries running at the same time in a recursive scan.
+     */
+    private int mMaxInFlight = TreeWalker.DEFAULT_MAX_IN_FLIGHT;
+    /**
+     * The state showing if tracks defer reading their tags until they are needed.
+     */
+    private volatile boolean mLazyMetadata = false;
+
+    /**
+     * The ScanListener interface receives the results of a scan on the main thread.
+     */
+    public interface ScanListener {
+        /**
+         * The onBatchScanned method is called each time a batch of audio tracks is ready.
+         * @param batch The audio tracks of the batch in folder order.
+         */
+        void onBatchScanned(List<MusicTrack> batch);
+
+        /**
+         * The onScanComplete method is called once all the batches have been delivered. No
+         * batches are delivered when a folder is rescanned.
+         * @param tracks All the audio tracks found in the folder in playlist order.
+         */
+        void onScanComplete(MusicTrack[] tracks);
+
+        /**
+         * The onTagsRead method is called after onScanComplete once the tags of every track
+         * have been read, lazy tracks included.
+         * @param tracks The same tracks as passed to onScanComplete, sorted again on the
+         *               track numbers that were read.
+         * @param browse The artist and album index of the tracks.
+         */
+        void onTagsRead(MusicTrack[] tracks, BrowseIndex browse);
+    }
+
+    /**
+     * Initialize the scanner.
+     * @param context The context used to read metadata, the application context is kept.
+     */
+    public FolderScanner(Context context) {
+        mContext = context.getApplicationContext();
+        mCache = new TrackMetadataCache(mContext);
+    }
+
+    /**
+     * The setLazyMetadata method changes how the next scans build their tracks. Lazy tracks
+     * only record the name, Uri and MIME type, so a scan costs a folder listing and the
+     * playlist is ordered by file name until the tags are read.
+     * @param lazy True to defer reading the tags of each track until they are needed.
+     */
+    public void setLazyMetadata(boolean lazy) {
+        mLazyMetadata = lazy;
+    }
+
+    /**
+     * The setRecursiveLimits method changes the limits used by the next recursive scan.
+     * @param maxDepth The deepest level of subdirectories to list, 0 lists only the folder.
+     * @param maxInFlight The maximum number of directory queries running at the same time.
+     */
+    public void setRecursiveLimits(int maxDepth, int maxInFlight) {
+        mMaxDepth = maxDepth;
+        mMaxInFlight = maxInFlight;
+    }
+
+    /**
+     * The scan method starts building the tracks of a folder in the background. Any scan that
+     * is still running is cancelled first and will not deliver any more results.
+     * @param treeUri The Uri of the folder returned by the folder picker.
+     * @param listener The listener receiving the results on the main thread.
+     */
+    public void scan(@NonNull Uri treeUri, @NonNull ScanListener listener) {
+        scan(treeUri, false, listener);
+    }
+
+    /**
+     * The scan method starts building the tracks of a folder in the background. Any scan that
+     * is still running is cancelled first and will not deliver any more results.
+     * @param treeUri The Uri of the folder returned by the folder picker.
+     * @param recursive True to include the tracks of all subdirectories.
+     * @param listener The listener receiving the results on the main thread.
+     */
+    public void scan(@NonNull Uri treeUri, boolean recursive, @NonNull ScanListener listener) {
+        cancel();
+        TreeWalker walker = recursive
+                ? new TreeWalker(mContext.getContentResolver(), mMaxDepth, mMaxInFlight) : null;
+        mCurrentScan = new ScanTask(treeUri, walker, listener);
+        mCurrentScan.start();
+    }
+
+    /**
+     * The cancel method aborts the current scan, if any.
+     */
+    public void cancel() {
+        if(mCurrentScan != null){
+            mCurrentScan.cancel();
+            mCurrentScan = null;
+        }
+    }
+
+    /**
+     * The getCache method returns the metadata cache of the scanner, so tracks that were not
+     * built by a scan can read the tags it already holds.
+     * @return The metadata cache.
+     */
+    public TrackMetadataCache getCache() {
+        return mCache;
+    }
+
+    /**
+     * The shutdown method cancels the current scan and stops the worker threads. The scanner
+     * can not be used afterwards.
+     */
+    public void shutdown() {
+        cancel();
+        mWorkers.shutdownNow();
+        // Close the cache after the coordinator has finished flushing the cancelled scan.
+        mCoordinator.execute(mCache::close);
+        mCoordinator.shutdown();
+    }
+
+    /**
+     * The buildTracks method creates the MusicTrack objects for a batch of documents.
+     * @param documents The documents of the batch.
+     * @return The tracks of the batch in order, including the ones that are not audio files
+     * and null for the documents that could not be read.
+     */
+    private List<MusicTrack> buildTracks(List<DocumentEntry> documents) {
+        boolean lazy = mLazyMetadata;
+        return buildTracks(documents, document -> new MusicTrack(mContext, document, mCache, lazy));
+    }
+
+    /**
+     * The buildTracks method creates the tracks of a batch with a builder. A document whose
+     * builder throws is left as null so one unreadable file does not lose the whole batch.
+     * @param documents The documents of the batch.
+     * @param builder The function creating the track of a document.
+     * @return The tracks of the batch in order, null for the documents that could not be read.
+     */
+    static <T, R> List<R> buildTracks(List<T> documents, Function<T, R> builder) {
+        ArrayList<R> list = new ArrayList<>(documents.size());
+        for(T document : documents){
+            if(Thread.currentThread().isInterrupted()){
+                throw new CancellationException("Scan cancelled");
+            }
+            R track;
+            try {
+                track = builder.apply(document);
+            } catch (RuntimeException e) {
+                track = null;
+            }
+            list.add(track);
+        }
+        return list;
+    }
+
+    /**
+     * The ScanTask class lists a folder, splits it into batches for the workers and collects
+     * the finished batches in order.
+     */
+    private class ScanTask implements Runnable {
+        /**
+         * The Uri of the folder being scanned.
+         */
+        private final Uri mTreeUri;
+        /**
+         * The walker listing the subdirectories or null to list only the folder.
+         */
+        private final TreeWalker mWalker;
+        /**
+         * The listener receiving the results.
+         */
+        private final ScanListener mListener;
+        /**
+         * The pending batches in folder order.
+         */
+        private final List<Future<List<MusicTrack>>> mBatches = new ArrayList<>();
+        /**
+         * The future of the coordinating task.
+         */
+        private Future<?> mFuture;
+        /**
+         * The state of the scan being cancelled.
+         */
+        private volatile boolean mCancelled = false;
+
+        /**
+         * Initialize the task.
+         * @param treeUri The Uri of the folder to scan.
+         * @param walker The walker listing the subdirectories or null to list only the folder.
+         * @param listener The listener receiving the results.
+         */
+        ScanTask(Uri treeUri, TreeWalker walker, ScanListener listener) {
+            mTreeUri = treeUri;
+            mWalker = walker;
+            mListener = listener;
+        }
+
+        /**
+         * The start method submits the task to the coordinator thread.
+         */
+        synchronized void start() {
+            mFuture = mCoordinator.submit(this);
+        }
+
+        /**
+         * The cancel method stops the task and every batch that has not finished yet.
+         */
+        synchronized void cancel() {
+            mCancelled = true;
+            if(mWalker != null){
+                mWalker.cancel();
+            }
+            for(Future<List<MusicTrack>> batch : mBatches){
+                batch.cancel(true);
+            }
+            if(mFuture != null){
+                mFuture.cancel(true);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            try {
+                scan();
+            } finally {
+                // Keep the metadata read so far even if the scan was cancelled.
+                mCache.flush();
+            }
+        }
+
+        /**
+         * The scan method lists the folder, hands out the batches and delivers them in order.
+         * A folder that was scanned before is compared with its index so only added and
+         * changed documents are read.
+         */
+        private void scan() {
+            long start = SystemClock.elapsedRealtime();
+            boolean recursive = mWalker != null;
+            List<DocumentEntry> contents = recursive ? mWalker.walk(mTreeUri)
+                    : DocumentLister.listChildren(mContext.getContentResolver(), mTreeUri);
+            FolderIndex index = mIndex;
+            if(index == null || !index.isFor(mTreeUri, recursive)){
+                index = new FolderIndex(mTreeUri, recursive);
+            }
+            boolean incremental = !index.isEmpty();
+            FolderIndex.Diff diff = index.diff(contents);
+            List<DocumentEntry> toScan = diff.getToScan();
+            if(incremental){
+                Log.d(TAG, "scan: rescanning " + mTreeUri.getLastPathSegment() + ", " + diff.getAdded().size()
+                        + " added, " + diff.getChanged().size() + " changed, "
+                        + diff.getRemoved().size() + " removed");
+            }
+            synchronized (this) {
+                if(mCancelled){
+                    // A cancelled walk returns a partial listing that must not reach the index.
+                    return;
+                }
+                for(int from = 0; from < toScan.size(); from += BATCH_SIZE){
+                    List<DocumentEntry> batch = toScan.subList(from, Math.min(from + BATCH_SIZE, toScan.size()));
+                    mBatches.add(mWorkers.submit(() -> buildTracks(batch)));
+                }
+            }
+            ArrayList<MusicTrack> scanned = new ArrayList<>(toScan.size());
+            int unreadable = 0;
+            for(int i = 0; i < mBatches.size(); i++){
+                List<MusicTrack> batch;
+                try {
+                    batch = mBatches.get(i).get();
+                } catch (CancellationException | InterruptedException e) {
+                    Log.d(TAG, "scan: scan of " + mTreeUri.getLastPathSegment() + " cancelled");
+                    return;
+                } catch (ExecutionException e) {
+                    // Leave the batch out, its documents are read again by the next scan.
+                    Log.e(TAG, "scan: could not read batch of " + mTreeUri.getLastPathSegment(), e.getCause());
+                    batch = Collections.nCopies(Math.min(BATCH_SIZE, toScan.size() - i * BATCH_SIZE), null);
+                }
+                scanned.addAll(batch);
+                List<MusicTrack> audio = new ArrayList<>(batch.size());
+                for(MusicTrack track : batch){
+                    if(track == null){
+                        unreadable++;
+                    }else if(track.getIsAudio()){
+                        audio.add(track);
+                    }
+                }
+                if(!incremental){
+                    deliver(() -> mListener.onBatchScanned(audio));
+                }
+            }
+            if(unreadable > 0){
+                Log.w(TAG, "scan: skipped " + unreadable + " unreadable files of " + mTreeUri.getLastPathSegment());
+            }
+            index.apply(diff, scanned);
+            mIndex = index;
+            long elapsed = Math.max(1, SystemClock.elapsedRealtime() - start);
+            Log.d(TAG, String.format(Locale.US, "scan: scanned %d of %d files in %d ms (%.1f files/s) on %d threads",
+                    toScan.size(), contents.size(), elapsed, contents.size() * 1000f / elapsed, POOL_SIZE));
+            MusicTrack[] tracks = index.getTracks();
+            deliver(() -> mListener.onScanComplete(tracks));
+            writeLibrary(tracks, recursive);
+
+            // Read the tags that lazy tracks skipped, so the library can be browsed by tag.
+            int unread = readTags(tracks);
+            if(unread < 0){
+                return;
+            }
+            MusicTrack[] sorted = tracks;
+            if(unread > 0){
+                // The track numbers just read can move tracks in the playlist.
+                index.sort();
+                sorted = index.getTracks();
+            }
+            MusicTrack[] read = sorted;
+            BrowseIndex browse = BrowseIndex.build(read);
+            deliver(() -> mListener.onTagsRead(read, browse));
+            if(unread > 0){
+                writeLibrary(read, recursive);
+            }
+        }
+
+        /**
+         * The readTags method resolves the tracks whose tags were not read yet on the workers.
+         * Tracks read by an earlier scan or since are not read again, and a track whose file
+         * can not be read keeps unknown tags.
+         * @param tracks The tracks of the folder.
+         * @return The number of tracks that were read or -1 if the scan was cancelled.
+         */
+        private int readTags(MusicTrack[] tracks) {
+            ArrayList<MusicTrack> unread = new ArrayList<>();
+            for(MusicTrack track : tracks){
+                if(!track.isResolved()){
+                    unread.add(track);
+                }
+            }
+            List<Future<?>> batches = new ArrayList<>();
+            synchronized (this) {
+                if(mCancelled){
+                    return -1;
+                }
+                for(int from = 0; from < unread.size(); from += BATCH_SIZE){
+                    List<MusicTrack> batch = unread.subList(from, Math.min(from + BATCH_SIZE, unread.size()));
+                    Future<List<MusicTrack>> future = mWorkers.submit(() -> {
+                        for(MusicTrack track : batch){
+                            if(Thread.currentThread().isInterrupted()){
+                                throw new CancellationException("Scan cancelled");
+                            }
+                            try {
+                                track.resolve(false);
+                            } catch (RuntimeException e) {
+                                // The tags of this track stay unknown, the others are still read.
+                                Log.w(TAG, "readTags: could not read tags of " + track.getName(), e);
+                            }
+                        }
+                        return batch;
+                    });
+                    mBatches.add(future);
+                    batches.add(future);
+                }
+            }
+            for(Future<?> future : batches){
+                try {
+                    future.get();
+                } catch (CancellationException | InterruptedException e) {
+                    return -1;
+                } catch (ExecutionException e) {
+                    // The tracks of the batch that were not read keep unknown tags.
+                    Log.e(TAG, "readTags: could not read tags of " + mTreeUri.getLastPathSegment(), e.getCause());
+                }
+            }
+            return unread.size();
+        }
+
+        /**
+         * The writeLibrary method saves the playlist of a complete scan as the LibraryIndex
+         * shown on the next launch.
+         * @param tracks The audio tracks of the folder in playlist order.
+         * @param recursive True if the subdirectories of the folder were scanned.
+         */
+        private void writeLibrary(MusicTrack[] tracks, boolean recursive) {
+            long start = SystemClock.elapsedRealtime();
+            LibraryIndex.Writer writer = new LibraryIndex.Writer(mTreeUri.toString(), recursive);
+            for(MusicTrack track : tracks){
+                writer.add(track);
+            }
+            try {
+                writer.writeTo(LibraryIndex.getFile(mContext));
+                Log.d(TAG, "writeLibrary: wrote " + tracks.length + " tracks in "
+                        + (SystemClock.elapsedRealtime() - start) + " ms");
+            } catch (IOException e) {
+                Log.e(TAG, "writeLibrary: could not write the library index", e);
+            }
+        }
+
+        /**
+         * The deliver method runs a result callback on the main thread unless the scan has been
+         * cancelled in the meantime.
+         * @param callback The callback to run.
+         */
+        private void deliver(Runnable callback) {
+            mMainHandler.post(() -> {
+                if(!mCancelled){
+                    callback.run();
+                }
+            });
+        }
+    }
+}
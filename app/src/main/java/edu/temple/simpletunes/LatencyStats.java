@@ -0,0 +1,77 @@
+package edu.temple.simpletunes;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The LatencyStats class keeps the most recent latency samples of an operation, such as the
+ * time from a tap on skip to the start of the audio, and summarizes them as percentiles.
+ * Recording a sample does not allocate. The class is not thread safe.
+ */
+public class LatencyStats {
+    /**
+     * The name of the operation used in the summary.
+     */
+    private final String mName;
+    /**
+     * The recent samples in nanoseconds, used as a ring.
+     */
+    private final long[] mSamples;
+    /**
+     * The number of samples recorded since the start.
+     */
+    private long mCount = 0;
+
+    /**
+     * Initialize the stats of an operation.
+     * @param name The name of the operation.
+     * @param capacity The number of recent samples kept.
+     */
+    public LatencyStats(String name, int capacity) {
+        mName = name;
+        mSamples = new long[capacity];
+    }
+
+    /**
+     * The record method adds a sample, replacing the oldest one if the stats are full.
+     * @param nanos The latency in nanoseconds.
+     */
+    public void record(long nanos) {
+        mSamples[(int) (mCount % mSamples.length)] = nanos;
+        mCount++;
+    }
+
+    /**
+     * The getCount method returns the number of samples recorded since the start.
+     * @return The number of samples.
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    /**
+     * The percentile method returns a percentile of the recent samples.
+     * @param percent The percentile from 0 to 100.
+     * @return The latency in nanoseconds or 0 if there are no samples.
+     */
+    public long percentile(double percent) {
+        int size = (int) Math.min(mCount, mSamples.length);
+        if (size == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(mSamples, size);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percent / 100 * size) - 1;
+        return sorted[Math.max(0, Math.min(size - 1, index))];
+    }
+
+    /**
+     * The toString method summarizes the recent samples in milliseconds.
+     * @return The summary.
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s: n=%d, median %.1f ms, p95 %.1f ms, max %.1f ms", mName, mCount,
+                percentile(50) / 1e6, percentile(95) / 1e6, percentile(100) / 1e6);
+    }
+}
@@ -0,0 +1,452 @@
+package edu.temple.simpletunes;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * The LibraryIndex class reads the library written after the last complete folder scan, so the
+ * playlist can be shown right after launch without scanning again. The file is mapped read-only
+ * and nothing is decoded when it is opened; each field is read from the mapping when asked for.
+ * <p>
+ * The file starts with a header, followed by one fixed-width record per track in playlist
+ * order and a table of length-prefixed UTF-8 strings. Records refer to their strings by offset
+ * into the table, equal strings such as artist and album names are stored once. A file with an
+ * unknown magic number or version is ignored so the next scan replaces it.
+ */
+public class LibraryIndex {
+    /**
+     * The name of the index file in the files directory of the app.
+     */
+    public static final String FILE_NAME = "library.idx";
+    /**
+     * The magic number "STLI" at the start of the file.
+     */
+    static final int MAGIC = 0x53544C49;
+    /**
+     * The version of the file format, increased whenever the layout changes.
+     */
+    static final int VERSION = 1;
+    /**
+     * The size of the header in bytes.
+     */
+    private static final int HEADER_SIZE = 32;
+    /**
+     * The size of each track record in bytes.
+     */
+    private static final int RECORD_SIZE = 56;
+    /**
+     * The header flag set when the subdirectories of the folder were scanned.
+     */
+    private static final int FLAG_RECURSIVE = 1;
+    /**
+     * The record flag set when the tags of the track were read before it was written.
+     */
+    private static final int FLAG_RESOLVED = 1;
+    /**
+     * The offset used for strings that are null.
+     */
+    private static final int NO_STRING = -1;
+    // Record layout: six string offsets, then the primitive fields.
+    private static final int NAME = 0;
+    private static final int TITLE = 4;
+    private static final int ARTIST = 8;
+    private static final int ALBUM = 12;
+    private static final int URI = 16;
+    private static final int FOLDER = 20;
+    private static final int TRACK = 24;
+    private static final int DURATION = 28;
+    private static final int FLAGS = 32;
+    private static final int SIZE = 40;
+    private static final int LAST_MODIFIED = 48;
+
+    /**
+     * The read-only mapping of the file. Only absolute reads are used so it can be shared
+     * between threads.
+     */
+    private final MappedByteBuffer mBuffer;
+    /**
+     * The number of tracks in the file.
+     */
+    private final int mCount;
+    /**
+     * The position of the string table in the file.
+     */
+    private final int mStrings;
+    /**
+     * The header flags.
+     */
+    private final int mFlags;
+    /**
+     * The offset of the folder Uri in the string table.
+     */
+    private final int mFolderUri;
+
+    private LibraryIndex(MappedByteBuffer buffer) throws IOException {
+        mBuffer = buffer;
+        if(buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION){
+            throw new IOException("Not a library index of version " + VERSION);
+        }
+        mFlags = buffer.getInt(8);
+        mCount = buffer.getInt(12);
+        mStrings = buffer.getInt(16);
+        int stringsLength = buffer.getInt(20);
+        mFolderUri = buffer.getInt(24);
+        if(mCount < 0 || mStrings != HEADER_SIZE + (long) mCount * RECORD_SIZE
+                || stringsLength < 0 || (long) mStrings + stringsLength != buffer.capacity()){
+            throw new IOException("Library index is truncated");
+        }
+    }
+
+    /**
+     * The getFile method returns the location of the index of an app.
+     * @param context The context of the app.
+     * @return The index file, which may not exist yet.
+     */
+    public static File getFile(@NonNull Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * The open method maps an index file. The cost does not depend on the number of tracks.
+     * @param file The index file.
+     * @return The index or null if the file is missing, damaged or of another version.
+     */
+    @Nullable
+    public static LibraryIndex open(@NonNull File file) {
+        if(!file.isFile()){
+            return null;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            // The mapping stays valid after the channel is closed.
+            return new LibraryIndex(in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length()));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The getCount method returns the number of tracks in the index.
+     * @return The number of tracks.
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * The getFolderUri method returns the folder the library was scanned from.
+     * @return The Uri string of the folder or null.
+     */
+    public String getFolderUri() {
+        return string(mFolderUri);
+    }
+
+    /**
+     * The isRecursive method checks if the subdirectories of the folder were scanned.
+     * @return True for a recursive scan.
+     */
+    public boolean isRecursive() {
+        return (mFlags & FLAG_RECURSIVE) != 0;
+    }
+
+    public String getName(int i) {
+        return string(mBuffer.getInt(record(i) + NAME));
+    }
+
+    public String getTitle(int i) {
+        return string(mBuffer.getInt(record(i) + TITLE));
+    }
+
+    public String getArtist(int i) {
+        return string(mBuffer.getInt(record(i) + ARTIST));
+    }
+
+    public String getAlbum(int i) {
+        return string(mBuffer.getInt(record(i) + ALBUM));
+    }
+
+    public String getUriString(int i) {
+        return string(mBuffer.getInt(record(i) + URI));
+    }
+
+    public String getFolder(int i) {
+        return string(mBuffer.getInt(record(i) + FOLDER));
+    }
+
+    /**
+     * The getTrackNumber method returns the track number of a track.
+     * @param i The position of the track.
+     * @return The track number or -1 if unknown.
+     */
+    public int getTrackNumber(int i) {
+        return mBuffer.getInt(record(i) + TRACK);
+    }
+
+    /**
+     * The getDuration method returns the duration of a track.
+     * @param i The position of the track.
+     * @return The duration in milliseconds or -1 if unknown.
+     */
+    public int getDuration(int i) {
+        return mBuffer.getInt(record(i) + DURATION);
+    }
+
+    /**
+     * The isResolved method checks if the tags of a track were read before it was indexed.
+     * @param i The position of the track.
+     * @return True if the title, artist, album and track number of the record can be used.
+     */
+    public boolean isResolved(int i) {
+        return (mBuffer.getInt(record(i) + FLAGS) & FLAG_RESOLVED) != 0;
+    }
+
+    public long getFileSize(int i) {
+        return mBuffer.getLong(record(i) + SIZE);
+    }
+
+    public long getLastModified(int i) {
+        return mBuffer.getLong(record(i) + LAST_MODIFIED);
+    }
+
+    /**
+     * The getNames method decodes the file names of every track for the playlist view. It
+     * decodes every record and should not run on the main thread for a large library.
+     * @return The file names in playlist order.
+     */
+    public ArrayList<String> getNames() {
+        ArrayList<String> names = new ArrayList<>(mCount);
+        for(int i = 0; i < mCount; i++){
+            names.add(getName(i));
+        }
+        return names;
+    }
+
+    /**
+     * The getTrack method creates the MusicTrack of an indexed track. Tracks whose tags were
+     * not read before they were indexed read them when first needed.
+     * @param context The context used to read the tags.
+     * @param i The position of the track.
+     * @return The track.
+     */
+    public MusicTrack getTrack(Context context, int i) {
+        return getTrack(context, i, null);
+    }
+
+    /**
+     * The getTrack method creates the MusicTrack of an indexed track. Tracks whose tags were
+     * not read before they were indexed look them up in a cache when first needed.
+     * @param context The context used to read the tags.
+     * @param i The position of the track.
+     * @param cache The metadata cache to check before reading the file or null.
+     * @return The track.
+     */
+    public MusicTrack getTrack(Context context, int i, @Nullable TrackMetadataCache cache) {
+        TrackMetadata metadata = null;
+        if(isResolved(i)){
+            int track = getTrackNumber(i);
+            metadata = new TrackMetadata(getTitle(i), track < 0 ? null : Integer.toString(track),
+                    getArtist(i), getAlbum(i), getDuration(i), true);
+        }
+        return new MusicTrack(context, getUriString(i), getName(i), getFolder(i),
+                getFileSize(i), getLastModified(i), metadata, cache);
+    }
+
+    /**
+     * The getTracks method creates the MusicTrack of every indexed track.
+     * @param context The context used to read the tags.
+     * @return The tracks in playlist order.
+     */
+    public MusicTrack[] getTracks(Context context) {
+        return getTracks(context, null);
+    }
+
+    /**
+     * The getTracks method creates the MusicTrack of every indexed track. It decodes every
+     * record and should not run on the main thread for a large library.
+     * @param context The context used to read the tags.
+     * @param cache The metadata cache to check before reading the file or null.
+     * @return The tracks in playlist order.
+     */
+    public MusicTrack[] getTracks(Context context, @Nullable TrackMetadataCache cache) {
+        MusicTrack[] tracks = new MusicTrack[mCount];
+        for(int i = 0; i < mCount; i++){
+            tracks[i] = getTrack(context, i, cache);
+        }
+        return tracks;
+    }
+
+    /**
+     * The record method returns the position of the record of a track.
+     * @param i The position of the track.
+     * @return The position of its record in the file.
+     */
+    private int record(int i) {
+        if(i < 0 || i >= mCount){
+            throw new IndexOutOfBoundsException("Track " + i + " of " + mCount);
+        }
+        return HEADER_SIZE + i * RECORD_SIZE;
+    }
+
+    /**
+     * The string method decodes a string of the string table.
+     * @param offset The offset of the string in the table.
+     * @return The string or null for {@link #NO_STRING}.
+     */
+    private String string(int offset) {
+        if(offset == NO_STRING){
+            return null;
+        }
+        int position = mStrings + offset;
+        int length = mBuffer.getInt(position);
+        byte[] bytes = new byte[length];
+        for(int i = 0; i < length; i++){
+            bytes[i] = mBuffer.get(position + 4 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The Writer class collects the tracks of a library and writes them in the index format.
+     * Records are written in the order they were added.
+     */
+    public static class Writer {
+        private final ByteArrayOutputStream mRecordBytes = new ByteArrayOutputStream();
+        private final DataOutputStream mRecords = new DataOutputStream(mRecordBytes);
+        private final ByteArrayOutputStream mStringBytes = new ByteArrayOutputStream();
+        private final DataOutputStream mStringTable = new DataOutputStream(mStringBytes);
+        /**
+         * The offsets of the strings already in the table.
+         */
+        private final HashMap<String, Integer> mOffsets = new HashMap<>();
+        private final int mFolderUri;
+        private final int mFlags;
+        private int mCount = 0;
+
+        /**
+         * Initialize the writer.
+         * @param folderUri The Uri string of the scanned folder or null.
+         * @param recursive True if the subdirectories of the folder were scanned.
+         */
+        public Writer(@Nullable String folderUri, boolean recursive) {
+            mFolderUri = intern(folderUri);
+            mFlags = recursive ? FLAG_RECURSIVE : 0;
+        }
+
+        /**
+         * The add method appends a track to the index.
+         * @param track The track, its tags are only written if they were already read.
+         * @return This writer.
+         */
+        public Writer add(@NonNull MusicTrack track) {
+            TrackMetadata m = track.peekMetadata();
+            return add(track.getName(), m == null ? null : m.getTitle(), m == null ? null : m.getArtist(),
+                    m == null ? null : m.getAlbum(), track.getUriString(), track.getFolder(),
+                    m == null ? null : m.getTrack(), m == null ? -1 : m.getDuration(), track.getSize(),
+                    track.getLastModified(), m != null);
+        }
+
+        /**
+         * The add method appends a track to the index.
+         * @param name The file name.
+         * @param title The title tag or null.
+         * @param artist The artist tag or null.
+         * @param album The album tag or null.
+         * @param uri The Uri string of the document.
+         * @param folder The folder the track was found in or null.
+         * @param track The track number tag or null.
+         * @param duration The duration in milliseconds or -1 if unknown.
+         * @param size The size of the document in bytes.
+         * @param lastModified The last modified time of the document.
+         * @param resolved True if the tags were read, false if they are still unknown.
+         * @return This writer.
+         */
+        public Writer add(String name, String title, String artist, String album, String uri, String folder,
+                          String track, int duration, long size, long lastModified, boolean resolved) {
+            try {
+                mRecords.writeInt(intern(name));
+                mRecords.writeInt(intern(title));
+                mRecords.writeInt(intern(artist));
+                mRecords.writeInt(intern(album));
+                mRecords.writeInt(intern(uri));
+                mRecords.writeInt(intern(folder));
+                mRecords.writeInt(TrackMetadata.parseTrackNumber(track));
+                mRecords.writeInt(duration);
+                mRecords.writeInt(resolved ? FLAG_RESOLVED : 0);
+                mRecords.writeInt(0);
+                mRecords.writeLong(size);
+                mRecords.writeLong(lastModified);
+            } catch (IOException e) {
+                // A ByteArrayOutputStream does not throw.
+                throw new IllegalStateException(e);
+            }
+            mCount++;
+            return this;
+        }
+
+        /**
+         * The writeTo method writes the index to a temporary file and renames it over the old
+         * index, so readers never see a partly written file.
+         * @param file The index file.
+         * @throws IOException If the file could not be written.
+         */
+        public void writeTo(@NonNull File file) throws IOException {
+            File temp = new File(file.getPath() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                DataOutputStream header = new DataOutputStream(out);
+                header.writeInt(MAGIC);
+                header.writeInt(VERSION);
+                header.writeInt(mFlags);
+                header.writeInt(mCount);
+                header.writeInt(HEADER_SIZE + mRecordBytes.size());
+                header.writeInt(mStringBytes.size());
+                header.writeInt(mFolderUri);
+                header.writeInt(0);
+                mRecordBytes.writeTo(out);
+                mStringBytes.writeTo(out);
+                out.getFD().sync();
+            }
+            if(!temp.renameTo(file)){
+                //noinspection ResultOfMethodCallIgnored
+                temp.delete();
+                throw new IOException("Could not replace " + file);
+            }
+        }
+
+        /**
+         * The intern method adds a string to the table unless it is already there.
+         * @param s The string or null.
+         * @return The offset of the string or {@link #NO_STRING}.
+         */
+        private int intern(String s) {
+            if(s == null){
+                return NO_STRING;
+            }
+            Integer offset = mOffsets.get(s);
+            if(offset == null){
+                offset = mStringBytes.size();
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                try {
+                    mStringTable.writeInt(bytes.length);
+                    mStringTable.write(bytes);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+                mOffsets.put(s, offset);
+            }
+            return offset;
+        }
+    }
+}
@@ -6,7 +6,6 @@ import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
-import androidx.documentfile.provider.DocumentFile;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -20,17 +19,28 @@ import android.content.res.Configuration;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.IBinder;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
+import android.view.Choreographer;
+import android.view.Menu;
 import android.view.View;
+import android.widget.EditText;
 import android.widget.ImageButton;
+import android.widget.PopupMenu;
+import android.widget.SeekBar;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import org.greenrobot.eventbus.EventBus;
 import org.greenrobot.eventbus.Subscribe;
+import org.greenrobot.eventbus.ThreadMode;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * The MainActivity class is used to control the UI in the application and start the
@@ -41,6 +51,10 @@ public class MainActivity extends AppCompatActivity {
      * Tag used for PlayListAdapterData.
      */
     private static final String ADAPTER_DATA = "adapterData";
+    /**
+     * Tag used for the order the PlayListAdapterData is listed in.
+     */
+    private static final String ADAPTER_ORDER = "adapterOrder";
     /**
      * Tag used for MainActivity.
      */
@@ -61,6 +75,10 @@ public class MainActivity extends AppCompatActivity {
      * Tag used for trackPosition.
      */
     public static final String TRACK_POSITION = "trackPosition";
+    /**
+     * Tag used for libraryShown.
+     */
+    private final String LIBRARY_SHOWN_KEY = "libraryShown";
     /**
      * Used to launch the system file browser for single track play.
      */
@@ -101,6 +119,11 @@ public class MainActivity extends AppCompatActivity {
      * The list used to populate the RecyclerView.
      */
     private List<String> adapterData = new ArrayList<>();
+    /**
+     * The positions in adapterData listed in each row of the RecyclerView or null if the
+     * rows list adapterData in order.
+     */
+    private int[] adapterOrder = null;
     /**
      * The interface used to track which position is clicked within the RecyclerView.
      */
@@ -113,24 +136,235 @@ public class MainActivity extends AppCompatActivity {
      * The current track number being played.
      */
     private int currentTrackNum = 0;
-    private MusicTrack[] currentFolder;
     private TextView artistTextview;
     private TextView trackNameTextView;
+    /**
+     * The SeekBar showing the position in the track being played and the length shown on it.
+     */
+    private SeekBar positionSeekBar;
+    private int shownDuration = -1;
+    /**
+     * The state showing if the activity is started, so the position is shown.
+     */
+    private boolean started = false;
+    /**
+     * The state showing if the position is observed in the service, and if the user is
+     * dragging the SeekBar.
+     */
+    private boolean observingPosition = false;
+    private boolean seeking = false;
+    /**
+     * Shows the position every frame while a track is playing.
+     */
+    private final Choreographer.FrameCallback positionUpdater = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            showPosition();
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    };
     /**
      * The connection state of the MediaPlayerService.
      */
     private boolean isConnected = false;
     private MediaPlayerService.ControlsBinder mAudioControlsBinder;
+    /**
+     * Builds the tracks of a selected folder in the background.
+     */
+    private FolderScanner mFolderScanner;
+    /**
+     * The state showing if a folder scan is delivering results to the playlist.
+     */
+    private boolean scanInProgress = false;
+    /**
+     * The state showing if the folder being scanned is already playing and receiving its
+     * tracks batch by batch.
+     */
+    private boolean streamingFolder = false;
+    /**
+     * The tracks of the folder being streamed that were scanned while the service was not
+     * bound, in scan order.
+     */
+    private final ArrayList<MusicTrack> unsentTracks = new ArrayList<>();
+    /**
+     * The state showing if the folder being picked should be scanned with its subfolders.
+     */
+    private boolean recursiveScan = false;
+    /**
+     * The thread reading tags, decoding the saved library and building search indexes for
+     * the views, so the main thread never opens a file or indexes a whole library.
+     */
+    private final ExecutorService mBackground = Executors.newSingleThreadExecutor();
+    /**
+     * The track being played from a folder or null.
+     */
+    private MusicTrack mCurrentTrack;
+    /**
+     * The library saved by the last complete scan or null if there is none.
+     */
+    private LibraryIndex mLibrary;
+    /**
+     * The state showing if the playlist shows the saved library instead of the service's
+     * playlist, until a track of it is played.
+     */
+    private boolean libraryShown = false;
+    /**
+     * The playlist of the service adapterData was last copied from, so a new position in the
+     * same playlist only moves the highlight. Null once adapterData shows anything else.
+     */
+    private ArrayList<String> shownTrackList;
+    /**
+     * The maximum number of search results shown.
+     */
+    private static final int SEARCH_LIMIT = 200;
+    /**
+     * The group of the shuffle modes in the menu of the shuffle button.
+     */
+    private static final int SHUFFLE_MODE_GROUP = 1;
+    /**
+     * The group of the engines in the menu of the repeat button.
+     */
+    private static final int ENGINE_GROUP = 2;
+    /**
+     * The switches in the menu of the repeat button.
+     */
+    private static final int SETTING_GAPLESS = 0;
+    private static final int SETTING_CROSSFADE = 1;
+    /**
+     * Finds the tracks of the current folder or of the saved library as the user types.
+     */
+    private SearchIndex mSearchIndex = new SearchIndex();
+    /**
+     * The number of times the search index was replaced, so an index built in the background
+     * for an older folder is dropped.
+     */
+    private int searchGeneration = 0;
+    /**
+     * The tracks of the search index by ID, or null if the IDs are positions in the saved library.
+     */
+    private ArrayList<MusicTrack> mSearchTracks = null;
+    /**
+     * The number of folder scans started, which identifies the scan delivering results since
+     * a new scan cancels the one before it.
+     */
+    private int scanCount = 0;
+    /**
+     * The scan the tracks of the search index came from or -1.
+     */
+    private int searchScan = -1;
+    /**
+     * The state showing if the search index has to be built from the saved library first.
+     */
+    private boolean searchNeedsLibrary = false;
+    /**
+     * The IDs of the tracks in the search results.
+     */
+    private int[] mResultIds = new int[0];
+    /**
+     * The names shown for the search results.
+     */
+    private final List<String> searchResults = new ArrayList<>();
+    /**
+     * The adapter showing the search results instead of the playlist while a query is typed.
+     */
+    private PlaylistAdapter mSearchAdapter;
+    /**
+     * The artist and album index of the last scanned folder or null until its tags are read.
+     */
+    private BrowseIndex mBrowseIndex;
+    /**
+     * The tracks mBrowseIndex refers to by position.
+     */
+    private MusicTrack[] mBrowseTracks;
+    /**
+     * Receives the tracks of a folder scan on the main thread.
+     */
+    private final FolderScanner.ScanListener mScanListener = new FolderScanner.ScanListener() {
+        @Override
+        public void onBatchScanned(List<MusicTrack> batch) {
+            if(batch.isEmpty()){
+                return;
+            }
+            if(streamingFolder){
+                // Tracks found while the service is not bound are handed over once it is.
+                unsentTracks.addAll(batch);
+                sendUnsentTracks();
+                return;
+            }
+            if(isConnected){
+                // Start playing with the first batch and stream the rest into the queue.
+                MusicTrack[] tracks = batch.toArray(new MusicTrack[0]);
+                streamingFolder = true;
+                new MusicTrackComparator().sort(tracks);
+                startFolder(tracks);
+                return;
+            }
+            // Show file names as they are found until the sorted playlist is posted by the service.
+            if(!scanInProgress){
+                scanInProgress = true;
+                setAdapterOrder(null);
+                shownTrackList = null;
+                adapterData.clear();
+                playlistAdapter.notifyDataSetChanged();
+            }
+            int start = adapterData.size();
+            for(MusicTrack track : batch){
+                adapterData.add(track.getName());
+            }
+            playlistAdapter.notifyItemRangeInserted(start, batch.size());
+        }
+
+        @Override
+        public void onScanComplete(MusicTrack[] tracks) {
+            scanInProgress = false;
+            Log.d(TAG, "onScanComplete: Audio files in folder: " + tracks.length);
+            if(streamingFolder){
+                // Every track reached the MediaPlayerService with its batch, it is sorted once.
+                streamingFolder = false;
+                if(isConnected && unsentTracks.isEmpty()){
+                    mAudioControlsBinder.refreshSortOrders();
+                }
+                sendUnsentTracks();
+                return;
+            }
+            if(tracks.length == 0){
+                setAdapterOrder(null);
+                shownTrackList = null;
+                adapterData.clear();
+                adapterData.add(getString(R.string.adapterDefaultMessage));
+                playlistAdapter.notifyDataSetChanged();
+                return;
+            }
+            startFolder(tracks);
+        }
+
+        @Override
+        public void onTagsRead(MusicTrack[] tracks, BrowseIndex browse) {
+            mBrowseIndex = browse;
+            mBrowseTracks = tracks;
+            if(mSearchTracks != null && searchScan == scanCount){
+                // Index the folder of this scan again now that the tags of lazy tracks are known.
+                indexInBackground(tracks);
+            }
+            if(isConnected){
+                // Sort the playing folder again on the tags that were just read.
+                mAudioControlsBinder.refreshSortOrders();
+            }
+        }
+    };
     private final ServiceConnection mServiceConnection = new ServiceConnection() {
         @Override
         public void onServiceConnected(ComponentName name, IBinder service) {
             isConnected = true;
             mAudioControlsBinder = (MediaPlayerService.ControlsBinder) service;
+            sendUnsentTracks();
+            updatePositionUpdates();
         }
 
         @Override
         public void onServiceDisconnected(ComponentName name) {
             isConnected = false;
+            updatePositionUpdates();
         }
     };
 
@@ -146,16 +380,57 @@ public class MainActivity extends AppCompatActivity {
 
         // Interface for playlistAdapter items being clicked. Play track at specific position.
         onClickInterface = position -> {
-            if(isConnected) {
-                mAudioControlsBinder.play(position);
+            if(isConnected && !scanInProgress) {
+                if(libraryShown){
+                    playLibrary(position);
+                }else{
+                    mAudioControlsBinder.play(position);
+                }
             }
         };
 
+        // Mapping the saved library is cheap, its tracks are only built when one is played.
+        mLibrary = LibraryIndex.open(LibraryIndex.getFile(this));
+        // Until a folder is played by this activity, search the saved library.
+        searchNeedsLibrary = mLibrary != null;
         if(savedInstanceState == null) {
-            // Show default message in RecyclerView on start of app.
-            adapterData.add(getString(R.string.adapterDefaultMessage));
+            if(mLibrary != null && mLibrary.getCount() > 0){
+                // Show the library of the last scan without scanning again.
+                libraryShown = true;
+                showLibraryNames(mLibrary);
+            }else{
+                // Show default message in RecyclerView on start of app.
+                adapterData.add(getString(R.string.adapterDefaultMessage));
+            }
         }
 
+        // Tapping a search result plays it and goes back to the playlist.
+        mSearchAdapter = new PlaylistAdapter(this, searchResults, position -> {
+            if(isConnected && !scanInProgress && position >= 0 && position < mResultIds.length){
+                playSearchResult(mResultIds[position]);
+                ((EditText) findViewById(R.id.searchEditText)).getText().clear();
+            }
+        });
+        EditText searchEditText = findViewById(R.id.searchEditText);
+        searchEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                updateSearch();
+            }
+        });
+
+        mFolderScanner = new FolderScanner(this);
+        // Only read tags when they are shown so playback starts right after the folder is listed.
+        mFolderScanner.setLazyMetadata(true);
+
         // Bind the MediaPlayerService to the MainActivity.
         mServiceIntent = new Intent(this, MediaPlayerService.class);
         bindService(mServiceIntent, mServiceConnection, Context.BIND_AUTO_CREATE);
@@ -167,11 +442,14 @@ public class MainActivity extends AppCompatActivity {
                 if (result.getData() != null) {
                     Uri audioFile = result.getData().getData();
                     Log.d(TAG, "onActivityResult: got URI " + audioFile.toString());
+                    // Stop a folder scan from adding tracks after the single track starts.
+                    mFolderScanner.cancel();
+                    scanInProgress = false;
+                    streamingFolder = false;
+                    unsentTracks.clear();
+                    libraryShown = false;
                     // Reset shuffle state after single track is selected.
-                    if(isConnected && shuffleState){
-                        mediaPlayerShuffle();
-                        updateShuffleButton(false);
-                    }
+                    resetShuffle();
                     mediaPlayerPlay(audioFile);
                     updatePlayButton(true);
                     currentTrackNum = 0; // Reset returned save instance if selecting new track.
@@ -185,30 +463,13 @@ public class MainActivity extends AppCompatActivity {
                 if (result.getData() != null) {
                     Uri uri = result.getData().getData();
                     Log.d(TAG, "onActivityResult: got URI " + uri.toString());
-                    DocumentFile directory = DocumentFile.fromTreeUri(MainActivity.this, uri);
-                    if(directory == null){
-                        Log.d(TAG, "onActivityResult: got empty directory");
-                    }else{
-                        DocumentFile[] contents = directory.listFiles();
-                        ArrayList<MusicTrack> list = new ArrayList<>();
-                        for(int i = 0; i < contents.length; i++){
-                            MusicTrack m = new MusicTrack(MainActivity.this, contents[i]);
-                            if(m.getIsAudio()){
-                                list.add(m);
-                            }
-                        }
-                        currentFolder = new MusicTrack[list.size()];
-                        currentFolder = list.toArray(currentFolder);
-                        Log.d(TAG, "onCreate: Folder passed to MediaPlayerService. Items in folder: " + contents.length);
-                        // Reset shuffle state after new folder is selected.
-                        if(isConnected && shuffleState){
-                            mediaPlayerShuffle();
-                            updateShuffleButton(false);
-                        }
-                        mediaPlayerPlayFolder(currentFolder);
-                        updatePlayButton(true);
-                        currentTrackNum = 0; // Reset returned save instance if selecting new track.
-                    }
+                    // A new scan replaces the names or the queue of a cancelled one.
+                    scanInProgress = false;
+                    libraryShown = false;
+                    streamingFolder = false;
+                    unsentTracks.clear();
+                    scanCount++;
+                    mFolderScanner.scan(uri, recursiveScan, mScanListener);
                 }
             }
         });
@@ -225,6 +486,13 @@ public class MainActivity extends AppCompatActivity {
         EventBus.getDefault().register(this);
         artistTextview = findViewById(R.id.artistTextView);
         trackNameTextView = findViewById(R.id.trackNameTextView);
+        // Long pressing the track being played plays its album.
+        artistTextview.setOnLongClickListener(v -> playAlbumOfCurrent());
+        trackNameTextView.setOnLongClickListener(v -> playAlbumOfCurrent());
+        positionSeekBar = findViewById(R.id.positionSeekBar);
+        shownDuration = -1;
+        started = true;
+        updatePositionUpdates();
     }
 
     /**
@@ -276,8 +544,11 @@ public class MainActivity extends AppCompatActivity {
         RecyclerView.LayoutManager layoutManager = new LinearLayoutManager(this);
         recyclerView.setLayoutManager(layoutManager);
         playlistAdapter = new PlaylistAdapter(this, adapterData, onClickInterface);
+        playlistAdapter.setOrder(adapterOrder);
         recyclerView.setAdapter(playlistAdapter);
         playlistAdapter.setHighlightedPosition(currentTrackNum);
+        // Keep showing the results of a query restored with the search field.
+        updateSearch();
 
         ImageButton browserButton = findViewById(R.id.browserButton);
         browserButton.setOnClickListener(view -> {
@@ -294,15 +565,17 @@ public class MainActivity extends AppCompatActivity {
         folderButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
-                // https://www.programcreek.com/java-api-examples/?class=android.content.Intent&method=ACTION_OPEN_DOCUMENT_TREE
-                Intent i = new Intent();
-                i.setAction(Intent.ACTION_OPEN_DOCUMENT_TREE);
-                i.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION
-                        | Intent.FLAG_GRANT_PERSISTABLE_URI_PERMISSION
-                        | Intent.FLAG_GRANT_PREFIX_URI_PERMISSION);
-                folderLauncher.launch(i);
+                recursiveScan = false;
+                launchFolderPicker();
             }
         });
+        // Long press to play a folder together with all of its subfolders.
+        folderButton.setOnLongClickListener(view -> {
+            recursiveScan = true;
+            Toast.makeText(this, R.string.playFolderRecursive, Toast.LENGTH_SHORT).show();
+            launchFolderPicker();
+            return true;
+        });
 
         ImageButton playPauseButton = findViewById(R.id.playPauseButton);
         playPauseButton.setOnClickListener(new View.OnClickListener() {
@@ -312,6 +585,11 @@ public class MainActivity extends AppCompatActivity {
                 updatePlayButton(status);
             }
         });
+        // Long pressing the play button rates the current track.
+        playPauseButton.setOnLongClickListener(view -> {
+            showRatingMenu(view);
+            return true;
+        });
         ImageButton skipNextButton = findViewById(R.id.skipNextButton);
         skipNextButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -331,21 +609,327 @@ public class MainActivity extends AppCompatActivity {
         repeatButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
-                int status = mediaPlayerRepeat();
-                updateRepeatButton(status);
+                // The button is updated when the service publishes the new status.
+                mediaPlayerRepeat();
             }
         });
+        // Long pressing the repeat button shows the playback settings.
+        repeatButton.setOnLongClickListener(view -> {
+            showSettingsMenu(view);
+            return true;
+        });
         ImageButton shuffleButton = findViewById(R.id.shuffleButton);
         shuffleButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View view) {
-                boolean status = mediaPlayerShuffle();
-                updateShuffleButton(status);
+                // The button is updated when the service publishes the new state.
+                mediaPlayerShuffle();
+            }
+        });
+        // Long pressing the shuffle button picks the order the folder is played in and how
+        // tracks are weighted when shuffling.
+        shuffleButton.setOnLongClickListener(view -> {
+            showSortMenu(view);
+            return true;
+        });
+        // Dragging the SeekBar seeks once it is released.
+        positionSeekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
+            @Override
+            public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+            }
+
+            @Override
+            public void onStartTrackingTouch(SeekBar seekBar) {
+                seeking = true;
+            }
+
+            @Override
+            public void onStopTrackingTouch(SeekBar seekBar) {
+                seeking = false;
+                if(isConnected){
+                    mAudioControlsBinder.seekTo(seekBar.getProgress());
+                }
             }
         });
         super.onResume();
     }
 
+    /**
+     * The startFolder method starts playing a new folder from its first track.
+     * @param tracks The sorted tracks of the folder.
+     */
+    private void startFolder(MusicTrack[] tracks) {
+        Log.d(TAG, "startFolder: Folder passed to MediaPlayerService. Items in folder: " + tracks.length);
+        // Reset shuffle state after new folder is selected.
+        resetShuffle();
+        mediaPlayerPlayFolder(tracks);
+        updatePlayButton(true);
+        currentTrackNum = 0; // Reset returned save instance if selecting new track.
+        resetSearch();
+        searchScan = scanCount;
+        addToSearch(tracks);
+    }
+
+    /**
+     * The resetSearch method empties the search index before a new folder is indexed.
+     */
+    private void resetSearch() {
+        searchGeneration++;
+        mSearchIndex.clear();
+        mSearchTracks = new ArrayList<>();
+        searchNeedsLibrary = false;
+        updateSearch();
+    }
+
+    /**
+     * The addToSearch method indexes tracks of the folder being played as they are scanned.
+     * Tags that were not read yet are not searchable until the folder is indexed again.
+     * @param tracks The tracks to add.
+     */
+    private void addToSearch(MusicTrack[] tracks) {
+        if(mSearchTracks == null){
+            return;
+        }
+        for(MusicTrack track : tracks){
+            addToIndex(mSearchIndex, track);
+            mSearchTracks.add(track);
+        }
+    }
+
+    /**
+     * The addToIndex method indexes the tags of a track that were read and its file name.
+     * @param index The search index.
+     * @param track The track.
+     */
+    private static void addToIndex(SearchIndex index, MusicTrack track) {
+        TrackMetadata m = track.peekMetadata();
+        if(m == null){
+            index.add(track.getName());
+        }else{
+            index.add(m.getTitle(), m.getArtist(), m.getAlbum(), track.getName());
+        }
+    }
+
+    /**
+     * The indexInBackground method replaces the search index with the tracks of a folder,
+     * built on the worker thread.
+     * @param tracks The tracks of the folder.
+     */
+    private void indexInBackground(MusicTrack[] tracks) {
+        int generation = ++searchGeneration;
+        mBackground.execute(() -> {
+            SearchIndex index = new SearchIndex();
+            for(MusicTrack track : tracks){
+                addToIndex(index, track);
+            }
+            runOnUiThread(() -> {
+                if(generation == searchGeneration){
+                    mSearchIndex = index;
+                    mSearchTracks = new ArrayList<>(Arrays.asList(tracks));
+                    updateSearch();
+                }
+            });
+        });
+    }
+
+    /**
+     * The indexLibraryInBackground method replaces the search index with the saved library,
+     * decoded and built on the worker thread. Queries typed meanwhile find nothing until it
+     * is ready.
+     * @param library The saved library.
+     */
+    private void indexLibraryInBackground(LibraryIndex library) {
+        int generation = ++searchGeneration;
+        mSearchIndex.clear();
+        mSearchTracks = null;
+        mBackground.execute(() -> {
+            SearchIndex index = new SearchIndex();
+            for(int i = 0; i < library.getCount(); i++){
+                index.add(library.getTitle(i), library.getArtist(i), library.getAlbum(i), library.getName(i));
+            }
+            runOnUiThread(() -> {
+                if(generation == searchGeneration){
+                    mSearchIndex = index;
+                    updateSearch();
+                }
+            });
+        });
+    }
+
+    /**
+     * The updateSearch method shows the results of the query typed in the search field, or
+     * the playlist when the field is empty.
+     */
+    private void updateSearch() {
+        RecyclerView recyclerView = findViewById(R.id.recyclerView);
+        EditText searchEditText = findViewById(R.id.searchEditText);
+        if(playlistAdapter == null || recyclerView == null || searchEditText == null){
+            return;
+        }
+        String query = searchEditText.getText().toString();
+        if(query.trim().isEmpty()){
+            mResultIds = new int[0];
+            searchResults.clear();
+            recyclerView.setAdapter(playlistAdapter);
+            return;
+        }
+        if(searchNeedsLibrary && mLibrary != null){
+            // The saved library is only decoded for searching once the user starts typing.
+            searchNeedsLibrary = false;
+            indexLibraryInBackground(mLibrary);
+        }
+        mResultIds = mSearchIndex.search(query, SEARCH_LIMIT);
+        searchResults.clear();
+        for(int id : mResultIds){
+            searchResults.add(mSearchTracks == null ? mLibrary.getName(id) : mSearchTracks.get(id).getName());
+        }
+        recyclerView.setAdapter(mSearchAdapter);
+        mSearchAdapter.notifyDataSetChanged();
+    }
+
+    /**
+     * The playSearchResult method plays a track found by the search.
+     * @param id The ID of the track in the search index.
+     */
+    private void playSearchResult(int id) {
+        if(mSearchTracks == null){
+            if(libraryShown){
+                playLibrary(id);
+            }else{
+                playTrackOrFile(Uri.parse(mLibrary.getUriString(id)));
+            }
+        }else{
+            playTrackOrFile(mSearchTracks.get(id).getUri());
+        }
+    }
+
+    /**
+     * The sendUnsentTracks method adds the tracks streamed while the service was not bound to
+     * the folder being played, and sorts the folder if the scan is complete.
+     */
+    private void sendUnsentTracks() {
+        if(isConnected && !unsentTracks.isEmpty()){
+            MusicTrack[] tracks = unsentTracks.toArray(new MusicTrack[0]);
+            mAudioControlsBinder.addToFolder(tracks);
+            addToSearch(tracks);
+            unsentTracks.clear();
+            if(!streamingFolder){
+                mAudioControlsBinder.refreshSortOrders();
+            }
+        }
+    }
+
+    /**
+     * The playTrackOrFile method plays a track of the playing folder, or the file on its own
+     * if the folder does not contain it.
+     * @param uri The Uri of the track.
+     */
+    private void playTrackOrFile(Uri uri) {
+        mAudioControlsBinder.playTrack(uri, found -> {
+            if(!found){
+                mediaPlayerPlay(uri);
+            }
+        });
+    }
+
+    /**
+     * The playLibrary method plays the saved library starting from a selected track.
+     * @param position The position of the track in the library.
+     */
+    private void playLibrary(int position) {
+        if(mLibrary == null || position < 0 || position >= mLibrary.getCount()){
+            return;
+        }
+        libraryShown = false;
+        LibraryIndex library = mLibrary;
+        TrackMetadataCache cache = mFolderScanner.getCache();
+        // Decoding every record takes a while for a large library.
+        mBackground.execute(() -> {
+            MusicTrack[] tracks = library.getTracks(this, cache);
+            runOnUiThread(() -> {
+                if(isDestroyed() || !isConnected){
+                    return;
+                }
+                resetShuffle();
+                mediaPlayerPlayFolder(tracks, position);
+                updatePlayButton(true);
+                currentTrackNum = position;
+            });
+        });
+    }
+
+    /**
+     * The showLibraryNames method decodes the names of the saved library in the background and
+     * shows them in the playlist, unless something else was shown meanwhile.
+     * @param library The saved library.
+     */
+    private void showLibraryNames(LibraryIndex library) {
+        mBackground.execute(() -> {
+            ArrayList<String> names = library.getNames();
+            runOnUiThread(() -> {
+                if(!libraryShown || library != mLibrary || !adapterData.isEmpty()){
+                    return;
+                }
+                adapterData.addAll(names);
+                if(playlistAdapter != null){
+                    playlistAdapter.notifyDataSetChanged();
+                }
+            });
+        });
+    }
+
+    /**
+     * The playAlbumOfCurrent method plays the album of the track being played, in track number
+     * order, continuing from that track.
+     * @return True if the album was started.
+     */
+    private boolean playAlbumOfCurrent() {
+        if(mBrowseIndex == null || mCurrentTrack == null || !isConnected){
+            return false;
+        }
+        int current = -1;
+        String uri = mCurrentTrack.getUriString();
+        for(int t = 0; t < mBrowseTracks.length && current < 0; t++){
+            if(mBrowseTracks[t] == mCurrentTrack || mBrowseTracks[t].hasUri(uri)){
+                current = t;
+            }
+        }
+        if(current < 0){
+            return false;
+        }
+        int album = mBrowseIndex.getAlbumOfTrack(current);
+        int[] ids = mBrowseIndex.getTracksOfAlbum(album);
+        MusicTrack[] tracks = new MusicTrack[ids.length];
+        int position = 0;
+        for(int i = 0; i < ids.length; i++){
+            tracks[i] = mBrowseTracks[ids[i]];
+            if(ids[i] == current){
+                position = i;
+            }
+        }
+        resetShuffle();
+        mediaPlayerPlayFolder(tracks, position);
+        updatePlayButton(true);
+        currentTrackNum = position;
+        String name = mBrowseIndex.getAlbum(album);
+        Toast.makeText(this, getString(R.string.playingAlbum,
+                name == null ? getString(R.string.unknownAlbum) : name), Toast.LENGTH_SHORT).show();
+        return true;
+    }
+
+    /**
+     * The launchFolderPicker method opens the system file browser to select a folder to play.
+     */
+    private void launchFolderPicker() {
+        // https://www.programcreek.com/java-api-examples/?class=android.content.Intent&method=ACTION_OPEN_DOCUMENT_TREE
+        Intent i = new Intent();
+        i.setAction(Intent.ACTION_OPEN_DOCUMENT_TREE);
+        i.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION
+                | Intent.FLAG_GRANT_PERSISTABLE_URI_PERMISSION
+                | Intent.FLAG_GRANT_PREFIX_URI_PERMISSION);
+        folderLauncher.launch(i);
+    }
+
     /**
      * The onRestoreInstanceState is called before the activity is resumed and sets instance
      * variables back to previous state.
@@ -360,7 +944,9 @@ public class MainActivity extends AppCompatActivity {
         playState = savedInstanceState.getBoolean(PLAY_STATE_KEY, false);
         updatePlayButton(playState);
         adapterData = savedInstanceState.getStringArrayList(ADAPTER_DATA);
+        adapterOrder = savedInstanceState.getIntArray(ADAPTER_ORDER);
         currentTrackNum = savedInstanceState.getInt(TRACK_POSITION, 0);
+        libraryShown = savedInstanceState.getBoolean(LIBRARY_SHOWN_KEY, false) && mLibrary != null;
         super.onRestoreInstanceState(savedInstanceState);
     }
 
@@ -375,7 +961,9 @@ public class MainActivity extends AppCompatActivity {
         outState.putBoolean(SHUFFLE_STATE_KEY, shuffleState);
         outState.putBoolean(PLAY_STATE_KEY, playState);
         outState.putStringArrayList(ADAPTER_DATA, (ArrayList<String>) adapterData);
+        outState.putIntArray(ADAPTER_ORDER, adapterOrder);
         outState.putInt(TRACK_POSITION, currentTrackNum);
+        outState.putBoolean(LIBRARY_SHOWN_KEY, libraryShown);
         super.onSaveInstanceState(outState);
     }
 
@@ -428,6 +1016,111 @@ public class MainActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * The showSortMenu method shows the orders the playing folder can be sorted in and passes
+     * the chosen one to the MediaPlayerService.
+     * @param anchor The view the menu is shown at.
+     */
+    private void showSortMenu(View anchor){
+        PopupMenu menu = new PopupMenu(this, anchor);
+        menu.getMenu().add(Menu.NONE, SortOrders.ORDER_TRACK, Menu.NONE, R.string.sortTrack);
+        menu.getMenu().add(Menu.NONE, SortOrders.ORDER_TITLE, Menu.NONE, R.string.sortTitle);
+        menu.getMenu().add(Menu.NONE, SortOrders.ORDER_ARTIST, Menu.NONE, R.string.sortArtist);
+        menu.getMenu().add(Menu.NONE, SortOrders.ORDER_ALBUM, Menu.NONE, R.string.sortAlbum);
+        menu.getMenu().add(Menu.NONE, SortOrders.ORDER_NAME, Menu.NONE, R.string.sortName);
+        menu.getMenu().add(Menu.NONE, SortOrders.ORDER_MODIFIED, Menu.NONE, R.string.sortModified);
+        menu.getMenu().add(SHUFFLE_MODE_GROUP, PlayStats.SHUFFLE_UNIFORM, Menu.NONE, R.string.shuffleUniform);
+        menu.getMenu().add(SHUFFLE_MODE_GROUP, PlayStats.SHUFFLE_FAVORITES, Menu.NONE, R.string.shuffleFavorites);
+        menu.getMenu().add(SHUFFLE_MODE_GROUP, PlayStats.SHUFFLE_FRESH, Menu.NONE, R.string.shuffleFresh);
+        menu.setOnMenuItemClickListener(item -> {
+            if(isConnected){
+                if(item.getGroupId() == SHUFFLE_MODE_GROUP){
+                    mAudioControlsBinder.setShuffleMode(item.getItemId());
+                }else{
+                    mAudioControlsBinder.setSortOrder(item.getItemId());
+                }
+            }
+            return true;
+        });
+        menu.show();
+    }
+
+    /**
+     * The showSettingsMenu method shows the playback settings: gapless playback, crossfading
+     * and the engine tracks are played with, and passes the chosen one to the
+     * MediaPlayerService.
+     * @param anchor The view the menu is shown at.
+     */
+    private void showSettingsMenu(View anchor){
+        if(!isConnected){
+            return;
+        }
+        PopupMenu menu = new PopupMenu(this, anchor);
+        menu.getMenu().add(Menu.NONE, SETTING_GAPLESS, Menu.NONE, R.string.settingsGapless)
+                .setCheckable(true).setChecked(mAudioControlsBinder.isGapless());
+        menu.getMenu().add(Menu.NONE, SETTING_CROSSFADE, Menu.NONE, R.string.settingsCrossfade)
+                .setCheckable(true).setChecked(mAudioControlsBinder.isCrossfade());
+        int engine = mAudioControlsBinder.getEngine();
+        menu.getMenu().add(ENGINE_GROUP, PlaybackEngine.ENGINE_MEDIA_PLAYER, Menu.NONE, R.string.engineMediaPlayer)
+                .setCheckable(true).setChecked(engine == PlaybackEngine.ENGINE_MEDIA_PLAYER);
+        menu.getMenu().add(ENGINE_GROUP, PlaybackEngine.ENGINE_EXOPLAYER, Menu.NONE, R.string.engineExoPlayer)
+                .setCheckable(true).setChecked(engine == PlaybackEngine.ENGINE_EXOPLAYER);
+        menu.getMenu().add(ENGINE_GROUP, PlaybackEngine.ENGINE_CODEC, Menu.NONE, R.string.engineCodec)
+                .setCheckable(true).setChecked(engine == PlaybackEngine.ENGINE_CODEC);
+        menu.setOnMenuItemClickListener(item -> {
+            if(!isConnected){
+                return true;
+            }
+            if(item.getGroupId() == ENGINE_GROUP){
+                if(item.getItemId() != mAudioControlsBinder.getEngine()){
+                    mAudioControlsBinder.setEngine(item.getItemId());
+                    Toast.makeText(this, R.string.engineSwitched, Toast.LENGTH_SHORT).show();
+                }
+            }else if(item.getItemId() == SETTING_CROSSFADE){
+                boolean crossfade = !mAudioControlsBinder.isCrossfade();
+                mAudioControlsBinder.setCrossfade(crossfade);
+                Toast.makeText(this, crossfade ? R.string.crossfadeOn : R.string.crossfadeOff, Toast.LENGTH_SHORT).show();
+            }else{
+                boolean gapless = !mAudioControlsBinder.isGapless();
+                mAudioControlsBinder.setGapless(gapless);
+                Toast.makeText(this, gapless ? R.string.gaplessOn : R.string.gaplessOff, Toast.LENGTH_SHORT).show();
+            }
+            return true;
+        });
+        menu.show();
+    }
+
+    /**
+     * The showRatingMenu method shows the ratings the current track can be given and passes
+     * the chosen one to the MediaPlayerService.
+     * @param anchor The view the menu is shown at.
+     */
+    private void showRatingMenu(View anchor){
+        PopupMenu menu = new PopupMenu(this, anchor);
+        for(int rating = PlayStats.MAX_RATING; rating > 0; rating--){
+            menu.getMenu().add(Menu.NONE, rating, Menu.NONE, getString(R.string.ratingStars, rating));
+        }
+        menu.getMenu().add(Menu.NONE, 0, Menu.NONE, R.string.ratingClear);
+        menu.setOnMenuItemClickListener(item -> {
+            if(isConnected){
+                mAudioControlsBinder.rateCurrent(item.getItemId());
+            }
+            return true;
+        });
+        menu.show();
+    }
+
+    /**
+     * The setAdapterOrder method sets the order the rows of the playlist list adapterData in.
+     * @param order The positions in adapterData listed in each row or null for adapterData order.
+     */
+    private void setAdapterOrder(int[] order){
+        adapterOrder = order;
+        if(playlistAdapter != null){
+            playlistAdapter.setOrder(order);
+        }
+    }
+
     /**
      * The updateShuffleButton method sets the image resource according to night mode being on/off
      * and if the playlist is currently in a shuffle state.
@@ -465,9 +1158,30 @@ public class MainActivity extends AppCompatActivity {
             playPauseButton.setImageResource(R.drawable.ic_baseline_play_circle_outline_72);
         }
     }
-    private void updateTextViews(){
-        artistTextview.setText(currentFolder[currentTrackNum].getArtist());
-        trackNameTextView.setText(currentFolder[currentTrackNum].getTitle());
+    /**
+     * The updateTextViews method shows the artist and title of the track being played.
+     * @param track The track being played from a folder or null for a single track.
+     */
+    private void updateTextViews(MusicTrack track){
+        if(track == null){
+            artistTextview.setText(null);
+            trackNameTextView.setText(null);
+        }else if(track.isResolved()){
+            artistTextview.setText(track.getArtist());
+            trackNameTextView.setText(track.getTitle());
+        }else{
+            // Reading the tags opens the file, the name is shown until they are read.
+            artistTextview.setText(null);
+            trackNameTextView.setText(track.getName());
+            mBackground.execute(() -> {
+                track.resolve();
+                runOnUiThread(() -> {
+                    if(mCurrentTrack == track){
+                        updateTextViews(track);
+                    }
+                });
+            });
+        }
     }
     /**
      * The mediaPlayerPrev method is used to skip to the previously played track in the file.
@@ -494,16 +1208,21 @@ public class MainActivity extends AppCompatActivity {
      */
     private boolean mediaPlayerPauseOrStart() {
         if (isConnected) {
-            playState = mAudioControlsBinder.isPlaying();
+            // Show the expected state until the service publishes the new one.
+            playState = !mAudioControlsBinder.isPlaying();
             if(playState){
-                mAudioControlsBinder.pause();
-            }else{
+                // A track restored from the last session plays without the service started yet.
+                if(mCurrentTrack != null){
+                    mServiceIntent.putExtra(TRACK_FILE_NAME, mCurrentTrack.getName());
+                }
+                startForegroundService(mServiceIntent);
                 mAudioControlsBinder.resume();
+            }else{
+                mAudioControlsBinder.pause();
             }
         }else{
             playState = false;
         }
-        playState = mAudioControlsBinder.isPlaying();
         return playState;
     }
 
@@ -528,45 +1247,57 @@ public class MainActivity extends AppCompatActivity {
     /**
      * The mediaPlayerPlayFolder plays the entire folder found in a DocumentFile array. Stops after
      * last file is completed playing.
-     * @param folder The DocumentFile array to play all audio files from.
+     * @param folder The MusicTrack array to play, already sorted by the FolderScanner.
      */
     private void mediaPlayerPlayFolder(MusicTrack[] folder) {
-        Arrays.sort(folder, new MusicTrackComparator());
-        String name = folder[0].getName();
+        mediaPlayerPlayFolder(folder, 0);
+    }
+
+    /**
+     * The mediaPlayerPlayFolder plays a folder starting from a specific track.
+     * @param folder The MusicTrack array to play in playlist order.
+     * @param position The position of the first track to play.
+     */
+    private void mediaPlayerPlayFolder(MusicTrack[] folder, int position) {
+        String name = folder[position].getName();
         if (isConnected) {
             // Send file name through intent to service for first notification.
             mServiceIntent.putExtra(TRACK_FILE_NAME, name);
             startForegroundService(mServiceIntent);
             // Reset shuffle state after new folder is selected.
-            mAudioControlsBinder.playFolder(folder);
+            mAudioControlsBinder.playFolder(folder, position);
             playState = true;
         }
     }
 
     /**
-     * The mediaPlayerRepeat method sets the MediaPlayerService into repeat mode.
-     * @return The state of the repeat, 0 = no repeat, 1 = folder repeat, 2 = file repeat.
+     * The mediaPlayerRepeat method moves the MediaPlayerService to its next repeat mode,
+     * 0 = no repeat, 1 = folder repeat, 2 = file repeat.
      */
-    private int mediaPlayerRepeat(){
+    private void mediaPlayerRepeat(){
         if(isConnected){
-            repeatState = mAudioControlsBinder.repeat();
-        }else{
-            repeatState = 0;
+            mAudioControlsBinder.repeat();
         }
-        return repeatState;
     }
 
     /**
-     * The mediaPlayerShuffle method is used to set the mediaPlayerService shuffle state.
-     * @return True if shuffle is on and false otherwise.
+     * The mediaPlayerShuffle method is used to toggle the mediaPlayerService shuffle state.
      */
-    private boolean mediaPlayerShuffle(){
+    private void mediaPlayerShuffle(){
         if(isConnected){
-            shuffleState = mAudioControlsBinder.shuffle();
-        }else{
+            mAudioControlsBinder.shuffle();
+        }
+    }
+
+    /**
+     * The resetShuffle method turns shuffle off before something new is played.
+     */
+    private void resetShuffle(){
+        if(isConnected && shuffleState){
+            mAudioControlsBinder.setShuffle(false);
             shuffleState = false;
+            updateShuffleButton(false);
         }
-        return shuffleState;
     }
 
 
@@ -576,32 +1307,117 @@ public class MainActivity extends AppCompatActivity {
      * @param event The TrackDataChangedEvent object that has changed.
      *              Contains playlist and current track number.
      */
-    @Subscribe
+    @Subscribe(threadMode = ThreadMode.MAIN)
     public void handleTrackDataChange(TrackDataChangedEvent event) {
 
         currentTrackNum = event.getTrackPosition();
+        boolean sameList = !libraryShown && event.getTrackList() != null
+                && event.getTrackList() == shownTrackList;
+        boolean samePlaylist = sameList && event.getOrder() == adapterOrder;
+        if (event.getAppended() == null) {
+            // The playlist of the service replaces the saved library.
+            libraryShown = false;
+        }
         playlistAdapter.setHighlightedPosition(currentTrackNum);
-        if (event.getSingleTrack() == null) { // Notify all adapter data changed for folder play.
+        if (event.getAppended() != null) {
+            // Tracks streamed into the folder only add their names.
+            if (!libraryShown) {
+                int start = adapterData.size();
+                adapterData.addAll(event.getAppended());
+                playlistAdapter.notifyItemRangeInserted(start, adapterData.size() - start);
+            }
+        } else if (samePlaylist) {
+            // A skip within the playlist being shown only moves the highlight.
+            Log.d(TAG, "handleTrackDataChange: Playlist unchanged");
+        } else if (sameList) {
+            // A new sort order of the names being shown only swaps the order the rows read.
+            setAdapterOrder(event.getOrder());
+            playlistAdapter.notifyDataSetChanged();
+        } else if (event.getSingleTrack() == null) { // Notify all adapter data changed for folder play.
+            // A sorted folder lists the names in the order of the service without copying them.
+            setAdapterOrder(event.getOrder());
+            shownTrackList = event.getTrackList();
             adapterData.clear();
             adapterData.addAll(event.getTrackList());
             playlistAdapter.notifyDataSetChanged();
         } else { // Notify first track played as single.
+            setAdapterOrder(null);
+            shownTrackList = null;
             adapterData.clear();
             adapterData.add(event.getSingleTrack());
             playlistAdapter.notifyItemChanged(0);
         }
-        updateTextViews();
+        mCurrentTrack = event.getCurrentTrack();
+        updateTextViews(mCurrentTrack);
+    }
+
+    /**
+     * The handlePlaybackState method is called when the play, repeat or shuffle state of the
+     * MediaPlayerService changes, and with the latest state when the EventBus is registered.
+     * @param event The PlaybackStateEvent with the new state.
+     */
+    @Subscribe(threadMode = ThreadMode.MAIN, sticky = true)
+    public void handlePlaybackState(PlaybackStateEvent event) {
+        playState = event.isPlaying();
+        updatePlayButton(playState);
+        repeatState = event.getRepeatStatus();
+        updateRepeatButton(repeatState);
+        shuffleState = event.isShuffleOn();
+        updateShuffleButton(shuffleState);
+        updatePositionUpdates();
+    }
+
+    /**
+     * The updatePositionUpdates method observes the position in the service while the
+     * activity is started, and shows it every frame while a track is playing. Otherwise the
+     * position is shown once.
+     */
+    private void updatePositionUpdates() {
+        boolean observe = started && isConnected;
+        if(observe != observingPosition){
+            observingPosition = observe;
+            if(observe){
+                mAudioControlsBinder.addPositionObserver();
+            }else if(mAudioControlsBinder != null){
+                mAudioControlsBinder.removePositionObserver();
+            }
+        }
+        Choreographer.getInstance().removeFrameCallback(positionUpdater);
+        if(observe && playState){
+            Choreographer.getInstance().postFrameCallback(positionUpdater);
+        }
+        if(observe){
+            showPosition();
+        }
+    }
+
+    /**
+     * The showPosition method shows the position read from the service on the SeekBar,
+     * unless the user is dragging it.
+     */
+    private void showPosition() {
+        int duration = mAudioControlsBinder.getDuration();
+        if(duration != shownDuration){
+            shownDuration = duration;
+            positionSeekBar.setMax(Math.max(0, duration));
+            positionSeekBar.setEnabled(duration > 0);
+        }
+        if(!seeking){
+            positionSeekBar.setProgress(mAudioControlsBinder.getPosition());
+        }
     }
 
     /**
      * The onStop method is called before the activity is stopped and used to unregister the
-     * EventBus.
+     * EventBus and stop observing the position.
      */
     @Override
     protected void onStop() {
         super.onStop();
         // Event bus register for media player service data changes.
         EventBus.getDefault().unregister(this);
+        started = false;
+        updatePositionUpdates();
     }
 
     /**
@@ -611,6 +1427,8 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        mFolderScanner.shutdown();
+        mBackground.shutdownNow();
         unbindService(mServiceConnection);
         if (!isChangingConfigurations())
             stopService(new Intent(this, MediaPlayerService.class));
@@ -0,0 +1,120 @@
+package edu.temple.simpletunes;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.MediaPlayer;
+import android.net.Uri;
+
+import java.io.IOException;
+
+/**
+ * The MediaPlayerEngine class plays tracks with the framework MediaPlayer. Engines of this
+ * type can be linked with setNextMediaPlayer for gapless playback.
+ */
+public class MediaPlayerEngine implements PlaybackEngine {
+    private final MediaPlayer mPlayer = new MediaPlayer();
+
+    @Override
+    public int getType() {
+        return ENGINE_MEDIA_PLAYER;
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        mPlayer.setOnPreparedListener(mp -> listener.onPrepared(this));
+        mPlayer.setOnCompletionListener(mp -> listener.onCompletion(this));
+        mPlayer.setOnErrorListener((mp, what, extra) -> listener.onError(this, what, extra));
+    }
+
+    @Override
+    public void setDataSource(Context context, Uri uri) throws IOException {
+        setAudioAttributes(mPlayer);
+        mPlayer.setDataSource(context, uri);
+    }
+
+    @Override
+    public void prepareAsync() {
+        mPlayer.prepareAsync();
+    }
+
+    @Override
+    public void start() {
+        mPlayer.start();
+    }
+
+    @Override
+    public void pause() {
+        mPlayer.pause();
+    }
+
+    @Override
+    public void stop() {
+        mPlayer.stop();
+    }
+
+    @Override
+    public void reset() {
+        mPlayer.reset();
+    }
+
+    @Override
+    public void release() {
+        mPlayer.release();
+    }
+
+    @Override
+    public boolean isPlaying() {
+        return mPlayer.isPlaying();
+    }
+
+    @Override
+    public void setLooping(boolean looping) {
+        mPlayer.setLooping(looping);
+    }
+
+    @Override
+    public boolean setNext(PlaybackEngine next) {
+        if (next == null) {
+            mPlayer.setNextMediaPlayer(null);
+            return true;
+        }
+        if (!(next instanceof MediaPlayerEngine)) {
+            return false;
+        }
+        mPlayer.setNextMediaPlayer(((MediaPlayerEngine) next).mPlayer);
+        return true;
+    }
+
+    @Override
+    public void setCrossfade(int millis) {
+        // The framework player can't mix two tracks.
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        return mPlayer.getCurrentPosition();
+    }
+
+    @Override
+    public int getDuration() {
+        return mPlayer.getDuration();
+    }
+
+    @Override
+    public void seekTo(int millis) {
+        mPlayer.seekTo(millis);
+    }
+
+    /**
+     * The setAudioAttributes method marks a MediaPlayer as playing music.
+     * @param player The MediaPlayer.
+     */
+    public static void setAudioAttributes(MediaPlayer player) {
+        player.setAudioAttributes(
+                new AudioAttributes.Builder()
+                        .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                        .setUsage(AudioAttributes.USAGE_MEDIA)
+                        .build()
+        );
+    }
+}
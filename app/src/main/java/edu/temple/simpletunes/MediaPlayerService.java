@@ -8,23 +8,34 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Intent;
-import android.media.AudioAttributes;
-import android.media.MediaPlayer;
+import android.content.SharedPreferences;
+import android.hardware.display.DisplayManager;
 import android.net.Uri;
 import android.os.Binder;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
+import android.view.Display;
 import android.widget.Toast;
 
 import androidx.core.app.NotificationCompat;
-import androidx.documentfile.provider.DocumentFile;
 
 import org.greenrobot.eventbus.EventBus;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * MediaPlayerService is a service created to run the MediaPlayer instance in the background
@@ -38,9 +49,63 @@ public class MediaPlayerService extends Service {
      */
     private final ControlsBinder mControlsBinder = new ControlsBinder();
     /**
-     * The MediaPlayer api used to play tracks within the service.
+     * The name of the preferences holding the settings of the service and the keys of the
+     * selected engine and of crossfading.
      */
-    private final MediaPlayer mMediaPlayer = new MediaPlayer();
+    private static final String PREFERENCES = "playback";
+    private static final String PREF_ENGINE = "engine";
+    private static final String PREF_CROSSFADE = "crossfade";
+    /**
+     * The overlap of a track with the next one when crossfading.
+     */
+    private static final int CROSSFADE_MS = 2000;
+    /**
+     * The engine used to play tracks within the service.
+     */
+    private PlaybackEngine mPlayer;
+    /**
+     * The engine new players are created with, one of the PlaybackEngine ENGINE constants.
+     * A player of another type is replaced when it would be reused.
+     */
+    private int mEngineType = PlaybackEngine.ENGINE_MEDIA_PLAYER;
+    /**
+     * The listener of every engine created by the service.
+     */
+    private PlaybackEngine.Listener mEngineListener;
+    /**
+     * The engines kept prepared with the tracks before and after the current one. A skip
+     * promotes one of them to mPlayer, and in gapless mode the one holding the next
+     * track is chained to mPlayer so it starts when the current track completes.
+     */
+    private PlayerPool mPool;
+    /**
+     * The track that plays when the current one completes in gapless mode or null.
+     */
+    private MusicTrack mNextTrack;
+    /**
+     * The track whose player of the pool is set as the next player of mPlayer or null.
+     */
+    private MusicTrack mChainedTrack;
+    /**
+     * The state of mPlayer being prepared.
+     */
+    private boolean mPrepared = false;
+    /**
+     * The state showing if mPlayer starts once it is prepared, false for a track restored
+     * paused. A position to seek to when it is prepared, or 0.
+     */
+    private boolean mStartWhenPrepared = true;
+    private int mResumePosition = 0;
+    /**
+     * The state of gapless playback, where the next track is prepared while the current one
+     * plays so it starts without a pause.
+     */
+    private boolean mGapless = true;
+    /**
+     * The state of crossfading, where the end of a track is mixed with the start of the next
+     * one in gapless playback. Only engines that mix tracks themselves do it.
+     */
+    private boolean mCrossfade = false;
     /**
      * Tag for the service.
      */
@@ -54,17 +119,96 @@ public class MediaPlayerService extends Service {
      */
     private boolean mIsPlayingFolder = false;   // Shows if folder is playing continuously
     /**
-     * The original folder used for the playlist.
+     * The tracks that can be queued, the ID of a track is its position in this list.
+     */
+    private final ArrayList<MusicTrack> mTracks = new ArrayList<>();
+    /**
+     * The file name of each track by ID.
+     */
+    private final ArrayList<String> mNames = new ArrayList<>();
+    /**
+     * The slots in the order they are listed, and played when shuffle is off. A slot is read
+     * through mOrder to get its track ID. Its current entry is the track being played from
+     * the folder.
+     */
+    private final PlayQueue mQueue = new PlayQueue();
+    /**
+     * The shuffled play order of the slots of the queue while shuffle is on, or null. It is
+     * drawn one track at a time, so the queue itself is never reordered.
+     */
+    private ShuffleOrder mShuffle;
+    /**
+     * The permutation of track IDs the slots of the queue are read through, or null if the
+     * slots are the track IDs. Slots past its end are track IDs of tracks added later.
+     */
+    private int[] mOrder;
+    /**
+     * The state showing if the queue holds every slot once in order, so a new sort order can
+     * be used by swapping mOrder.
      */
-    private MusicTrack[] mFolder; // The folder that should be played
+    private boolean mQueueIsFolder = false;
     /**
-     * The shuffled folder for the playlist.
+     * The selected sort order, one of the SortOrders constants.
      */
-    private MusicTrack[] shuffledFolder;
+    private int mSortOrder = SortOrders.ORDER_TRACK;
     /**
-     * The current index of a track being played within a folder.
+     * The sort order to use once the orders of the current tracks are computed or -1.
      */
-    private int mCurrentFolderIndex = 0;   // The index of the next song to be played in folder
+    private int mPendingSortOrder = -1;
+    /**
+     * The orders of the tracks or null until they are computed.
+     */
+    private SortOrders mSortOrders;
+    /**
+     * The number of times the orders were requested, so older results are dropped.
+     */
+    private int mSortGeneration = 0;
+    /**
+     * The background thread computing the sort orders and its current task.
+     */
+    private final ExecutorService mSortExecutor = Executors.newSingleThreadExecutor();
+    private Future<?> mSortTask;
+    /**
+     * The thread that runs every command of the ControlsBinder in order and owns the
+     * MediaPlayers, the queue and the rest of the playback state.
+     */
+    private HandlerThread mPlaybackThread;
+    private Handler mPlaybackHandler;
+    /**
+     * The handler used to show toasts and deliver results on the main thread.
+     */
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    /**
+     * The skips requested from any thread and not yet applied by the playback thread.
+     */
+    private final SkipCoalescer mSkips = new SkipCoalescer();
+    /**
+     * The state showing if the current track is announced to the MainActivity and the
+     * notification once it starts.
+     */
+    private boolean mAnnouncePending = false;
+    /**
+     * The state last published to the MainActivity, read by the getters of the ControlsBinder.
+     */
+    private volatile PlaybackStateEvent mState =
+            new PlaybackStateEvent(false, 0, false, PlayStats.SHUFFLE_UNIFORM, true, false,
+                    PlaybackEngine.ENGINE_MEDIA_PLAYER, SortOrders.ORDER_TRACK, 0, -1);
+    /**
+     * A copy of mNames posted to the MainActivity, so the playback thread can keep adding
+     * names while it is shown. Null once mNames changed.
+     */
+    private ArrayList<String> mNamesSnapshot;
+    /**
+     * The names of the queue in listed order last posted to the MainActivity, and the
+     * modification count of the queue they were listed at. Skips within the same queue post
+     * the same list again instead of listing it for every track.
+     */
+    private ArrayList<String> mQueueNames;
+    private int mQueueNamesModCount = -1;
+    /**
+     * The random numbers used to seed the shuffled orders.
+     */
+    private final Random mRandom = new Random();
     /**
      * The notification manager for the foreground notification.
      */
@@ -73,6 +217,17 @@ public class MediaPlayerService extends Service {
      * The current state of shuffle in a playlist.
      */
     private boolean shuffleOn = false;
+    /**
+     * The way tracks are weighted when shuffling, one of the PlayStats SHUFFLE constants.
+     */
+    private int mShuffleMode = PlayStats.SHUFFLE_UNIFORM;
+    /**
+     * The play counts, last played times and ratings of the tracks keyed by Uri, and the
+     * store they are loaded from and written to. Plays are only counted once they are loaded.
+     */
+    private final HashMap<String, PlayStats> mPlayStats = new HashMap<>();
+    private boolean mPlayStatsLoaded = false;
+    private PlayStatsStore mPlayStatsStore;
     /**
      * The repeat status, 0 = no repeat, 1 = folder repeat, 2 = file repeat
      */
@@ -81,6 +236,67 @@ public class MediaPlayerService extends Service {
      * The current track's Uri that is being played.
      */
     private Uri currentTrack;
+    /**
+     * Resolves the tags of the tracks around the current position in the background.
+     */
+    private final MetadataPrefetcher mPrefetcher = new MetadataPrefetcher();
+    /**
+     * The time a skip was requested, from SystemClock.elapsedRealtimeNanos, or 0 once the
+     * track it selected started. Whether the track came from the pool is kept with it.
+     */
+    private long mSkipStart = 0;
+    private boolean mSkipWarm = false;
+    /**
+     * The time from a skip to the start of its track, with and without a prepared player.
+     */
+    private final LatencyStats mWarmSkipLatency = new LatencyStats("Warm skip", 64);
+    private final LatencyStats mColdSkipLatency = new LatencyStats("Cold skip", 64);
+    /**
+     * The position and duration of the current track, read by the ControlsBinder without
+     * waiting for the playback thread.
+     */
+    private final PlaybackPosition mPosition = new PlaybackPosition();
+    /**
+     * The number of observers showing the position. The ticker only runs while there is one
+     * and the current track is playing.
+     */
+    private final AtomicInteger mPositionObservers = new AtomicInteger();
+    private boolean mTicking = false;
+    /**
+     * The time between two updates of mPosition in milliseconds, one frame of the display.
+     */
+    private long mTickMillis = 16;
+    /**
+     * The ticker updating mPosition every frame while it runs on the playback thread.
+     */
+    private final Runnable mTicker = new Runnable() {
+        @Override
+        public void run() {
+            updatePosition();
+            mPlaybackHandler.postDelayed(this, mTickMillis);
+        }
+    };
+    /**
+     * Saves what is played so it can be restored when the service is created again. Changes
+     * are coalesced into a checkpoint at most every CHECKPOINT_INTERVAL_MS.
+     */
+    private ResumeStore mResumeStore;
+    private static final long CHECKPOINT_INTERVAL_MS = 5000;
+    private final Runnable mCheckpoint = this::checkpoint;
+    private boolean mCheckpointPending = false;
+    private long mLastCheckpoint = 0;
+    /**
+     * The number of changes of mTracks and the number at the last checkpoint, so the tracks
+     * are only saved again when they changed.
+     */
+    private int mTracksModCount = 0;
+    private int mSavedTracksModCount = -1;
+    /**
+     * The slots of the queue at the last checkpoint and the modification count of the queue
+     * they were read at.
+     */
+    private int[] mSavedQueue;
+    private int mSavedQueueModCount = -1;
 
     /**
      * The onCreate method is called when the service is started and is used to control playback
@@ -90,66 +306,120 @@ public class MediaPlayerService extends Service {
     public void onCreate() {
         super.onCreate();
         mNotificationManager = getSystemService(NotificationManager.class);
+        mPlayStatsStore = new PlayStatsStore(this);
+        mResumeStore = new ResumeStore(this);
+        mPlaybackThread = new HandlerThread("Playback", Process.THREAD_PRIORITY_AUDIO);
+        mPlaybackThread.start();
+        mPlaybackHandler = new Handler(mPlaybackThread.getLooper());
 
-        // OnCompletionListener used to play next track in order if mIsPlayingFolder set to true
+        SharedPreferences preferences = getSharedPreferences(PREFERENCES, MODE_PRIVATE);
+        mEngineType = preferences.getInt(PREF_ENGINE, PlaybackEngine.ENGINE_MEDIA_PLAYER);
+        mCrossfade = preferences.getBoolean(PREF_CROSSFADE, false);
+        // The position is not shown more often than the display refreshes.
+        Display display = getSystemService(DisplayManager.class).getDisplay(Display.DEFAULT_DISPLAY);
+        if (display != null && display.getRefreshRate() > 0) {
+            mTickMillis = Math.max(1, Math.round(1000 / display.getRefreshRate()));
+        }
+        // onCompletion used to play next track in order if mIsPlayingFolder set to true
         // Plays until last file is completed then resets variables.
-        mMediaPlayer.setOnCompletionListener(mp -> {
-            if(mIsPlayingFolder && shuffleOn){
-                // shuffle functionality
-                if (mCurrentFolderIndex < mFolder.length - 1) {
-                    // we're not at the end of the shuffled folder yet
-                    mCurrentFolderIndex++;
-                    Log.d(TAG, "onCompleteListener: Playing track at index " + mCurrentFolderIndex + " of shuffled folder");
-                    playSingleTrack(shuffledFolder[mCurrentFolderIndex].getUri());
-                    // Update notification with filename
-                    mNotificationManager.notify(NOTIFICATION_ID, getNotification(shuffledFolder[mCurrentFolderIndex].getName()));
-                }else{
-                    // this is the last track in the shuffled folder, so reset index
-                    mCurrentFolderIndex = 0;
-                    if (repeatStatus == 1) {
-                        // repeat folder is on, so start playing from the beginning again
-                        Log.d(TAG, "onCompleteListener: restarting from beginning of shuffled folder ");
-                        playSingleTrack(shuffledFolder[mCurrentFolderIndex].getUri());
-                    } else {
-                        mIsPlayingFolder = false;
-                    }
+        mEngineListener = new PlaybackEngine.Listener() {
+            @Override
+            public void onCompletion(PlaybackEngine mp) {
+                if(mp != mPlayer){
+                    return;
                 }
-            }else if(mIsPlayingFolder){
-                //folder playing functionality
-                if (mCurrentFolderIndex < mFolder.length - 1) {
-                    // we're not at the end of the folder yet
-                    if(repeatStatus != 2){
-                        // repeat file isn't on, so increment the index
-                        mCurrentFolderIndex++;
-                    }
-                    Log.d(TAG, "onCompleteListener: Playing track at index " + mCurrentFolderIndex + " of folder");
-                    playSingleTrack(mFolder[mCurrentFolderIndex].getUri());
-                    // Update notification with filename
-                    mNotificationManager.notify(NOTIFICATION_ID, getNotification(mFolder[mCurrentFolderIndex].getName()));
-                }else{
-                    // we're at the end of the folder
-                    if(repeatStatus == 2){
-                        // repeat file is on, so play the same track again
-                        playSingleTrack(mFolder[mCurrentFolderIndex].getUri());
+                if(mChainedTrack != null){
+                    // The next player already started where this one ended.
+                    advanceToNext();
+                }else if(mIsPlayingFolder){
+                    // folder playing functionality, the index is in the shuffled order in shuffle mode
+                    int index = playIndex();
+                    if (index < mQueue.size() - 1) {
+                        // we're not at the end of the folder yet
+                        if(repeatStatus != 2){
+                            // repeat file isn't on, so increment the index
+                            index++;
+                        }
+                        Log.d(TAG, "onCompleteListener: Playing track at index " + index + " of folder");
+                        playQueued(positionAt(index));
                     }else{
-                        // we're at the end of the folder, so reset the index
-                        Log.d(TAG, "onCompleteListener: Reached end of tracks in folder");
-                        mCurrentFolderIndex = 0;
-                        if(repeatStatus == 1){
-                            // repeat folder is on, so play from the beginning
-                            Log.d(TAG, "onCompleteListener: restarting from beginning of folder ");
-                            playSingleTrack(mFolder[mCurrentFolderIndex].getUri());
+                        // we're at the end of the folder
+                        if(repeatStatus == 2){
+                            // repeat file is on, so play the same track again
+                            playQueued(positionAt(index));
                         }else{
-                            // we're at the end of the folder, and repeat is off, so we're no longer playing a folder
-                            mIsPlayingFolder = false;
+                            // we're at the end of the folder, so reset the index
+                            Log.d(TAG, "onCompleteListener: Reached end of tracks in folder");
+                            setCurrent(positionAt(0));
+                            if(repeatStatus == 1){
+                                // repeat folder is on, so play from the beginning
+                                Log.d(TAG, "onCompleteListener: restarting from beginning of folder ");
+                                playQueued(positionAt(0));
+                            }else{
+                                // we're at the end of the folder, and repeat is off, so we're no longer playing a folder
+                                mIsPlayingFolder = false;
+                            }
+                        }
+                    }
+                }else if (repeatStatus == 2) {
+                    // we're not playing a folder, but repeat file is on
+                    playSingleTrack(currentTrack);
+                }
+                // if none of the if statements are true, then we're only playing a single file, and repeat is off, so there's nothing to do
+                publishState();
+            }
+
+            @Override
+            public void onPrepared(PlaybackEngine mp) {
+                if(mp == mPlayer){
+                    if(!mPrepared){
+                        mPrepared = true;
+                        if(mResumePosition > 0){
+                            mPlayer.seekTo(mResumePosition);
+                            mResumePosition = 0;
                         }
+                        if(mStartWhenPrepared){
+                            startCurrent();
+                        }
+                        updateWarmPlayers();
+                        publishState();
+                    }
+                }else if(mPool.onPrepared(mp) != null){
+                    chainNextPlayer();
+                }
+            }
+
+            @Override
+            public boolean onError(PlaybackEngine mp, int what, int extra) {
+                if(mp != mPlayer){
+                    // A skip to this track prepares it again, auto-advance falls back to that too.
+                    Log.d(TAG, "onError: Could not prepare a warm player " + what + ", " + extra);
+                    if(mChainedTrack != null && mPool.getPrepared(mChainedTrack) == mp){
+                        unchainNextPlayer();
                     }
+                    return mPool.onError(mp);
                 }
-            }else if (repeatStatus == 2) {
-                // we're not playing a folder, but repeat file is on
-                playSingleTrack(currentTrack);
+                return false;
+            }
+        };
+        // An engine calls its listener on the looper of the thread that created it.
+        mPlaybackHandler.post(() -> {
+            mPlayer = createEngine();
+            mPool = new PlayerPool(getApplicationContext(), PlayerPool.DEFAULT_CAPACITY, this::createEngine);
+        });
+        mSortExecutor.execute(() -> {
+            HashMap<String, PlayStats> stats = mPlayStatsStore.loadAll();
+            mPlaybackHandler.post(() -> {
+                mPlayStats.putAll(stats);
+                mPlayStatsLoaded = true;
+            });
+            // Bring back what was played before the process was killed, without a scan.
+            ResumeStore.State state = mResumeStore.loadState();
+            if (state != null) {
+                MusicTrack[] tracks = state.playingFolder
+                        ? mResumeStore.loadTracks(getApplicationContext(), state) : null;
+                command(() -> restore(state, tracks));
             }
-            // if none of the if statements are true, then we're only playing a single file, and repeat is off, so there's nothing to do
         });
     }
 
@@ -201,37 +471,69 @@ public class MediaPlayerService extends Service {
 
     /**
      * The play method will play the Uri passed in if it contains music content. It also
-     * initialized the MediaPlayer instance, prepares to run asynchronously, and waits until it
-     * is prepared to play the Uri.
+     * resets the player, prepares to run asynchronously, and waits until it is prepared to
+     * play the Uri.
      *
      * @param uri The Uri of the audio file.
      */
     private void playSingleTrack(Uri uri) {
-        mMediaPlayer.reset();   // Reset to change data source.
-
-        mMediaPlayer.setAudioAttributes(
-                new AudioAttributes.Builder()
-                        .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
-                        .setUsage(AudioAttributes.USAGE_MEDIA)
-                        .build()
-        );
+        unchainNextPlayer();
+        mPrepared = false;
+        mStartWhenPrepared = true;
+        mResumePosition = 0;
+        if (mPlayer.getType() != mEngineType) {
+            // Another engine was picked since this player was created.
+            mPlayer.release();
+            mPlayer = createEngine();
+        } else {
+            mPlayer.reset();   // Reset to change data source.
+        }
+
         try {
-            mMediaPlayer.setDataSource(getApplicationContext(), uri);
+            mPlayer.setDataSource(getApplicationContext(), uri);
             currentTrack = uri;
         } catch (IOException e) {
             Log.d(TAG, "play: Could not play with current data source");
             e.printStackTrace();
         }
-        mMediaPlayer.prepareAsync();
-        mMediaPlayer.setOnPreparedListener(MediaPlayer::start);
+        mPlayer.prepareAsync();
+        mAnnouncePending = true;
+    }
+
+    /**
+     * The createEngine method creates a player of the selected engine that reports to the
+     * service. It must be called on the playback thread.
+     *
+     * @return The player.
+     */
+    private PlaybackEngine createEngine() {
+        PlaybackEngine engine = PlaybackEngine.create(getApplicationContext(), mEngineType);
+        engine.setListener(mEngineListener);
+        return engine;
+    }
+
+    /**
+     * The retire method hands a player that is no longer current back to the pool, or
+     * releases it if it belongs to an engine that is no longer selected.
+     *
+     * @param engine The player.
+     */
+    private void retire(PlaybackEngine engine) {
+        if (engine.getType() == mEngineType) {
+            mPool.give(engine);
+        } else {
+            engine.release();
+        }
+    }
 
+    /**
+     * The postTrackChanged method tells the MainActivity about the new current track.
+     */
+    private void postTrackChanged() {
         // Event bus for MainActivity to receive new track data.
         if (mIsPlayingFolder) {
-            if (shuffleOn) {
-                EventBus.getDefault().post(new TrackDataChangedEvent(mCurrentFolderIndex, getFileNames(shuffledFolder)));
-            } else {
-                EventBus.getDefault().post(new TrackDataChangedEvent(mCurrentFolderIndex, getFileNames(mFolder)));
-            }
+            prefetchAroundCurrent();
+            postFolderChanged();
         } else { // Send audio file name through event bus if not playing a folder.
             String path = currentTrack.getPath();
             String name = path.substring(path.lastIndexOf("/") + 1);
@@ -240,258 +542,1337 @@ public class MediaPlayerService extends Service {
     }
 
     /**
-     * The play method will play the Uri passed in if it contains music content. It also resets
-     * the variables for playing a folder to prevent it.
+     * The nextAutoIndex method returns the index in the play order that plays when the
+     * current track completes. Repeating a single file loops the current player instead.
      *
-     * @param uri The Uri of the audio file.
+     * @return The index or -1 if playback stops after the current track.
      */
-    private void play(Uri uri) {
-        mIsPlayingFolder = false;
-        mCurrentFolderIndex = 0;
-        playSingleTrack(uri);
+    private int nextAutoIndex() {
+        if (!mIsPlayingFolder || repeatStatus == 2) {
+            return -1;
+        }
+        int index = playIndex();
+        if (index < mQueue.size() - 1) {
+            return index + 1;
+        }
+        return repeatStatus == 1 ? 0 : -1;
     }
 
     /**
-     * The playFolder method will play the DocumentFile array one by one when each track is
-     * completed using onCompletionListener in onCreate().
+     * The playIndex method returns the index of the current track in the play order, which
+     * is the shuffled order when shuffle is on and the queue otherwise.
      *
-     * @param folder The Uri of the audio file.
+     * @return The index in the play order.
      */
-    private void playFolder(MusicTrack[] folder) {
-        mIsPlayingFolder = true;
-        mFolder = folder;
-        playSingleTrack(folder[0].getUri());
-
-    }
-    /**
-     * The pause method pauses the currently playing audio file and saves the current position
-     * to resume the current audio file.
-     */
-    private void pause() {
-        mMediaPlayer.pause();
+    private int playIndex() {
+        return mShuffle != null ? mShuffle.getPosition() : mQueue.getPosition();
     }
 
     /**
-     * The resume method seeks to the current position of audio file and starts playing
-     * after pause is called.
+     * The positionAt method returns the position in the queue of the entry at an index of
+     * the play order. A shuffled order draws the entries up to the index if needed, slots
+     * that are no longer queued are dropped from it on the way.
+     *
+     * @param index The index in the play order.
+     * @return The position in the queue.
      */
-    private void resume() {
-        mMediaPlayer.start();
+    private int positionAt(int index) {
+        if (mShuffle == null) {
+            return index;
+        }
+        while (true) {
+            int slot = mShuffle.get(index);
+            int position = mQueue.positionOfId(slot);
+            if (position >= 0) {
+                return position;
+            }
+            mShuffle.remove(slot);
+        }
     }
 
     /**
-     * The isPlaying method checks if the current audio file is playing.
+     * The setCurrent method makes the entry at a position of the queue the current one, in
+     * the queue and in the shuffled order.
      *
-     * @return True if playing or false if not.
+     * @param position The position in the queue.
      */
-    private boolean isPlaying() {
-        return mMediaPlayer.isPlaying();
+    private void setCurrent(int position) {
+        mQueue.setPosition(position);
+        if (mShuffle != null) {
+            mShuffle.setPosition(mShuffle.indexOf(mQueue.get(position)));
+        }
     }
 
     /**
-     * The stop method will stop the currently playing audio file.
+     * The updateWarmPlayers method points the pool at the tracks that can play after the
+     * current one: the track auto-advance plays in gapless mode, the next and the previous
+     * entry of the play order. It is called whenever the current track, the queue, shuffle or
+     * repeat change. Players already holding one of those tracks are kept. Nothing is
+     * prepared until the current track is playing.
      */
-    private void stop() {
-        mMediaPlayer.stop();
+    private void updateWarmPlayers() {
+        if (!mPrepared) {
+            return;
+        }
+        // Repeating a single file loops it without preparing it again.
+        mPlayer.setLooping(mGapless && repeatStatus == 2);
+        MusicTrack next = null;
+        MusicTrack skipNext = null;
+        MusicTrack skipPrev = null;
+        if (mIsPlayingFolder) {
+            int index = playIndex();
+            int auto = nextAutoIndex();
+            next = mGapless && auto >= 0 ? trackAt(positionAt(auto)) : null;
+            skipNext = index < mQueue.size() - 1 ? trackAt(positionAt(index + 1)) : null;
+            skipPrev = index > 0 ? trackAt(positionAt(index - 1)) : null;
+        }
+        if (mChainedTrack != null && mChainedTrack != next) {
+            unchainNextPlayer();
+        }
+        mNextTrack = next;
+        mPool.retarget(next, skipNext, skipPrev);
+        chainNextPlayer();
     }
 
     /**
-     * The playNext method checks if a track is being played from a folder. It then plays the
-     * next song if any other are found in the folder.
+     * The chainNextPlayer method sets the player of the pool prepared with mNextTrack to start
+     * when mPlayer completes, once both are prepared. Engines that can't be linked leave
+     * mChainedTrack null, the completion listener then promotes the prepared player.
      */
-    private void playNext() {
-        if(mIsPlayingFolder) {
-            if(mCurrentFolderIndex < mFolder.length - 1) {
-                mCurrentFolderIndex++;
-                Log.d(TAG, "playNext: Next track playing at index " + mCurrentFolderIndex);
-                if (shuffleOn) {
-                    // Update notification
-                    mNotificationManager.notify(NOTIFICATION_ID, getNotification(shuffledFolder[mCurrentFolderIndex].getName()));
-                    playSingleTrack(shuffledFolder[mCurrentFolderIndex].getUri());
-                } else {
-                    // Update notification
-                    mNotificationManager.notify(NOTIFICATION_ID, getNotification(mFolder[mCurrentFolderIndex].getName()));
-                    playSingleTrack(mFolder[mCurrentFolderIndex].getUri());
-                }
-            } else {
-                Toast.makeText(getApplicationContext(), "End of folder reached", Toast.LENGTH_LONG).show();
+    private void chainNextPlayer() {
+        if (!mPrepared || mNextTrack == null || mChainedTrack == mNextTrack) {
+            return;
+        }
+        PlaybackEngine next = mPool.getPrepared(mNextTrack);
+        if (next == null) {
+            return;
+        }
+        try {
+            mPlayer.setCrossfade(mCrossfade ? CROSSFADE_MS : 0);
+            if (mPlayer.setNext(next)) {
+                mChainedTrack = mNextTrack;
             }
-        } else {
-            Toast.makeText(getApplicationContext(), "Not playing a folder", Toast.LENGTH_LONG).show();
+        } catch (IllegalStateException e) {
+            Log.d(TAG, "chainNextPlayer: Current player can't be chained");
         }
     }
 
     /**
-     * The playPrev method checks if a track is being played from a folder. It then plays the
-     * previous song if any other are found in the folder.
+     * The unchainNextPlayer method unlinks the next player from mPlayer.
      */
-    private void playPrev() {
-        if(mIsPlayingFolder) {
-            if(mCurrentFolderIndex > 0) {
-                mCurrentFolderIndex--;
-                if (shuffleOn) {
-                    playSingleTrack(shuffledFolder[mCurrentFolderIndex].getUri());
-                    // Update notification
-                    mNotificationManager.notify(NOTIFICATION_ID, getNotification(shuffledFolder[mCurrentFolderIndex].getName()));
-                } else {
-                    playSingleTrack(mFolder[mCurrentFolderIndex].getUri());
-                    // Update notification
-                    mNotificationManager.notify(NOTIFICATION_ID, getNotification(mFolder[mCurrentFolderIndex].getName()));
-                }
-                Log.d(TAG, "playPrev: Prev track playing at index " + mCurrentFolderIndex);
-
-            } else {
-                Toast.makeText(getApplicationContext(), "Start of folder reached", Toast.LENGTH_LONG).show();
-            }
-        } else {
-            Toast.makeText(getApplicationContext(), "Not playing a folder", Toast.LENGTH_LONG).show();
+    private void unchainNextPlayer() {
+        if (mChainedTrack == null) {
+            return;
+        }
+        mChainedTrack = null;
+        try {
+            mPlayer.setNext(null);
+        } catch (IllegalStateException e) {
+            // The current player was stopped, its link ends with it.
         }
     }
 
     /**
-     * The repeat method will set the MediaPlayerService into a mode where each track or folder
-     * is repeated upon completion.
-     *
-     * @return The current repeat status can be 0 = no repeat, 1 = folder repeat, 2 = file repeat.
+     * The advanceToNext method is called when the current track completed and the chained
+     * player started in its place. The chained player becomes mPlayer and the queue
+     * moves to the next track.
      */
-    private int repeat() {
-        switch (repeatStatus) {
-            case 0:
-                if(mIsPlayingFolder){
-                    repeatStatus = 1;
-                }else if(shuffleOn){
-                    Toast.makeText(this, "Can't repeat single file in shuffle mode", Toast.LENGTH_SHORT).show();
-                }else{
-                    repeatStatus = 2;
-                }
-                break;
-            case 1:
-                if(shuffleOn){
-                    Toast.makeText(this, "Can't repeat single file in shuffle mode", Toast.LENGTH_SHORT).show();
-                    repeatStatus = 0;
-                }else{
-                    repeatStatus = 2;
-                }
-                break;
-            case 2:
-                repeatStatus = 0;
-                break;
-            default:
-                Log.e(TAG, "repeat: illegal repeat status: " + repeatStatus);
-                break;
-        }
-        return repeatStatus;
+    private void advanceToNext() {
+        int position = positionAt(nextAutoIndex());
+        MusicTrack track = mChainedTrack;
+        mChainedTrack = null;
+        PlaybackEngine finished = mPlayer;
+        mPlayer = mPool.take(track);
+        retire(finished);
+        setCurrent(position);
+        currentTrack = track.getUri();
+        Log.d(TAG, "advanceToNext: Playing track at index " + position + " of folder without a gap");
+        announceCurrent();
+        updateWarmPlayers();
     }
 
     /**
-     * The shuffle method will re-order the folder that is being played into a random order.
+     * The promoteWarmPlayer method makes the player of the pool holding a track the current
+     * one. A prepared player starts right away, one that is still preparing starts when it
+     * is prepared. The pool is pointed at the new neighbours after the track started, unless
+     * another skip is already waiting.
      *
-     * @return The state of shuffle being on or off.
+     * @param track The track to play.
+     * @return True if the pool held the track, false if it has to be prepared.
      */
-    private boolean shuffle() {
-        if (shuffleOn) {
-            shuffleOn = false;
-            // Event bus for reordering playlist.
-            EventBus.getDefault().post(new TrackDataChangedEvent(mCurrentFolderIndex, getFileNames(mFolder)));
-            return false;
-        }else if(repeatStatus == 2){
-            Toast.makeText(this, "Can't turn on shuffle when repeating a single file", Toast.LENGTH_SHORT).show();
-            return false;
-        }else if(mIsPlayingFolder){
-            shuffleOn = true;
-            shuffledFolder = Arrays.copyOf(mFolder, mFolder.length);
-            Collections.shuffle(Arrays.asList(shuffledFolder));
-            // Event bus for reordering playlist.
-            EventBus.getDefault().post(new TrackDataChangedEvent(mCurrentFolderIndex, getFileNames(shuffledFolder)));
-            return true;
-        }else{
-            Toast.makeText(this, "Can't shuffle when not playing a folder", Toast.LENGTH_SHORT).show();
+    private boolean promoteWarmPlayer(MusicTrack track) {
+        boolean prepared = mPool.getPrepared(track) != null;
+        PlaybackEngine warm = mPool.take(track);
+        if (warm == null) {
             return false;
         }
+        unchainNextPlayer();
+        PlaybackEngine previous = mPlayer;
+        mPlayer = warm;
+        retire(previous);
+        currentTrack = track.getUri();
+        mPrepared = prepared;
+        mStartWhenPrepared = true;
+        mResumePosition = 0;
+        mSkipWarm = true;
+        mAnnouncePending = true;
+        if (prepared) {
+            startCurrent();
+            // Let the skip finish before the pool loads the new neighbours.
+            mPlaybackHandler.post(() -> {
+                if (!mSkips.isPending()) {
+                    updateWarmPlayers();
+                }
+            });
+        }
+        return true;
     }
 
     /**
-     * The getFileNames method used to return a string array of the filenames.
-     * @param folder The DocumentFile array
-     * @return The String ArrayList of filenames.
+     * The startCurrent method starts mPlayer, announces its track and records the
+     * latency of the skip that selected it.
      */
-    private ArrayList<String> getFileNames(MusicTrack[] folder) {
-        ArrayList<String> adapterData = new ArrayList<>();
-        for (MusicTrack track : folder) {
-            adapterData.add(track.getName());
+    private void startCurrent() {
+        mPlayer.start();
+        if (mAnnouncePending) {
+            announceCurrent();
+        }
+        if (mSkipStart != 0) {
+            LatencyStats stats = mSkipWarm ? mWarmSkipLatency : mColdSkipLatency;
+            stats.record(SystemClock.elapsedRealtimeNanos() - mSkipStart);
+            mSkipStart = 0;
+            Log.d(TAG, "startCurrent: " + stats);
         }
-        return adapterData;
     }
 
     /**
-     * The play method plays a track at a specific position if a Uri has been loaded into
-     * the MediaPlayerService first.
-     *
-     * @param position The position or the single track to play if not a folder.
+     * The announceCurrent method tells the MainActivity and the notification about the
+     * current track. Tracks are announced when they start, so a track that was skipped
+     * while it was still preparing is never shown.
      */
-    private void play(int position) {
+    private void announceCurrent() {
+        mAnnouncePending = false;
+        recordPlay();
+        postTrackChanged();
         if (mIsPlayingFolder) {
-            mCurrentFolderIndex = position;
-            if (shuffleOn) {
-                playSingleTrack(shuffledFolder[mCurrentFolderIndex].getUri());
-            } else {
-                playSingleTrack(mFolder[mCurrentFolderIndex].getUri());
-            }
-
-            // Update notification
-            mNotificationManager.notify(NOTIFICATION_ID, getNotification(mFolder[mCurrentFolderIndex].getName()));
-        } else {
-            if (currentTrack == null) {
-                Toast.makeText(getApplicationContext(), "Select a track or folder to play", Toast.LENGTH_LONG).show();
-            } else {
-                play(currentTrack);
-            }
+            // Update notification with filename
+            mNotificationManager.notify(NOTIFICATION_ID, getNotification(trackAt(mQueue.getPosition()).getName()));
         }
     }
 
     /**
-     * Class to control media player instance through a Binder.
+     * The recordPlay method counts a play of the current track and writes it in the
+     * background.
      */
-    public class ControlsBinder extends Binder {
-        /**
-         * {@link MediaPlayerService#play(Uri)}
-         */
-        public void play(Uri uri) {
-            MediaPlayerService.this.play(uri);
+    private void recordPlay() {
+        if (!mPlayStatsLoaded || currentTrack == null) {
+            return;
         }
+        String key = currentTrack.toString();
+        updatePlayStats(key, getPlayStats(key).played(System.currentTimeMillis()));
+    }
 
-        /**
-         * {@link MediaPlayerService#isPlaying()}
-         */
-        public boolean isPlaying() {
-            return MediaPlayerService.this.isPlaying();
+    /**
+     * The rateCurrent method rates the current track, which changes its weight in the
+     * favorites shuffle.
+     *
+     * @param rating The rating from 1 to PlayStats.MAX_RATING or 0 to clear it.
+     */
+    private void rateCurrent(int rating) {
+        if (!mPlayStatsLoaded || currentTrack == null) {
+            showToast("Select a track or folder to play", Toast.LENGTH_LONG);
+            return;
         }
+        String key = currentTrack.toString();
+        updatePlayStats(key, getPlayStats(key).rated(rating));
+    }
 
-        /**
-         * {@link MediaPlayerService#stop()}
-         */
-        public void stop() {
-            MediaPlayerService.this.stop();
-        }
+    /**
+     * The getPlayStats method returns the stats of a track.
+     *
+     * @param key The Uri string of the track.
+     * @return The stats, PlayStats.NONE if it was never played or rated.
+     */
+    private PlayStats getPlayStats(String key) {
+        PlayStats stats = mPlayStats.get(key);
+        return stats == null ? PlayStats.NONE : stats;
+    }
 
-        /**
-         * {@link MediaPlayerService#pause()}
-         */
-        public void pause() {
-            MediaPlayerService.this.pause();
+    /**
+     * The updatePlayStats method keeps new stats of the current track, writes them in the
+     * background and updates its weight if a weighted shuffle has not drawn it yet.
+     *
+     * @param key The Uri string of the track.
+     * @param stats The new stats.
+     */
+    private void updatePlayStats(String key, PlayStats stats) {
+        mPlayStats.put(key, stats);
+        mPlayStatsStore.put(key, stats);
+        mSortExecutor.execute(mPlayStatsStore::flush);
+        if (mShuffle != null && mIsPlayingFolder) {
+            mShuffle.updateWeight(mQueue.getCurrentId());
+        }
+    }
+
+    /**
+     * The shuffleWeight method returns the weight of a slot in the shuffle mode.
+     *
+     * @param slot The slot.
+     * @return The weight from the stats of its track.
+     */
+    private long shuffleWeight(int slot) {
+        String key = mTracks.get(trackId(slot)).getUriString();
+        return getPlayStats(key).weight(mShuffleMode, System.currentTimeMillis());
+    }
+
+    /**
+     * The setShuffleMode method changes how tracks are weighted when shuffling. A shuffle
+     * that is on starts again from the current track with the new weights.
+     *
+     * @param mode One of the PlayStats SHUFFLE constants.
+     */
+    private void setShuffleMode(int mode) {
+        if (mode < 0 || mode >= PlayStats.SHUFFLE_MODE_COUNT || mode == mShuffleMode) {
+            return;
+        }
+        mShuffleMode = mode;
+        if (mShuffle != null) {
+            startShuffle(mRandom.nextLong());
+            updateWarmPlayers();
+        }
+    }
+
+    /**
+     * The getSkipLatency method summarizes the time from a skip to the start of its track.
+     *
+     * @return The latency of skips to prepared and to cold tracks.
+     */
+    private String getSkipLatency() {
+        String engine;
+        switch (mEngineType) {
+            case PlaybackEngine.ENGINE_EXOPLAYER:
+                engine = "ExoPlayer";
+                break;
+            case PlaybackEngine.ENGINE_CODEC:
+                engine = "MediaCodec";
+                break;
+            default:
+                engine = "MediaPlayer";
+                break;
+        }
+        return engine + "\n" + mWarmSkipLatency + "\n" + mColdSkipLatency;
+    }
+
+    /**
+     * The setGapless method turns gapless playback on or off.
+     *
+     * @param gapless True to prepare the next track while the current one plays.
+     */
+    private void setGapless(boolean gapless) {
+        mGapless = gapless;
+        updateWarmPlayers();
+    }
+
+    /**
+     * The setCrossfade method turns crossfading on or off and saves it. It applies from the
+     * next track that is linked to the current one.
+     *
+     * @param crossfade True to mix the end of a track with the start of the next one.
+     */
+    private void setCrossfade(boolean crossfade) {
+        mCrossfade = crossfade;
+        getSharedPreferences(PREFERENCES, MODE_PRIVATE).edit().putBoolean(PREF_CROSSFADE, crossfade).apply();
+        mPlayer.setCrossfade(crossfade ? CROSSFADE_MS : 0);
+    }
+
+    /**
+     * The setEngine method selects the engine new players are created with and saves it. The
+     * warm players are replaced right away, the current track keeps playing on its engine
+     * until the next track is prepared.
+     *
+     * @param type One of the PlaybackEngine ENGINE constants.
+     */
+    private void setEngine(int type) {
+        if (type == mEngineType) {
+            return;
+        }
+        mEngineType = type;
+        getSharedPreferences(PREFERENCES, MODE_PRIVATE).edit().putInt(PREF_ENGINE, type).apply();
+        unchainNextPlayer();
+        mPool.release();
+        updateWarmPlayers();
+    }
+
+    /**
+     * The seekTo method moves to a position in the current track, if it is prepared.
+     *
+     * @param millis The position in milliseconds, kept within the track.
+     */
+    private void seekTo(int millis) {
+        if (!mPrepared) {
+            return;
+        }
+        int duration = mPlayer.getDuration();
+        int position = Math.max(0, duration >= 0 ? Math.min(millis, duration) : millis);
+        mPlayer.seekTo(position);
+        // The engine may still be seeking, show the target right away.
+        mPosition.update(position, duration, isPlaying(), SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * The updatePosition method publishes the position and duration of the current track.
+     */
+    private void updatePosition() {
+        long now = SystemClock.elapsedRealtime();
+        if (mPrepared) {
+            mPosition.update(mPlayer.getCurrentPosition(), mPlayer.getDuration(), isPlaying(), now);
+        } else {
+            mPosition.update(0, -1, false, now);
+        }
+    }
+
+    /**
+     * The updateTicker method starts the ticker when the current track plays and someone
+     * observes the position, and stops it otherwise. The position is published once more
+     * either way, so a paused or new track is shown where it is.
+     */
+    private void updateTicker() {
+        if (mPlayer == null) {
+            return;
+        }
+        boolean tick = mPositionObservers.get() > 0 && mPrepared && isPlaying();
+        if (tick != mTicking) {
+            mTicking = tick;
+            mPlaybackHandler.removeCallbacks(mTicker);
+            if (tick) {
+                mPlaybackHandler.postDelayed(mTicker, mTickMillis);
+            }
+        }
+        updatePosition();
+    }
+
+    /**
+     * The play method will play the Uri passed in if it contains music content. It also resets
+     * the variables for playing a folder to prevent it.
+     *
+     * @param uri The Uri of the audio file.
+     */
+    private void play(Uri uri) {
+        mIsPlayingFolder = false;
+        playSingleTrack(uri);
+    }
+
+    /**
+     * The playQueued method plays the entry of the queue at a position and makes it the
+     * current one.
+     *
+     * @param position The position in the queue.
+     */
+    private void playQueued(int position) {
+        setCurrent(position);
+        MusicTrack track = trackAt(position);
+        if (!promoteWarmPlayer(track)) {
+            playSingleTrack(track.getUri());
+        }
+    }
+
+    /**
+     * The trackAt method returns the track of the entry of the queue at a position.
+     *
+     * @param position The position in the queue.
+     * @return The track.
+     */
+    private MusicTrack trackAt(int position) {
+        return mTracks.get(trackId(mQueue.get(position)));
+    }
+
+    /**
+     * The trackId method reads a slot of the queue through the current sort order.
+     *
+     * @param slot The slot stored in the queue.
+     * @return The track ID.
+     */
+    private int trackId(int slot) {
+        return mOrder != null && slot < mOrder.length ? mOrder[slot] : slot;
+    }
+
+    /**
+     * The addTrack method adds a track to the tracks that can be queued.
+     *
+     * @param track The track.
+     * @return The ID of the track, which is also its slot.
+     */
+    private int addTrack(MusicTrack track) {
+        mNamesSnapshot = null;
+        mTracksModCount++;
+        mTracks.add(track);
+        mNames.add(track.getName());
+        return mTracks.size() - 1;
+    }
+
+    /**
+     * The playFolder method will play the DocumentFile array one by one when each track is
+     * completed using onCompletionListener in onCreate().
+     *
+     * @param folder The Uri of the audio file.
+     */
+    private void playFolder(MusicTrack[] folder) {
+        playFolder(folder, 0);
+    }
+
+    /**
+     * The playFolder method will play the folder starting from a specific track.
+     *
+     * @param folder The tracks of the folder in playlist order.
+     * @param position The position of the first track to play.
+     */
+    private void playFolder(MusicTrack[] folder, int position) {
+        mIsPlayingFolder = true;
+        shuffleOn = false;
+        mShuffle = null;
+        mOrder = null;
+        mTracks.clear();
+        mNames.clear();
+        mNamesSnapshot = null;
+        mTracksModCount++;
+        mTracks.ensureCapacity(folder.length);
+        mNames.ensureCapacity(folder.length);
+        for (MusicTrack track : folder) {
+            addTrack(track);
+        }
+        mQueue.setAll(identity(folder.length));
+        mQueueIsFolder = true;
+        mQueue.setPosition(position);
+        // The folder comes in track order, other orders are used once they are computed.
+        if (mSortOrder != SortOrders.ORDER_TRACK) {
+            mPendingSortOrder = mSortOrder;
+        }
+        computeSortOrders();
+        playSingleTrack(folder[position].getUri());
+        // The new playlist is shown right away, the track once it starts.
+        postFolderChanged();
+    }
+    /**
+     * The pause method pauses the currently playing audio file and saves the current position
+     * to resume the current audio file. A track that is still preparing does not start.
+     */
+    private void pause() {
+        if (!mPrepared) {
+            mStartWhenPrepared = false;
+            return;
+        }
+        mPlayer.pause();
+    }
+
+    /**
+     * The resume method seeks to the current position of audio file and starts playing
+     * after pause is called. A track that is still preparing, such as one restored paused,
+     * starts once it is prepared.
+     */
+    private void resume() {
+        if (!mPrepared) {
+            mStartWhenPrepared = true;
+            return;
+        }
+        startCurrent();
+    }
+
+    /**
+     * The isPlaying method checks if the current audio file is playing.
+     *
+     * @return True if playing or false if not.
+     */
+    private boolean isPlaying() {
+        return mPlayer.isPlaying();
+    }
+
+    /**
+     * The stop method will stop the currently playing audio file.
+     */
+    private void stop() {
+        unchainNextPlayer();
+        mPrepared = false;
+        mPlayer.stop();
+    }
+
+    /**
+     * The playNext method requests the next track of the folder. It can be called from any
+     * thread, the skip is applied by {@link #applySkips()}.
+     */
+    private void playNext() {
+        if (mSkips.skipBy(1, SystemClock.elapsedRealtimeNanos())) {
+            command(this::applySkips);
+        }
+    }
+
+    /**
+     * The playPrev method requests the previous track of the folder. It can be called from
+     * any thread, the skip is applied by {@link #applySkips()}.
+     */
+    private void playPrev() {
+        if (mSkips.skipBy(-1, SystemClock.elapsedRealtimeNanos())) {
+            command(this::applySkips);
+        }
+    }
+
+    /**
+     * The skipTo method requests a position of the folder, or the single track if no folder
+     * is playing. It can be called from any thread, the skip is applied by
+     * {@link #applySkips()}.
+     *
+     * @param position The position in the queue.
+     */
+    private void skipTo(int position) {
+        if (mSkips.skipTo(position, SystemClock.elapsedRealtimeNanos())) {
+            command(this::applySkips);
+        }
+    }
+
+    /**
+     * The applySkips method plays the track the skips requested since it last ran lead to.
+     * Only the first skip of a burst enqueues it, the skips requested until it runs are
+     * added up by mSkips, so a burst of presses prepares a single track, the one the user
+     * ended on. A track that is still preparing when a newer skip is applied is abandoned:
+     * resetting mPlayer or giving a promoted player back to the pool cancels its
+     * prepareAsync, and it is never announced. Next and previous move through the shuffled
+     * order while shuffle is on.
+     */
+    private void applySkips() {
+        if (!mIsPlayingFolder) {
+            SkipCoalescer.Skip skip = mSkips.take(0, 1);
+            if (skip == null) {
+                return;
+            }
+            if (skip.absolute) {
+                play(skip.target);
+            } else {
+                showToast("Not playing a folder", Toast.LENGTH_LONG);
+            }
+            return;
+        }
+        int index = playIndex();
+        SkipCoalescer.Skip skip = mShuffle == null ? mSkips.take(index, mQueue.size())
+                : mSkips.take(index, mQueue.size(), position -> mShuffle.indexOf(mQueue.get(position)));
+        if (skip == null) {
+            return;
+        }
+        if (skip.overshoot > 0) {
+            showToast("End of folder reached", Toast.LENGTH_LONG);
+        } else if (skip.overshoot < 0) {
+            showToast("Start of folder reached", Toast.LENGTH_LONG);
+        }
+        if (skip.target == index && !skip.absolute) {
+            return;
+        }
+        Log.d(TAG, "applySkips: Playing track at index " + skip.target);
+        mSkipStart = skip.time;
+        mSkipWarm = false;
+        playQueued(positionAt(skip.target));
+    }
+
+    /**
+     * The repeat method will set the MediaPlayerService into a mode where each track or folder
+     * is repeated upon completion.
+     *
+     * @return The current repeat status can be 0 = no repeat, 1 = folder repeat, 2 = file repeat.
+     */
+    private int repeat() {
+        switch (repeatStatus) {
+            case 0:
+                if(mIsPlayingFolder){
+                    repeatStatus = 1;
+                }else if(shuffleOn){
+                    showToast("Can't repeat single file in shuffle mode", Toast.LENGTH_SHORT);
+                }else{
+                    repeatStatus = 2;
+                }
+                break;
+            case 1:
+                if(shuffleOn){
+                    showToast("Can't repeat single file in shuffle mode", Toast.LENGTH_SHORT);
+                    repeatStatus = 0;
+                }else{
+                    repeatStatus = 2;
+                }
+                break;
+            case 2:
+                repeatStatus = 0;
+                break;
+            default:
+                Log.e(TAG, "repeat: illegal repeat status: " + repeatStatus);
+                break;
+        }
+        updateWarmPlayers();
+        return repeatStatus;
+    }
+
+    /**
+     * The shuffle method turns a random play order of the folder on or off. The order starts
+     * with the current track and the next track is drawn when it is needed, so turning it on
+     * or off takes O(1) whatever the size of the folder. The folder keeps its listed order.
+     *
+     * @return The state of shuffle being on or off.
+     */
+    private boolean shuffle() {
+        if (shuffleOn) {
+            shuffleOn = false;
+            mShuffle = null;
+            // An order that was computed while shuffled is used now.
+            if (mPendingSortOrder >= 0 && mSortOrders != null && mSortOrders.size() == mTracks.size()) {
+                int order = mPendingSortOrder;
+                mPendingSortOrder = -1;
+                applySortOrder(order);
+                return false;
+            }
+            updateWarmPlayers();
+            postFolderChanged();
+            return false;
+        }else if(repeatStatus == 2){
+            showToast("Can't turn on shuffle when repeating a single file", Toast.LENGTH_SHORT);
+            return false;
+        }else if(mIsPlayingFolder){
+            shuffleOn = true;
+            startShuffle(mRandom.nextLong());
+            updateWarmPlayers();
+            postFolderChanged();
+            return true;
+        }else{
+            showToast("Can't shuffle when not playing a folder", Toast.LENGTH_SHORT);
+            return false;
+        }
+    }
+
+    /**
+     * The startShuffle method starts a shuffled order of the queue from the current track.
+     * Slots that are not queued anymore are dropped when they are drawn. A weighted shuffle
+     * mode reads the stats of every track once, uniform shuffling takes O(1).
+     *
+     * @param seed The seed of the order, the same seed and queue give the same order.
+     */
+    private void startShuffle(long seed) {
+        mShuffle = new ShuffleOrder(mTracks.size(), mQueue.getCurrentId(), seed,
+                mShuffleMode == PlayStats.SHUFFLE_UNIFORM ? null : this::shuffleWeight);
+    }
+
+    /**
+     * The prefetchAroundCurrent method resolves the tags of the tracks near the current
+     * position of the queue in the background.
+     */
+    private void prefetchAroundCurrent() {
+        int position = mQueue.getPosition();
+        int from = Math.max(0, position - MetadataPrefetcher.BEHIND);
+        int to = Math.min(mQueue.size(), position + MetadataPrefetcher.AHEAD + 1);
+        MusicTrack[] window = new MusicTrack[to - from];
+        for (int i = from; i < to; i++) {
+            window[i - from] = trackAt(i);
+        }
+        mPrefetcher.prefetch(window, position - from);
+    }
+
+    /**
+     * The postFolderChanged method posts the playlist and current position of the folder
+     * being played to the MainActivity.
+     */
+    private void postFolderChanged() {
+        int position = mQueue.getPosition();
+        if (mQueueIsFolder) {
+            // The names are read through the sort order instead of being listed again.
+            if (mNamesSnapshot == null) {
+                mNamesSnapshot = new ArrayList<>(mNames);
+            }
+            EventBus.getDefault().post(new TrackDataChangedEvent(position, mNamesSnapshot, mOrder, trackAt(position)));
+        } else {
+            if (mQueueNames == null || mQueueNamesModCount != mQueue.getModCount()) {
+                mQueueNames = getFileNames();
+                mQueueNamesModCount = mQueue.getModCount();
+            }
+            EventBus.getDefault().post(new TrackDataChangedEvent(position, mQueueNames, trackAt(position)));
+        }
+    }
+
+    /**
+     * The setSortOrder method changes the order the folder is played and listed in. The
+     * current track keeps playing at its position in the new order. Switching swaps a
+     * permutation computed in the background, an edited queue is first reset to the folder.
+     * @param order One of the SortOrders constants.
+     * @return True if the order is used now or as soon as it is computed.
+     */
+    private boolean setSortOrder(int order) {
+        if (order < 0 || order >= SortOrders.ORDER_COUNT) {
+            return false;
+        }
+        if (!mIsPlayingFolder) {
+            mSortOrder = order;
+            return true;
+        }
+        if (shuffleOn) {
+            showToast("Can't sort while shuffle is on", Toast.LENGTH_SHORT);
+            return false;
+        }
+        if (mSortOrders == null || mSortOrders.size() != mTracks.size()) {
+            mPendingSortOrder = order;
+            return true;
+        }
+        applySortOrder(order);
+        return true;
+    }
+
+    /**
+     * The applySortOrder method reads the folder through the permutation of a sort order.
+     * @param order One of the SortOrders constants.
+     */
+    private void applySortOrder(int order) {
+        int current = trackId(mQueue.getCurrentId());
+        mSortOrder = order;
+        mOrder = mSortOrders.getPermutation(order);
+        mQueueNames = null;
+        if (!mQueueIsFolder) {
+            mQueue.setAll(identity(mTracks.size()));
+            mQueueIsFolder = true;
+        }
+        mQueue.setPosition(Math.max(0, mSortOrders.getRank(order, current)));
+        updateWarmPlayers();
+        postFolderChanged();
+    }
+
+    /**
+     * The computeSortOrders method computes the sort orders of the current tracks in the
+     * background, dropping any computation that is still running.
+     */
+    private void computeSortOrders() {
+        int generation = ++mSortGeneration;
+        MusicTrack[] tracks = mTracks.toArray(new MusicTrack[0]);
+        if (mSortTask != null) {
+            mSortTask.cancel(true);
+        }
+        mSortTask = mSortExecutor.submit(() -> {
+            SortOrders orders = SortOrders.compute(tracks);
+            if (orders != null) {
+                mPlaybackHandler.post(() -> {
+                    onSortOrdersComputed(generation, orders);
+                    publishState();
+                });
+            }
+        });
+    }
+
+    /**
+     * The onSortOrdersComputed method keeps the latest sort orders and applies a sort order
+     * that was selected while they were computed. Orders computed again after the tags were
+     * read re-apply the current order, so a folder listed by file name is sorted by its tags.
+     * @param generation The request the orders were computed for.
+     * @param orders The orders.
+     */
+    private void onSortOrdersComputed(int generation, SortOrders orders) {
+        if (generation != mSortGeneration || !mIsPlayingFolder) {
+            return;
+        }
+        mSortOrders = orders;
+        if (mPendingSortOrder < 0 && mQueueIsFolder && orders.size() == mTracks.size()
+                && !isOrderedBy(mSortOrder)) {
+            mPendingSortOrder = mSortOrder;
+        }
+        if (mPendingSortOrder >= 0 && !shuffleOn) {
+            int order = mPendingSortOrder;
+            mPendingSortOrder = -1;
+            applySortOrder(order);
+        }
+    }
+
+    /**
+     * The isOrderedBy method checks if the folder is read through a permutation of the
+     * current sort orders.
+     * @param order One of the SortOrders constants.
+     * @return True if the slots of the folder are read in that order.
+     */
+    private boolean isOrderedBy(int order) {
+        int[] permutation = mSortOrders.getPermutation(order);
+        if (mOrder != null) {
+            return Arrays.equals(mOrder, permutation);
+        }
+        for (int i = 0; i < permutation.length; i++) {
+            if (permutation[i] != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The identity method lists the slots of a folder in order.
+     * @param count The number of slots.
+     * @return The slots 0 to count - 1.
+     */
+    private static int[] identity(int count) {
+        int[] slots = new int[count];
+        for (int i = 0; i < count; i++) {
+            slots[i] = i;
+        }
+        return slots;
+    }
+
+    /**
+     * The addToFolder method adds tracks to the folder being played while it is still being
+     * scanned. The tracks are added at the end of the queue, so a queue that is the whole
+     * folder stays the folder and only the new names are sent to the MainActivity. They are
+     * moved to their place by the sort orders computed once the scan is complete, since the
+     * tags of lazy tracks read meanwhile change their sort keys. They join the tracks not
+     * played yet when shuffle is on, the current track keeps playing.
+     * @param tracks The tracks to add.
+     */
+    private void addToFolder(MusicTrack[] tracks) {
+        if (!mIsPlayingFolder || tracks.length == 0) {
+            return;
+        }
+        ArrayList<String> names = new ArrayList<>(tracks.length);
+        for (MusicTrack track : tracks) {
+            int id = addTrack(track);
+            // Slots past the end of the sort order are read as themselves.
+            mQueue.add(id);
+            if (mShuffle != null) {
+                mShuffle.add(id);
+            }
+            names.add(mNames.get(id));
+        }
+        updateWarmPlayers();
+        int position = mQueue.getPosition();
+        EventBus.getDefault().post(new TrackDataChangedEvent(position, null, trackAt(position), names));
+    }
+
+    /**
+     * The insertIntoQueue method adds tracks to the queue before the entry at a position. If
+     * no folder is playing the tracks start playing as a new queue. Tracks added while shuffle
+     * is on join the tracks not played yet.
+     * @param position The position of the first added track, the size of the queue to add
+     *                 them at the end.
+     * @param tracks The tracks to add in order.
+     */
+    private void insertIntoQueue(int position, MusicTrack[] tracks) {
+        if (tracks.length == 0) {
+            return;
+        }
+        if (!mIsPlayingFolder) {
+            playFolder(tracks, 0);
+            return;
+        }
+        for (int i = 0; i < tracks.length; i++) {
+            int id = addTrack(tracks[i]);
+            mQueue.insert(position + i, id);
+            if (mShuffle != null) {
+                mShuffle.add(id);
+            }
+        }
+        mQueueIsFolder = false;
+        computeSortOrders();
+        updateWarmPlayers();
+        postFolderChanged();
+    }
+
+    /**
+     * The enqueue method adds tracks to the end of the queue.
+     * @param tracks The tracks to add in order.
+     */
+    private void enqueue(MusicTrack[] tracks) {
+        insertIntoQueue(mIsPlayingFolder ? mQueue.size() : 0, tracks);
+    }
+
+    /**
+     * The playAfterCurrent method adds tracks to the queue right after the current track.
+     * @param tracks The tracks to add in order.
+     */
+    private void playAfterCurrent(MusicTrack[] tracks) {
+        insertIntoQueue(mIsPlayingFolder ? mQueue.getPosition() + 1 : 0, tracks);
+    }
+
+    /**
+     * The removeFromQueue method removes the entry at a position of the queue. Removing the
+     * current track plays the track that takes its place, or the one before it if it was at
+     * the end. Removing the only track stops playback.
+     * @param position The position in the queue.
+     */
+    private void removeFromQueue(int position) {
+        if (!mIsPlayingFolder || position < 0 || position >= mQueue.size()) {
+            return;
+        }
+        boolean current = position == mQueue.getPosition();
+        int slot = mQueue.remove(position);
+        mQueueIsFolder = false;
+        if (mQueue.size() == 0) {
+            mIsPlayingFolder = false;
+            stop();
+            EventBus.getDefault().post(new TrackDataChangedEvent(0, new ArrayList<>()));
+        } else if (current) {
+            // The track after it in the play order takes its place.
+            if (mShuffle != null) {
+                mShuffle.remove(slot);
+            }
+            playQueued(positionAt(playIndex()));
+            postFolderChanged();
+        } else {
+            if (mShuffle != null) {
+                mShuffle.remove(slot);
+            }
+            updateWarmPlayers();
+            postFolderChanged();
+        }
+    }
+
+    /**
+     * The moveInQueue method moves the entry at a position of the queue to another position.
+     * The current track keeps playing.
+     * @param from The position of the entry.
+     * @param to The position of the entry after the move.
+     */
+    private void moveInQueue(int from, int to) {
+        if (!mIsPlayingFolder || from < 0 || from >= mQueue.size() || to < 0 || to >= mQueue.size()) {
+            return;
+        }
+        mQueue.move(from, to);
+        mQueueIsFolder = false;
+        updateWarmPlayers();
+        postFolderChanged();
+    }
+
+    /**
+     * The getQueueSize method returns the number of entries in the queue.
+     * @return The size of the queue or 0 if no folder is playing.
+     */
+    private int getQueueSize() {
+        return mIsPlayingFolder ? mQueue.size() : 0;
+    }
+
+    /**
+     * The getQueuePosition method returns the position of the current track in the queue.
+     * @return The position or -1 if no folder is playing.
+     */
+    private int getQueuePosition() {
+        return mIsPlayingFolder ? mQueue.getPosition() : -1;
+    }
+
+    /**
+     * The getQueueTrack method returns the track of an entry of the queue.
+     * @param position The position in the queue.
+     * @return The track or null if there is no such entry.
+     */
+    private MusicTrack getQueueTrack(int position) {
+        if (!mIsPlayingFolder || position < 0 || position >= mQueue.size()) {
+            return null;
+        }
+        return trackAt(position);
+    }
+
+    /**
+     * The getFileNames method used to return a string array of the filenames of the queue.
+     * @return The String ArrayList of filenames in queue order.
+     */
+    private ArrayList<String> getFileNames() {
+        int[] slots = mQueue.toArray();
+        ArrayList<String> adapterData = new ArrayList<>(slots.length);
+        for (int slot : slots) {
+            adapterData.add(mNames.get(trackId(slot)));
+        }
+        return adapterData;
+    }
+
+    /**
+     * The play method plays a track at a specific position if a Uri has been loaded into
+     * the MediaPlayerService first.
+     *
+     * @param position The position or the single track to play if not a folder.
+     */
+    private void play(int position) {
+        if (mIsPlayingFolder) {
+            playQueued(position);
+        } else {
+            if (currentTrack == null) {
+                showToast("Select a track or folder to play", Toast.LENGTH_LONG);
+            } else {
+                play(currentTrack);
+            }
+        }
+    }
+
+    /**
+     * The playTrack method plays a track of the folder being played, wherever it is in the
+     * queue.
+     *
+     * @param uri The Uri of the track.
+     * @return True if the track was found in the folder, false if it was not played.
+     */
+    private boolean playTrack(Uri uri) {
+        if (!mIsPlayingFolder) {
+            return false;
+        }
+        int[] slots = mQueue.toArray();
+        String target = uri.toString();
+        for (int i = 0; i < slots.length; i++) {
+            if (mTracks.get(trackId(slots[i])).hasUri(target)) {
+                play(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The setShuffle method turns shuffle on or off if it is not in that state already.
+     *
+     * @param on True to shuffle the folder, false to play it in order.
+     */
+    private void setShuffle(boolean on) {
+        if (on != shuffleOn) {
+            shuffle();
+        }
+    }
+
+    /**
+     * The showToast method shows a message on the main thread.
+     *
+     * @param text The message.
+     * @param duration Toast.LENGTH_SHORT or Toast.LENGTH_LONG.
+     */
+    private void showToast(String text, int duration) {
+        mMainHandler.post(() -> Toast.makeText(getApplicationContext(), text, duration).show());
+    }
+
+    /**
+     * The scheduleCheckpoint method saves the state of playback soon, at most once every
+     * CHECKPOINT_INTERVAL_MS however often it changes.
+     */
+    private void scheduleCheckpoint() {
+        if (mCheckpointPending) {
+            return;
+        }
+        mCheckpointPending = true;
+        long wait = mLastCheckpoint + CHECKPOINT_INTERVAL_MS - SystemClock.elapsedRealtime();
+        mPlaybackHandler.postDelayed(mCheckpoint, Math.max(0, wait));
+    }
+
+    /**
+     * The checkpoint method hands the current queue, modes and position to the ResumeStore,
+     * which writes them in the background if they changed. The tracks are only handed over
+     * when they changed since the last checkpoint. While a track plays, the next checkpoint
+     * is scheduled to keep the position up to date.
+     */
+    private void checkpoint() {
+        mCheckpointPending = false;
+        if (mPlayer == null || currentTrack == null) {
+            return;
+        }
+        mLastCheckpoint = SystemClock.elapsedRealtime();
+        int position = mPrepared ? mPlayer.getCurrentPosition() : mResumePosition;
+        if (!mIsPlayingFolder) {
+            mResumeStore.save(new ResumeStore.State(currentTrack.toString(), position, repeatStatus,
+                    mShuffleMode, mSortOrder), null);
+        } else {
+            MusicTrack[] tracks = null;
+            if (mSavedTracksModCount != mTracksModCount) {
+                tracks = mTracks.toArray(new MusicTrack[0]);
+                mSavedTracksModCount = mTracksModCount;
+            }
+            if (mSavedQueue == null || mSavedQueueModCount != mQueue.getModCount()) {
+                mSavedQueue = mQueue.toArray();
+                mSavedQueueModCount = mQueue.getModCount();
+            }
+            int queuePosition = mQueue.getPosition();
+            mResumeStore.save(new ResumeStore.State(trackAt(queuePosition).getUriString(), position,
+                    repeatStatus, mShuffleMode, mSortOrder, mTracks.size(), mSavedQueue, queuePosition,
+                    mQueueIsFolder, mOrder, mShuffle != null ? mShuffle.getHistory() : null,
+                    mShuffle != null ? mShuffle.getPosition() : 0,
+                    mShuffle != null ? mShuffle.getSeed() : 0), tracks);
+        }
+        if (isPlaying()) {
+            scheduleCheckpoint();
+        }
+    }
+
+    /**
+     * The restore method brings back the queue, modes and track saved by the last checkpoint
+     * of a previous process. The track is prepared paused at the saved position, so it starts
+     * right away when resumed. Nothing is restored once something else was played.
+     *
+     * @param state The saved state.
+     * @param tracks The tracks of the saved folder or null if they could not be read.
+     */
+    private void restore(ResumeStore.State state, MusicTrack[] tracks) {
+        if (currentTrack != null || mIsPlayingFolder || state.playingFolder && tracks == null) {
+            return;
+        }
+        repeatStatus = state.repeatStatus;
+        if (state.shuffleMode >= 0 && state.shuffleMode < PlayStats.SHUFFLE_MODE_COUNT) {
+            mShuffleMode = state.shuffleMode;
+        }
+        if (state.sortOrder >= 0 && state.sortOrder < SortOrders.ORDER_COUNT) {
+            mSortOrder = state.sortOrder;
+        }
+        Uri uri;
+        if (state.playingFolder) {
+            mIsPlayingFolder = true;
+            mTracks.ensureCapacity(tracks.length);
+            mNames.ensureCapacity(tracks.length);
+            for (MusicTrack track : tracks) {
+                addTrack(track);
+            }
+            // The tracks were just read from the store.
+            mSavedTracksModCount = mTracksModCount;
+            mOrder = state.order;
+            mQueue.setAll(state.queue);
+            mQueueIsFolder = state.queueIsFolder;
+            mQueue.setPosition(state.queuePosition);
+            if (state.shuffleHistory != null) {
+                shuffleOn = true;
+                mShuffle = new ShuffleOrder(mTracks.size(), state.shuffleHistory, state.shufflePosition,
+                        state.shuffleSeed, mShuffleMode == PlayStats.SHUFFLE_UNIFORM ? null : this::shuffleWeight);
+            }
+            computeSortOrders();
+            uri = trackAt(state.queuePosition).getUri();
+        } else {
+            uri = Uri.parse(state.currentUri);
+        }
+        Log.d(TAG, "restore: Preparing " + uri + " at " + state.position + " ms");
+        playSingleTrack(uri);
+        mStartWhenPrepared = false;
+        mResumePosition = state.position;
+        postTrackChanged();
+    }
+
+    /**
+     * The publishState method posts the state of playback to the MainActivity if it changed
+     * since it was last published. It runs on the playback thread after every command and
+     * every event of the players.
+     */
+    private void publishState() {
+        if (mPlayer == null) {
+            return;
+        }
+        updateTicker();
+        scheduleCheckpoint();
+        PlaybackStateEvent state = new PlaybackStateEvent(isPlaying(), repeatStatus, shuffleOn, mShuffleMode,
+                mGapless, mCrossfade, mEngineType, mSortOrder, getQueueSize(), getQueuePosition());
+        if (!state.equals(mState)) {
+            mState = state;
+            EventBus.getDefault().postSticky(state);
+        }
+    }
+
+    /**
+     * The command method runs a command on the playback thread after the commands enqueued
+     * before it, then publishes the new state.
+     *
+     * @param command The command.
+     */
+    private void command(Runnable command) {
+        mPlaybackHandler.post(() -> {
+            command.run();
+            publishState();
+        });
+    }
+
+    /**
+     * The query method computes a result on the playback thread after the commands enqueued
+     * before it and delivers it on the main thread.
+     *
+     * @param query Computes the result.
+     * @param result Receives the result.
+     */
+    private <T> void query(Query<T> query, Result<T> result) {
+        command(() -> {
+            T value = query.compute();
+            mMainHandler.post(() -> result.onResult(value));
+        });
+    }
+
+    /**
+     * A computation run by {@link #query(Query, Result)}.
+     */
+    private interface Query<T> {
+        T compute();
+    }
+
+    /**
+     * The Result interface receives the result of a query of the ControlsBinder on the main
+     * thread.
+     */
+    public interface Result<T> {
+        void onResult(T value);
+    }
+
+    /**
+     * Class to control media player instance through a Binder.
+     * <p>
+     * Threading contract: the binder is called from the main thread. Every command, such as
+     * play, skip, repeat or a queue edit, is enqueued on the single playback thread of the
+     * service and returns right away, so slow content providers or huge folders never block
+     * the caller. Commands run one at a time in the order they were called. The playback
+     * thread owns the MediaPlayers and the queue, nothing else touches them. Skips from
+     * playNext, playPrev and play(int) that arrive while the playback thread is busy are
+     * collapsed into one, so only the track the user ended on is prepared and announced.
+     * <p>
+     * Results come back asynchronously. Changes of the playlist are posted as a
+     * TrackDataChangedEvent and changes of the play, repeat, shuffle, gapless and sort state
+     * as a sticky PlaybackStateEvent, both from the playback thread, so subscribers should
+     * use ThreadMode.MAIN. The getters return the last published PlaybackStateEvent without
+     * waiting, so they do not reflect commands that are still queued. Methods taking a
+     * {@link Result} run after the commands enqueued before them and call it on the main
+     * thread. Tracks passed to the binder must not be changed by the caller afterwards.
+     * <p>
+     * The position of the current track is not posted. getPosition and getDuration read it
+     * without locking or allocating, so they can be called every frame. It is updated once
+     * a frame while the track plays and an observer was added with addPositionObserver.
+     */
+    public class ControlsBinder extends Binder {
+        /**
+         * {@link MediaPlayerService#play(Uri)}
+         */
+        public void play(Uri uri) {
+            command(() -> MediaPlayerService.this.play(uri));
+        }
+
+        /**
+         * The isPlaying method returns the last published state of audio being played.
+         * @return True if playing or false if not.
+         */
+        public boolean isPlaying() {
+            return mState.isPlaying();
+        }
+
+        /**
+         * {@link MediaPlayerService#stop()}
+         */
+        public void stop() {
+            command(MediaPlayerService.this::stop);
+        }
+
+        /**
+         * {@link MediaPlayerService#pause()}
+         */
+        public void pause() {
+            command(MediaPlayerService.this::pause);
         }
 
         /**
          * {@link MediaPlayerService#resume()}
          */
         public void resume() {
-            MediaPlayerService.this.resume();
+            command(MediaPlayerService.this::resume);
         }
         /**
-         * {@link MediaPlayerService#playFolder(DocumentFile[])}
+         * {@link MediaPlayerService#playFolder(MusicTrack[])}
          */
         public void playFolder (MusicTrack[] folder){
-            MediaPlayerService.this.playFolder(folder);
+            command(() -> MediaPlayerService.this.playFolder(folder));
+        }
+        /**
+         * {@link MediaPlayerService#playFolder(MusicTrack[], int)}
+         */
+        public void playFolder(MusicTrack[] folder, int position) {
+            command(() -> MediaPlayerService.this.playFolder(folder, position));
+        }
+        /**
+         * {@link MediaPlayerService#addToFolder(MusicTrack[])}
+         */
+        public void addToFolder(MusicTrack[] tracks) {
+            command(() -> MediaPlayerService.this.addToFolder(tracks));
         }
         /**
          * {@link MediaPlayerService#playNext()}
@@ -508,17 +1889,175 @@ public class MediaPlayerService extends Service {
         }
 
         /**
-         * {@link MediaPlayerService#repeat()}
+         * {@link MediaPlayerService#repeat()}, the new status is published when it ran.
+         */
+        public void repeat() {
+            command(MediaPlayerService.this::repeat);
+        }
+
+        /**
+         * The getRepeatStatus method returns the last published repeat status.
+         * @return The repeat status, 0 = no repeat, 1 = folder repeat, 2 = file repeat.
+         */
+        public int getRepeatStatus() {
+            return mState.getRepeatStatus();
+        }
+
+        /**
+         * {@link MediaPlayerService#shuffle()}, the new state is published when it ran.
+         */
+        public void shuffle() {
+            command(MediaPlayerService.this::shuffle);
+        }
+
+        /**
+         * {@link MediaPlayerService#setShuffle(boolean)}
+         */
+        public void setShuffle(boolean on) {
+            command(() -> MediaPlayerService.this.setShuffle(on));
+        }
+
+        /**
+         * The isShuffleOn method returns the last published state of shuffle.
+         * @return True if shuffle is on.
+         */
+        public boolean isShuffleOn() {
+            return mState.isShuffleOn();
+        }
+
+        /**
+         * {@link MediaPlayerService#setGapless(boolean)}
+         */
+        public void setGapless(boolean gapless) {
+            command(() -> MediaPlayerService.this.setGapless(gapless));
+        }
+
+        /**
+         * The isGapless method returns the last published state of gapless playback.
+         * @return True if the next track is prepared while the current one plays.
+         */
+        public boolean isGapless() {
+            return mState.isGapless();
+        }
+
+        /**
+         * {@link MediaPlayerService#setCrossfade(boolean)}
+         */
+        public void setCrossfade(boolean crossfade) {
+            command(() -> MediaPlayerService.this.setCrossfade(crossfade));
+        }
+
+        /**
+         * The isCrossfade method returns the last published state of crossfading.
+         * @return True if the end of a track is mixed with the start of the next one.
+         */
+        public boolean isCrossfade() {
+            return mState.isCrossfade();
+        }
+
+        /**
+         * {@link MediaPlayerService#setEngine(int)}
+         */
+        public void setEngine(int type) {
+            command(() -> MediaPlayerService.this.setEngine(type));
+        }
+
+        /**
+         * The getEngine method returns the last published engine.
+         * @return One of the PlaybackEngine ENGINE constants.
+         */
+        public int getEngine() {
+            return mState.getEngine();
+        }
+
+        /**
+         * {@link MediaPlayerService#setShuffleMode(int)}
+         */
+        public void setShuffleMode(int mode) {
+            command(() -> MediaPlayerService.this.setShuffleMode(mode));
+        }
+
+        /**
+         * The getShuffleMode method returns the last published shuffle mode.
+         * @return One of the PlayStats SHUFFLE constants.
+         */
+        public int getShuffleMode() {
+            return mState.getShuffleMode();
+        }
+
+        /**
+         * {@link MediaPlayerService#rateCurrent(int)}
+         */
+        public void rateCurrent(int rating) {
+            command(() -> MediaPlayerService.this.rateCurrent(rating));
+        }
+
+        /**
+         * {@link MediaPlayerService#getSkipLatency()}
+         */
+        public void getSkipLatency(Result<String> result) {
+            query(MediaPlayerService.this::getSkipLatency, result);
+        }
+
+        /**
+         * {@link MediaPlayerService#seekTo(int)}
+         */
+        public void seekTo(int millis) {
+            command(() -> MediaPlayerService.this.seekTo(millis));
+        }
+
+        /**
+         * The getPosition method returns the position in the current track, moved forward
+         * by the time passed since it was last updated while playing.
+         * @return The position in milliseconds.
+         */
+        public int getPosition() {
+            return mPosition.getPosition(SystemClock.elapsedRealtime());
+        }
+
+        /**
+         * The getDuration method returns the length of the current track.
+         * @return The length in milliseconds or -1 if it is not known or nothing is prepared.
+         */
+        public int getDuration() {
+            return mPosition.getDuration();
+        }
+
+        /**
+         * The addPositionObserver method keeps the position updated while the current track
+         * plays, until the observer is removed.
+         */
+        public void addPositionObserver() {
+            if (mPositionObservers.getAndIncrement() == 0) {
+                mPlaybackHandler.post(MediaPlayerService.this::updateTicker);
+            }
+        }
+
+        /**
+         * The removePositionObserver method removes an observer added with
+         * addPositionObserver, the position stops updating once none is left.
          */
-        public int repeat() {
-            return MediaPlayerService.this.repeat();
+        public void removePositionObserver() {
+            if (mPositionObservers.decrementAndGet() == 0) {
+                mPlaybackHandler.post(MediaPlayerService.this::updateTicker);
+            }
+        }
+
+        /**
+         * The getState method returns the last published state of playback.
+         * @return The state.
+         */
+        public PlaybackStateEvent getState() {
+            return mState;
         }
 
         /**
-         * {@link MediaPlayerService#shuffle()}
+         * The whenIdle method runs a callback on the main thread once the commands enqueued
+         * before it have run.
+         * @param callback The callback.
          */
-        public boolean shuffle() {
-            return MediaPlayerService.this.shuffle();
+        public void whenIdle(Runnable callback) {
+            command(() -> mMainHandler.post(callback));
         }
 
         /**
@@ -530,10 +2069,103 @@ public class MediaPlayerService extends Service {
         }
 
         /**
-         * {@link MediaPlayerService#play(int)}
+         * {@link MediaPlayerService#skipTo(int)}
          */
         public void play(int position) {
-            MediaPlayerService.this.play(position);
+            MediaPlayerService.this.skipTo(position);
+        }
+
+        /**
+         * {@link MediaPlayerService#playTrack(Uri)}
+         * @param result Receives true if the track was found in the folder.
+         */
+        public void playTrack(Uri uri, Result<Boolean> result) {
+            query(() -> MediaPlayerService.this.playTrack(uri), result);
+        }
+
+        /**
+         * {@link MediaPlayerService#enqueue(MusicTrack[])}
+         */
+        public void enqueue(MusicTrack[] tracks) {
+            command(() -> MediaPlayerService.this.enqueue(tracks));
+        }
+
+        /**
+         * {@link MediaPlayerService#playAfterCurrent(MusicTrack[])}
+         */
+        public void playAfterCurrent(MusicTrack[] tracks) {
+            command(() -> MediaPlayerService.this.playAfterCurrent(tracks));
+        }
+
+        /**
+         * {@link MediaPlayerService#insertIntoQueue(int, MusicTrack[])}
+         */
+        public void insertIntoQueue(int position, MusicTrack[] tracks) {
+            command(() -> MediaPlayerService.this.insertIntoQueue(position, tracks));
+        }
+
+        /**
+         * {@link MediaPlayerService#removeFromQueue(int)}
+         */
+        public void removeFromQueue(int position) {
+            command(() -> MediaPlayerService.this.removeFromQueue(position));
+        }
+
+        /**
+         * {@link MediaPlayerService#moveInQueue(int, int)}
+         */
+        public void moveInQueue(int from, int to) {
+            command(() -> MediaPlayerService.this.moveInQueue(from, to));
+        }
+
+        /**
+         * The getQueueSize method returns the last published size of the queue.
+         * @return The size of the queue or 0 if no folder is playing.
+         */
+        public int getQueueSize() {
+            return mState.getQueueSize();
+        }
+
+        /**
+         * The getQueuePosition method returns the last published position in the queue.
+         * @return The position or -1 if no folder is playing.
+         */
+        public int getQueuePosition() {
+            return mState.getQueuePosition();
+        }
+
+        /**
+         * {@link MediaPlayerService#getQueueTrack(int)}
+         */
+        public void getQueueTrack(int position, Result<MusicTrack> result) {
+            query(() -> MediaPlayerService.this.getQueueTrack(position), result);
+        }
+
+        /**
+         * {@link MediaPlayerService#setSortOrder(int)}
+         */
+        public void setSortOrder(int order) {
+            command(() -> MediaPlayerService.this.setSortOrder(order));
+        }
+
+        /**
+         * The getSortOrder method returns the last published sort order.
+         * @return One of the SortOrders constants.
+         */
+        public int getSortOrder() {
+            return mState.getSortOrder();
+        }
+
+        /**
+         * {@link MediaPlayerService#computeSortOrders()}, used after the tags of the tracks
+         * were read.
+         */
+        public void refreshSortOrders() {
+            command(() -> {
+                if (mIsPlayingFolder) {
+                    MediaPlayerService.this.computeSortOrders();
+                }
+            });
         }
     }
 
@@ -545,10 +2177,31 @@ public class MediaPlayerService extends Service {
     public void onDestroy() {
         super.onDestroy();
 
-            if(mMediaPlayer.isPlaying()) {
-                mMediaPlayer.stop();
+        // Release the players on the thread that owns them, after the queued commands.
+        mPlaybackHandler.post(() -> {
+            mPlaybackHandler.removeCallbacks(mTicker);
+            // Save the position reached, the store finishes its writes before it stops.
+            checkpoint();
+            mPlaybackHandler.removeCallbacks(mCheckpoint);
+            mResumeStore.close();
+            if(mPlayer.isPlaying()) {
+                mPlayer.stop();
             }
-            mMediaPlayer.release();
+            mPlayer.release();
+            mPool.release();
+            mPlayStatsStore.flush();
+            // The queued commands may have used the background threads, they stop now. A
+            // flush that is still running finishes before the database is closed.
+            mPrefetcher.shutdown();
+            mSortExecutor.shutdownNow();
+            try {
+                mSortExecutor.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mPlayStatsStore.close();
+        });
+        mPlaybackThread.quitSafely();
 
         Log.d(TAG, "onDestroy: MediaPlayerService");
     }
@@ -0,0 +1,67 @@
+package edu.temple.simpletunes;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The MetadataPrefetcher class resolves the tags of lazy tracks around the current queue
+ * position on a background thread, so they are ready before the UI asks for them. Only the
+ * latest request is kept, an older request that has not started yet is dropped.
+ */
+public class MetadataPrefetcher {
+    /**
+     * The number of tracks after the current position that are resolved.
+     */
+    static final int AHEAD = 3;
+    /**
+     * The number of tracks before the current position that are resolved.
+     */
+    static final int BEHIND = 1;
+    /**
+     * The single background thread resolving the tracks.
+     */
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    /**
+     * The latest request or null if there is none.
+     */
+    private Future<?> mPending;
+
+    /**
+     * The prefetch method resolves the current track first, then the ones after it and
+     * finally the ones before it.
+     * @param queue The tracks in play order.
+     * @param position The position of the current track in the queue.
+     */
+    public synchronized void prefetch(MusicTrack[] queue, int position) {
+        if(mPending != null){
+            mPending.cancel(false);
+        }
+        mPending = mExecutor.submit(() -> {
+            for(int offset = 0; offset <= AHEAD; offset++){
+                resolve(queue, position + offset);
+            }
+            for(int offset = 1; offset <= BEHIND; offset++){
+                resolve(queue, position - offset);
+            }
+        });
+    }
+
+    /**
+     * The shutdown method stops the background thread.
+     */
+    public synchronized void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * The resolve method resolves a track if the position is within the queue.
+     * @param queue The tracks in play order.
+     * @param position The position of the track to resolve.
+     */
+    private static void resolve(MusicTrack[] queue, int position) {
+        if(position >= 0 && position < queue.length && !Thread.currentThread().isInterrupted()){
+            queue[position].resolve();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package edu.temple.simpletunes;
+
+/**
+ * The Mixer class reads the PCM of the current track, and of the next one once the current
+ * track ends, into blocks for the audio output. Without a crossfade the next track follows the
+ * last sample of the current one in the same block, so there is no gap at all. With a
+ * crossfade the last frames of the current track are held back until its decoder reached the
+ * end, then they are mixed with the start of the next track with equal-power gains. Mixing
+ * does not allocate. The class is not thread safe, it is used by the mixer thread only.
+ */
+public class Mixer {
+    /**
+     * The number of steps of the gain curve.
+     */
+    private static final int GAIN_STEPS = 1024;
+    /**
+     * The gain of the track fading in at each step, the track fading out uses the same table
+     * backwards, so the power of the sum stays constant.
+     */
+    private static final float[] FADE_IN = new float[GAIN_STEPS + 1];
+
+    static {
+        for (int i = 0; i <= GAIN_STEPS; i++) {
+            FADE_IN[i] = (float) Math.sin(Math.PI / 2 * i / GAIN_STEPS);
+        }
+    }
+
+    private final int mChannels;
+    private final int mMaxFrames;
+    /**
+     * The samples of the next track during a crossfade.
+     */
+    private final short[] mScratch;
+    private int mCrossfadeFrames = 0;
+    private PcmRing mCurrent;
+    private PcmRing mNext;
+    /**
+     * The track that ended since takeFinished was last called or null.
+     */
+    private PcmRing mFinished;
+    /**
+     * The length of the crossfade in progress in frames or 0, and how far it got.
+     */
+    private int mFadeLength = 0;
+    private int mFadePosition = 0;
+
+    /**
+     * Initialize a mixer.
+     * @param channels The channels of the tracks and the output.
+     * @param maxFrames The most frames mixed per block.
+     */
+    public Mixer(int channels, int maxFrames) {
+        mChannels = channels;
+        mMaxFrames = maxFrames;
+        mScratch = new short[channels * maxFrames];
+    }
+
+    /**
+     * The setCrossfadeFrames method sets the overlap of a track with the next one. It is
+     * shortened to half of a ring, so the decoder can always write while the end is held.
+     * @param frames The overlap in frames or 0 for gapless playback.
+     */
+    public void setCrossfadeFrames(int frames) {
+        mCrossfadeFrames = Math.max(0, frames);
+    }
+
+    public PcmRing getCurrent() {
+        return mCurrent;
+    }
+
+    public PcmRing getNext() {
+        return mNext;
+    }
+
+    /**
+     * The setCurrent method plays a track from where its ring is, right away and without a
+     * fade. The next track is kept.
+     * @param ring The ring of the track or null to play nothing.
+     */
+    public void setCurrent(PcmRing ring) {
+        mCurrent = ring;
+        mFadeLength = 0;
+        if (mNext == ring) {
+            mNext = null;
+        }
+    }
+
+    /**
+     * The setNext method sets the track that follows the current one. Removing it during a
+     * crossfade ends the fade, the current track plays to its end.
+     * @param ring The ring of the track or null.
+     */
+    public void setNext(PcmRing ring) {
+        mNext = ring;
+        if (ring == null) {
+            mFadeLength = 0;
+        }
+    }
+
+    /**
+     * The takeFinished method returns the track that was played to its end, once.
+     * @return The ring of the track or null.
+     */
+    public PcmRing takeFinished() {
+        PcmRing finished = mFinished;
+        mFinished = null;
+        return finished;
+    }
+
+    /**
+     * The mix method fills a block with the next frames of the tracks. It returns fewer
+     * frames than asked when a decoder is behind or the last track ended. Only one track
+     * ends per block, the block stops there if another one would.
+     * @param out The interleaved samples.
+     * @param frames The number of frames wanted.
+     * @return The number of frames mixed.
+     */
+    public int mix(short[] out, int frames) {
+        frames = Math.min(frames, mMaxFrames);
+        int written = 0;
+        while (written < frames && mCurrent != null) {
+            int fade = fadeFrames();
+            int available = mCurrent.available() / mChannels;
+            if (mFadeLength == 0 && fade > 0 && mCurrent.isEndOfStream() && available > 0
+                    && available <= fade) {
+                mFadeLength = available;
+                mFadePosition = 0;
+            }
+            if (mFadeLength > 0) {
+                int count = Math.min(frames - written, mFadeLength - mFadePosition);
+                count = Math.min(count, mNext.available() / mChannels);
+                if (count == 0) {
+                    break;
+                }
+                crossfade(out, written, count);
+                written += count;
+                if (mFadePosition == mFadeLength) {
+                    mFadeLength = 0;
+                    if (!advance()) {
+                        break;
+                    }
+                }
+                continue;
+            }
+            // Keep the end of the track for the crossfade.
+            int count = Math.min(frames - written, available - fade);
+            if (count > 0) {
+                mCurrent.read(out, written * mChannels, count * mChannels);
+                written += count;
+            } else if (!mCurrent.isFinished() || !advance()) {
+                break;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * The fadeFrames method returns the frames of the current track mixed with the next one.
+     */
+    private int fadeFrames() {
+        if (mNext == null) {
+            return 0;
+        }
+        return Math.min(mCrossfadeFrames, mCurrent.capacity() / mChannels / 2);
+    }
+
+    /**
+     * The advance method makes the next track the current one after the current one ended.
+     * @return False if a track already ended in this block.
+     */
+    private boolean advance() {
+        if (mFinished != null) {
+            return false;
+        }
+        mFinished = mCurrent;
+        mCurrent = mNext;
+        mNext = null;
+        return true;
+    }
+
+    private void crossfade(short[] out, int offset, int frames) {
+        int samples = frames * mChannels;
+        int start = offset * mChannels;
+        mCurrent.read(out, start, samples);
+        mNext.read(mScratch, 0, samples);
+        for (int i = 0; i < samples; i++) {
+            int step = (int) ((long) (mFadePosition + i / mChannels) * GAIN_STEPS / mFadeLength);
+            float mixed = out[start + i] * FADE_IN[GAIN_STEPS - step] + mScratch[i] * FADE_IN[step];
+            out[start + i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(mixed)));
+        }
+        mFadePosition += frames;
+    }
+}
@@ -3,78 +3,340 @@ package edu.temple.simpletunes;
 import android.content.Context;
 import android.media.MediaMetadataRetriever;
 import android.net.Uri;
+import android.os.ParcelFileDescriptor;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.documentfile.provider.DocumentFile;
 
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * The MusicTrack class holds an audio document of a folder and its tags. Tracks are kept
+ * compact because a library holds thousands of them: the Uri is stored as a prefix shared with
+ * the other documents of the directory plus the rest of the Uri, and the folder, artist and
+ * album strings are shared through the StringPool.
+ */
 public class MusicTrack {
-    private final DocumentFile df;
-    private final String title;
-    private final String track;
-    private final String artist;
-    private final String album;
+    /**
+     * The pooled start of the document Uri, shared by the documents of a directory.
+     */
+    private final String uriPrefix;
+    /**
+     * The rest of the document Uri after uriPrefix.
+     */
+    private final String uriSuffix;
+    private final String name;
+    private final String folder;
     private final boolean isAudio;
-    private final String TAG = "MusicTrack";
+    /**
+     * The tags of the track, null until they are resolved for a lazy track.
+     */
+    private volatile TrackMetadata metadata;
+    /**
+     * The context used to resolve the tags of a lazy track.
+     */
+    private final Context ctx;
+    /**
+     * The metadata cache checked when the tags are read or null.
+     */
+    private final TrackMetadataCache cache;
+    private final long size;
+    private final long lastModified;
+    private static final String TAG = "MusicTrack";
+    /**
+     * The tag reader of each scanning thread, so their buffers are reused between files.
+     */
+    private static final ThreadLocal<TagReader> TAG_READERS = ThreadLocal.withInitial(TagReader::new);
     public MusicTrack(Context ctx, @NonNull DocumentFile df){
-        Log.d("MusicTrack", "MusicTrack: got DocumentFile " + df.getName() + " of type " + df.getType());
-        String type = df.getType();
-        if(type != null){
-        type = type.substring(0, type.lastIndexOf('/'));
-            if(type.equals("audio") && df.isFile()){
-                this.df = df;
-                MediaMetadataRetriever mmr = new MediaMetadataRetriever();
-                mmr.setDataSource(ctx, df.getUri());
-                title = mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_TITLE);
-                String s = mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_CD_TRACK_NUMBER);
-                if(s != null && s.lastIndexOf('/') == -1){
-                    track = s;
-                }else if(s != null){
-                    track = s.substring(0, s.lastIndexOf('/'));
-                }else{
-                    track = null;
+        this(ctx, new DocumentEntry(df), null);
+    }
+
+    /**
+     * Initialize the track from a listed document, reading the metadata from the cache when
+     * the document has not changed since it was cached. The name and Uri are taken from the
+     * entry so no further provider calls are made for them.
+     * @param ctx The context used to read the metadata.
+     * @param entry The listed document of the track.
+     * @param cache The metadata cache to check first or null to always read the file.
+     */
+    public MusicTrack(Context ctx, @NonNull DocumentEntry entry, @Nullable TrackMetadataCache cache){
+        this(ctx, entry, cache, false);
+    }
+
+    /**
+     * Initialize the track from a listed document. A lazy track only records the Uri, name and
+     * MIME type; its tags are read on the first call to a tag getter or to {@link #resolve()}.
+     * @param ctx The context used to read the metadata.
+     * @param entry The listed document of the track.
+     * @param cache The metadata cache to check first or null to always read the file.
+     * @param lazy True to defer reading the tags until they are needed.
+     */
+    public MusicTrack(Context ctx, @NonNull DocumentEntry entry, @Nullable TrackMetadataCache cache, boolean lazy){
+        String uri = entry.getUri().toString();
+        this.uriPrefix = StringPool.SHARED.uriPrefix(uri);
+        this.uriSuffix = uri.substring(uriPrefix.length());
+        this.name = entry.getDisplayName();
+        this.folder = StringPool.SHARED.intern(entry.getFolder());
+        this.isAudio = entry.isAudio();
+        this.size = entry.getSize();
+        this.lastModified = entry.getLastModified();
+        this.cache = cache;
+        if(lazy && isAudio){
+            this.ctx = ctx == null ? null : ctx.getApplicationContext();
+        }else{
+            this.ctx = null;
+            this.metadata = load(ctx, entry.getMimeType(), false);
+        }
+    }
+
+    /**
+     * Initialize an audio track from the LibraryIndex.
+     * @param ctx The context used to read the tags if they are not known.
+     * @param uri The Uri string of the document.
+     * @param name The file name of the document.
+     * @param folder The folder the track was found in or null.
+     * @param size The size of the document in bytes.
+     * @param lastModified The last modified time of the document.
+     * @param metadata The tags of the track or null to read them when first needed.
+     */
+    MusicTrack(Context ctx, @NonNull String uri, String name, String folder, long size, long lastModified,
+               @Nullable TrackMetadata metadata){
+        this(ctx, uri, name, folder, size, lastModified, metadata, null);
+    }
+
+    /**
+     * Initialize an audio track from the LibraryIndex whose tags are read through a cache.
+     * @param ctx The context used to read the tags if they are not known.
+     * @param uri The Uri string of the document.
+     * @param name The file name of the document.
+     * @param folder The folder the track was found in or null.
+     * @param size The size of the document in bytes.
+     * @param lastModified The last modified time of the document.
+     * @param metadata The tags of the track or null to read them when first needed.
+     * @param cache The metadata cache to check before reading the file or null.
+     */
+    MusicTrack(Context ctx, @NonNull String uri, String name, String folder, long size, long lastModified,
+               @Nullable TrackMetadata metadata, @Nullable TrackMetadataCache cache){
+        this.uriPrefix = StringPool.SHARED.uriPrefix(uri);
+        this.uriSuffix = uri.substring(uriPrefix.length());
+        this.name = name;
+        this.folder = StringPool.SHARED.intern(folder);
+        this.isAudio = true;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.cache = cache;
+        this.ctx = metadata != null || ctx == null ? null : ctx.getApplicationContext();
+        this.metadata = metadata;
+    }
+
+    /**
+     * The resolve method reads the tags of a lazy track if they were not read yet. It is safe
+     * to call from any thread and returns right away for tracks that are already resolved.
+     * @return The tags of the track.
+     */
+    public TrackMetadata resolve(){
+        return resolve(true);
+    }
+
+    /**
+     * The resolve method reads the tags of a lazy track if they were not read yet.
+     * @param flush True to write a new cache entry right away, false to leave it to the next
+     *              {@link TrackMetadataCache#flush()} when many tracks are resolved together.
+     * @return The tags of the track.
+     */
+    TrackMetadata resolve(boolean flush){
+        TrackMetadata m = metadata;
+        if(m == null){
+            synchronized (this) {
+                m = metadata;
+                if(m == null){
+                    m = load(ctx, null, flush);
+                    metadata = m;
+                }
+            }
+        }
+        return m;
+    }
+
+    /**
+     * The isResolved method checks if the tags of the track have been read.
+     * @return True if the tag getters will not read the file.
+     */
+    public boolean isResolved(){
+        return metadata != null;
+    }
+
+    /**
+     * The load method reads the tags from the cache or from the file.
+     * @param ctx The context used to open the document.
+     * @param mimeType The MIME type of the document, only used for logging.
+     * @param flush True to write a new cache entry right away instead of after the scan.
+     * @return The metadata of the document.
+     */
+    private TrackMetadata load(Context ctx, String mimeType, boolean flush){
+        TrackMetadata m = null;
+        Uri uri = getUri();
+        if(cache != null){
+            m = cache.get(uri, size, lastModified);
+        }
+        if(m == null){
+            m = readMetadata(ctx, uri, mimeType);
+            if(cache != null){
+                cache.put(uri, size, lastModified, m);
+                if(flush){
+                    cache.flush();
                 }
-                artist = mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_ARTIST);
-                album = mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_ALBUM);
-                isAudio = true;
-                mmr.close();
+            }
+        }
+        return m;
+    }
+
+    /**
+     * The readMetadata method extracts the tags of a document with the TagReader, falling
+     * back to MediaMetadataRetriever for formats the TagReader does not support.
+     * @param ctx The context used to open the document.
+     * @param uri The Uri of the document.
+     * @param mimeType The MIME type of the document, only used for logging.
+     * @return The metadata of the document, with unknown tags if it could not be read.
+     */
+    private TrackMetadata readMetadata(Context ctx, Uri uri, String mimeType){
+        Log.d(TAG, "MusicTrack: got document " + name + " of type " + mimeType);
+        if(!isAudio){
+            return TrackMetadata.NOT_AUDIO;
+        }
+        TrackMetadata tags = readTags(ctx, uri);
+        if(tags != null){
+            return tags;
+        }
+        try (MediaMetadataRetriever mmr = new MediaMetadataRetriever()) {
+            mmr.setDataSource(ctx, uri);
+            String title = mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_TITLE);
+            String s = mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_CD_TRACK_NUMBER);
+            String track;
+            if(s != null && s.lastIndexOf('/') == -1){
+                track = s;
+            }else if(s != null){
+                track = s.substring(0, s.lastIndexOf('/'));
             }else{
-                this.df = df;
-                this.title = null;
-                this.track = null;
-                this.artist = null;
-                this.album = null;
-                isAudio = false;
+                track = null;
             }
-        }else{
-            this.df = df;
-            this.title = null;
-            this.track = null;
-            this.artist = null;
-            this.album = null;
-            isAudio = false;
+            String artist = mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_ARTIST);
+            String album = mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_ALBUM);
+            String length = mmr.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+            int duration = -1;
+            if(length != null){
+                try {
+                    duration = Integer.parseInt(length.trim());
+                } catch (NumberFormatException e) {
+                    Log.w(TAG, "readMetadata: bad duration " + length + " of " + name);
+                }
+            }
+            return new TrackMetadata(title, track, artist, album, duration, true);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "readMetadata: could not read tags of " + name, e);
+            return new TrackMetadata(null, null, null, null, true);
         }
+    }
 
+    /**
+     * The readTags method reads the tags of the document with the TagReader.
+     * @param ctx The context used to open the document.
+     * @param uri The Uri of the document.
+     * @return The metadata of the document or null if it could not be read this way.
+     */
+    private TrackMetadata readTags(Context ctx, Uri uri){
+        if(ctx == null){
+            return null;
+        }
+        try {
+            ParcelFileDescriptor pfd = ctx.getContentResolver().openFileDescriptor(uri, "r");
+            if(pfd == null){
+                return null;
+            }
+            try (FileInputStream in = new ParcelFileDescriptor.AutoCloseInputStream(pfd)) {
+                return TAG_READERS.get().read(in.getChannel());
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "readTags: could not read tags of " + name, e);
+            return null;
+        }
     }
     public String getTitle(){
-        return title;
+        return resolve().getTitle();
     }
     public String getTrack(){
-        return track;
+        return resolve().getTrack();
+    }
+
+    /**
+     * The peekTrack method returns the track number without reading the file.
+     * @return The track number or null if unknown or not resolved yet.
+     */
+    public String peekTrack(){
+        TrackMetadata m = metadata;
+        return m == null ? null : m.getTrack();
     }
     public String getArtist(){
-        return artist;
+        return resolve().getArtist();
     }
     public String getAlbum(){
-        return album;
+        return resolve().getAlbum();
     }
+    /**
+     * The getUri method returns the Uri of the document. A new Uri equal to the one the track
+     * was created with is returned on each call.
+     * @return The Uri of the document.
+     */
     public Uri getUri(){
-        return df.getUri();
+        return Uri.parse(getUriString());
+    }
+
+    /**
+     * The getUriString method returns the Uri of the document as a string.
+     * @return The Uri string of the document.
+     */
+    public String getUriString(){
+        return uriPrefix.concat(uriSuffix);
+    }
+
+    /**
+     * The hasUri method checks if the track is the document of a Uri without building its Uri.
+     * @param uri The Uri string to compare with.
+     * @return True if the track has this Uri.
+     */
+    public boolean hasUri(@NonNull String uri){
+        return uri.length() == uriPrefix.length() + uriSuffix.length()
+                && uri.startsWith(uriPrefix) && uri.endsWith(uriSuffix);
     }
     public String getName(){
-        return df.getName();
+        return name;
+    }
+
+    /**
+     * The getFolder method returns the document ID of the directory the track was found in.
+     * @return The folder of the track or null if unknown.
+     */
+    public String getFolder(){
+        return folder;
     }
     public boolean getIsAudio(){
         return isAudio;
     }
+
+    /**
+     * The peekMetadata method returns the tags of the track without reading the file.
+     * @return The tags or null if they were not read yet.
+     */
+    public TrackMetadata peekMetadata(){
+        return metadata;
+    }
+    public long getSize(){
+        return size;
+    }
+    public long getLastModified(){
+        return lastModified;
+    }
 }
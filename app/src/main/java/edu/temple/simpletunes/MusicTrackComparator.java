@@ -1,36 +1,185 @@
 package edu.temple.simpletunes;
 
-import android.util.Log;
-
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.Scanner;
+import java.util.Locale;
 
+/**
+ * The MusicTrackComparator class orders the tracks of a folder for the playlist. Tracks are
+ * grouped by folder, tracks with a track number come first in track number order and the
+ * rest follow by file name. File names are compared in the order of the current locale and
+ * numbers inside them are compared by value, so "2 - x" comes before "10 - y".
+ * <p>
+ * Sorting many tracks should use {@link #sort(MusicTrack[])}, which reads the track number
+ * once per track and builds the CollationKey of a name once, the first time two tracks have
+ * to be ordered by name, instead of comparing the names again on every comparison.
+ * <p>
+ * The track number of a lazy track is unknown until its tags are read, so its place changes
+ * once it is resolved. A list sorted before that must be sorted again, not searched.
+ */
 public class MusicTrackComparator implements Comparator<MusicTrack> {
+    /**
+     * The width digit runs of a name are padded to so they compare by value.
+     */
+    private static final int NUMBER_WIDTH = 10;
+    /**
+     * The collator of the locale, not shared with other comparators since it is not thread safe.
+     */
+    private final Collator mCollator;
+
     public MusicTrackComparator(){
+        this(Locale.getDefault());
     }
+
+    /**
+     * Initialize the comparator for a locale.
+     * @param locale The locale whose rules order the file names.
+     */
+    public MusicTrackComparator(Locale locale){
+        mCollator = Collator.getInstance(locale);
+    }
+
     @Override
     public int compare(MusicTrack t1, MusicTrack t2) {
-        String s1 = t1.getTrack();
-        String s2 = t2.getTrack();
-        if(s1 != null && s2 != null){
-            Scanner one = new Scanner(s1);
-            int i1;
-            if(one.hasNextInt()){
-                i1 = one.nextInt();
-                Scanner two = new Scanner(s2);
-                int i2;
-                if(two.hasNextInt()){
-                    i2 = two.nextInt();
-                    return Integer.compare(i1, i2);
+        // Keep the tracks of each folder together when a tree was scanned recursively.
+        int c = compareFolders(t1.getFolder(), t2.getFolder());
+        if(c != 0){
+            return c;
+        }
+        // Lazy tracks that are not resolved yet have no track number and fall back to the name.
+        c = compareTrackNumbers(trackNumber(t1), trackNumber(t2));
+        if(c != 0){
+            return c;
+        }
+        String s1 = t1.getName();
+        String s2 = t2.getName();
+        if(s1 == null || s2 == null){
+            return s1 == null ? (s2 == null ? 0 : 1) : -1;
+        }
+        c = mCollator.compare(naturalKey(s1), naturalKey(s2));
+        return c != 0 ? c : s1.compareTo(s2);
+    }
+
+    /**
+     * The sort method sorts tracks in the order of {@link #compare(MusicTrack, MusicTrack)}.
+     * The sort keys of each track are computed once before sorting.
+     * @param tracks The tracks to sort in place.
+     */
+    public void sort(MusicTrack[] tracks) {
+        SortKey[] keys = new SortKey[tracks.length];
+        for(int i = 0; i < tracks.length; i++){
+            keys[i] = new SortKey(tracks[i]);
+        }
+        Arrays.sort(keys);
+        for(int i = 0; i < tracks.length; i++){
+            tracks[i] = keys[i].track;
+        }
+    }
+
+    /**
+     * The naturalKey method pads every run of digits in a name to the same width so the
+     * collator compares numbers by value. Leading zeros are dropped first.
+     * @param name The file name.
+     * @return The name to collate.
+     */
+    static String naturalKey(String name) {
+        int length = name.length();
+        StringBuilder key = null;
+        int i = 0;
+        while(i < length){
+            char ch = name.charAt(i);
+            if(ch < '0' || ch > '9'){
+                if(key != null){
+                    key.append(ch);
                 }
+                i++;
+                continue;
+            }
+            int start = i;
+            while(i < length && name.charAt(i) >= '0' && name.charAt(i) <= '9'){
+                i++;
             }
+            if(key == null){
+                key = new StringBuilder(length + NUMBER_WIDTH);
+                key.append(name, 0, start);
+            }
+            int digits = start;
+            while(digits < i - 1 && name.charAt(digits) == '0'){
+                digits++;
+            }
+            for(int pad = i - digits; pad < NUMBER_WIDTH; pad++){
+                key.append('0');
+            }
+            key.append(name, digits, i);
         }
-        s1 = t1.getName();
-        s2 = t2.getName();
-        if(s1 != null && s2 != null){
-            return s1.compareTo(s2);
-        }else{
+        return key == null ? name : key.toString();
+    }
+
+    private static int compareFolders(String f1, String f2) {
+        if(f1 == f2){
             return 0;
         }
+        if(f1 == null || f2 == null){
+            return f1 == null ? -1 : 1;
+        }
+        return f1.compareTo(f2);
+    }
+
+    private static int compareTrackNumbers(int n1, int n2) {
+        if((n1 < 0) != (n2 < 0)){
+            return n1 < 0 ? 1 : -1;
+        }
+        return Integer.compare(n1, n2);
+    }
+
+    private static int trackNumber(MusicTrack track) {
+        return TrackMetadata.parseTrackNumber(track.peekTrack());
+    }
+
+    /**
+     * The SortKey class holds the values a track is sorted on, extracted once.
+     */
+    private class SortKey implements Comparable<SortKey> {
+        final MusicTrack track;
+        final String folder;
+        final int number;
+        final String name;
+        /**
+         * The collation key of the name, built when it is first compared.
+         */
+        private CollationKey nameKey;
+
+        SortKey(MusicTrack track) {
+            this.track = track;
+            this.folder = track.getFolder();
+            this.number = trackNumber(track);
+            this.name = track.getName();
+        }
+
+        private CollationKey getNameKey() {
+            if(nameKey == null && name != null){
+                nameKey = mCollator.getCollationKey(naturalKey(name));
+            }
+            return nameKey;
+        }
+
+        @Override
+        public int compareTo(SortKey other) {
+            int c = compareFolders(folder, other.folder);
+            if(c != 0){
+                return c;
+            }
+            c = compareTrackNumbers(number, other.number);
+            if(c != 0){
+                return c;
+            }
+            if(name == null || other.name == null){
+                return name == null ? (other.name == null ? 0 : 1) : -1;
+            }
+            c = getNameKey().compareTo(other.getNameKey());
+            return c != 0 ? c : name.compareTo(other.name);
+        }
     }
 }
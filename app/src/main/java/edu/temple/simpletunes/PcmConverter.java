@@ -0,0 +1,122 @@
+package edu.temple.simpletunes;
+
+/**
+ * The PcmConverter class turns the 16-bit PCM frames of a decoder into the channel count and
+ * sample rate of the output. Channels are duplicated or dropped, and the rate is converted by
+ * linear interpolation with a fixed-point phase that carries over from one block to the
+ * next, so blocks join without clicks. Converting does not allocate. The class is not
+ * thread safe.
+ */
+public class PcmConverter {
+    /**
+     * The fixed-point scale of the phase, 32 fractional bits.
+     */
+    private static final long ONE = 1L << 32;
+
+    private final int mOutChannels;
+    private final int mOutRate;
+    private int mInChannels;
+    private int mInRate;
+    /**
+     * The input frames advanced per output frame, in fixed point.
+     */
+    private long mStep;
+    /**
+     * The position of the next output frame, in fixed point, where ONE is the first frame of
+     * the next block and 0 is the last frame of the previous one.
+     */
+    private long mPhase;
+    /**
+     * The last frame of the previous block, in output channels.
+     */
+    private final short[] mLast;
+
+    /**
+     * Initialize a converter to a format.
+     * @param outChannels The channels of the output.
+     * @param outRate The sample rate of the output.
+     */
+    public PcmConverter(int outChannels, int outRate) {
+        mOutChannels = outChannels;
+        mOutRate = outRate;
+        mLast = new short[outChannels];
+        configure(outChannels, outRate);
+    }
+
+    /**
+     * The configure method sets the format of the input and resets the converter.
+     * @param inChannels The channels of the input.
+     * @param inRate The sample rate of the input.
+     */
+    public void configure(int inChannels, int inRate) {
+        if (inChannels <= 0 || inRate <= 0) {
+            throw new IllegalArgumentException("Format " + inChannels + " x " + inRate);
+        }
+        mInChannels = inChannels;
+        mInRate = inRate;
+        mStep = (inRate * ONE) / mOutRate;
+        reset();
+    }
+
+    /**
+     * The reset method forgets the previous block, used after a seek.
+     */
+    public void reset() {
+        mPhase = ONE;
+        for (int c = 0; c < mOutChannels; c++) {
+            mLast[c] = 0;
+        }
+    }
+
+    /**
+     * The maxOutputFrames method returns the most frames a block of input converts to.
+     * @param inFrames The frames of the input block.
+     * @return The size of the output block in frames.
+     */
+    public int maxOutputFrames(int inFrames) {
+        return (int) ((long) inFrames * mOutRate / mInRate) + 2;
+    }
+
+    /**
+     * The convert method converts a block of frames.
+     * @param in The interleaved input samples.
+     * @param inFrames The number of input frames.
+     * @param out The interleaved output samples, at least maxOutputFrames(inFrames) frames.
+     * @return The number of output frames.
+     */
+    public int convert(short[] in, int inFrames, short[] out) {
+        if (inFrames <= 0) {
+            return 0;
+        }
+        if (mInRate == mOutRate) {
+            for (int f = 0; f < inFrames; f++) {
+                for (int c = 0; c < mOutChannels; c++) {
+                    out[f * mOutChannels + c] = sample(in, f, c);
+                }
+            }
+            return inFrames;
+        }
+        long end = (long) inFrames << 32;
+        int frames = 0;
+        while (mPhase < end) {
+            int index = (int) (mPhase >>> 32);
+            long fraction = mPhase & (ONE - 1);
+            for (int c = 0; c < mOutChannels; c++) {
+                int from = index == 0 ? mLast[c] : sample(in, index - 1, c);
+                int to = sample(in, index, c);
+                out[frames * mOutChannels + c] = (short) (from + (((to - from) * fraction) >> 32));
+            }
+            frames++;
+            mPhase += mStep;
+        }
+        mPhase -= end;
+        for (int c = 0; c < mOutChannels; c++) {
+            mLast[c] = sample(in, inFrames - 1, c);
+        }
+        return frames;
+    }
+
+    private short sample(short[] in, int frame, int channel) {
+        return in[frame * mInChannels + Math.min(channel, mInChannels - 1)];
+    }
+}
@@ -0,0 +1,165 @@
+package edu.temple.simpletunes;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The PcmRing class is a lock-free ring buffer of 16-bit PCM samples between one producer
+ * thread, a decoder, and one consumer thread, the mixer. Each side only writes its own
+ * position, so neither ever waits on a lock, and reading or writing copies samples without
+ * allocating. The producer can also end the stream and discard what the consumer has not
+ * read yet after a seek. Methods are marked with the side that may call them.
+ */
+public class PcmRing {
+    private final short[] mBuffer;
+    private final int mMask;
+    /**
+     * The number of samples written and read since the start. Only the producer moves the
+     * first and only the consumer moves the second.
+     */
+    private final AtomicLong mWrite = new AtomicLong();
+    private final AtomicLong mRead = new AtomicLong();
+    /**
+     * The write position the consumer skips to, everything before it is stale.
+     */
+    private volatile long mDiscard = 0;
+    /**
+     * The write position at the end of the stream or -1 while more samples may follow.
+     */
+    private volatile long mEnd = -1;
+
+    /**
+     * Initialize an empty ring.
+     * @param capacity The least number of samples it holds, rounded up to a power of two.
+     */
+    public PcmRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mBuffer = new short[size];
+        mMask = size - 1;
+    }
+
+    public int capacity() {
+        return mBuffer.length;
+    }
+
+    /**
+     * The free method returns the number of samples that can be written. Producer.
+     * @return The free space.
+     */
+    public int free() {
+        return mBuffer.length - (int) (mWrite.get() - mRead.get());
+    }
+
+    /**
+     * The write method copies as many samples as fit into the ring. Producer.
+     * @param src The samples.
+     * @param offset The index of the first sample.
+     * @param length The number of samples.
+     * @return The number of samples written.
+     */
+    public int write(short[] src, int offset, int length) {
+        long write = mWrite.get();
+        int count = Math.min(length, mBuffer.length - (int) (write - mRead.get()));
+        if (count <= 0) {
+            return 0;
+        }
+        int start = (int) (write & mMask);
+        int first = Math.min(count, mBuffer.length - start);
+        System.arraycopy(src, offset, mBuffer, start, first);
+        System.arraycopy(src, offset + first, mBuffer, 0, count - first);
+        // The samples are visible to the consumer once it sees the new position.
+        mWrite.lazySet(write + count);
+        return count;
+    }
+
+    /**
+     * The finish method marks the end of the stream after the samples written so far.
+     * Producer.
+     */
+    public void finish() {
+        mEnd = mWrite.get();
+    }
+
+    /**
+     * The discard method drops the samples the consumer has not read yet and reopens the
+     * stream, used after a seek. The space is free again once the consumer next looks at
+     * the ring. Producer.
+     */
+    public void discard() {
+        mEnd = -1;
+        mDiscard = mWrite.get();
+    }
+
+    /**
+     * The getWritePosition method returns the number of samples written since the start.
+     * Producer.
+     * @return The position.
+     */
+    public long getWritePosition() {
+        return mWrite.get();
+    }
+
+    /**
+     * The available method returns the number of samples that can be read. Consumer.
+     * @return The samples written and not read yet.
+     */
+    public int available() {
+        return (int) (mWrite.get() - catchUp());
+    }
+
+    /**
+     * The read method copies as many samples as are available out of the ring. Consumer.
+     * @param dst The array the samples are copied to.
+     * @param offset The index of the first sample in dst.
+     * @param length The most samples copied.
+     * @return The number of samples read.
+     */
+    public int read(short[] dst, int offset, int length) {
+        long read = catchUp();
+        int count = Math.min(length, (int) (mWrite.get() - read));
+        if (count <= 0) {
+            return 0;
+        }
+        int start = (int) (read & mMask);
+        int first = Math.min(count, mBuffer.length - start);
+        System.arraycopy(mBuffer, start, dst, offset, first);
+        System.arraycopy(mBuffer, 0, dst, offset + first, count - first);
+        mRead.lazySet(read + count);
+        return count;
+    }
+
+    /**
+     * The isEndOfStream method tells if the producer wrote its last sample. Consumer.
+     * @return True if no more samples follow the available ones.
+     */
+    public boolean isEndOfStream() {
+        return mEnd >= 0;
+    }
+
+    /**
+     * The isFinished method tells if every sample of the stream was read. Consumer.
+     * @return True at the end of the stream.
+     */
+    public boolean isFinished() {
+        long end = mEnd;
+        return end >= 0 && catchUp() >= end;
+    }
+
+    /**
+     * The getReadPosition method returns the number of samples read or discarded since the
+     * start. It can be called from any thread.
+     * @return The position.
+     */
+    public long getReadPosition() {
+        return mRead.get();
+    }
+
+    private long catchUp() {
+        long read = mRead.get();
+        long discard = mDiscard;
+        if (discard > read) {
+            mRead.lazySet(discard);
+            return discard;
+        }
+        return read;
+    }
+}
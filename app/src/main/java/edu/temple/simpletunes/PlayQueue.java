@@ -0,0 +1,498 @@
+package edu.temple.simpletunes;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The PlayQueue class holds the play order as a list of int track IDs in an implicit treap, a
+ * balanced binary tree ordered by position where every node knows the size of its subtree.
+ * Looking up, inserting, removing and moving an entry takes O(log n) expected time, so long
+ * queues are edited without copying them.
+ * <p>
+ * Nodes are stored in parallel int arrays instead of objects and every node has a link to its
+ * parent, so the current entry is followed across edits and its position is found by walking
+ * up to the root. The same track ID may be queued more than once, but only IDs queued once
+ * can be looked up by {@link #positionOfId(int)}. The class is not thread safe.
+ */
+public class PlayQueue {
+    /**
+     * The link used for a missing node.
+     */
+    private static final int NIL = -1;
+    /**
+     * The track ID of each node.
+     */
+    private int[] mIds;
+    /**
+     * The left child, right child and parent of each node.
+     */
+    private int[] mLeft;
+    private int[] mRight;
+    private int[] mParent;
+    /**
+     * The number of nodes in the subtree of each node.
+     */
+    private int[] mSizes;
+    /**
+     * The random heap priority of each node, which keeps the tree balanced.
+     */
+    private int[] mPriorities;
+    /**
+     * The root node or NIL if the queue is empty.
+     */
+    private int mRoot = NIL;
+    /**
+     * The number of node slots in use, freed slots below it are chained through mLeft.
+     */
+    private int mUsed = 0;
+    /**
+     * The first freed node slot or NIL.
+     */
+    private int mFree = NIL;
+    /**
+     * The node of the current entry or NIL if there is none.
+     */
+    private int mCurrent = NIL;
+    /**
+     * The node of each track ID or NIL, indexed by track ID.
+     */
+    private int[] mNodeOfId = new int[0];
+    /**
+     * The number of times entries were set, inserted, removed or moved.
+     */
+    private int mModCount = 0;
+    private final Random mRandom;
+
+    /**
+     * Initialize an empty queue.
+     */
+    public PlayQueue() {
+        this(new int[0]);
+    }
+
+    /**
+     * Initialize the queue with a list of track IDs in O(n). The first entry is current.
+     * @param ids The track IDs in play order.
+     */
+    public PlayQueue(int[] ids) {
+        this(ids, new Random());
+    }
+
+    /**
+     * Initialize the queue with a list of track IDs and a source of priorities.
+     * @param ids The track IDs in play order.
+     * @param random The random numbers used to balance the tree.
+     */
+    PlayQueue(int[] ids, Random random) {
+        mRandom = random;
+        int capacity = Math.max(16, ids.length);
+        mIds = new int[capacity];
+        mLeft = new int[capacity];
+        mRight = new int[capacity];
+        mParent = new int[capacity];
+        mSizes = new int[capacity];
+        mPriorities = new int[capacity];
+        setAll(ids);
+    }
+
+    /**
+     * The setAll method replaces the entries of the queue in O(n). The first entry is current.
+     * @param ids The track IDs in play order.
+     */
+    public void setAll(int[] ids) {
+        mModCount++;
+        mRoot = NIL;
+        mUsed = 0;
+        mFree = NIL;
+        Arrays.fill(mNodeOfId, NIL);
+        ensureCapacity(ids.length);
+        // Build the treap from left to right with a stack of its right spine.
+        int[] spine = new int[ids.length];
+        int top = 0;
+        for(int id : ids){
+            int node = newNode(id);
+            int last = NIL;
+            while(top > 0 && mPriorities[spine[top - 1]] < mPriorities[node]){
+                last = spine[--top];
+            }
+            mLeft[node] = last;
+            if(top > 0){
+                mRight[spine[top - 1]] = node;
+            }
+            spine[top++] = node;
+        }
+        mRoot = top > 0 ? spine[0] : NIL;
+        if(mRoot != NIL){
+            mParent[mRoot] = NIL;
+            fixSizes(mRoot);
+        }
+        mCurrent = ids.length > 0 ? first(mRoot) : NIL;
+    }
+
+    public int size() {
+        return mRoot == NIL ? 0 : mSizes[mRoot];
+    }
+
+    /**
+     * The get method returns the track ID at a position.
+     * @param position The position in the queue.
+     * @return The track ID.
+     */
+    public int get(int position) {
+        return mIds[nodeAt(position)];
+    }
+
+    /**
+     * The getPosition method returns the position of the current entry.
+     * @return The position or -1 if there is no current entry.
+     */
+    public int getPosition() {
+        return mCurrent == NIL ? -1 : positionOf(mCurrent);
+    }
+
+    /**
+     * The getCurrentId method returns the track ID of the current entry.
+     * @return The track ID or -1 if there is no current entry.
+     */
+    public int getCurrentId() {
+        return mCurrent == NIL ? -1 : mIds[mCurrent];
+    }
+
+    /**
+     * The positionOfId method finds the position of the entry with a track ID in O(log n).
+     * @param id The track ID, queued once.
+     * @return The position or -1 if the track ID is not queued.
+     */
+    public int positionOfId(int id) {
+        if(id < 0 || id >= mNodeOfId.length || mNodeOfId[id] == NIL){
+            return -1;
+        }
+        return positionOf(mNodeOfId[id]);
+    }
+
+    /**
+     * The setPosition method makes the entry at a position the current one.
+     * @param position The position in the queue.
+     */
+    public void setPosition(int position) {
+        mCurrent = nodeAt(position);
+    }
+
+    /**
+     * The insert method adds a track ID before the entry at a position.
+     * @param position The position of the new entry, size() to append it.
+     * @param id The track ID.
+     */
+    public void insert(int position, int id) {
+        if(position < 0 || position > size()){
+            throw new IndexOutOfBoundsException("Position " + position + " of " + size());
+        }
+        mModCount++;
+        int node = newNode(id);
+        mSizes[node] = 1;
+        long split = split(mRoot, position);
+        mRoot = merge(merge(left(split), node), right(split));
+        mParent[mRoot] = NIL;
+        if(mCurrent == NIL){
+            mCurrent = node;
+        }
+    }
+
+    /**
+     * The add method appends a track ID to the end of the queue.
+     * @param id The track ID.
+     */
+    public void add(int id) {
+        insert(size(), id);
+    }
+
+    /**
+     * The remove method removes the entry at a position. If it was the current entry, the
+     * entry after it becomes current, or the one before it if it was the last.
+     * @param position The position in the queue.
+     * @return The track ID of the removed entry.
+     */
+    public int remove(int position) {
+        int node = detach(position);
+        mModCount++;
+        if(node == mCurrent){
+            int size = size();
+            mCurrent = size == 0 ? NIL : nodeAt(Math.min(position, size - 1));
+        }
+        int id = mIds[node];
+        if(id >= 0 && mNodeOfId[id] == node){
+            mNodeOfId[id] = NIL;
+        }
+        mLeft[node] = mFree;
+        mFree = node;
+        return id;
+    }
+
+    /**
+     * The move method moves the entry at a position to another position. The current entry
+     * stays current.
+     * @param from The position of the entry.
+     * @param to The position of the entry after the move.
+     */
+    public void move(int from, int to) {
+        if(to < 0 || to >= size()){
+            throw new IndexOutOfBoundsException("Position " + to + " of " + size());
+        }
+        int node = detach(from);
+        mModCount++;
+        mSizes[node] = 1;
+        long split = split(mRoot, to);
+        mRoot = merge(merge(left(split), node), right(split));
+        mParent[mRoot] = NIL;
+    }
+
+    /**
+     * The getModCount method returns a number that changes whenever the entries change, but
+     * not when only the current entry does, so a list of the entries can be reused until then.
+     * @return The number of changes of the entries.
+     */
+    public int getModCount() {
+        return mModCount;
+    }
+
+    /**
+     * The toArray method returns the track IDs in play order.
+     * @return The track IDs.
+     */
+    public int[] toArray() {
+        int[] ids = new int[size()];
+        int n = 0;
+        // In-order walk with the parent links instead of a stack.
+        int node = mRoot == NIL ? NIL : first(mRoot);
+        while(node != NIL){
+            ids[n++] = mIds[node];
+            node = next(node);
+        }
+        return ids;
+    }
+
+    /**
+     * The detach method unlinks the node at a position from the tree without freeing it.
+     * @param position The position in the queue.
+     * @return The detached node.
+     */
+    private int detach(int position) {
+        if(position < 0 || position >= size()){
+            throw new IndexOutOfBoundsException("Position " + position + " of " + size());
+        }
+        long split = split(mRoot, position);
+        long rest = split(right(split), 1);
+        int node = left(rest);
+        mRoot = merge(left(split), right(rest));
+        if(mRoot != NIL){
+            mParent[mRoot] = NIL;
+        }
+        mParent[node] = NIL;
+        return node;
+    }
+
+    /**
+     * The split method cuts a subtree into its first count entries and the rest.
+     * @param node The root of the subtree or NIL.
+     * @param count The number of entries of the left part.
+     * @return The roots of both parts, packed by {@link #pack(int, int)}.
+     */
+    private long split(int node, int count) {
+        if(node == NIL){
+            return pack(NIL, NIL);
+        }
+        int leftSize = size(mLeft[node]);
+        if(count <= leftSize){
+            long parts = split(mLeft[node], count);
+            setLeft(node, right(parts));
+            update(node);
+            return pack(left(parts), node);
+        }
+        long parts = split(mRight[node], count - leftSize - 1);
+        setRight(node, left(parts));
+        update(node);
+        return pack(node, right(parts));
+    }
+
+    /**
+     * The merge method joins two subtrees, all entries of a before those of b.
+     * @param a The root of the first subtree or NIL.
+     * @param b The root of the second subtree or NIL.
+     * @return The root of the joined subtree.
+     */
+    private int merge(int a, int b) {
+        if(a == NIL || b == NIL){
+            return a == NIL ? b : a;
+        }
+        if(mPriorities[a] > mPriorities[b]){
+            setRight(a, merge(mRight[a], b));
+            update(a);
+            return a;
+        }
+        setLeft(b, merge(a, mLeft[b]));
+        update(b);
+        return b;
+    }
+
+    /**
+     * The nodeAt method finds the node at a position by descending from the root.
+     * @param position The position in the queue.
+     * @return The node.
+     */
+    private int nodeAt(int position) {
+        if(position < 0 || position >= size()){
+            throw new IndexOutOfBoundsException("Position " + position + " of " + size());
+        }
+        int node = mRoot;
+        while(true){
+            int leftSize = size(mLeft[node]);
+            if(position < leftSize){
+                node = mLeft[node];
+            }else if(position == leftSize){
+                return node;
+            }else{
+                position -= leftSize + 1;
+                node = mRight[node];
+            }
+        }
+    }
+
+    /**
+     * The positionOf method finds the position of a node by walking up to the root.
+     * @param node The node.
+     * @return The position of the node.
+     */
+    private int positionOf(int node) {
+        int position = size(mLeft[node]);
+        while(mParent[node] != NIL){
+            int parent = mParent[node];
+            if(mRight[parent] == node){
+                position += size(mLeft[parent]) + 1;
+            }
+            node = parent;
+        }
+        return position;
+    }
+
+    private int first(int node) {
+        while(mLeft[node] != NIL){
+            node = mLeft[node];
+        }
+        return node;
+    }
+
+    /**
+     * The next method finds the node after a node in play order.
+     * @param node The node.
+     * @return The next node or NIL if it is the last.
+     */
+    private int next(int node) {
+        if(mRight[node] != NIL){
+            return first(mRight[node]);
+        }
+        while(mParent[node] != NIL && mRight[mParent[node]] == node){
+            node = mParent[node];
+        }
+        return mParent[node];
+    }
+
+    private int newNode(int id) {
+        int node;
+        if(mFree != NIL){
+            node = mFree;
+            mFree = mLeft[node];
+        }else{
+            ensureCapacity(mUsed + 1);
+            node = mUsed++;
+        }
+        mIds[node] = id;
+        if(id >= 0){
+            if(id >= mNodeOfId.length){
+                int length = mNodeOfId.length;
+                mNodeOfId = Arrays.copyOf(mNodeOfId, Math.max(id + 1, length * 2));
+                Arrays.fill(mNodeOfId, length, mNodeOfId.length, NIL);
+            }
+            mNodeOfId[id] = node;
+        }
+        mLeft[node] = NIL;
+        mRight[node] = NIL;
+        mParent[node] = NIL;
+        mSizes[node] = 1;
+        mPriorities[node] = mRandom.nextInt();
+        return node;
+    }
+
+    private void ensureCapacity(int count) {
+        if(count <= mIds.length){
+            return;
+        }
+        int capacity = Math.max(count, mIds.length * 2);
+        mIds = Arrays.copyOf(mIds, capacity);
+        mLeft = Arrays.copyOf(mLeft, capacity);
+        mRight = Arrays.copyOf(mRight, capacity);
+        mParent = Arrays.copyOf(mParent, capacity);
+        mSizes = Arrays.copyOf(mSizes, capacity);
+        mPriorities = Arrays.copyOf(mPriorities, capacity);
+    }
+
+    /**
+     * The fixSizes method computes the subtree sizes and parent links of a subtree after it
+     * was built, without recursion.
+     * @param root The root of the subtree.
+     */
+    private void fixSizes(int root) {
+        int[] order = new int[mSizes.length];
+        int n = 0;
+        order[n++] = root;
+        for(int i = 0; i < n; i++){
+            int node = order[i];
+            if(mLeft[node] != NIL){
+                mParent[mLeft[node]] = node;
+                order[n++] = mLeft[node];
+            }
+            if(mRight[node] != NIL){
+                mParent[mRight[node]] = node;
+                order[n++] = mRight[node];
+            }
+        }
+        // Children come after their parent in breadth first order.
+        for(int i = n - 1; i >= 0; i--){
+            int node = order[i];
+            mSizes[node] = 1 + size(mLeft[node]) + size(mRight[node]);
+        }
+    }
+
+    private void setLeft(int node, int child) {
+        mLeft[node] = child;
+        if(child != NIL){
+            mParent[child] = node;
+        }
+    }
+
+    private void setRight(int node, int child) {
+        mRight[node] = child;
+        if(child != NIL){
+            mParent[child] = node;
+        }
+    }
+
+    private void update(int node) {
+        mSizes[node] = 1 + size(mLeft[node]) + size(mRight[node]);
+    }
+
+    private int size(int node) {
+        return node == NIL ? 0 : mSizes[node];
+    }
+
+    private static long pack(int left, int right) {
+        return (long) left << 32 | (right & 0xFFFFFFFFL);
+    }
+
+    private static int left(long parts) {
+        return (int) (parts >> 32);
+    }
+
+    private static int right(long parts) {
+        return (int) parts;
+    }
+}
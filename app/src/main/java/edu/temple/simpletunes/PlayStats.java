@@ -0,0 +1,116 @@
+package edu.temple.simpletunes;
+
+/**
+ * The PlayStats class holds how often and how recently a track was played and its rating,
+ * and turns them into the weight of the track in a weighted shuffle.
+ */
+public class PlayStats {
+    /**
+     * The shuffle modes: every track equally likely, tracks that are rated higher and played
+     * more often first, or tracks that are played less often and less recently first.
+     */
+    public static final int SHUFFLE_UNIFORM = 0;
+    public static final int SHUFFLE_FAVORITES = 1;
+    public static final int SHUFFLE_FRESH = 2;
+    public static final int SHUFFLE_MODE_COUNT = 3;
+    /**
+     * The highest rating.
+     */
+    public static final int MAX_RATING = 5;
+    /**
+     * The stats of a track that was never played or rated.
+     */
+    public static final PlayStats NONE = new PlayStats(0, 0, 0);
+    /**
+     * The weight of a track without stats, the scale of all weights.
+     */
+    private static final long BASE_WEIGHT = 1000;
+    /**
+     * The time after which a track counts as not played recently.
+     */
+    private static final long RECENT_MILLIS = 7L * 24 * 60 * 60 * 1000;
+
+    private final int playCount;
+    /**
+     * The time the track was last played, from System.currentTimeMillis, or 0 if never.
+     */
+    private final long lastPlayed;
+    /**
+     * The rating from 1 to MAX_RATING or 0 if the track is not rated.
+     */
+    private final int rating;
+
+    /**
+     * Initialize the stats.
+     * @param playCount The number of times the track was played.
+     * @param lastPlayed The time the track was last played or 0 if never.
+     * @param rating The rating from 1 to MAX_RATING or 0 if not rated.
+     */
+    public PlayStats(int playCount, long lastPlayed, int rating) {
+        this.playCount = playCount;
+        this.lastPlayed = lastPlayed;
+        this.rating = Math.max(0, Math.min(MAX_RATING, rating));
+    }
+
+    public int getPlayCount() {
+        return playCount;
+    }
+
+    public long getLastPlayed() {
+        return lastPlayed;
+    }
+
+    public int getRating() {
+        return rating;
+    }
+
+    /**
+     * The played method returns the stats after the track was played once more.
+     * @param time The time it was played.
+     * @return The new stats.
+     */
+    public PlayStats played(long time) {
+        return new PlayStats(playCount + 1, time, rating);
+    }
+
+    /**
+     * The rated method returns the stats with a new rating.
+     * @param rating The rating from 1 to MAX_RATING or 0 to clear it.
+     * @return The new stats.
+     */
+    public PlayStats rated(int rating) {
+        return new PlayStats(playCount, lastPlayed, rating);
+    }
+
+    /**
+     * The weight method returns the relative chance of the track being drawn next in a
+     * shuffle mode. Unrated tracks count as rated in the middle.
+     * @param mode One of the SHUFFLE constants.
+     * @param now The current time, from System.currentTimeMillis.
+     * @return The weight, at least 1.
+     */
+    public long weight(int mode, long now) {
+        long weight;
+        switch (mode) {
+            case SHUFFLE_FAVORITES: {
+                int stars = rating == 0 ? (MAX_RATING + 1) / 2 : rating;
+                // Each star doubles the chance, plays add to it slowly.
+                weight = (BASE_WEIGHT << stars) / (1 << MAX_RATING) * (4 + Math.min(playCount, 60)) / 4;
+                break;
+            }
+            case SHUFFLE_FRESH: {
+                weight = BASE_WEIGHT * 4 / (4 + Math.min(playCount, 1000));
+                long age = lastPlayed == 0 ? RECENT_MILLIS : Math.max(0, now - lastPlayed);
+                if (age < RECENT_MILLIS) {
+                    // A track played in the last week comes back slowly.
+                    weight = weight * (1 + age * 15 / RECENT_MILLIS) / 16;
+                }
+                break;
+            }
+            default:
+                weight = BASE_WEIGHT;
+                break;
+        }
+        return Math.max(1, weight);
+    }
+}
@@ -0,0 +1,127 @@
+package edu.temple.simpletunes;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The PlayStatsStore class is a persistent store of the play count, last played time and
+ * rating of each track, keyed by the document Uri. The stats are read all at once when the
+ * MediaPlayerService starts and changes are written in batches by flush.
+ */
+public class PlayStatsStore extends SQLiteOpenHelper {
+    /**
+     * The name of the database file.
+     */
+    private static final String DATABASE_NAME = "play_stats.db";
+    /**
+     * The version of the database schema.
+     */
+    private static final int DATABASE_VERSION = 1;
+    /**
+     * The table holding one row per played or rated track.
+     */
+    private static final String TABLE = "stats";
+    private static final String COLUMN_URI = "uri";
+    private static final String COLUMN_PLAY_COUNT = "play_count";
+    private static final String COLUMN_LAST_PLAYED = "last_played";
+    private static final String COLUMN_RATING = "rating";
+    /**
+     * The stats waiting to be written by flush, the latest of each track.
+     */
+    private final ConcurrentHashMap<String, PlayStats> mPending = new ConcurrentHashMap<>();
+
+    /**
+     * Initialize the store.
+     * @param context The context used to open the database.
+     */
+    public PlayStatsStore(Context context) {
+        super(context.getApplicationContext(), DATABASE_NAME, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+                + COLUMN_URI + " TEXT PRIMARY KEY, "
+                + COLUMN_PLAY_COUNT + " INTEGER NOT NULL, "
+                + COLUMN_LAST_PLAYED + " INTEGER NOT NULL, "
+                + COLUMN_RATING + " INTEGER NOT NULL)");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // There is only one version so far.
+    }
+
+    /**
+     * The loadAll method reads the stats of every track.
+     * @return The stats keyed by the Uri of the track.
+     */
+    @NonNull
+    public HashMap<String, PlayStats> loadAll() {
+        HashMap<String, PlayStats> stats = new HashMap<>();
+        try (Cursor c = getReadableDatabase().query(TABLE, new String[]{COLUMN_URI, COLUMN_PLAY_COUNT,
+                COLUMN_LAST_PLAYED, COLUMN_RATING}, null, null, null, null, null)) {
+            while(c != null && c.moveToNext()){
+                stats.put(c.getString(0), new PlayStats(c.getInt(1), c.getLong(2), c.getInt(3)));
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * The put method queues the stats of a track to be written on the next flush. It is safe
+     * to call from several threads.
+     * @param uri The Uri of the track.
+     * @param stats The new stats.
+     */
+    public void put(@NonNull String uri, @NonNull PlayStats stats) {
+        mPending.put(uri, stats);
+    }
+
+    /**
+     * The flush method writes all queued stats in a single transaction.
+     */
+    public void flush() {
+        if(mPending.isEmpty()){
+            return;
+        }
+        SQLiteDatabase db = getWritableDatabase();
+        SQLiteStatement insert = db.compileStatement("INSERT OR REPLACE INTO " + TABLE + " ("
+                + COLUMN_URI + ", " + COLUMN_PLAY_COUNT + ", " + COLUMN_LAST_PLAYED + ", "
+                + COLUMN_RATING + ") VALUES (?, ?, ?, ?)");
+        db.beginTransaction();
+        try {
+            for(String uri : mPending.keySet()){
+                PlayStats stats = mPending.remove(uri);
+                if(stats == null){
+                    continue;
+                }
+                insert.clearBindings();
+                insert.bindString(1, uri);
+                insert.bindLong(2, stats.getPlayCount());
+                insert.bindLong(3, stats.getLastPlayed());
+                insert.bindLong(4, stats.getRating());
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+    }
+}
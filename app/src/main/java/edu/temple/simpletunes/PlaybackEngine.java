@@ -0,0 +1,144 @@
+package edu.temple.simpletunes;
+
+import android.content.Context;
+import android.net.Uri;
+
+import java.io.IOException;
+
+/**
+ * The PlaybackEngine interface is the player the MediaPlayerService plays tracks with, so the
+ * framework MediaPlayer can be swapped for another backend. It follows the lifecycle of a
+ * MediaPlayer: reset, set the data source, prepare asynchronously, then start. An engine
+ * calls its listener on the looper of the thread that created it and must only be used from
+ * that thread.
+ */
+public interface PlaybackEngine {
+    /**
+     * The engines that can be picked in the settings.
+     */
+    int ENGINE_MEDIA_PLAYER = 0;
+    int ENGINE_EXOPLAYER = 1;
+    int ENGINE_CODEC = 2;
+
+    /**
+     * The Listener interface receives the events of an engine.
+     */
+    interface Listener {
+        /**
+         * Called when the engine finished preparing its data source and can start.
+         * @param engine The engine.
+         */
+        void onPrepared(PlaybackEngine engine);
+
+        /**
+         * Called when the engine reached the end of its track.
+         * @param engine The engine.
+         */
+        void onCompletion(PlaybackEngine engine);
+
+        /**
+         * Called when the engine failed to prepare or to play.
+         * @param engine The engine.
+         * @param what The type of the error.
+         * @param extra An error code of the engine.
+         * @return True if the error was handled, false to also call onCompletion.
+         */
+        boolean onError(PlaybackEngine engine, int what, int extra);
+    }
+
+    /**
+     * The Factory interface creates the engines of a PlayerPool.
+     */
+    interface Factory {
+        PlaybackEngine create();
+    }
+
+    /**
+     * The create method creates an engine of a type.
+     * @param context The context used to open the tracks.
+     * @param type One of the ENGINE constants.
+     * @return The engine.
+     */
+    static PlaybackEngine create(Context context, int type) {
+        if (type == ENGINE_EXOPLAYER) {
+            return new ExoPlayerEngine(context);
+        } else if (type == ENGINE_CODEC) {
+            return new CodecEngine();
+        }
+        return new MediaPlayerEngine();
+    }
+
+    /**
+     * @return The ENGINE constant of the implementation.
+     */
+    int getType();
+
+    void setListener(Listener listener);
+
+    /**
+     * The setDataSource method loads a track into an engine that was reset.
+     * @param context The context used to open the track.
+     * @param uri The Uri of the track.
+     * @throws IOException If the track can't be opened.
+     */
+    void setDataSource(Context context, Uri uri) throws IOException;
+
+    /**
+     * The prepareAsync method prepares the track in the background, the listener is told
+     * when it is done.
+     */
+    void prepareAsync();
+
+    void start();
+
+    void pause();
+
+    void stop();
+
+    /**
+     * The reset method drops the track and cancels a preparation in progress.
+     */
+    void reset();
+
+    void release();
+
+    boolean isPlaying();
+
+    /**
+     * The setLooping method makes the track start over instead of completing.
+     * @param looping True to loop.
+     */
+    void setLooping(boolean looping);
+
+    /**
+     * The setNext method sets a prepared engine to start as soon as this one completes,
+     * without a gap.
+     * @param next The engine or null to unlink it.
+     * @return False if the engines can't be linked, the next one then has to be started
+     * when this one completes.
+     */
+    boolean setNext(PlaybackEngine next);
+
+    /**
+     * The setCrossfade method sets how long the end of the track overlaps with the engine
+     * set by setNext. Engines that can't mix two tracks ignore it.
+     * @param millis The overlap in milliseconds or 0 for gapless playback.
+     */
+    void setCrossfade(int millis);
+
+    /**
+     * @return The position in the track in milliseconds.
+     */
+    int getCurrentPosition();
+
+    /**
+     * @return The length of the track in milliseconds or -1 if it is not known.
+     */
+    int getDuration();
+
+    /**
+     * The seekTo method moves to a position in the track.
+     * @param millis The position in milliseconds.
+     */
+    void seekTo(int millis);
+}
@@ -0,0 +1,79 @@
+package edu.temple.simpletunes;
+
+/**
+ * The PlaybackPosition class holds the position and duration of the current track, written
+ * by the playback thread and read by any thread without locking or allocating. It is a
+ * sequence lock: the writer makes the sequence odd while it changes the fields, and a reader
+ * reads them again if the sequence changed meanwhile. Only one thread may write.
+ * <p>
+ * The position is a snapshot taken at a time, a reader moves it forward by the time passed
+ * since while the track is playing, so it can be shown smoothly between updates.
+ */
+public class PlaybackPosition {
+    private volatile int mSequence = 0;
+    private volatile int mPosition = 0;
+    private volatile int mDuration = -1;
+    private volatile boolean mPlaying = false;
+    private volatile long mTime = 0;
+
+    /**
+     * The update method publishes a snapshot of the current track. It must only be called
+     * from one thread.
+     * @param position The position in milliseconds.
+     * @param duration The length of the track in milliseconds or -1 if it is not known.
+     * @param playing True if the position is moving.
+     * @param time The time of the snapshot in milliseconds, from SystemClock.elapsedRealtime.
+     */
+    public void update(int position, int duration, boolean playing, long time) {
+        int sequence = mSequence;
+        mSequence = sequence + 1;
+        mPosition = position;
+        mDuration = duration;
+        mPlaying = playing;
+        mTime = time;
+        mSequence = sequence + 2;
+    }
+
+    /**
+     * The getPosition method returns the position of the last snapshot, moved forward by the
+     * time passed since while playing and kept within the track.
+     * @param now The current time in milliseconds, from SystemClock.elapsedRealtime.
+     * @return The position in milliseconds.
+     */
+    public int getPosition(long now) {
+        while (true) {
+            int sequence = mSequence;
+            if ((sequence & 1) != 0) {
+                // The writer is changing the fields.
+                Thread.yield();
+                continue;
+            }
+            long position = mPosition;
+            int duration = mDuration;
+            if (mPlaying) {
+                position += Math.max(0, now - mTime);
+            }
+            if (mSequence != sequence) {
+                continue;
+            }
+            if (duration >= 0 && position > duration) {
+                position = duration;
+            }
+            return (int) Math.min(position, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * @return The length of the track in milliseconds or -1 if it is not known.
+     */
+    public int getDuration() {
+        return mDuration;
+    }
+
+    /**
+     * @return True if the position was moving at the last snapshot.
+     */
+    public boolean isPlaying() {
+        return mPlaying;
+    }
+}
@@ -0,0 +1,128 @@
+package edu.temple.simpletunes;
+
+/**
+ * The PlaybackStateEvent is posted by the MediaPlayerService as a sticky event whenever the
+ * state of playback changes, so the MainActivity can update its buttons without waiting for
+ * the playback thread. EventBus sourced from https://github.com/greenrobot/EventBus
+ */
+public class PlaybackStateEvent {
+    private final boolean playing;
+    /**
+     * The repeat status, 0 = no repeat, 1 = folder repeat, 2 = file repeat.
+     */
+    private final int repeatStatus;
+    private final boolean shuffleOn;
+    /**
+     * The way tracks are weighted when shuffling, one of the PlayStats SHUFFLE constants.
+     */
+    private final int shuffleMode;
+    private final boolean gapless;
+    private final boolean crossfade;
+    /**
+     * The engine new tracks are played with, one of the PlaybackEngine ENGINE constants.
+     */
+    private final int engine;
+    /**
+     * The selected sort order, one of the SortOrders constants.
+     */
+    private final int sortOrder;
+    /**
+     * The number of entries in the queue or 0 if no folder is playing.
+     */
+    private final int queueSize;
+    /**
+     * The position of the current track in the queue or -1 if no folder is playing.
+     */
+    private final int queuePosition;
+
+    /**
+     * The PlaybackStateEvent holds a snapshot of the state of the MediaPlayerService.
+     * @param playing The state of audio being played.
+     * @param repeatStatus The repeat status, 0 = no repeat, 1 = folder repeat, 2 = file repeat.
+     * @param shuffleOn The state of shuffle.
+     * @param shuffleMode The shuffle mode.
+     * @param gapless The state of gapless playback.
+     * @param crossfade The state of crossfading.
+     * @param engine The selected engine.
+     * @param sortOrder The selected sort order.
+     * @param queueSize The number of entries in the queue.
+     * @param queuePosition The position of the current track in the queue.
+     */
+    public PlaybackStateEvent(boolean playing, int repeatStatus, boolean shuffleOn, int shuffleMode, boolean gapless,
+                              boolean crossfade, int engine, int sortOrder, int queueSize, int queuePosition) {
+        this.playing = playing;
+        this.repeatStatus = repeatStatus;
+        this.shuffleOn = shuffleOn;
+        this.shuffleMode = shuffleMode;
+        this.gapless = gapless;
+        this.crossfade = crossfade;
+        this.engine = engine;
+        this.sortOrder = sortOrder;
+        this.queueSize = queueSize;
+        this.queuePosition = queuePosition;
+    }
+
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    public int getRepeatStatus() {
+        return repeatStatus;
+    }
+
+    public boolean isShuffleOn() {
+        return shuffleOn;
+    }
+
+    public int getShuffleMode() {
+        return shuffleMode;
+    }
+
+    public boolean isGapless() {
+        return gapless;
+    }
+
+    public boolean isCrossfade() {
+        return crossfade;
+    }
+
+    public int getEngine() {
+        return engine;
+    }
+
+    public int getSortOrder() {
+        return sortOrder;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public int getQueuePosition() {
+        return queuePosition;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof PlaybackStateEvent)) {
+            return false;
+        }
+        PlaybackStateEvent other = (PlaybackStateEvent) o;
+        return playing == other.playing && repeatStatus == other.repeatStatus && shuffleOn == other.shuffleOn
+                && shuffleMode == other.shuffleMode && gapless == other.gapless
+                && crossfade == other.crossfade && engine == other.engine
+                && sortOrder == other.sortOrder && queueSize == other.queueSize
+                && queuePosition == other.queuePosition;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = (playing ? 1 : 0) | (shuffleOn ? 2 : 0) | (gapless ? 4 : 0) | (crossfade ? 8 : 0);
+        hash = 31 * hash + repeatStatus;
+        hash = 31 * hash + shuffleMode;
+        hash = 31 * hash + engine;
+        hash = 31 * hash + sortOrder;
+        hash = 31 * hash + queueSize;
+        return 31 * hash + queuePosition;
+    }
+}
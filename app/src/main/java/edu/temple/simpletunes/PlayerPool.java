@@ -0,0 +1,209 @@
+package edu.temple.simpletunes;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * The PlayerPool class keeps a few PlaybackEngine instances prepared with the tracks around the
+ * current one, so skipping to one of them promotes a player that is ready to start instead of
+ * preparing the track from scratch. The number of players is capped, since every prepared
+ * player holds a decoder and its buffers. The class must be used from the playback thread
+ * of the MediaPlayerService.
+ */
+public class PlayerPool {
+    private static final String TAG = "PlayerPool";
+    /**
+     * The number of players used by the service: the next track and the previous one.
+     */
+    public static final int DEFAULT_CAPACITY = 2;
+
+    /**
+     * A player of the pool and the track loaded into it.
+     */
+    private static class Entry {
+        final PlaybackEngine player;
+        MusicTrack track;
+        boolean prepared;
+
+        Entry(PlaybackEngine player) {
+            this.player = player;
+        }
+    }
+
+    private final Context mContext;
+    private final int mCapacity;
+    private final PlaybackEngine.Factory mFactory;
+    private final ArrayList<Entry> mEntries = new ArrayList<>();
+
+    /**
+     * Initialize an empty pool.
+     * @param context The context used to open the tracks.
+     * @param capacity The greatest number of players kept.
+     * @param factory Creates the players, with their listener set.
+     */
+    public PlayerPool(Context context, int capacity, PlaybackEngine.Factory factory) {
+        mContext = context;
+        mCapacity = capacity;
+        mFactory = factory;
+    }
+
+    /**
+     * The retarget method loads the pool with a list of tracks. Players already holding one
+     * of the tracks are kept as they are, the others are reset and prepare a missing track in
+     * the background. Tracks past the capacity of the pool are ignored.
+     * @param targets The tracks in order of priority, null entries are skipped.
+     */
+    public void retarget(MusicTrack... targets) {
+        ArrayList<MusicTrack> wanted = new ArrayList<>(mCapacity);
+        for (MusicTrack track : targets) {
+            if (track != null && !wanted.contains(track) && wanted.size() < mCapacity) {
+                wanted.add(track);
+            }
+        }
+        ArrayList<Entry> free = new ArrayList<>();
+        for (Entry entry : mEntries) {
+            if (entry.track == null || !wanted.remove(entry.track)) {
+                free.add(entry);
+            }
+        }
+        for (MusicTrack track : wanted) {
+            Entry entry;
+            if (!free.isEmpty()) {
+                entry = free.remove(free.size() - 1);
+                unload(entry);
+            } else {
+                entry = new Entry(mFactory.create());
+                mEntries.add(entry);
+            }
+            load(entry, track);
+        }
+        // Players that hold nothing wanted give their decoder back.
+        for (Entry entry : free) {
+            unload(entry);
+        }
+    }
+
+    /**
+     * The getPrepared method returns the player prepared with a track.
+     * @param track The track.
+     * @return The player or null if no player of the pool is prepared with it yet.
+     */
+    public PlaybackEngine getPrepared(MusicTrack track) {
+        Entry entry = find(track);
+        return entry != null && entry.prepared ? entry.player : null;
+    }
+
+    /**
+     * The take method removes the player holding a track from the pool. The player may still
+     * be preparing, {@link #getPrepared(MusicTrack)} tells which before it is taken.
+     * @param track The track.
+     * @return The player or null if no player of the pool holds the track.
+     */
+    public PlaybackEngine take(MusicTrack track) {
+        Entry entry = find(track);
+        if (entry == null) {
+            return null;
+        }
+        mEntries.remove(entry);
+        return entry.player;
+    }
+
+    /**
+     * The give method hands a player that is no longer used back to the pool. It is reset,
+     * or released if the pool is full.
+     * @param player The player.
+     */
+    public void give(PlaybackEngine player) {
+        if (mEntries.size() >= mCapacity) {
+            player.release();
+            return;
+        }
+        player.reset();
+        mEntries.add(new Entry(player));
+    }
+
+    /**
+     * The onPrepared method records that a player of the pool finished preparing.
+     * @param player The player.
+     * @return The track the player holds or null if it is not part of the pool.
+     */
+    public MusicTrack onPrepared(PlaybackEngine player) {
+        for (Entry entry : mEntries) {
+            if (entry.player == player && entry.track != null) {
+                entry.prepared = true;
+                return entry.track;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The onError method drops the track of a player of the pool that failed to prepare.
+     * @param player The player.
+     * @return True if the player is part of the pool.
+     */
+    public boolean onError(PlaybackEngine player) {
+        for (Entry entry : mEntries) {
+            if (entry.player == player) {
+                unload(entry);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The clear method resets every player of the pool.
+     */
+    public void clear() {
+        for (Entry entry : mEntries) {
+            unload(entry);
+        }
+    }
+
+    /**
+     * The release method releases every player of the pool. The pool can be used again, it
+     * creates new players from its factory.
+     */
+    public void release() {
+        for (Entry entry : mEntries) {
+            entry.player.release();
+        }
+        mEntries.clear();
+    }
+
+    private Entry find(MusicTrack track) {
+        if (track == null) {
+            return null;
+        }
+        for (Entry entry : mEntries) {
+            if (entry.track == track) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void load(Entry entry, MusicTrack track) {
+        try {
+            entry.player.setDataSource(mContext, track.getUri());
+        } catch (IOException e) {
+            Log.d(TAG, "load: Could not prepare " + track.getName());
+            entry.player.reset();
+            return;
+        }
+        entry.track = track;
+        entry.player.prepareAsync();
+    }
+
+    private static void unload(Entry entry) {
+        if (entry.track != null || entry.prepared) {
+            entry.track = null;
+            entry.prepared = false;
+            entry.player.reset();
+        }
+    }
+}
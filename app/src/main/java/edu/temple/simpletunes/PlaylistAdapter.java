@@ -35,6 +35,10 @@ public class PlaylistAdapter extends RecyclerView.Adapter<PlaylistAdapter.ViewHo
      * The position of the item that should be highlight within the view.
      */
     private int highlightedPosition = 0;
+    /**
+     * The index of the name shown at each position or null to show the names in order.
+     */
+    private int[] mOrder = null;
 
     /**
      * Provide a reference to the type of views that you are using
@@ -121,7 +125,7 @@ public class PlaylistAdapter extends RecyclerView.Adapter<PlaylistAdapter.ViewHo
         } else {
             viewHolder.itemView.setBackgroundColor(android.R.attr.colorBackground);
         }
-        viewHolder.getNameTextView().setText(trackNames.get(position));
+        viewHolder.getNameTextView().setText(trackNames.get(getNameIndex(position)));
         viewHolder.getNumTextView().setText(String.format(mContext.getString(R.string.trackNum), position + 1));
     }
 
@@ -136,6 +140,30 @@ public class PlaylistAdapter extends RecyclerView.Adapter<PlaylistAdapter.ViewHo
         this.notifyItemChanged(position);
     }
 
+    /**
+     * The setOrder method changes the order the names are shown in without copying them.
+     *
+     * @param order The index of the name at each position or null to show them in order.
+     *              Positions past its end show the name with the same index.
+     */
+    public void setOrder(int[] order) {
+        mOrder = order;
+    }
+
+    public int[] getOrder() {
+        return mOrder;
+    }
+
+    /**
+     * The getNameIndex method reads a position through the order.
+     *
+     * @param position The position in the view.
+     * @return The index of the name shown at that position.
+     */
+    public int getNameIndex(int position) {
+        return mOrder != null && position < mOrder.length ? mOrder[position] : position;
+    }
+
     /**
      * {@inheritDoc}
      */
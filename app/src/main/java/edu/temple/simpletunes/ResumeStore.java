@@ -0,0 +1,418 @@
+package edu.temple.simpletunes;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The ResumeStore class saves what the MediaPlayerService is playing, so the queue, the
+ * modes and the position in the track are back after the process was killed, without
+ * scanning the folder again.
+ * <p>
+ * The state is kept in two files that are each written to a temporary file and renamed over
+ * the old one, so a reader never sees a partly written file. The tracks are written as a
+ * LibraryIndex only when they change. The small state file refers to them by track ID: the
+ * queue is stored as its slots, the sort permutation the slots are read through, and the
+ * history of the shuffled order with its seed. Writes run on a background thread and a state
+ * equal to the last one saved is not written again. The caller decides how often to save.
+ */
+public class ResumeStore {
+    private static final String TAG = "ResumeStore";
+    /**
+     * The names of the state and track files in the files directory of the app.
+     */
+    public static final String STATE_FILE_NAME = "resume.state";
+    public static final String TRACKS_FILE_NAME = "resume.idx";
+    /**
+     * The magic number "STRS" at the start of the state file.
+     */
+    static final int MAGIC = 0x53545253;
+    /**
+     * The version of the state file format, increased whenever the layout changes.
+     */
+    static final int VERSION = 1;
+    private static final int FLAG_FOLDER = 1;
+    private static final int FLAG_QUEUE_IS_FOLDER = 2;
+    private static final int FLAG_SHUFFLE = 4;
+
+    /**
+     * The State class is a snapshot of what is being played.
+     */
+    public static class State {
+        /**
+         * The state of a folder being played, false for a single track.
+         */
+        public final boolean playingFolder;
+        /**
+         * The Uri string of the track being played.
+         */
+        public final String currentUri;
+        /**
+         * The position in the track in milliseconds.
+         */
+        public final int position;
+        public final int repeatStatus;
+        public final int shuffleMode;
+        public final int sortOrder;
+        /**
+         * The number of tracks the IDs refer to, in the track file.
+         */
+        public final int trackCount;
+        /**
+         * The slots of the queue, its current position and whether it lists every slot in
+         * order. Empty when no folder is played.
+         */
+        public final int[] queue;
+        public final int queuePosition;
+        public final boolean queueIsFolder;
+        /**
+         * The permutation of track IDs the slots are read through or null.
+         */
+        public final int[] order;
+        /**
+         * The slots drawn by the shuffled order, the index of the current one and the seed,
+         * or null if shuffle is off.
+         */
+        public final int[] shuffleHistory;
+        public final int shufflePosition;
+        public final long shuffleSeed;
+
+        /**
+         * Initialize the state of a single track.
+         * @param uri The Uri string of the track.
+         * @param position The position in the track in milliseconds.
+         * @param repeatStatus The repeat status.
+         * @param shuffleMode One of the PlayStats SHUFFLE constants.
+         * @param sortOrder One of the SortOrders constants.
+         */
+        public State(@NonNull String uri, int position, int repeatStatus, int shuffleMode, int sortOrder) {
+            this(false, uri, position, repeatStatus, shuffleMode, sortOrder, 0, new int[0], -1, false,
+                    null, null, 0, 0);
+        }
+
+        /**
+         * Initialize the state of a folder.
+         * @param currentUri The Uri string of the current track.
+         * @param position The position in the track in milliseconds.
+         * @param repeatStatus The repeat status.
+         * @param shuffleMode One of the PlayStats SHUFFLE constants.
+         * @param sortOrder One of the SortOrders constants.
+         * @param trackCount The number of tracks.
+         * @param queue The slots of the queue in listed order.
+         * @param queuePosition The position of the current entry in the queue.
+         * @param queueIsFolder True if the queue holds every slot once in order.
+         * @param order The permutation of track IDs the slots are read through or null.
+         * @param shuffleHistory The slots drawn by the shuffled order or null.
+         * @param shufflePosition The index of the current slot in the history.
+         * @param shuffleSeed The seed of the shuffled order.
+         */
+        public State(@NonNull String currentUri, int position, int repeatStatus, int shuffleMode, int sortOrder,
+                     int trackCount, @NonNull int[] queue, int queuePosition, boolean queueIsFolder,
+                     @Nullable int[] order, @Nullable int[] shuffleHistory, int shufflePosition, long shuffleSeed) {
+            this(true, currentUri, position, repeatStatus, shuffleMode, sortOrder, trackCount, queue,
+                    queuePosition, queueIsFolder, order, shuffleHistory, shufflePosition, shuffleSeed);
+        }
+
+        private State(boolean playingFolder, String currentUri, int position, int repeatStatus, int shuffleMode,
+                      int sortOrder, int trackCount, int[] queue, int queuePosition, boolean queueIsFolder,
+                      int[] order, int[] shuffleHistory, int shufflePosition, long shuffleSeed) {
+            this.playingFolder = playingFolder;
+            this.currentUri = currentUri;
+            this.position = position;
+            this.repeatStatus = repeatStatus;
+            this.shuffleMode = shuffleMode;
+            this.sortOrder = sortOrder;
+            this.trackCount = trackCount;
+            this.queue = queue;
+            this.queuePosition = queuePosition;
+            this.queueIsFolder = queueIsFolder;
+            this.order = order;
+            this.shuffleHistory = shuffleHistory;
+            this.shufflePosition = shufflePosition;
+            this.shuffleSeed = shuffleSeed;
+        }
+
+        /**
+         * The getCurrentId method returns the track ID of the current entry of the queue.
+         * @return The track ID or -1 if no folder is played.
+         */
+        public int getCurrentId() {
+            if (!playingFolder) {
+                return -1;
+            }
+            int slot = queue[queuePosition];
+            return order != null && slot < order.length ? order[slot] : slot;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            State state = (State) o;
+            return playingFolder == state.playingFolder && position == state.position
+                    && repeatStatus == state.repeatStatus && shuffleMode == state.shuffleMode
+                    && sortOrder == state.sortOrder && trackCount == state.trackCount
+                    && queuePosition == state.queuePosition && queueIsFolder == state.queueIsFolder
+                    && shufflePosition == state.shufflePosition && shuffleSeed == state.shuffleSeed
+                    && currentUri.equals(state.currentUri) && Arrays.equals(queue, state.queue)
+                    && Arrays.equals(order, state.order) && Arrays.equals(shuffleHistory, state.shuffleHistory);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = currentUri.hashCode();
+            result = 31 * result + position;
+            result = 31 * result + queuePosition;
+            result = 31 * result + Arrays.hashCode(queue);
+            return result;
+        }
+    }
+
+    private final File mStateFile;
+    private final File mTracksFile;
+    /**
+     * The thread writing the files, so they are written in the order they were saved.
+     */
+    private final ExecutorService mWriter = Executors.newSingleThreadExecutor();
+    /**
+     * The last state handed to the writer, only used by the thread calling save.
+     */
+    private State mLastSaved;
+
+    /**
+     * Initialize a store in the files directory of the app.
+     * @param context The context of the app.
+     */
+    public ResumeStore(@NonNull Context context) {
+        this(context.getFilesDir());
+    }
+
+    /**
+     * Initialize a store.
+     * @param directory The directory of the files.
+     */
+    public ResumeStore(@NonNull File directory) {
+        mStateFile = new File(directory, STATE_FILE_NAME);
+        mTracksFile = new File(directory, TRACKS_FILE_NAME);
+    }
+
+    /**
+     * The save method writes a state in the background, unless it equals the last state
+     * saved and no tracks are given. It must be called from a single thread.
+     * @param state The state.
+     * @param tracks The tracks the IDs of the state refer to if they changed since they were
+     * last saved, or null.
+     */
+    public void save(@NonNull State state, @Nullable MusicTrack[] tracks) {
+        if (tracks == null && state.equals(mLastSaved)) {
+            return;
+        }
+        mLastSaved = state;
+        mWriter.execute(() -> {
+            try {
+                // The tracks go first, a state is never read with tracks older than it.
+                if (tracks != null) {
+                    LibraryIndex.Writer writer = new LibraryIndex.Writer(null, false);
+                    for (MusicTrack track : tracks) {
+                        writer.add(track);
+                    }
+                    writer.writeTo(mTracksFile);
+                }
+                writeState(mStateFile, state);
+            } catch (IOException e) {
+                Log.e(TAG, "save: could not save the state", e);
+            }
+        });
+    }
+
+    /**
+     * The loadState method reads the saved state. It may block on the disk.
+     * @return The state or null if none was saved or the file is damaged or of another version.
+     */
+    @Nullable
+    public State loadState() {
+        return readState(mStateFile);
+    }
+
+    /**
+     * The loadTracks method reads the tracks a saved state refers to. It may block on the disk.
+     * @param context The context used to read the tags of the tracks.
+     * @param state The state.
+     * @return The tracks by ID or null if they are missing or do not belong to the state.
+     */
+    @Nullable
+    public MusicTrack[] loadTracks(Context context, @NonNull State state) {
+        LibraryIndex index = LibraryIndex.open(mTracksFile);
+        if (index == null || index.getCount() != state.trackCount
+                || !state.currentUri.equals(index.getUriString(state.getCurrentId()))) {
+            return null;
+        }
+        return index.getTracks(context);
+    }
+
+    /**
+     * The close method stops the writer once the states saved before are written.
+     */
+    public void close() {
+        mWriter.shutdown();
+    }
+
+    /**
+     * The writeState method writes a state to a temporary file and renames it over the old
+     * state file.
+     * @param file The state file.
+     * @param state The state.
+     * @throws IOException If the file could not be written.
+     */
+    static void writeState(@NonNull File file, @NonNull State state) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeInt((state.playingFolder ? FLAG_FOLDER : 0) | (state.queueIsFolder ? FLAG_QUEUE_IS_FOLDER : 0)
+                    | (state.shuffleHistory != null ? FLAG_SHUFFLE : 0));
+            data.writeInt(state.position);
+            data.writeInt(state.repeatStatus);
+            data.writeInt(state.shuffleMode);
+            data.writeInt(state.sortOrder);
+            data.writeInt(state.trackCount);
+            data.writeInt(state.queuePosition);
+            data.writeInt(state.shufflePosition);
+            data.writeLong(state.shuffleSeed);
+            byte[] uri = state.currentUri.getBytes(StandardCharsets.UTF_8);
+            data.writeInt(uri.length);
+            data.write(uri);
+            writeInts(data, state.queue);
+            writeInts(data, state.order);
+            writeInts(data, state.shuffleHistory);
+            data.flush();
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    /**
+     * The readState method reads a state file. The track IDs are checked against the number
+     * of tracks, so a state that was read can be used without further checks.
+     * @param file The state file.
+     * @return The state or null if the file is missing, damaged or of another version.
+     */
+    @Nullable
+    static State readState(@NonNull File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        long length = file.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            int flags = in.readInt();
+            int position = in.readInt();
+            int repeatStatus = in.readInt();
+            int shuffleMode = in.readInt();
+            int sortOrder = in.readInt();
+            int trackCount = in.readInt();
+            int queuePosition = in.readInt();
+            int shufflePosition = in.readInt();
+            long shuffleSeed = in.readLong();
+            byte[] uri = new byte[checkLength(in.readInt(), length)];
+            in.readFully(uri);
+            int[] queue = readInts(in, length);
+            int[] order = readInts(in, length);
+            int[] history = readInts(in, length);
+            if (in.read() != -1) {
+                return null;
+            }
+            boolean folder = (flags & FLAG_FOLDER) != 0;
+            String currentUri = new String(uri, StandardCharsets.UTF_8);
+            if (!folder) {
+                return new State(currentUri, position, repeatStatus, shuffleMode, sortOrder);
+            }
+            if (queue == null || queuePosition < 0 || queuePosition >= queue.length
+                    || !allBelow(queue, trackCount) || !allBelow(order, trackCount)
+                    || !allBelow(history, trackCount) || order != null && order.length > trackCount) {
+                return null;
+            }
+            return new State(currentUri, position, repeatStatus, shuffleMode, sortOrder, trackCount, queue,
+                    queuePosition, (flags & FLAG_QUEUE_IS_FOLDER) != 0, order,
+                    (flags & FLAG_SHUFFLE) != 0 ? history : null, shufflePosition, shuffleSeed);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The writeInts method writes an array prefixed by its length, or -1 for null.
+     */
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    /**
+     * The readInts method reads an array written by writeInts.
+     * @param fileLength The length of the file, a longer array is damaged.
+     */
+    private static int[] readInts(DataInputStream in, long fileLength) throws IOException {
+        int count = in.readInt();
+        if (count == -1) {
+            return null;
+        }
+        int[] values = new int[checkLength(count, fileLength / 4)];
+        for (int i = 0; i < count; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    private static int checkLength(int count, long limit) throws IOException {
+        if (count < 0 || count > limit) {
+            throw new IOException("State file is damaged");
+        }
+        return count;
+    }
+
+    /**
+     * The allBelow method checks that the values of an array are track IDs.
+     * @param values The values or null.
+     * @param count The number of tracks.
+     * @return True if every value is between 0 and count - 1.
+     */
+    private static boolean allBelow(int[] values, int count) {
+        if (values != null) {
+            for (int value : values) {
+                if (value < 0 || value >= count) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
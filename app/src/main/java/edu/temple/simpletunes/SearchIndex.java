@@ -0,0 +1,361 @@
+package edu.temple.simpletunes;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * The SearchIndex class finds tracks by words of their title, artist, album and file name as
+ * the user types. Text is case folded and stripped of accents, so "beyonce" finds "Beyoncé".
+ * Every word is indexed by its trigrams and by its first one and two characters, each key
+ * pointing to a sorted list of track IDs. A query takes the shortest list of any of its keys
+ * and checks each candidate against the indexed text, so the cost depends on the number of
+ * candidates instead of the size of the library.
+ * <p>
+ * Tracks are given increasing IDs in the order they are added, so the index can be built while
+ * a folder is scanned. It is not thread safe.
+ */
+public class SearchIndex {
+    /**
+     * Separates the fields of a track so a query never matches across two fields.
+     */
+    private static final char FIELD_SEPARATOR = '\u0001';
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final int INITIAL_CAPACITY = 1024;
+    /**
+     * Key type bits for the first one and two characters of a word. Trigrams use type 0.
+     */
+    private static final long PREFIX_1 = 1L << 62;
+    private static final long PREFIX_2 = 2L << 62;
+
+    /**
+     * The normalized text of each track by ID.
+     */
+    private String[] mTexts = new String[INITIAL_CAPACITY];
+    private int mCount = 0;
+    /**
+     * The open addressing table of keys, slots with a posting list are marked in mUsed.
+     */
+    private long[] mKeys = new long[INITIAL_CAPACITY];
+    private boolean[] mUsed = new boolean[INITIAL_CAPACITY];
+    /**
+     * The posting list of each slot and the number of IDs in it.
+     */
+    private int[][] mPostings = new int[INITIAL_CAPACITY][];
+    private int[] mSizes = new int[INITIAL_CAPACITY];
+    private int mKeyCount = 0;
+
+    /**
+     * The add method indexes a track.
+     * @param fields The title, artist, album, file name or any other text of the track, null
+     *               fields are skipped.
+     * @return The ID of the track, one more than the ID of the track added before it.
+     */
+    public int add(String... fields) {
+        int id = mCount;
+        StringBuilder text = new StringBuilder();
+        for(String field : fields){
+            if(field != null){
+                text.append(normalize(field)).append(FIELD_SEPARATOR);
+            }
+        }
+        if(id == mTexts.length){
+            mTexts = Arrays.copyOf(mTexts, id * 2);
+        }
+        mTexts[id] = text.toString();
+        mCount++;
+        indexWords(mTexts[id], id);
+        return id;
+    }
+
+    /**
+     * The size method returns the number of tracks that were added.
+     * @return The number of tracks.
+     */
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * The clear method removes every track so IDs start from 0 again.
+     */
+    public void clear() {
+        Arrays.fill(mTexts, 0, mCount, null);
+        mCount = 0;
+        Arrays.fill(mUsed, false);
+        Arrays.fill(mPostings, null);
+        Arrays.fill(mSizes, 0);
+        mKeyCount = 0;
+    }
+
+    /**
+     * The search method finds the tracks containing every word of a query. Words of one or two
+     * characters match the start of a word, longer words match anywhere in a word.
+     * @param query The text typed by the user.
+     * @param limit The maximum number of results.
+     * @return The IDs of the matching tracks in the order they were added.
+     */
+    public int[] search(String query, int limit) {
+        String[] words = splitWords(normalize(query));
+        if(words.length == 0 || limit <= 0){
+            return new int[0];
+        }
+        // A track containing a word is in the posting list of every key of the word, so the
+        // shortest list of each word is intersected before the text is checked.
+        int[] slots = new int[words.length];
+        for(int w = 0; w < words.length; w++){
+            String word = words[w];
+            int length = Math.min(word.length(), 3);
+            int best = -1;
+            for(int i = 0; i + length <= word.length(); i++){
+                int slot = find(key(word, i, length));
+                if(slot < 0){
+                    return new int[0];
+                }
+                if(best < 0 || mSizes[slot] < mSizes[best]){
+                    best = slot;
+                }
+                if(length < 3){
+                    break;
+                }
+            }
+            slots[w] = best;
+        }
+        int shortest = 0;
+        for(int w = 1; w < slots.length; w++){
+            if(mSizes[slots[w]] < mSizes[slots[shortest]]){
+                shortest = w;
+            }
+        }
+        int[] candidates = mPostings[slots[shortest]];
+        int candidateCount = mSizes[slots[shortest]];
+        int[] cursors = new int[slots.length];
+        int[] results = new int[Math.min(limit, candidateCount)];
+        int found = 0;
+        for(int i = 0; i < candidateCount && found < results.length; i++){
+            int id = candidates[i];
+            if(inAll(id, slots, cursors, shortest) && matches(mTexts[id], words)){
+                results[found++] = id;
+            }
+        }
+        return found == results.length ? results : Arrays.copyOf(results, found);
+    }
+
+    /**
+     * The inAll method checks if an ID is in the posting list of every slot. IDs must be asked
+     * for in increasing order, the cursors remember where each list was left.
+     * @param id The ID of the track.
+     * @param slots The slots of the posting lists.
+     * @param cursors The position reached in each posting list.
+     * @param skip The slot the ID was taken from.
+     * @return True if every posting list contains the ID.
+     */
+    private boolean inAll(int id, int[] slots, int[] cursors, int skip) {
+        for(int w = 0; w < slots.length; w++){
+            if(w == skip){
+                continue;
+            }
+            int[] posting = mPostings[slots[w]];
+            int size = mSizes[slots[w]];
+            // Gallop forward from the cursor, then search the last step.
+            int low = cursors[w];
+            int step = 1;
+            while(low + step < size && posting[low + step] < id){
+                low += step;
+                step <<= 1;
+            }
+            int position = Arrays.binarySearch(posting, low, Math.min(size, low + step + 1), id);
+            if(position < 0){
+                cursors[w] = -(position + 1);
+                return false;
+            }
+            cursors[w] = position;
+        }
+        return true;
+    }
+
+    /**
+     * The normalize method folds the case, removes accents and turns every character that is
+     * not a letter or a digit into a space.
+     * @param s The text to normalize.
+     * @return The normalized text.
+     */
+    static String normalize(String s) {
+        char[] chars = s.toCharArray();
+        for(int i = 0; i < chars.length; i++){
+            char c = chars[i];
+            if(c >= 0x80){
+                // Most tags are ASCII, only decompose the ones that are not.
+                String folded = COMBINING_MARKS.matcher(Normalizer.normalize(s, Normalizer.Form.NFD))
+                        .replaceAll("").toLowerCase(Locale.ROOT);
+                chars = folded.toCharArray();
+                for(int j = 0; j < chars.length; j++){
+                    if(!Character.isLetterOrDigit(chars[j])){
+                        chars[j] = ' ';
+                    }
+                }
+                return new String(chars);
+            }
+            if(c >= 'A' && c <= 'Z'){
+                chars[i] = (char) (c + ('a' - 'A'));
+            }else if(!(c >= 'a' && c <= 'z') && !(c >= '0' && c <= '9')){
+                chars[i] = ' ';
+            }
+        }
+        return new String(chars);
+    }
+
+    /**
+     * The matches method checks that a normalized text contains every word of a query.
+     * @param text The normalized text of a track.
+     * @param words The normalized words of the query.
+     * @return True if the track matches the query.
+     */
+    private static boolean matches(String text, String[] words) {
+        for(String word : words){
+            if(word.length() >= 3){
+                if(!text.contains(word)){
+                    return false;
+                }
+            }else if(!startsWord(text, word)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The startsWord method checks if a text has a word starting with a prefix.
+     * @param text The normalized text of a track.
+     * @param prefix The prefix.
+     * @return True if a word of the text starts with the prefix.
+     */
+    private static boolean startsWord(String text, String prefix) {
+        for(int i = text.indexOf(prefix); i >= 0; i = text.indexOf(prefix, i + 1)){
+            if(i == 0 || text.charAt(i - 1) == ' ' || text.charAt(i - 1) == FIELD_SEPARATOR){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String[] splitWords(String normalized) {
+        ArrayList<String> words = new ArrayList<>();
+        for(String word : normalized.split(" ")){
+            if(!word.isEmpty()){
+                words.add(word);
+            }
+        }
+        return words.toArray(new String[0]);
+    }
+
+    /**
+     * The indexWords method adds the keys of every word of a text to the posting lists.
+     * @param text The normalized text of the track.
+     * @param id The ID of the track.
+     */
+    private void indexWords(String text, int id) {
+        int start = -1;
+        for(int i = 0; i <= text.length(); i++){
+            boolean letter = i < text.length() && text.charAt(i) != ' ' && text.charAt(i) != FIELD_SEPARATOR;
+            if(letter && start < 0){
+                start = i;
+            }else if(!letter && start >= 0){
+                post(key(text, start, 1), id);
+                if(i - start >= 2){
+                    post(key(text, start, 2), id);
+                }
+                for(int j = start; j + 3 <= i; j++){
+                    post(key(text, j, 3), id);
+                }
+                start = -1;
+            }
+        }
+    }
+
+    /**
+     * The key method packs a trigram or a word prefix into a long.
+     * @param s The text.
+     * @param start The position of the first character.
+     * @param length 3 for a trigram, 1 or 2 for the start of a word.
+     * @return The key.
+     */
+    private static long key(String s, int start, int length) {
+        long key = length == 1 ? PREFIX_1 : length == 2 ? PREFIX_2 : 0;
+        for(int i = 0; i < length; i++){
+            key |= (long) s.charAt(start + i) << (16 * (2 - i));
+        }
+        return key;
+    }
+
+    /**
+     * The post method appends an ID to the posting list of a key. IDs are added in increasing
+     * order, so a key seen twice in the same track is only posted once.
+     * @param key The key.
+     * @param id The ID of the track.
+     */
+    private void post(long key, int id) {
+        int slot = find(key);
+        if(slot < 0){
+            if((mKeyCount + 1) * 4 > mKeys.length * 3){
+                grow();
+            }
+            slot = -(find(key) + 1);
+            mUsed[slot] = true;
+            mKeys[slot] = key;
+            mPostings[slot] = new int[4];
+            mKeyCount++;
+        }
+        int size = mSizes[slot];
+        int[] posting = mPostings[slot];
+        if(size > 0 && posting[size - 1] == id){
+            return;
+        }
+        if(size == posting.length){
+            posting = Arrays.copyOf(posting, size * 2);
+            mPostings[slot] = posting;
+        }
+        posting[size] = id;
+        mSizes[slot] = size + 1;
+    }
+
+    /**
+     * The find method looks up the slot of a key with linear probing.
+     * @param key The key.
+     * @return The slot of the key, or -(slot + 1) of the free slot where it would go.
+     */
+    private int find(long key) {
+        int mask = mKeys.length - 1;
+        long h = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (h ^ (h >>> 32)) & mask;
+        while(mUsed[slot]){
+            if(mKeys[slot] == key){
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -(slot + 1);
+    }
+
+    private void grow() {
+        long[] keys = mKeys;
+        boolean[] used = mUsed;
+        int[][] postings = mPostings;
+        int[] sizes = mSizes;
+        mKeys = new long[keys.length * 2];
+        mUsed = new boolean[keys.length * 2];
+        mPostings = new int[keys.length * 2][];
+        mSizes = new int[keys.length * 2];
+        for(int i = 0; i < keys.length; i++){
+            if(used[i]){
+                int slot = -(find(keys[i]) + 1);
+                mUsed[slot] = true;
+                mKeys[slot] = keys[i];
+                mPostings[slot] = postings[i];
+                mSizes[slot] = sizes[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package edu.temple.simpletunes;
+
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * The ShuffleOrder class is a random play order of a set of int values that is generated one
+ * value at a time, when it is needed, by an incremental Fisher-Yates shuffle. The order is a
+ * virtual array: its first entries are the values drawn so far, which are kept as the history
+ * for going back, and the rest is the pool of values not drawn yet. Only the entries that
+ * differ from their index are stored, so creating an order over a huge folder takes O(1) and
+ * drawing, adding and finding a value take O(1) expected time.
+ * <p>
+ * A weighted order draws each value with a chance proportional to its weight among the
+ * values not drawn yet. The weights are kept in a WeightTree indexed by value, which takes
+ * O(n) to build and O(log n) to draw from or to update.
+ * <p>
+ * The values are 0 to size - 1 at first, values added later must not be smaller than that
+ * size. The same size, first value, seed, weights and calls give the same order. An order
+ * can be saved as its history and continued from it later. The class is not thread safe.
+ */
+public class ShuffleOrder {
+    /**
+     * The Weights interface gives the weight of a value in a weighted order.
+     */
+    public interface Weights {
+        /**
+         * @param value A value of the order.
+         * @return Its weight, at least 1.
+         */
+        long weightOf(int value);
+    }
+
+    private final long mSeed;
+    private final Random mRandom;
+    /**
+     * The weights and the tree of the weights of the values not drawn yet, 0 for the others,
+     * or null if every value is equally likely.
+     */
+    private final Weights mWeights;
+    private final WeightTree mWeightTree;
+    /**
+     * The first values, whose index is the value itself until they are moved.
+     */
+    private final int mInitialSize;
+    /**
+     * The value at each index of the virtual array that does not hold the value equal to it.
+     */
+    private final HashMap<Integer, Integer> mValues = new HashMap<>();
+    /**
+     * The index of each value that is not at the index equal to it.
+     */
+    private final HashMap<Integer, Integer> mIndexes = new HashMap<>();
+    private int mSize;
+    /**
+     * The number of values drawn, they are at the indexes 0 to mDrawn - 1.
+     */
+    private int mDrawn = 0;
+    /**
+     * The index of the current value.
+     */
+    private int mPosition = 0;
+
+    /**
+     * Initialize a shuffled order of the values 0 to size - 1 that starts with a given value.
+     * @param size The number of values.
+     * @param first The value played first, usually the current track.
+     * @param seed The seed of the random numbers.
+     */
+    public ShuffleOrder(int size, int first, long seed) {
+        this(size, first, seed, null);
+    }
+
+    /**
+     * Initialize a weighted order of the values 0 to size - 1 that starts with a given value.
+     * The weights of all values are read in O(n).
+     * @param size The number of values.
+     * @param first The value played first, usually the current track.
+     * @param seed The seed of the random numbers.
+     * @param weights The weights of the values or null for a uniform order.
+     */
+    public ShuffleOrder(int size, int first, long seed, Weights weights) {
+        if (size > 0 && (first < 0 || first >= size)) {
+            throw new IllegalArgumentException("First value " + first + " of " + size);
+        }
+        mSeed = seed;
+        mRandom = new Random(seed);
+        mInitialSize = size;
+        mSize = size;
+        mWeights = weights;
+        mWeightTree = weights != null ? weighAll(size, weights) : null;
+        if (size > 0) {
+            unweigh(first);
+            swap(0, first);
+            mDrawn = 1;
+        }
+    }
+
+    /**
+     * Initialize an order of the values 0 to size - 1 that continues a history returned by
+     * {@link #getHistory()}. The values not drawn yet are drawn with the random numbers of
+     * the seed from the start, so they do not follow the order the history was taken from.
+     * @param size The number of values.
+     * @param history The values drawn so far in order. Values outside of 0 to size - 1 and
+     * repeated values are skipped.
+     * @param position The index of the current value in the history.
+     * @param seed The seed of the random numbers.
+     * @param weights The weights of the values or null for a uniform order.
+     */
+    public ShuffleOrder(int size, int[] history, int position, long seed, Weights weights) {
+        mSeed = seed;
+        mRandom = new Random(seed);
+        mInitialSize = size;
+        mSize = size;
+        mWeights = weights;
+        mWeightTree = weights != null ? weighAll(size, weights) : null;
+        int current = 0;
+        for (int i = 0; i < history.length; i++) {
+            if (i == position) {
+                current = mDrawn;
+            }
+            int value = history[i];
+            if (value < 0 || value >= size || lookup(value) < mDrawn) {
+                continue;
+            }
+            unweigh(value);
+            swap(mDrawn, lookup(value));
+            mDrawn++;
+        }
+        if (size > 0) {
+            setPosition(Math.min(current, Math.max(0, mDrawn - 1)));
+        }
+    }
+
+    public boolean isWeighted() {
+        return mWeightTree != null;
+    }
+
+    public long getSeed() {
+        return mSeed;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * The getDrawnCount method returns the number of values drawn so far, the history.
+     * @return The number of values whose index is fixed.
+     */
+    public int getDrawnCount() {
+        return mDrawn;
+    }
+
+    /**
+     * The getHistory method returns the values drawn so far, from which the order can be
+     * continued.
+     * @return The values at the indexes 0 to getDrawnCount() - 1.
+     */
+    public int[] getHistory() {
+        int[] history = new int[mDrawn];
+        for (int i = 0; i < mDrawn; i++) {
+            history[i] = valueAt(i);
+        }
+        return history;
+    }
+
+    /**
+     * The get method returns the value at an index of the order, drawing the values up to
+     * it if they were not drawn yet.
+     * @param index The index in the order.
+     * @return The value.
+     */
+    public int get(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index " + index + " of " + mSize);
+        }
+        while (mDrawn <= index) {
+            if (mWeightTree == null) {
+                swap(mDrawn, mDrawn + mRandom.nextInt(mSize - mDrawn));
+            } else {
+                long total = mWeightTree.total();
+                long pick = Math.min(total - 1, (long) (mRandom.nextDouble() * total));
+                int value = mWeightTree.find(pick);
+                mWeightTree.set(value, 0);
+                swap(mDrawn, lookup(value));
+            }
+            mDrawn++;
+        }
+        return valueAt(index);
+    }
+
+    /**
+     * The indexOf method returns the index of a value in the order. A value that was not
+     * drawn yet is drawn next, so it follows the history.
+     * @param value A value of the order.
+     * @return The index of the value.
+     */
+    public int indexOf(int value) {
+        int index = lookup(value);
+        if (index >= mDrawn) {
+            unweigh(value);
+            swap(mDrawn, index);
+            index = mDrawn++;
+        }
+        return index;
+    }
+
+    /**
+     * The updateWeight method reads the weight of a value again after it changed, if the
+     * value was not drawn yet.
+     * @param value A value of the order.
+     */
+    public void updateWeight(int value) {
+        int index = lookup(value);
+        if (mWeightTree != null && index >= mDrawn && index < mSize) {
+            mWeightTree.set(value, Math.max(1, mWeights.weightOf(value)));
+        }
+    }
+
+    /**
+     * The getPosition method returns the index of the current value.
+     * @return The index or 0 if the order is empty.
+     */
+    public int getPosition() {
+        return mPosition;
+    }
+
+    /**
+     * The setPosition method makes the value at an index the current one.
+     * @param index The index in the order.
+     */
+    public void setPosition(int index) {
+        get(index);
+        mPosition = index;
+    }
+
+    /**
+     * The add method adds a value to the values not drawn yet.
+     * @param value The value, at least the size the order was created with.
+     */
+    public void add(int value) {
+        if (value < mInitialSize) {
+            throw new IllegalArgumentException("Value " + value + " below " + mInitialSize);
+        }
+        set(mSize++, value);
+        if (mWeightTree != null) {
+            while (mWeightTree.size() <= value) {
+                mWeightTree.add(0);
+            }
+            mWeightTree.set(value, Math.max(1, mWeights.weightOf(value)));
+        }
+    }
+
+    /**
+     * The remove method removes a value from the order. A drawn value is cut out of the
+     * history in O(history) time, the order of the other drawn values is kept. If the
+     * current value is removed, the one after it becomes current.
+     * @param value A value of the order.
+     */
+    public void remove(int value) {
+        unweigh(value);
+        int index = lookup(value);
+        if (index < mDrawn) {
+            for (int i = index; i < mDrawn - 1; i++) {
+                set(i, valueAt(i + 1));
+            }
+            mDrawn--;
+            if (index < mPosition) {
+                mPosition--;
+            }
+            // The index freed at the end of the history joins the pool.
+            index = mDrawn;
+        }
+        int last = mSize - 1;
+        if (index != last) {
+            set(index, valueAt(last));
+        }
+        mValues.remove(last);
+        mIndexes.remove(value);
+        mSize--;
+        if (mPosition >= mSize) {
+            mPosition = Math.max(0, mSize - 1);
+        }
+        if (mSize > 0) {
+            get(mPosition);
+        }
+    }
+
+    /**
+     * The weighAll method builds the tree of the weights of the values 0 to size - 1.
+     * @param size The number of values.
+     * @param weights The weights of the values.
+     * @return The tree.
+     */
+    private static WeightTree weighAll(int size, Weights weights) {
+        long[] initial = new long[size];
+        for (int value = 0; value < size; value++) {
+            initial[value] = Math.max(1, weights.weightOf(value));
+        }
+        return new WeightTree(initial);
+    }
+
+    private void unweigh(int value) {
+        if (mWeightTree != null && value < mWeightTree.size()) {
+            mWeightTree.set(value, 0);
+        }
+    }
+
+    private int valueAt(int index) {
+        Integer value = mValues.get(index);
+        return value == null ? index : value;
+    }
+
+    private int lookup(int value) {
+        Integer index = mIndexes.get(value);
+        return index == null ? value : index;
+    }
+
+    private void set(int index, int value) {
+        if (index == value) {
+            mValues.remove(index);
+            mIndexes.remove(value);
+        } else {
+            mValues.put(index, value);
+            mIndexes.put(value, index);
+        }
+    }
+
+    private void swap(int a, int b) {
+        int value = valueAt(a);
+        set(a, valueAt(b));
+        set(b, value);
+    }
+}
@@ -0,0 +1,134 @@
+package edu.temple.simpletunes;
+
+/**
+ * The SkipCoalescer class collects the skips requested while the playback thread is busy
+ * into a single target, so a burst of presses on next, previous or the playlist prepares and
+ * announces only the track the user ended on. The latest absolute position wins and relative
+ * skips requested after it are added up. It is safe to use from any thread.
+ */
+public class SkipCoalescer {
+
+    /**
+     * The Skip class is the resolved target of the skips collected since the last take.
+     */
+    public static class Skip {
+        /**
+         * The position in the queue to play.
+         */
+        public final int target;
+        /**
+         * The number of positions the skips went past the end (positive) or the start
+         * (negative) of the queue, 0 if the target was reached.
+         */
+        public final int overshoot;
+        /**
+         * The state of the target being selected explicitly, which restarts the current
+         * track if it is selected again.
+         */
+        public final boolean absolute;
+        /**
+         * The time the last skip was requested, from SystemClock.elapsedRealtimeNanos.
+         */
+        public final long time;
+
+        Skip(int target, int overshoot, boolean absolute, long time) {
+            this.target = target;
+            this.overshoot = overshoot;
+            this.absolute = absolute;
+            this.time = time;
+        }
+    }
+
+    /**
+     * The Order interface maps a position of the queue to its index in the play order the
+     * skips move through, such as a shuffled order.
+     */
+    public interface Order {
+        int indexOf(int position);
+    }
+
+    private boolean mPending = false;
+    /**
+     * The latest absolute position requested or -1.
+     */
+    private int mPosition = -1;
+    /**
+     * The sum of the relative skips requested after mPosition.
+     */
+    private int mDelta = 0;
+    private long mTime = 0;
+
+    /**
+     * The skipBy method requests a skip relative to the current track, or to the target of
+     * the skips that are still pending.
+     * @param delta The number of positions, 1 for next and -1 for previous.
+     * @param time The time of the request.
+     * @return True if no skip was pending, so the caller has to schedule a {@link #take}.
+     */
+    public synchronized boolean skipBy(int delta, long time) {
+        mDelta += delta;
+        return offer(time);
+    }
+
+    /**
+     * The skipTo method requests a position of the queue, replacing the skips still pending.
+     * @param position The position in the queue.
+     * @param time The time of the request.
+     * @return True if no skip was pending, so the caller has to schedule a {@link #take}.
+     */
+    public synchronized boolean skipTo(int position, long time) {
+        mPosition = position;
+        mDelta = 0;
+        return offer(time);
+    }
+
+    /**
+     * The isPending method checks if skips were requested since the last take.
+     * @return True if a skip is pending.
+     */
+    public synchronized boolean isPending() {
+        return mPending;
+    }
+
+    /**
+     * The take method resolves the pending skips against the queue and clears them.
+     * @param current The position of the current track.
+     * @param size The size of the queue.
+     * @return The skip or null if none is pending.
+     */
+    public Skip take(int current, int size) {
+        return take(current, size, position -> position);
+    }
+
+    /**
+     * The take method resolves the pending skips against a play order of the queue and
+     * clears them. Relative skips move through the play order.
+     * @param current The index of the current track in the play order.
+     * @param size The size of the queue.
+     * @param order Maps the position requested by skipTo, kept within the queue, to its index
+     *              in the play order.
+     * @return The skip, its target an index in the play order, or null if none is pending.
+     */
+    public synchronized Skip take(int current, int size, Order order) {
+        if (!mPending) {
+            return null;
+        }
+        boolean absolute = mPosition >= 0;
+        // A position selected in a playlist that shrank since is kept within the queue.
+        int position = Math.min(mPosition, size - 1);
+        long wanted = (long) (absolute && position >= 0 ? order.indexOf(position) : current) + mDelta;
+        int target = (int) Math.max(0, Math.min(size - 1, wanted));
+        Skip skip = new Skip(target, (int) (wanted - target), absolute, mTime);
+        mPending = false;
+        mPosition = -1;
+        mDelta = 0;
+        return skip;
+    }
+
+    private boolean offer(long time) {
+        mTime = time;
+        boolean schedule = !mPending;
+        mPending = true;
+        return schedule;
+    }
+}
@@ -0,0 +1,213 @@
+package edu.temple.simpletunes;
+
+import androidx.annotation.NonNull;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * The SortOrders class holds every order the tracks of a folder can be listed in, each as a
+ * permutation of track IDs. The permutations are computed together, once, from the sort keys
+ * of the tracks, so the MediaPlayerService can switch between orders by swapping arrays
+ * instead of sorting MusicTrack objects again. Computing them takes a while for a large
+ * folder and should run on a background thread. Tags that were not read yet sort as unknown.
+ */
+public class SortOrders {
+    /**
+     * The order of the MusicTrackComparator: folder, track number and file name.
+     */
+    public static final int ORDER_TRACK = 0;
+    public static final int ORDER_TITLE = 1;
+    public static final int ORDER_ARTIST = 2;
+    public static final int ORDER_ALBUM = 3;
+    public static final int ORDER_NAME = 4;
+    /**
+     * The order of the last modified time, newest first.
+     */
+    public static final int ORDER_MODIFIED = 5;
+    /**
+     * The number of orders.
+     */
+    public static final int ORDER_COUNT = 6;
+    /**
+     * The track IDs in each order.
+     */
+    private final int[][] mPermutations;
+    /**
+     * The position of each track ID in each order.
+     */
+    private final int[][] mRanks;
+
+    private SortOrders(int[][] permutations) {
+        mPermutations = permutations;
+        mRanks = new int[permutations.length][];
+        for(int order = 0; order < permutations.length; order++){
+            int[] permutation = permutations[order];
+            int[] ranks = new int[permutation.length];
+            for(int i = 0; i < permutation.length; i++){
+                ranks[permutation[i]] = i;
+            }
+            mRanks[order] = ranks;
+        }
+    }
+
+    /**
+     * The compute method sorts the tracks in every order. It stops early if the calling
+     * thread is interrupted.
+     * @param tracks The tracks, the ID of a track is its position in the array.
+     * @return The orders or null if the thread was interrupted.
+     */
+    public static SortOrders compute(@NonNull MusicTrack[] tracks) {
+        return compute(tracks, Locale.getDefault());
+    }
+
+    /**
+     * The compute method sorts the tracks in every order with the rules of a locale.
+     * @param tracks The tracks, the ID of a track is its position in the array.
+     * @param locale The locale whose rules order the names and tags.
+     * @return The orders or null if the thread was interrupted.
+     */
+    static SortOrders compute(@NonNull MusicTrack[] tracks, Locale locale) {
+        Collator collator = Collator.getInstance(locale);
+        int count = tracks.length;
+        // Extract every key once. Artists and albums repeat, so their keys are shared.
+        HashMap<String, CollationKey> tagKeys = new HashMap<>();
+        String[] folders = new String[count];
+        int[] numbers = new int[count];
+        long[] modified = new long[count];
+        CollationKey[] names = new CollationKey[count];
+        CollationKey[] titles = new CollationKey[count];
+        CollationKey[] artists = new CollationKey[count];
+        CollationKey[] albums = new CollationKey[count];
+        for(int t = 0; t < count; t++){
+            if(Thread.currentThread().isInterrupted()){
+                return null;
+            }
+            MusicTrack track = tracks[t];
+            TrackMetadata m = track.peekMetadata();
+            folders[t] = track.getFolder();
+            numbers[t] = m == null ? -1 : TrackMetadata.parseTrackNumber(m.getTrack());
+            modified[t] = track.getLastModified();
+            String name = track.getName();
+            names[t] = collator.getCollationKey(name == null ? "" : MusicTrackComparator.naturalKey(name));
+            titles[t] = m == null || m.getTitle() == null ? names[t] : collator.getCollationKey(m.getTitle());
+            artists[t] = m == null ? null : tagKey(collator, tagKeys, m.getArtist());
+            albums[t] = m == null ? null : tagKey(collator, tagKeys, m.getAlbum());
+        }
+
+        // Every order ends with the file name and the ID, so each one is a total order.
+        Comparator<Integer> byName = (a, b) -> {
+            int c = names[a].compareTo(names[b]);
+            return c != 0 ? c : Integer.compare(a, b);
+        };
+        Comparator<Integer> byNumber = (a, b) -> {
+            int n1 = numbers[a];
+            int n2 = numbers[b];
+            if((n1 < 0) != (n2 < 0)){
+                return n1 < 0 ? 1 : -1;
+            }
+            return Integer.compare(n1, n2);
+        };
+        Comparator<Integer> byFolder = (a, b) -> compareNullsFirst(folders[a], folders[b]);
+        Comparator<Integer> byAlbum = (a, b) -> compareNullsLast(albums[a], albums[b]);
+
+        int[][] permutations = new int[ORDER_COUNT][];
+        permutations[ORDER_TRACK] = sort(count, byFolder.thenComparing(byNumber).thenComparing(byName));
+        permutations[ORDER_TITLE] = sort(count, ((Comparator<Integer>) (a, b) -> titles[a].compareTo(titles[b]))
+                .thenComparing(byName));
+        permutations[ORDER_ARTIST] = sort(count, ((Comparator<Integer>) (a, b) -> compareNullsLast(artists[a], artists[b]))
+                .thenComparing(byAlbum).thenComparing(byFolder).thenComparing(byNumber).thenComparing(byName));
+        permutations[ORDER_ALBUM] = sort(count, byAlbum.thenComparing(byFolder).thenComparing(byNumber)
+                .thenComparing(byName));
+        permutations[ORDER_NAME] = sort(count, byName);
+        permutations[ORDER_MODIFIED] = sort(count, ((Comparator<Integer>) (a, b) -> Long.compare(modified[b], modified[a]))
+                .thenComparing(byName));
+        for(int[] permutation : permutations){
+            if(permutation == null){
+                return null;
+            }
+        }
+        return new SortOrders(permutations);
+    }
+
+    /**
+     * The size method returns the number of tracks the orders were computed for.
+     * @return The number of tracks.
+     */
+    public int size() {
+        return mPermutations[ORDER_TRACK].length;
+    }
+
+    /**
+     * The getPermutation method returns the track IDs in an order. The array is shared and
+     * must not be changed.
+     * @param order One of the ORDER constants.
+     * @return The track IDs in that order.
+     */
+    public int[] getPermutation(int order) {
+        return mPermutations[order];
+    }
+
+    /**
+     * The getRank method returns the position of a track in an order.
+     * @param order One of the ORDER constants.
+     * @param id The track ID.
+     * @return The position or -1 if the track is not part of the orders.
+     */
+    public int getRank(int order, int id) {
+        int[] ranks = mRanks[order];
+        return id >= 0 && id < ranks.length ? ranks[id] : -1;
+    }
+
+    /**
+     * The sort method sorts the track IDs with a comparator.
+     * @param count The number of tracks.
+     * @param comparator The comparator of track IDs.
+     * @return The sorted IDs or null if the thread was interrupted.
+     */
+    private static int[] sort(int count, Comparator<Integer> comparator) {
+        if(Thread.currentThread().isInterrupted()){
+            return null;
+        }
+        Integer[] ids = new Integer[count];
+        for(int i = 0; i < count; i++){
+            ids[i] = i;
+        }
+        Arrays.sort(ids, comparator);
+        int[] permutation = new int[count];
+        for(int i = 0; i < count; i++){
+            permutation[i] = ids[i];
+        }
+        return permutation;
+    }
+
+    private static CollationKey tagKey(Collator collator, HashMap<String, CollationKey> keys, String tag) {
+        if(tag == null){
+            return null;
+        }
+        CollationKey key = keys.get(tag);
+        if(key == null){
+            key = collator.getCollationKey(tag);
+            keys.put(tag, key);
+        }
+        return key;
+    }
+
+    private static int compareNullsLast(CollationKey a, CollationKey b) {
+        if(a == null || b == null){
+            return a == null ? (b == null ? 0 : 1) : -1;
+        }
+        return a.compareTo(b);
+    }
+
+    private static int compareNullsFirst(String a, String b) {
+        if(a == null || b == null){
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        return a.compareTo(b);
+    }
+}
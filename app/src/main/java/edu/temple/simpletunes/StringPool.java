@@ -0,0 +1,79 @@
+package edu.temple.simpletunes;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * The StringPool class keeps one instance of equal strings, so the artist, album and folder
+ * of thousands of tracks share a single copy each. Document Uris are stored as a pooled prefix
+ * shared by the documents of a directory and the part of the Uri that follows it. It is safe
+ * to use from the scanning threads.
+ * <p>
+ * The pool only holds its strings weakly, so a string is dropped once no track uses it any
+ * more and the pool does not grow with every folder that was ever scanned.
+ */
+class StringPool {
+    /**
+     * The pool shared by all tracks.
+     */
+    static final StringPool SHARED = new StringPool();
+    /**
+     * The encoded path separator used inside the document IDs of a document Uri.
+     */
+    private static final String ENCODED_SLASH = "%2F";
+    /**
+     * The pooled strings, each mapped to a weak reference to itself.
+     */
+    private final WeakHashMap<String, WeakReference<String>> mStrings = new WeakHashMap<>();
+
+    /**
+     * The intern method returns the pooled instance of a string, adding it if it is new.
+     * @param s The string or null.
+     * @return The pooled string equal to s or null.
+     */
+    synchronized String intern(String s) {
+        if(s == null){
+            return null;
+        }
+        WeakReference<String> ref = mStrings.get(s);
+        String pooled = ref == null ? null : ref.get();
+        if(pooled == null){
+            mStrings.put(s, new WeakReference<>(s));
+            return s;
+        }
+        return pooled;
+    }
+
+    /**
+     * The size method returns the number of distinct strings in the pool that are still in use.
+     * @return The number of strings.
+     */
+    synchronized int size() {
+        return mStrings.size();
+    }
+
+    /**
+     * The uriPrefix method returns the pooled part of a document Uri that is shared with the
+     * other documents of its directory, up to and including the last path separator.
+     * @param uri The Uri string of a document.
+     * @return The pooled prefix, the rest of the Uri starts at its length.
+     */
+    String uriPrefix(String uri) {
+        return intern(uri.substring(0, uriPrefixLength(uri)));
+    }
+
+    /**
+     * The uriPrefixLength method finds where the last path segment of a Uri starts, counting
+     * the encoded separators of a document ID as separators.
+     * @param uri The Uri string of a document.
+     * @return The length of the shared prefix.
+     */
+    static int uriPrefixLength(String uri) {
+        int split = uri.lastIndexOf('/') + 1;
+        int encoded = Math.max(uri.lastIndexOf(ENCODED_SLASH), uri.lastIndexOf("%2f"));
+        if(encoded >= 0){
+            split = Math.max(split, encoded + ENCODED_SLASH.length());
+        }
+        return split;
+    }
+}
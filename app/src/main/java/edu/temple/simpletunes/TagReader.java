@@ -0,0 +1,672 @@
+package edu.temple.simpletunes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The TagReader class reads the title, artist, album and track number tags of an audio file
+ * without MediaMetadataRetriever. It understands ID3v2 and ID3v1 (MP3), Vorbis comments (FLAC,
+ * Ogg Vorbis and Opus) and iTunes ilst atoms (MP4/M4A). The duration is read from the FLAC
+ * STREAMINFO block and the MP4 mvhd atom, other formats leave it unknown. Only the header region of a file is
+ * read, with positional reads into a small buffer that is reused between files, so a reader
+ * should be used by one thread at a time.
+ */
+public class TagReader {
+    /**
+     * The size of the reusable buffer, larger reads allocate a temporary buffer.
+     */
+    private static final int BUFFER_SIZE = 8 * 1024;
+    /**
+     * The largest tag payload that is read, larger values are skipped.
+     */
+    private static final int MAX_PAYLOAD = 256 * 1024;
+    /**
+     * The number of Ogg pages searched for the comment header.
+     */
+    private static final int MAX_OGG_PAGES = 16;
+    /**
+     * The deepest level of MP4 atoms searched for the ilst atom.
+     */
+    private static final int MAX_ATOM_DEPTH = 4;
+    /**
+     * The buffer reused for small reads.
+     */
+    private final ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    /**
+     * The buffer an Ogg comment packet is reassembled in, grown up to MAX_PAYLOAD as needed
+     * and reused between files.
+     */
+    private ByteBuffer mPacket;
+    /**
+     * The channel of the file being read.
+     */
+    private FileChannel mChannel;
+
+    /**
+     * The read method reads the tags of an audio file.
+     * @param channel The channel of the file, its position is not changed.
+     * @return The tags of the file, or null if the format is not supported and the caller
+     *         should fall back to MediaMetadataRetriever.
+     * @throws IOException If the file could not be read.
+     */
+    public TrackMetadata read(FileChannel channel) throws IOException {
+        mChannel = channel;
+        try {
+            if(channel.size() < 4){
+                return null;
+            }
+            ByteBuffer magic = read(0, 12);
+            if(magic.remaining() >= 3 && magic.get(0) == 'I' && magic.get(1) == 'D' && magic.get(2) == '3'){
+                return readId3v2();
+            }
+            if(magic.remaining() >= 4 && startsWith(magic, 0, "fLaC")){
+                return readFlac();
+            }
+            if(magic.remaining() >= 4 && startsWith(magic, 0, "OggS")){
+                return readOgg();
+            }
+            if(magic.remaining() >= 8 && startsWith(magic, 4, "ftyp")){
+                return readMp4();
+            }
+            if((magic.get(0) & 0xFF) == 0xFF && (magic.get(1) & 0xE0) == 0xE0){
+                // MPEG audio without an ID3v2 tag, only an ID3v1 tag can be present.
+                TrackMetadata v1 = readId3v1();
+                return v1 != null ? v1 : new TrackMetadata(null, null, null, null, true);
+            }
+            return null;
+        } finally {
+            mChannel = null;
+        }
+    }
+
+    /**
+     * The readId3v2 method reads the text frames of an ID3v2.2, v2.3 or v2.4 tag.
+     * @return The tags or null if the tag uses unsynchronisation and can not be read in place.
+     * @throws IOException If the file could not be read.
+     */
+    private TrackMetadata readId3v2() throws IOException {
+        ByteBuffer header = read(0, 10);
+        if(header.remaining() < 10){
+            return null;
+        }
+        int version = header.get(3);
+        int flags = header.get(5) & 0xFF;
+        long end = 10 + syncsafe(header, 6);
+        if(version < 2 || version > 4 || (flags & 0x80) != 0){
+            // Unsynchronised tags would have to be decoded as a whole.
+            return null;
+        }
+        long position = 10;
+        if((flags & 0x40) != 0 && version >= 3){
+            ByteBuffer extended = read(position, 4);
+            int size = version == 4 ? syncsafe(extended, 0) : extended.getInt(0) + 4;
+            position += size;
+        }
+        int idLength = version == 2 ? 3 : 4;
+        int headerLength = version == 2 ? 6 : 10;
+        String title = null, artist = null, album = null, track = null;
+        while(position + headerLength <= end){
+            ByteBuffer frame = read(position, headerLength);
+            if(frame.remaining() < headerLength || frame.get(0) == 0){
+                break; // Padding.
+            }
+            String id = ascii(frame, 0, idLength);
+            int size;
+            int frameFlags = 0;
+            if(version == 2){
+                size = ((frame.get(3) & 0xFF) << 16) | ((frame.get(4) & 0xFF) << 8) | (frame.get(5) & 0xFF);
+            }else if(version == 3){
+                size = frame.getInt(4);
+                frameFlags = frame.getShort(8) & 0xFFFF;
+            }else{
+                size = syncsafe(frame, 4);
+                frameFlags = frame.getShort(8) & 0xFFFF;
+            }
+            if(size < 0){
+                break;
+            }
+            long payload = position + headerLength;
+            position = payload + size;
+            // Compressed, encrypted or unsynchronised frames are skipped.
+            boolean plain = version == 3 ? (frameFlags & 0x00C0) == 0 : (frameFlags & 0x000E) == 0;
+            if(!plain || size > MAX_PAYLOAD){
+                continue;
+            }
+            if(version == 4 && (frameFlags & 0x0001) != 0){
+                // Skip the data length indicator.
+                payload += 4;
+                size -= 4;
+            }
+            switch (id) {
+                case "TIT2":
+                case "TT2":
+                    title = id3Text(payload, size);
+                    break;
+                case "TPE1":
+                case "TP1":
+                    artist = id3Text(payload, size);
+                    break;
+                case "TALB":
+                case "TAL":
+                    album = id3Text(payload, size);
+                    break;
+                case "TRCK":
+                case "TRK":
+                    track = trackNumber(id3Text(payload, size));
+                    break;
+                default:
+                    break;
+            }
+        }
+        if(title == null && artist == null && album == null && track == null){
+            TrackMetadata v1 = readId3v1();
+            if(v1 != null){
+                return v1;
+            }
+        }
+        return new TrackMetadata(title, track, artist, album, true);
+    }
+
+    /**
+     * The id3Text method decodes the payload of an ID3v2 text frame.
+     * @param position The position of the payload.
+     * @param size The size of the payload.
+     * @return The first string of the frame or null if it is empty.
+     * @throws IOException If the file could not be read.
+     */
+    private String id3Text(long position, int size) throws IOException {
+        if(size < 1){
+            return null;
+        }
+        ByteBuffer data = read(position, size);
+        int encoding = data.get(0);
+        Charset charset;
+        int unitSize = 1;
+        switch (encoding) {
+            case 1:
+                charset = StandardCharsets.UTF_16;
+                unitSize = 2;
+                break;
+            case 2:
+                charset = StandardCharsets.UTF_16BE;
+                unitSize = 2;
+                break;
+            case 3:
+                charset = StandardCharsets.UTF_8;
+                break;
+            default:
+                charset = StandardCharsets.ISO_8859_1;
+                break;
+        }
+        int start = 1;
+        int length = data.remaining() - 1;
+        // Stop at the first terminator, v2.4 frames can hold several strings.
+        for(int i = start; i + unitSize <= data.remaining(); i += unitSize){
+            if(data.get(i) == 0 && (unitSize == 1 || data.get(i + 1) == 0)){
+                length = i - start;
+                break;
+            }
+        }
+        return emptyToNull(new String(data.array(), data.arrayOffset() + start, length, charset));
+    }
+
+    /**
+     * The readId3v1 method reads an ID3v1 or ID3v1.1 tag at the end of the file.
+     * @return The tags or null if there is no ID3v1 tag.
+     * @throws IOException If the file could not be read.
+     */
+    private TrackMetadata readId3v1() throws IOException {
+        long size = mChannel.size();
+        if(size < 128){
+            return null;
+        }
+        ByteBuffer tag = read(size - 128, 128);
+        if(tag.remaining() < 128 || !startsWith(tag, 0, "TAG")){
+            return null;
+        }
+        String title = id3v1Text(tag, 3);
+        String artist = id3v1Text(tag, 33);
+        String album = id3v1Text(tag, 63);
+        String track = null;
+        if(tag.get(125) == 0 && tag.get(126) != 0){
+            track = Integer.toString(tag.get(126) & 0xFF);
+        }
+        return new TrackMetadata(title, track, artist, album, true);
+    }
+
+    /**
+     * The id3v1Text method decodes a fixed width ID3v1 field.
+     * @param tag The buffer holding the tag.
+     * @param offset The offset of the 30 byte field.
+     * @return The trimmed value or null if it is empty.
+     */
+    private static String id3v1Text(ByteBuffer tag, int offset) {
+        int length = 0;
+        while(length < 30 && tag.get(offset + length) != 0){
+            length++;
+        }
+        return emptyToNull(new String(tag.array(), tag.arrayOffset() + offset, length, StandardCharsets.ISO_8859_1).trim());
+    }
+
+    /**
+     * The readFlac method reads the VORBIS_COMMENT metadata block of a FLAC file.
+     * @return The tags of the file.
+     * @throws IOException If the file could not be read.
+     */
+    private TrackMetadata readFlac() throws IOException {
+        long position = 4;
+        int duration = -1;
+        boolean last = false;
+        while(!last){
+            ByteBuffer header = read(position, 4);
+            if(header.remaining() < 4){
+                break;
+            }
+            int type = header.get(0) & 0x7F;
+            last = (header.get(0) & 0x80) != 0;
+            int length = ((header.get(1) & 0xFF) << 16) | ((header.get(2) & 0xFF) << 8) | (header.get(3) & 0xFF);
+            if(type == 0 && length >= 18){
+                // STREAMINFO: a 20 bit sample rate at bit 80 and a 36 bit sample count at bit 108.
+                ByteBuffer info = read(position + 4, 18);
+                if(info.remaining() >= 18){
+                    long bits = info.getLong(10);
+                    duration = millis(bits & 0xFFFFFFFFFL, bits >>> 44);
+                }
+            }else if(type == 4){
+                ByteBuffer block = read(position + 4, Math.min(length, MAX_PAYLOAD));
+                return readVorbisComment(block, duration);
+            }
+            position += 4 + length;
+        }
+        return new TrackMetadata(null, null, null, null, duration, true);
+    }
+
+    /**
+     * The readOgg method reassembles the comment header packet of an Ogg Vorbis or Opus
+     * stream from the first pages of the file.
+     * @return The tags of the file or null if the stream is neither Vorbis nor Opus.
+     * @throws IOException If the file could not be read.
+     */
+    private TrackMetadata readOgg() throws IOException {
+        if(mPacket == null){
+            mPacket = ByteBuffer.allocate(BUFFER_SIZE);
+        }
+        mPacket.clear();
+        int packetIndex = 0;
+        long position = 0;
+        for(int page = 0; page < MAX_OGG_PAGES; page++){
+            ByteBuffer header = read(position, 27);
+            if(header.remaining() < 27 || !startsWith(header, 0, "OggS")){
+                break;
+            }
+            int segments = header.get(26) & 0xFF;
+            ByteBuffer table = ByteBuffer.wrap(copy(read(position + 27, segments)));
+            long data = position + 27 + segments;
+            for(int i = 0; i < table.remaining(); i++){
+                int lacing = table.get(i) & 0xFF;
+                if(packetIndex == 1 && !appendToPacket(read(data, lacing))){
+                    // The comment packet is larger than MAX_PAYLOAD, read the fields that were kept.
+                    return readOggComment(mPacket);
+                }
+                data += lacing;
+                if(lacing < 255){
+                    // End of a packet.
+                    if(packetIndex == 1){
+                        return readOggComment(mPacket);
+                    }
+                    packetIndex++;
+                }
+            }
+            position = data;
+        }
+        return packetIndex == 1 ? readOggComment(mPacket) : null;
+    }
+
+    /**
+     * The appendToPacket method adds a segment to the Ogg packet being reassembled. A segment
+     * that does not fit within MAX_PAYLOAD is cut, so the packet ends with the bytes that
+     * directly follow each other in the stream.
+     * @param segment The segment.
+     * @return False if the segment was cut and the packet is truncated.
+     */
+    private boolean appendToPacket(ByteBuffer segment) {
+        if(mPacket.remaining() < segment.remaining() && mPacket.capacity() < MAX_PAYLOAD){
+            int capacity = mPacket.capacity();
+            while(capacity - mPacket.position() < segment.remaining() && capacity < MAX_PAYLOAD){
+                capacity *= 2;
+            }
+            ByteBuffer grown = ByteBuffer.allocate(Math.min(capacity, MAX_PAYLOAD));
+            mPacket.flip();
+            grown.put(mPacket);
+            mPacket = grown;
+        }
+        if(mPacket.remaining() < segment.remaining()){
+            segment.limit(segment.position() + mPacket.remaining());
+            mPacket.put(segment);
+            return false;
+        }
+        mPacket.put(segment);
+        return true;
+    }
+
+    /**
+     * The readOggComment method strips the packet header of a Vorbis or Opus comment packet.
+     * @param packet The comment packet, positioned after its last byte.
+     * @return The tags or null if the packet is not a comment header.
+     */
+    private static TrackMetadata readOggComment(ByteBuffer packet) {
+        packet.flip();
+        if(packet.remaining() >= 7 && packet.get(0) == 3 && startsWith(packet, 1, "vorbis")){
+            packet.position(7);
+        }else if(packet.remaining() >= 8 && startsWith(packet, 0, "OpusTags")){
+            packet.position(8);
+        }else{
+            return null;
+        }
+        return readVorbisComment(packet.slice(), -1);
+    }
+
+    /**
+     * The readVorbisComment method reads the fields of a Vorbis comment block. A truncated
+     * block is read up to its last complete field.
+     * @param block The comment block starting with the vendor string length.
+     * @param duration The duration of the stream in milliseconds or -1 if unknown.
+     * @return The tags of the block.
+     */
+    private static TrackMetadata readVorbisComment(ByteBuffer block, int duration) {
+        String title = null, artist = null, album = null, track = null;
+        block.order(ByteOrder.LITTLE_ENDIAN);
+        int position = 0;
+        if(block.remaining() >= 8){
+            long vendorLength = block.getInt(0) & 0xFFFFFFFFL;
+            position = (int) Math.min(4 + vendorLength, block.remaining());
+            long count = position + 4 <= block.remaining() ? block.getInt(position) & 0xFFFFFFFFL : 0;
+            position += 4;
+            for(long i = 0; i < count && position + 4 <= block.remaining(); i++){
+                long length = block.getInt(position) & 0xFFFFFFFFL;
+                position += 4;
+                if(position + length > block.remaining()){
+                    break;
+                }
+                String comment = new String(block.array(), block.arrayOffset() + position, (int) length, StandardCharsets.UTF_8);
+                position += (int) length;
+                int separator = comment.indexOf('=');
+                if(separator < 0){
+                    continue;
+                }
+                String key = comment.substring(0, separator).toUpperCase(java.util.Locale.ROOT);
+                String value = emptyToNull(comment.substring(separator + 1));
+                if(key.equals("TITLE") && title == null){
+                    title = value;
+                }else if(key.equals("ARTIST") && artist == null){
+                    artist = value;
+                }else if(key.equals("ALBUM") && album == null){
+                    album = value;
+                }else if(key.equals("TRACKNUMBER") && track == null){
+                    track = trackNumber(value);
+                }
+            }
+        }
+        return new TrackMetadata(title, track, artist, album, duration, true);
+    }
+
+    /**
+     * The readMp4 method finds the moov/udta/meta/ilst atom of an MP4 file and reads its items,
+     * and the duration from the moov/mvhd atom.
+     * @return The tags of the file.
+     * @throws IOException If the file could not be read.
+     */
+    private TrackMetadata readMp4() throws IOException {
+        int duration = readMp4Duration();
+        long[] ilst = findAtom(0, mChannel.size(), new String[]{"moov", "udta", "meta", "ilst"}, 0);
+        if(ilst == null){
+            return new TrackMetadata(null, null, null, null, duration, true);
+        }
+        String title = null, artist = null, album = null, track = null;
+        long position = ilst[0];
+        while(position + 8 <= ilst[1]){
+            long[] item = atom(position, ilst[1]);
+            if(item == null){
+                break;
+            }
+            String type = atomType(position);
+            long[] data = findAtom(item[0], item[1], new String[]{"data"}, 0);
+            if(data != null && data[1] - data[0] >= 8 && data[1] - data[0] <= MAX_PAYLOAD){
+                // The data atom starts with a type indicator and a locale.
+                ByteBuffer value = read(data[0] + 8, (int) (data[1] - data[0] - 8));
+                switch (type) {
+                    case "\u00A9nam":
+                        title = utf8(value);
+                        break;
+                    case "\u00A9ART":
+                        artist = utf8(value);
+                        break;
+                    case "\u00A9alb":
+                        album = utf8(value);
+                        break;
+                    case "trkn":
+                        if(value.remaining() >= 4 && value.getShort(2) != 0){
+                            track = Integer.toString(value.getShort(2) & 0xFFFF);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            position = item[1];
+        }
+        return new TrackMetadata(title, track, artist, album, duration, true);
+    }
+
+    /**
+     * The readMp4Duration method reads the time scale and duration of the movie header.
+     * @return The duration in milliseconds or -1 if it is unknown.
+     * @throws IOException If the file could not be read.
+     */
+    private int readMp4Duration() throws IOException {
+        long[] mvhd = findAtom(0, mChannel.size(), new String[]{"moov", "mvhd"}, 0);
+        if(mvhd == null || mvhd[1] - mvhd[0] < 20){
+            return -1;
+        }
+        ByteBuffer header = read(mvhd[0], 32);
+        // Version 1 headers use 64 bit times and duration, version 0 headers 32 bit ones.
+        if(header.get(0) == 1){
+            return header.remaining() >= 32 ? millis(header.getLong(24), header.getInt(20) & 0xFFFFFFFFL) : -1;
+        }
+        return millis(header.getInt(16) & 0xFFFFFFFFL, header.getInt(12) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * The millis method converts a duration counted in units of a rate to milliseconds.
+     * @param units The duration in units.
+     * @param rate The number of units per second.
+     * @return The duration in milliseconds or -1 if it is unknown or too long.
+     */
+    private static int millis(long units, long rate) {
+        if(units <= 0 || rate <= 0){
+            return -1;
+        }
+        long millis = units / rate * 1000 + units % rate * 1000 / rate;
+        return millis > Integer.MAX_VALUE ? -1 : (int) millis;
+    }
+
+    /**
+     * The findAtom method follows a path of atom types below a range of the file.
+     * @param start The position of the first atom of the range.
+     * @param end The end of the range.
+     * @param path The atom types to follow.
+     * @param depth The index within the path of the atom searched in this range.
+     * @return The start and end of the content of the last atom of the path or null.
+     * @throws IOException If the file could not be read.
+     */
+    private long[] findAtom(long start, long end, String[] path, int depth) throws IOException {
+        long position = start;
+        while(depth < MAX_ATOM_DEPTH && position + 8 <= end){
+            long[] content = atom(position, end);
+            if(content == null){
+                return null;
+            }
+            if(atomType(position).equals(path[depth])){
+                long contentStart = content[0];
+                if(path[depth].equals("meta")){
+                    contentStart += 4; // The meta atom is a full box with version and flags.
+                }
+                if(depth == path.length - 1){
+                    return new long[]{contentStart, content[1]};
+                }
+                return findAtom(contentStart, content[1], path, depth + 1);
+            }
+            position = content[1];
+        }
+        return null;
+    }
+
+    /**
+     * The atom method reads the size of the atom at a position.
+     * @param position The position of the atom.
+     * @param end The end of the enclosing range.
+     * @return The start and end of the content of the atom or null if the atom is invalid.
+     * @throws IOException If the file could not be read.
+     */
+    private long[] atom(long position, long end) throws IOException {
+        ByteBuffer header = read(position, 16);
+        if(header.remaining() < 8){
+            return null;
+        }
+        long size = header.getInt(0) & 0xFFFFFFFFL;
+        long headerLength = 8;
+        if(size == 1 && header.remaining() >= 16){
+            size = header.getLong(8);
+            headerLength = 16;
+        }else if(size == 0){
+            size = end - position;
+        }
+        if(size < headerLength || position + size > end){
+            return null;
+        }
+        return new long[]{position + headerLength, position + size};
+    }
+
+    /**
+     * The atomType method reads the four character type of the atom at a position.
+     * @param position The position of the atom.
+     * @return The type of the atom.
+     * @throws IOException If the file could not be read.
+     */
+    private String atomType(long position) throws IOException {
+        ByteBuffer header = read(position + 4, 4);
+        return new String(header.array(), header.arrayOffset(), header.remaining(), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * The read method reads a range of the file into the reusable buffer, or into a temporary
+     * buffer if the range is larger. The contents are only valid until the next read.
+     * @param position The position of the range.
+     * @param length The length of the range.
+     * @return A buffer holding the range, shorter if the file ends first.
+     * @throws IOException If the file could not be read.
+     */
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = length <= mBuffer.capacity() ? mBuffer : ByteBuffer.allocate(length);
+        buffer.clear();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        buffer.limit(length);
+        while(buffer.hasRemaining()){
+            int n = mChannel.read(buffer, position + buffer.position());
+            if(n < 0){
+                break;
+            }
+            if(n == 0 && position + buffer.position() >= mChannel.size()){
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * The copy method copies the remaining bytes of a buffer.
+     * @param buffer The buffer to copy.
+     * @return The copied bytes.
+     */
+    private static byte[] copy(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * The syncsafe method decodes a 28 bit ID3v2 syncsafe integer.
+     * @param buffer The buffer holding the integer.
+     * @param offset The offset of the integer.
+     * @return The decoded value.
+     */
+    private static int syncsafe(ByteBuffer buffer, int offset) {
+        return ((buffer.get(offset) & 0x7F) << 21) | ((buffer.get(offset + 1) & 0x7F) << 14)
+                | ((buffer.get(offset + 2) & 0x7F) << 7) | (buffer.get(offset + 3) & 0x7F);
+    }
+
+    /**
+     * The startsWith method checks for an ASCII string at an offset of a buffer.
+     * @param buffer The buffer to check.
+     * @param offset The offset of the string.
+     * @param s The expected string.
+     * @return True if the buffer holds the string at the offset.
+     */
+    private static boolean startsWith(ByteBuffer buffer, int offset, String s) {
+        if(offset + s.length() > buffer.limit()){
+            return false;
+        }
+        for(int i = 0; i < s.length(); i++){
+            if(buffer.get(offset + i) != s.charAt(i)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The ascii method decodes an ASCII string.
+     * @param buffer The buffer holding the string.
+     * @param offset The offset of the string.
+     * @param length The length of the string.
+     * @return The decoded string.
+     */
+    private static String ascii(ByteBuffer buffer, int offset, int length) {
+        return new String(buffer.array(), buffer.arrayOffset() + offset, length, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * The utf8 method decodes the remaining bytes of a buffer as UTF-8.
+     * @param buffer The buffer to decode.
+     * @return The decoded string or null if it is empty.
+     */
+    private static String utf8(ByteBuffer buffer) {
+        return emptyToNull(new String(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The trackNumber method removes the total from a track number like "3/12".
+     * @param s The track number tag.
+     * @return The track number without the total or null.
+     */
+    static String trackNumber(String s) {
+        if(s == null || s.lastIndexOf('/') == -1){
+            return s;
+        }
+        return emptyToNull(s.substring(0, s.lastIndexOf('/')));
+    }
+
+    /**
+     * The emptyToNull method maps empty strings to null like MediaMetadataRetriever does.
+     * @param s The string.
+     * @return The string or null if it is empty.
+     */
+    private static String emptyToNull(String s) {
+        return s == null || s.isEmpty() ? null : s;
+    }
+}
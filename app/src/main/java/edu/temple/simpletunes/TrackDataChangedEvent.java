@@ -21,6 +21,18 @@ public class TrackDataChangedEvent {
      * The name of a single track being played.
      */
     private String singleTrack = null;
+    /**
+     * The track being played from the playlist.
+     */
+    private MusicTrack currentTrack = null;
+    /**
+     * The permutation the trackList is read through or null if it is in play order.
+     */
+    private int[] order = null;
+    /**
+     * The names of the tracks added at the end of the playlist posted before or null.
+     */
+    private ArrayList<String> appended = null;
 
 
     /**
@@ -34,6 +46,46 @@ public class TrackDataChangedEvent {
         this.trackPosition = trackPosition;
     }
 
+    /**
+     * The trackDataChangedEvent method is used for signaling that the playlist has changed or
+     * the current track position has changed.
+     * @param trackPosition The current position of the track.
+     * @param trackList The new playlist to show.
+     * @param currentTrack The track at the current position.
+     */
+    public TrackDataChangedEvent(int trackPosition, ArrayList<String> trackList, MusicTrack currentTrack) {
+        this(trackPosition, trackList);
+        this.currentTrack = currentTrack;
+    }
+
+    /**
+     * The trackDataChangedEvent method is used for signaling that the playlist has changed or
+     * the current track position has changed, with a playlist that is read through a sort order.
+     * @param trackPosition The current position of the track.
+     * @param trackList The names of the tracks by track ID.
+     * @param order The track ID at each position or null if the trackList is in play order.
+     *              Positions past its end show the name with the same index.
+     * @param currentTrack The track at the current position.
+     */
+    public TrackDataChangedEvent(int trackPosition, ArrayList<String> trackList, int[] order, MusicTrack currentTrack) {
+        this(trackPosition, trackList, currentTrack);
+        this.order = order;
+    }
+
+    /**
+     * The trackDataChangedEvent method is used for signaling that tracks were added at the
+     * end of the playlist, without sending the names that were already shown again.
+     * @param trackPosition The current position of the track.
+     * @param trackList The playlist posted before, or null if it is not kept.
+     * @param currentTrack The track at the current position.
+     * @param appended The names of the tracks added at the end of the playlist.
+     */
+    public TrackDataChangedEvent(int trackPosition, ArrayList<String> trackList, MusicTrack currentTrack,
+                                 ArrayList<String> appended) {
+        this(trackPosition, trackList, currentTrack);
+        this.appended = appended;
+    }
+
     /**
      * The TrackDataChangedEvent is used to signal that a new single track is being played.
      * @param trackPosition The position of the single track, usually 0.
@@ -61,6 +113,31 @@ public class TrackDataChangedEvent {
         return trackList;
     }
 
+    /**
+     * The getOrder method returns the permutation the track list is read through.
+     * @return The track ID at each position or null if the track list is in play order.
+     */
+    public int[] getOrder() {
+        return order;
+    }
+
+    /**
+     * The getAppended method returns the names of the tracks added at the end of the playlist
+     * posted before.
+     * @return The names to add or null if the playlist changed otherwise.
+     */
+    public ArrayList<String> getAppended() {
+        return appended;
+    }
+
+    /**
+     * The getCurrentTrack method returns the track being played from the playlist.
+     * @return The current track or null if a single track is being played.
+     */
+    public MusicTrack getCurrentTrack() {
+        return currentTrack;
+    }
+
     /**
      * The getTrackPosition method returns the current track position in the playlist.
      * @return The position of the current track.
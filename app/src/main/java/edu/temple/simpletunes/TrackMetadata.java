@@ -0,0 +1,122 @@
+package edu.temple.simpletunes;
+
+/**
+ * The TrackMetadata class holds the tags read from an audio file so they can be cached
+ * between scans. The track number, artist and album are shared through the StringPool since
+ * the same values repeat across the tracks of an album.
+ */
+public class TrackMetadata {
+    /**
+     * The metadata used for files that are not audio files.
+     */
+    public static final TrackMetadata NOT_AUDIO = new TrackMetadata(null, null, null, null, false);
+    /**
+     * The title tag or null.
+     */
+    private final String title;
+    /**
+     * The track number tag without the total or null.
+     */
+    private final String track;
+    /**
+     * The artist tag or null.
+     */
+    private final String artist;
+    /**
+     * The album tag or null.
+     */
+    private final String album;
+    /**
+     * The duration in milliseconds or -1 if unknown.
+     */
+    private final int duration;
+    /**
+     * The state showing if the file is an audio file.
+     */
+    private final boolean isAudio;
+
+    /**
+     * Initialize the metadata.
+     * @param title The title tag or null.
+     * @param track The track number tag or null.
+     * @param artist The artist tag or null.
+     * @param album The album tag or null.
+     * @param isAudio True if the file is an audio file.
+     */
+    public TrackMetadata(String title, String track, String artist, String album, boolean isAudio) {
+        this(title, track, artist, album, -1, isAudio);
+    }
+
+    /**
+     * Initialize the metadata.
+     * @param title The title tag or null.
+     * @param track The track number tag or null.
+     * @param artist The artist tag or null.
+     * @param album The album tag or null.
+     * @param duration The duration in milliseconds or -1 if unknown.
+     * @param isAudio True if the file is an audio file.
+     */
+    public TrackMetadata(String title, String track, String artist, String album, int duration,
+                         boolean isAudio) {
+        this.title = title;
+        this.track = StringPool.SHARED.intern(track);
+        this.artist = StringPool.SHARED.intern(artist);
+        this.album = StringPool.SHARED.intern(album);
+        this.duration = duration;
+        this.isAudio = isAudio;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getTrack() {
+        return track;
+    }
+
+    public String getArtist() {
+        return artist;
+    }
+
+    public String getAlbum() {
+        return album;
+    }
+
+    /**
+     * The getDuration method returns the length of the track.
+     * @return The duration in milliseconds or -1 if unknown.
+     */
+    public int getDuration() {
+        return duration;
+    }
+
+    public boolean getIsAudio() {
+        return isAudio;
+    }
+
+    /**
+     * The parseTrackNumber method reads the leading digits of a track number tag.
+     * @param track The track number tag or null.
+     * @return The track number or -1 if the tag does not start with a number.
+     */
+    static int parseTrackNumber(String track) {
+        if(track == null){
+            return -1;
+        }
+        // Parsed in place since it runs for every comparison of a sort.
+        int length = track.length();
+        int i = 0;
+        while(i < length && track.charAt(i) <= ' '){
+            i++;
+        }
+        int number = -1;
+        for(int digits = 0; i < length && digits < 9; i++, digits++){
+            char ch = track.charAt(i);
+            if(ch < '0' || ch > '9'){
+                break;
+            }
+            number = (number < 0 ? 0 : number * 10) + (ch - '0');
+        }
+        return number;
+    }
+}
@@ -0,0 +1,191 @@
+package edu.temple.simpletunes;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The TrackMetadataCache class is a persistent store of the tags read from audio files. Entries
+ * are keyed by the document Uri and are only valid while the size and last modified time of
+ * the document are unchanged, so a file is only read again after it has been edited.
+ */
+public class TrackMetadataCache extends SQLiteOpenHelper {
+    /**
+     * The name of the database file.
+     */
+    private static final String DATABASE_NAME = "track_metadata.db";
+    /**
+     * The version of the database schema.
+     */
+    private static final int DATABASE_VERSION = 2;
+    /**
+     * The table holding one row per document.
+     */
+    private static final String TABLE = "tracks";
+    private static final String COLUMN_URI = "uri";
+    private static final String COLUMN_SIZE = "size";
+    private static final String COLUMN_LAST_MODIFIED = "last_modified";
+    private static final String COLUMN_TITLE = "title";
+    private static final String COLUMN_TRACK = "track";
+    private static final String COLUMN_ARTIST = "artist";
+    private static final String COLUMN_ALBUM = "album";
+    private static final String COLUMN_DURATION = "duration";
+    private static final String COLUMN_IS_AUDIO = "is_audio";
+    /**
+     * The columns read on a lookup.
+     */
+    private static final String[] LOOKUP_COLUMNS = {COLUMN_SIZE, COLUMN_LAST_MODIFIED,
+            COLUMN_TITLE, COLUMN_TRACK, COLUMN_ARTIST, COLUMN_ALBUM, COLUMN_IS_AUDIO, COLUMN_DURATION};
+    /**
+     * The entries waiting to be written by flush.
+     */
+    private final ConcurrentLinkedQueue<PendingEntry> mPending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Initialize the cache.
+     * @param context The context used to open the database.
+     */
+    public TrackMetadataCache(Context context) {
+        super(context.getApplicationContext(), DATABASE_NAME, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+                + COLUMN_URI + " TEXT PRIMARY KEY, "
+                + COLUMN_SIZE + " INTEGER NOT NULL, "
+                + COLUMN_LAST_MODIFIED + " INTEGER NOT NULL, "
+                + COLUMN_TITLE + " TEXT, "
+                + COLUMN_TRACK + " TEXT, "
+                + COLUMN_ARTIST + " TEXT, "
+                + COLUMN_ALBUM + " TEXT, "
+                + COLUMN_DURATION + " INTEGER NOT NULL, "
+                + COLUMN_IS_AUDIO + " INTEGER NOT NULL)");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The cache can always be rebuilt from the files, so drop it on schema changes.
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE);
+        onCreate(db);
+    }
+
+    /**
+     * The get method looks up the cached metadata of a document.
+     * @param uri The Uri of the document.
+     * @param size The current size of the document in bytes.
+     * @param lastModified The current last modified time of the document.
+     * @return The cached metadata or null on a miss or if the document changed since it was cached.
+     */
+    @Nullable
+    public TrackMetadata get(@NonNull Uri uri, long size, long lastModified) {
+        try (Cursor c = getReadableDatabase().query(TABLE, LOOKUP_COLUMNS, COLUMN_URI + " = ?",
+                new String[]{uri.toString()}, null, null, null)) {
+            if(c == null || !c.moveToNext()){
+                return null;
+            }
+            if(c.getLong(0) != size || c.getLong(1) != lastModified){
+                return null; // Stale entry, the document was edited.
+            }
+            if(c.getInt(6) == 0){
+                return TrackMetadata.NOT_AUDIO;
+            }
+            return new TrackMetadata(c.getString(2), c.getString(3), c.getString(4), c.getString(5),
+                    c.getInt(7), true);
+        }
+    }
+
+    /**
+     * The put method queues the metadata of a document to be written on the next flush. It is
+     * safe to call from several threads.
+     * @param uri The Uri of the document.
+     * @param size The size of the document in bytes when the metadata was read.
+     * @param lastModified The last modified time of the document when the metadata was read.
+     * @param metadata The metadata to cache.
+     */
+    public void put(@NonNull Uri uri, long size, long lastModified, @NonNull TrackMetadata metadata) {
+        mPending.add(new PendingEntry(uri.toString(), size, lastModified, metadata));
+    }
+
+    /**
+     * The flush method writes all queued entries in a single transaction.
+     */
+    public void flush() {
+        if(mPending.isEmpty()){
+            return;
+        }
+        SQLiteDatabase db = getWritableDatabase();
+        SQLiteStatement insert = db.compileStatement("INSERT OR REPLACE INTO " + TABLE + " ("
+                + COLUMN_URI + ", " + COLUMN_SIZE + ", " + COLUMN_LAST_MODIFIED + ", "
+                + COLUMN_TITLE + ", " + COLUMN_TRACK + ", " + COLUMN_ARTIST + ", "
+                + COLUMN_ALBUM + ", " + COLUMN_DURATION + ", " + COLUMN_IS_AUDIO
+                + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        db.beginTransaction();
+        try {
+            PendingEntry entry;
+            while((entry = mPending.poll()) != null){
+                insert.clearBindings();
+                insert.bindString(1, entry.uri);
+                insert.bindLong(2, entry.size);
+                insert.bindLong(3, entry.lastModified);
+                bindNullable(insert, 4, entry.metadata.getTitle());
+                bindNullable(insert, 5, entry.metadata.getTrack());
+                bindNullable(insert, 6, entry.metadata.getArtist());
+                bindNullable(insert, 7, entry.metadata.getAlbum());
+                insert.bindLong(8, entry.metadata.getDuration());
+                insert.bindLong(9, entry.metadata.getIsAudio() ? 1 : 0);
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+    }
+
+    /**
+     * The bindNullable method binds a string that may be null to a statement.
+     * @param statement The statement to bind to.
+     * @param index The 1-based index of the parameter.
+     * @param value The value or null.
+     */
+    private static void bindNullable(SQLiteStatement statement, int index, String value) {
+        if(value == null){
+            statement.bindNull(index);
+        }else{
+            statement.bindString(index, value);
+        }
+    }
+
+    /**
+     * The PendingEntry class holds an entry until it is written by flush.
+     */
+    private static class PendingEntry {
+        private final String uri;
+        private final long size;
+        private final long lastModified;
+        private final TrackMetadata metadata;
+
+        PendingEntry(String uri, long size, long lastModified, TrackMetadata metadata) {
+            this.uri = uri;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.metadata = metadata;
+        }
+    }
+}
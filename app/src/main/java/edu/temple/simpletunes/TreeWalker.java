@@ -0,0 +1,143 @@
+package edu.temple.simpletunes;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The TreeWalker class lists every file below the root of a document tree. Subdirectories are
+ * listed concurrently on a work-stealing ForkJoinPool, each directory costing one
+ * DocumentLister query. The number of queries running at the same time is capped so slow
+ * providers are not flooded, and directories deeper than the depth limit are skipped.
+ */
+public class TreeWalker {
+    /**
+     * The default depth limit, enough for Artist/Album/Disc layouts.
+     */
+    public static final int DEFAULT_MAX_DEPTH = 4;
+    /**
+     * The default number of directory queries running at the same time.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+    /**
+     * The pool shared by all walkers, sized to the CPU count of the device.
+     */
+    private static final ForkJoinPool POOL = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors()));
+    /**
+     * The ContentResolver used for the queries.
+     */
+    private final ContentResolver mResolver;
+    /**
+     * The deepest level of subdirectories that is listed, 0 lists only the root.
+     */
+    private final int mMaxDepth;
+    /**
+     * Limits the number of directory queries running at the same time.
+     */
+    private final Semaphore mInFlight;
+    /**
+     * The state of the walk being cancelled.
+     */
+    private volatile boolean mCancelled = false;
+
+    /**
+     * Initialize the walker.
+     * @param resolver The ContentResolver used for the queries.
+     * @param maxDepth The deepest level of subdirectories to list, 0 lists only the root.
+     * @param maxInFlight The maximum number of directory queries running at the same time.
+     */
+    public TreeWalker(@NonNull ContentResolver resolver, int maxDepth, int maxInFlight) {
+        if(maxDepth < 0 || maxInFlight < 1){
+            throw new IllegalArgumentException("maxDepth must be >= 0 and maxInFlight >= 1");
+        }
+        mResolver = resolver;
+        mMaxDepth = maxDepth;
+        mInFlight = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * The walk method lists the files of a tree, blocking until every directory was listed.
+     * Directories are not included in the result.
+     * @param treeUri The Uri of the tree returned by the folder picker.
+     * @return The files of the tree, grouped by directory.
+     */
+    public List<DocumentEntry> walk(@NonNull Uri treeUri) {
+        return POOL.invoke(new DirectoryTask(treeUri, DocumentsContract.getTreeDocumentId(treeUri), 0));
+    }
+
+    /**
+     * The cancel method stops the walk, directories that were not listed yet are skipped.
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    /**
+     * The DirectoryTask class lists one directory and forks a task for each of its subdirectories.
+     */
+    private class DirectoryTask extends RecursiveTask<List<DocumentEntry>> {
+        private static final long serialVersionUID = 1L;
+        private final Uri mTreeUri;
+        private final String mDocumentId;
+        private final int mDepth;
+
+        DirectoryTask(Uri treeUri, String documentId, int depth) {
+            mTreeUri = treeUri;
+            mDocumentId = documentId;
+            mDepth = depth;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected List<DocumentEntry> compute() {
+            if(mCancelled){
+                return new ArrayList<>();
+            }
+            List<DocumentEntry> children = list();
+            ArrayList<DocumentEntry> files = new ArrayList<>(children.size());
+            ArrayList<DirectoryTask> subdirectories = new ArrayList<>();
+            for(DocumentEntry child : children){
+                if(!child.isDirectory()){
+                    files.add(child);
+                }else if(mDepth < mMaxDepth){
+                    DirectoryTask task = new DirectoryTask(mTreeUri, child.getDocumentId(), mDepth + 1);
+                    task.fork();
+                    subdirectories.add(task);
+                }
+            }
+            for(DirectoryTask task : subdirectories){
+                files.addAll(task.join());
+            }
+            return files;
+        }
+
+        /**
+         * The list method queries the children of the directory while holding a permit.
+         * @return The children of the directory.
+         */
+        private List<DocumentEntry> list() {
+            try {
+                // A permit is never held while joining, so waiting here can not deadlock the pool.
+                mInFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new ArrayList<>();
+            }
+            try {
+                return DocumentLister.listChildren(mResolver, mTreeUri, mDocumentId, mDocumentId);
+            } finally {
+                mInFlight.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package edu.temple.simpletunes;
+
+import java.util.Arrays;
+
+/**
+ * The WeightTree class holds a non-negative weight for each index in a Fenwick tree, so an
+ * index can be picked with a probability proportional to its weight in O(log n), and a weight
+ * can be changed in O(log n) without rebuilding a cumulative array. Weights are integers so
+ * the sums do not drift after many updates. The class is not thread safe.
+ */
+public class WeightTree {
+    /**
+     * The Fenwick tree, 1-based: entry i holds the sum of the weights of the indexes
+     * i - lowbit(i) to i - 1.
+     */
+    private long[] mTree;
+    /**
+     * The weight of each index, kept to compute the difference of an update.
+     */
+    private long[] mWeights;
+    private int mSize;
+
+    /**
+     * Initialize the tree with a weight for each index in O(n).
+     * @param weights The weights, none negative.
+     */
+    public WeightTree(long[] weights) {
+        mSize = weights.length;
+        int capacity = Math.max(16, mSize);
+        mWeights = Arrays.copyOf(weights, capacity);
+        mTree = new long[capacity + 1];
+        for(int i = 0; i < mSize; i++){
+            if(weights[i] < 0){
+                throw new IllegalArgumentException("Weight " + weights[i] + " at " + i);
+            }
+            mTree[i + 1] += weights[i];
+            int parent = i + 1 + lowbit(i + 1);
+            if(parent <= mSize){
+                mTree[parent] += mTree[i + 1];
+            }
+        }
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * The get method returns the weight of an index.
+     * @param index The index.
+     * @return The weight.
+     */
+    public long get(int index) {
+        checkIndex(index);
+        return mWeights[index];
+    }
+
+    /**
+     * The set method changes the weight of an index in O(log n).
+     * @param index The index.
+     * @param weight The new weight, not negative.
+     */
+    public void set(int index, long weight) {
+        checkIndex(index);
+        if(weight < 0){
+            throw new IllegalArgumentException("Weight " + weight + " at " + index);
+        }
+        long delta = weight - mWeights[index];
+        mWeights[index] = weight;
+        for(int i = index + 1; i <= mSize; i += lowbit(i)){
+            mTree[i] += delta;
+        }
+    }
+
+    /**
+     * The add method appends an index with a weight in O(log n) amortized time.
+     * @param weight The weight of the new index, not negative.
+     * @return The new index.
+     */
+    public int add(long weight) {
+        if(weight < 0){
+            throw new IllegalArgumentException("Weight " + weight);
+        }
+        if(mSize == mWeights.length){
+            int capacity = mWeights.length * 2;
+            mWeights = Arrays.copyOf(mWeights, capacity);
+            mTree = Arrays.copyOf(mTree, capacity + 1);
+        }
+        int node = ++mSize;
+        // The new entry covers the indexes after the last entry that ends before it.
+        mTree[node] = weight + prefix(node - 1) - prefix(node - lowbit(node));
+        mWeights[node - 1] = weight;
+        return node - 1;
+    }
+
+    /**
+     * The total method returns the sum of all weights.
+     * @return The sum.
+     */
+    public long total() {
+        return prefix(mSize);
+    }
+
+    /**
+     * The prefix method returns the sum of the weights of the first count indexes.
+     * @param count The number of indexes.
+     * @return The sum.
+     */
+    public long prefix(int count) {
+        long sum = 0;
+        for(int i = count; i > 0; i -= lowbit(i)){
+            sum += mTree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * The find method returns the index whose range of the cumulative weights holds a
+     * value, by descending the tree in O(log n). Indexes with a weight of 0 are never found.
+     * @param value A value from 0 to total() - 1, usually random.
+     * @return The index i with prefix(i) &lt;= value &lt; prefix(i + 1).
+     */
+    public int find(long value) {
+        if(value < 0 || value >= total()){
+            throw new IllegalArgumentException("Value " + value + " of " + total());
+        }
+        int node = 0;
+        for(int step = Integer.highestOneBit(mSize); step > 0; step >>= 1){
+            int next = node + step;
+            if(next <= mSize && mTree[next] <= value){
+                node = next;
+                value -= mTree[next];
+            }
+        }
+        return node;
+    }
+
+    private void checkIndex(int index) {
+        if(index < 0 || index >= mSize){
+            throw new IndexOutOfBoundsException("Index " + index + " of " + mSize);
+        }
+    }
+
+    private static int lowbit(int i) {
+        return i & -i;
+    }
+}
@@ -0,0 +1,71 @@
+package edu.temple.simpletunes;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests for the BrowseIndex grouping.
+ */
+public class BrowseIndexTest {
+
+    @Test
+    public void groupsTracksByAlbumInTrackOrder() {
+        BrowseIndex index = new BrowseIndex(
+                new String[]{"Band", "Band", "Other", "Band", null},
+                new String[]{"First", "First", "Split", "First", null},
+                new String[]{"a", "a", "b", "a", "c"},
+                new int[]{3, 1, 1, -1, -1});
+
+        assertEquals(3, index.getAlbumCount());
+        int first = index.getAlbumOfTrack(0);
+        assertEquals("First", index.getAlbum(first));
+        assertArrayEquals(new int[]{1, 0, 3}, index.getTracksOfAlbum(first));
+        assertArrayEquals(new int[]{2}, index.getTracksOfAlbum(index.getAlbumOfTrack(2)));
+        assertNull(index.getAlbum(index.getAlbumOfTrack(4)));
+    }
+
+    @Test
+    public void sortsArtistsWithUnknownLast() {
+        BrowseIndex index = new BrowseIndex(
+                new String[]{"zed", null, "Abba", "beta", "Abba"},
+                new String[]{"x", "y", "z", "w", "v"},
+                new String[]{null, null, null, null, null},
+                new int[]{-1, -1, -1, -1, -1});
+
+        assertEquals(4, index.getArtistCount());
+        assertEquals("Abba", index.getArtist(0));
+        assertEquals("beta", index.getArtist(1));
+        assertEquals("zed", index.getArtist(2));
+        assertNull(index.getArtist(3));
+        assertEquals(3, index.findArtist(null));
+        assertEquals(-1, index.findArtist("nobody"));
+        int[] albums = index.getAlbumsOfArtist(index.findArtist("Abba"));
+        assertEquals(2, albums.length);
+        assertEquals("z", index.getAlbum(albums[0]));
+        assertEquals("v", index.getAlbum(albums[1]));
+    }
+
+    @Test
+    public void sameAlbumNameInOtherFolderIsAnotherAlbum() {
+        BrowseIndex index = new BrowseIndex(
+                new String[]{"A", "B", "A"},
+                new String[]{"Greatest Hits", "Greatest Hits", "Greatest Hits"},
+                new String[]{"one", "two", "one"},
+                new int[]{2, 1, 1});
+
+        assertEquals(2, index.getAlbumCount());
+        assertArrayEquals(new int[]{2, 0}, index.getTracksOfAlbum(index.getAlbumOfTrack(0)));
+        int[] albums = index.getAlbumsOfArtist(index.findArtist("A"));
+        assertArrayEquals(new int[]{index.getAlbumOfTrack(0)}, albums);
+    }
+
+    @Test
+    public void emptyIndex() {
+        BrowseIndex index = new BrowseIndex(new String[0], new String[0], new String[0], new int[0]);
+        assertEquals(0, index.getArtistCount());
+        assertEquals(0, index.getAlbumCount());
+    }
+}
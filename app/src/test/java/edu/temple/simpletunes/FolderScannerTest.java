@@ -0,0 +1,31 @@
+package edu.temple.simpletunes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Local unit tests for building the tracks of a FolderScanner batch.
+ */
+public class FolderScannerTest {
+
+    @Test
+    public void unreadableDocumentDoesNotLoseTheBatch() {
+        List<String> documents = Arrays.asList("a.mp3", "broken.mp3", "c.mp3");
+        List<String> tracks = FolderScanner.buildTracks(documents, name -> {
+            if(name.startsWith("broken")){
+                throw new IllegalStateException("could not read " + name);
+            }
+            return name;
+        });
+
+        assertEquals(3, tracks.size());
+        assertEquals("a.mp3", tracks.get(0));
+        assertNull(tracks.get(1));
+        assertEquals("c.mp3", tracks.get(2));
+    }
+}
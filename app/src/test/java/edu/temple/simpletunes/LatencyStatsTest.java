@@ -0,0 +1,26 @@
+package edu.temple.simpletunes;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests for the LatencyStats percentiles.
+ */
+public class LatencyStatsTest {
+
+    @Test
+    public void percentilesOfRecentSamples() {
+        LatencyStats stats = new LatencyStats("Skip", 4);
+        assertEquals(0, stats.percentile(50));
+        for(long sample : new long[]{9, 1, 4, 2, 3}){
+            stats.record(sample);
+        }
+        // The first sample was replaced, the rest are 1, 2, 3 and 4.
+        assertEquals(5, stats.getCount());
+        assertEquals(2, stats.percentile(50));
+        assertEquals(4, stats.percentile(95));
+        assertEquals(1, stats.percentile(0));
+        assertEquals("Skip: n=5, median 0.0 ms, p95 0.0 ms, max 0.0 ms", stats.toString());
+    }
+}
@@ -0,0 +1,101 @@
+package edu.temple.simpletunes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Local unit tests for the LibraryIndex file format.
+ */
+public class LibraryIndexTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip() throws IOException {
+        File file = folder.newFile(LibraryIndex.FILE_NAME);
+        new LibraryIndex.Writer("content://tree/music", true)
+                .add("01 - Intro.mp3", "Intro", "Band", "Album", "content://doc/1", "music/a", "1/10",
+                        61000, 1234L, 99L, true)
+                .add("Ünïcödé.flac", null, null, null, "content://doc/2", null, null, -1, 5L, 6L, false)
+                .writeTo(file);
+
+        LibraryIndex index = LibraryIndex.open(file);
+        assertNotNull(index);
+        assertEquals(2, index.getCount());
+        assertEquals("content://tree/music", index.getFolderUri());
+        assertTrue(index.isRecursive());
+
+        assertEquals("01 - Intro.mp3", index.getName(0));
+        assertEquals("Intro", index.getTitle(0));
+        assertEquals("Band", index.getArtist(0));
+        assertEquals("Album", index.getAlbum(0));
+        assertEquals("content://doc/1", index.getUriString(0));
+        assertEquals("music/a", index.getFolder(0));
+        assertEquals(1, index.getTrackNumber(0));
+        assertEquals(61000, index.getDuration(0));
+        assertEquals(1234L, index.getFileSize(0));
+        assertEquals(99L, index.getLastModified(0));
+        assertTrue(index.isResolved(0));
+
+        assertEquals("Ünïcödé.flac", index.getName(1));
+        assertNull(index.getTitle(1));
+        assertNull(index.getFolder(1));
+        assertEquals(-1, index.getTrackNumber(1));
+        assertFalse(index.isResolved(1));
+    }
+
+    @Test
+    public void repeatedStringsAreStoredOnce() throws IOException {
+        File single = folder.newFile("single.idx");
+        File repeated = folder.newFile("repeated.idx");
+        writeTracks(single, 1);
+        writeTracks(repeated, 100);
+        long recordSize = (repeated.length() - single.length()) / 99;
+        // Only the file name and Uri of each track are new strings.
+        assertTrue(recordSize < 56 + 2 * 40);
+        assertEquals(100, LibraryIndex.open(repeated).getCount());
+    }
+
+    @Test
+    public void otherVersionIsIgnored() throws IOException {
+        File file = folder.newFile(LibraryIndex.FILE_NAME);
+        writeTracks(file, 3);
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek(4);
+            out.writeInt(LibraryIndex.VERSION + 1);
+        }
+        assertNull(LibraryIndex.open(file));
+    }
+
+    @Test
+    public void truncatedFileIsIgnored() throws IOException {
+        File file = folder.newFile(LibraryIndex.FILE_NAME);
+        writeTracks(file, 3);
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.setLength(file.length() - 1);
+        }
+        assertNull(LibraryIndex.open(file));
+        assertNull(LibraryIndex.open(new File(folder.getRoot(), "missing.idx")));
+    }
+
+    private static void writeTracks(File file, int count) throws IOException {
+        LibraryIndex.Writer writer = new LibraryIndex.Writer(null, false);
+        for(int i = 0; i < count; i++){
+            writer.add("Track " + i + ".mp3", "Same Title", "Same Artist", "Same Album",
+                    "content://doc/" + i, "folder", Integer.toString(i), -1, i, i, true);
+        }
+        writer.writeTo(file);
+    }
+}
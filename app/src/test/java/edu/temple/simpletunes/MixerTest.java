@@ -0,0 +1,83 @@
+package edu.temple.simpletunes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests for the Mixer against synthetic PCM.
+ */
+public class MixerTest {
+
+    /**
+     * Returns a finished stereo ring holding frames with the same value in both channels.
+     */
+    private static PcmRing track(int frames, int value) {
+        PcmRing ring = new PcmRing(4096);
+        short[] samples = new short[frames * 2];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) value;
+        }
+        ring.write(samples, 0, samples.length);
+        ring.finish();
+        return ring;
+    }
+
+    @Test
+    public void nextTrackFollowsWithoutAGap() {
+        Mixer mixer = new Mixer(2, 64);
+        PcmRing first = track(10, 100);
+        PcmRing second = track(30, 200);
+        mixer.setCurrent(first);
+        mixer.setNext(second);
+        short[] out = new short[128];
+        assertEquals(32, mixer.mix(out, 32));
+        // The first sample of the next track directly follows the last one of the current.
+        assertEquals(100, out[19]);
+        assertEquals(200, out[20]);
+        assertSame(first, mixer.takeFinished());
+        assertNull(mixer.takeFinished());
+        assertSame(second, mixer.getCurrent());
+        assertEquals(8, mixer.mix(out, 32));
+        assertSame(second, mixer.takeFinished());
+        assertNull(mixer.getCurrent());
+    }
+
+    @Test
+    public void crossfadeOverlapsTheTracks() {
+        Mixer mixer = new Mixer(2, 256);
+        mixer.setCrossfadeFrames(20);
+        PcmRing first = track(100, 10000);
+        PcmRing second = track(100, 10000);
+        mixer.setCurrent(first);
+        mixer.setNext(second);
+        short[] out = new short[512];
+        // The 20 frames of overlap shorten the pair of tracks.
+        assertEquals(180, mixer.mix(out, 256));
+        assertSame(first, mixer.takeFinished());
+        assertEquals(10000, out[79 * 2]);
+        // Equal-power gains of a signal mixed with itself peak in the middle of the fade.
+        assertEquals(Math.round(10000 * Math.sqrt(2)), out[90 * 2]);
+        assertTrue(out[80 * 2] >= 10000 && out[99 * 2] >= 10000);
+        assertEquals(10000, out[100 * 2]);
+    }
+
+    @Test
+    public void waitsForTheDecoder() {
+        Mixer mixer = new Mixer(2, 64);
+        PcmRing ring = new PcmRing(64);
+        mixer.setCurrent(ring);
+        short[] out = new short[128];
+        assertEquals(0, mixer.mix(out, 64));
+        ring.write(new short[]{1, 1, 2, 2}, 0, 4);
+        assertEquals(2, mixer.mix(out, 64));
+        // The track is not over until the decoder says so.
+        assertNull(mixer.takeFinished());
+        ring.finish();
+        assertEquals(0, mixer.mix(out, 64));
+        assertSame(ring, mixer.takeFinished());
+    }
+}
@@ -0,0 +1,77 @@
+package edu.temple.simpletunes;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Scanner;
+
+/**
+ * Times sorting a large folder with the MusicTrackComparator against the Scanner based
+ * comparison it replaced. It is not part of the default unit test run.
+ */
+public class MusicTrackComparatorBenchmark {
+
+    @Test
+    public void sortTenThousandTracks() {
+        // One tagged folder where discs and compilations repeat the track numbers, so ties
+        // fall back to the name.
+        Random random = new Random(5);
+        MusicTrack[] tracks = new MusicTrack[10000];
+        for(int i = 0; i < tracks.length; i++){
+            int number = random.nextInt(20) + 1;
+            tracks[i] = MusicTrackComparatorTest.track(number + " - Söng " + random.nextInt(10000) + ".mp3",
+                    "Music", Integer.toString(number));
+        }
+        MusicTrackComparator comparator = new MusicTrackComparator(Locale.US);
+        // Warm up before timing.
+        for(int i = 0; i < 3; i++){
+            comparator.sort(tracks.clone());
+            Arrays.sort(tracks.clone(), comparator);
+            Arrays.sort(tracks.clone(), MusicTrackComparatorBenchmark::compareWithScanner);
+        }
+        long start = System.nanoTime();
+        MusicTrack[] sorted = tracks.clone();
+        comparator.sort(sorted);
+        long keys = System.nanoTime() - start;
+        start = System.nanoTime();
+        Arrays.sort(tracks.clone(), comparator);
+        long pairwise = System.nanoTime() - start;
+        start = System.nanoTime();
+        Arrays.sort(tracks.clone(), MusicTrackComparatorBenchmark::compareWithScanner);
+        long scanner = System.nanoTime() - start;
+        System.out.println("Sorting 10k tracks: keys " + keys / 1000000 + " ms, pairwise " + pairwise / 1000000
+                + " ms, Scanner per comparison " + scanner / 1000000 + " ms");
+        for(int i = 1; i < sorted.length; i++){
+            assertTrue(comparator.compare(sorted[i - 1], sorted[i]) <= 0);
+        }
+    }
+
+    /**
+     * The compareWithScanner method is the comparison used before sort keys, which parsed the
+     * track numbers with a Scanner on every call.
+     */
+    private static int compareWithScanner(MusicTrack t1, MusicTrack t2) {
+        String f1 = t1.getFolder();
+        String f2 = t2.getFolder();
+        if(f1 != null && f2 != null && !f1.equals(f2)){
+            return f1.compareTo(f2);
+        }
+        String s1 = t1.peekTrack();
+        String s2 = t2.peekTrack();
+        if(s1 != null && s2 != null){
+            Scanner one = new Scanner(s1);
+            if(one.hasNextInt()){
+                int i1 = one.nextInt();
+                Scanner two = new Scanner(s2);
+                if(two.hasNextInt()){
+                    return Integer.compare(i1, two.nextInt());
+                }
+            }
+        }
+        return t1.getName().compareTo(t2.getName());
+    }
+}
@@ -0,0 +1,83 @@
+package edu.temple.simpletunes;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Local unit tests for the MusicTrackComparator.
+ */
+public class MusicTrackComparatorTest {
+
+    static MusicTrack track(String name, String folder, String number) {
+        TrackMetadata metadata = number == null ? null : new TrackMetadata(null, number, null, null, true);
+        return new MusicTrack(null, "content://test/" + folder + "/" + name, name, folder, 0, 0, metadata);
+    }
+
+    private static String[] names(MusicTrack[] tracks) {
+        String[] names = new String[tracks.length];
+        for(int i = 0; i < tracks.length; i++){
+            names[i] = tracks[i].getName();
+        }
+        return names;
+    }
+
+    @Test
+    public void namesCompareNumbersByValue() {
+        MusicTrack[] tracks = {
+                track("10 - y.mp3", "a", null),
+                track("2 - x.mp3", "a", null),
+                track("Track 007.mp3", "a", null),
+                track("track 7b.mp3", "a", null),
+                track("1 - z.mp3", "a", null),
+        };
+        new MusicTrackComparator(Locale.US).sort(tracks);
+        assertArrayEquals(new String[]{"1 - z.mp3", "2 - x.mp3", "10 - y.mp3", "Track 007.mp3", "track 7b.mp3"},
+                names(tracks));
+        assertEquals("0000000012ab0000000000", MusicTrackComparator.naturalKey("012ab0"));
+        assertEquals("plain", MusicTrackComparator.naturalKey("plain"));
+    }
+
+    @Test
+    public void trackNumbersComeFirstWithinFolder() {
+        MusicTrack[] tracks = {
+                track("c.mp3", "b", "1"),
+                track("a.mp3", "a", null),
+                track("b.mp3", "a", "2/12"),
+                track("z.mp3", "a", " 1"),
+        };
+        new MusicTrackComparator(Locale.US).sort(tracks);
+        assertArrayEquals(new String[]{"z.mp3", "b.mp3", "a.mp3", "c.mp3"}, names(tracks));
+    }
+
+    @Test
+    public void sortMatchesComparator() {
+        MusicTrack[] tracks = folder(2000, new Random(3));
+        MusicTrackComparator comparator = new MusicTrackComparator(Locale.US);
+        MusicTrack[] byKeys = tracks.clone();
+        comparator.sort(byKeys);
+        MusicTrack[] byComparator = tracks.clone();
+        Arrays.sort(byComparator, comparator);
+        assertArrayEquals(byComparator, byKeys);
+    }
+
+    /**
+     * The folder method creates tracks named like the files of a large music folder, half of
+     * them with a track number.
+     */
+    private static MusicTrack[] folder(int count, Random random) {
+        MusicTrack[] tracks = new MusicTrack[count];
+        for(int i = 0; i < count; i++){
+            int number = random.nextInt(20) + 1;
+            String name = number + " - Söng " + random.nextInt(count) + (random.nextBoolean() ? ".mp3" : ".FLAC");
+            tracks[i] = track(name, "Album " + random.nextInt(count / 10),
+                    random.nextBoolean() ? Integer.toString(number) : null);
+        }
+        return tracks;
+    }
+}
@@ -0,0 +1,37 @@
+package edu.temple.simpletunes;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Local unit tests for the PcmConverter.
+ */
+public class PcmConverterTest {
+
+    @Test
+    public void monoIsCopiedToBothChannels() {
+        PcmConverter converter = new PcmConverter(2, 48000);
+        converter.configure(1, 48000);
+        short[] out = new short[16];
+        assertEquals(3, converter.convert(new short[]{1, 2, 3}, 3, out));
+        assertArrayEquals(new short[]{1, 1, 2, 2, 3, 3}, Arrays.copyOf(out, 6));
+    }
+
+    @Test
+    public void rateIsInterpolatedAcrossBlocks() {
+        PcmConverter converter = new PcmConverter(1, 48000);
+        converter.configure(1, 24000);
+        short[] out = new short[16];
+        // Twice the rate puts a frame halfway between each pair of input frames. The last
+        // input frame of a block is held until the next block tells where it goes.
+        assertEquals(2, converter.convert(new short[]{0, 100}, 2, out));
+        assertArrayEquals(new short[]{0, 50}, Arrays.copyOf(out, 2));
+        assertEquals(4, converter.convert(new short[]{200, 300}, 2, out));
+        assertArrayEquals(new short[]{100, 150, 200, 250}, Arrays.copyOf(out, 4));
+        assertEquals(4, converter.maxOutputFrames(1));
+    }
+}
@@ -0,0 +1,86 @@
+package edu.temple.simpletunes;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests for the PcmRing.
+ */
+public class PcmRingTest {
+
+    @Test
+    public void wrapsAroundAndStopsWhenFull() {
+        PcmRing ring = new PcmRing(6);
+        assertEquals(8, ring.capacity());
+        short[] in = {1, 2, 3, 4, 5, 6};
+        assertEquals(6, ring.write(in, 0, 6));
+        short[] out = new short[8];
+        assertEquals(4, ring.read(out, 0, 4));
+        // The next write wraps past the end of the array.
+        assertEquals(6, ring.write(in, 0, 6));
+        assertEquals(0, ring.free());
+        assertEquals(0, ring.write(in, 0, 1));
+        assertEquals(8, ring.read(out, 0, 8));
+        assertArrayEquals(new short[]{5, 6, 1, 2, 3, 4, 5, 6}, out);
+        assertEquals(0, ring.available());
+    }
+
+    @Test
+    public void endAndDiscard() {
+        PcmRing ring = new PcmRing(8);
+        short[] in = {1, 2, 3, 4};
+        short[] out = new short[4];
+        ring.write(in, 0, 4);
+        ring.finish();
+        assertTrue(ring.isEndOfStream());
+        assertFalse(ring.isFinished());
+        ring.read(out, 0, 2);
+        // A seek drops what was not read and reopens the stream.
+        ring.discard();
+        assertFalse(ring.isEndOfStream());
+        assertEquals(0, ring.available());
+        assertEquals(4, ring.getReadPosition());
+        ring.write(in, 2, 2);
+        ring.finish();
+        assertEquals(2, ring.read(out, 0, 4));
+        assertEquals(3, out[0]);
+        assertTrue(ring.isFinished());
+    }
+
+    @Test
+    public void producerAndConsumerThreads() throws InterruptedException {
+        PcmRing ring = new PcmRing(64);
+        int total = 100000;
+        Thread producer = new Thread(() -> {
+            short[] block = new short[7];
+            int next = 0;
+            while (next < total) {
+                int count = Math.min(block.length, total - next);
+                for (int i = 0; i < count; i++) {
+                    block[i] = (short) (next + i);
+                }
+                int written = 0;
+                while (written < count) {
+                    written += ring.write(block, written, count - written);
+                }
+                next += count;
+            }
+            ring.finish();
+        });
+        producer.start();
+        short[] block = new short[5];
+        int expected = 0;
+        while (!ring.isFinished()) {
+            int count = ring.read(block, 0, block.length);
+            for (int i = 0; i < count; i++) {
+                assertEquals((short) expected++, block[i]);
+            }
+        }
+        producer.join();
+        assertEquals(total, expected);
+    }
+}
@@ -0,0 +1,37 @@
+package edu.temple.simpletunes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Times random moves, inserts and removes on a large PlayQueue. It is not part of the default
+ * unit test run.
+ */
+public class PlayQueueBenchmark {
+
+    @Test
+    public void editLargeQueue() {
+        int count = 100000;
+        int[] ids = new int[count];
+        for(int i = 0; i < count; i++){
+            ids[i] = i;
+        }
+        PlayQueue queue = new PlayQueue(ids);
+        queue.setPosition(count / 2);
+        Random random = new Random(1);
+        long start = System.nanoTime();
+        for(int i = 0; i < 100000; i++){
+            queue.move(random.nextInt(count), random.nextInt(count));
+            queue.insert(random.nextInt(count), i);
+            queue.remove(random.nextInt(count));
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.println("PlayQueue: " + elapsed / 300000 + " ns per edit of " + count + " entries");
+        assertEquals(count, queue.size());
+        assertTrue(queue.getPosition() >= 0);
+    }
+}
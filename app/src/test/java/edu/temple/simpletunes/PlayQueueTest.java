@@ -0,0 +1,143 @@
+package edu.temple.simpletunes;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Local unit tests for the PlayQueue tree.
+ */
+public class PlayQueueTest {
+
+    @Test
+    public void buildsInOrder() {
+        PlayQueue queue = new PlayQueue(new int[]{5, 3, 9, 3});
+        assertEquals(4, queue.size());
+        assertArrayEquals(new int[]{5, 3, 9, 3}, queue.toArray());
+        assertEquals(9, queue.get(2));
+        assertEquals(0, queue.getPosition());
+        assertEquals(5, queue.getCurrentId());
+
+        // Moving the current entry does not change the entries.
+        int modCount = queue.getModCount();
+        queue.setPosition(3);
+        assertEquals(modCount, queue.getModCount());
+        queue.move(0, 1);
+        assertTrue(queue.getModCount() != modCount);
+    }
+
+    @Test
+    public void currentEntryFollowsEdits() {
+        PlayQueue queue = new PlayQueue(new int[]{0, 1, 2, 3, 4});
+        queue.setPosition(2);
+        queue.insert(0, 7);
+        assertEquals(3, queue.getPosition());
+        queue.move(3, 0);
+        assertEquals(0, queue.getPosition());
+        assertEquals(2, queue.getCurrentId());
+        queue.remove(4);
+        assertEquals(0, queue.getPosition());
+        assertArrayEquals(new int[]{2, 7, 0, 1, 4}, queue.toArray());
+
+        // Removing the current entry makes the one after it current.
+        queue.remove(0);
+        assertEquals(7, queue.getCurrentId());
+        queue.setPosition(3);
+        queue.remove(3);
+        assertEquals(1, queue.getCurrentId());
+    }
+
+    @Test
+    public void findsPositionOfId() {
+        PlayQueue queue = new PlayQueue(new int[]{4, 0, 2});
+        assertEquals(2, queue.positionOfId(2));
+        queue.insert(0, 40);
+        queue.move(3, 1);
+        assertEquals(1, queue.positionOfId(2));
+        assertEquals(0, queue.positionOfId(40));
+        queue.remove(2);
+        assertEquals(-1, queue.positionOfId(4));
+        assertEquals(-1, queue.positionOfId(7));
+        queue.setAll(new int[]{1});
+        assertEquals(-1, queue.positionOfId(40));
+        assertEquals(0, queue.positionOfId(1));
+    }
+
+    @Test
+    public void emptyQueue() {
+        PlayQueue queue = new PlayQueue();
+        assertEquals(0, queue.size());
+        assertEquals(-1, queue.getPosition());
+        queue.add(4);
+        assertEquals(0, queue.getPosition());
+        queue.remove(0);
+        assertEquals(-1, queue.getCurrentId());
+        assertEquals(0, queue.toArray().length);
+    }
+
+    @Test
+    public void matchesListUnderRandomEdits() {
+        Random random = new Random(42);
+        List<Integer> expected = new ArrayList<>();
+        for(int i = 0; i < 200; i++){
+            expected.add(i);
+        }
+        PlayQueue queue = new PlayQueue(toArray(expected), new Random(7));
+        int current = 0;
+        for(int step = 0; step < 20000; step++){
+            int size = expected.size();
+            int op = random.nextInt(4);
+            if(op == 0 || size < 2){
+                int position = random.nextInt(size + 1);
+                queue.insert(position, step);
+                expected.add(position, step);
+                if(position <= current && size > 0){
+                    current++;
+                }
+            }else if(op == 1){
+                int position = random.nextInt(size);
+                assertEquals((int) expected.remove(position), queue.remove(position));
+                if(position < current || current == expected.size()){
+                    current--;
+                }
+            }else if(op == 2){
+                int from = random.nextInt(size);
+                int to = random.nextInt(size);
+                queue.move(from, to);
+                expected.add(to, expected.remove(from));
+                if(from == current){
+                    current = to;
+                }else{
+                    if(from < current){
+                        current--;
+                    }
+                    if(to <= current){
+                        current++;
+                    }
+                }
+            }else{
+                current = random.nextInt(size);
+                queue.setPosition(current);
+            }
+            assertEquals(expected.size(), queue.size());
+            assertEquals(current, queue.getPosition());
+            int probe = random.nextInt(expected.size());
+            assertEquals((int) expected.get(probe), queue.get(probe));
+        }
+        assertArrayEquals(toArray(expected), queue.toArray());
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] ids = new int[list.size()];
+        for(int i = 0; i < ids.length; i++){
+            ids[i] = list.get(i);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,31 @@
+package edu.temple.simpletunes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests for the PlayStats weights.
+ */
+public class PlayStatsTest {
+    private static final long DAY = 24 * 60 * 60 * 1000;
+
+    @Test
+    public void weightsFollowTheShuffleMode() {
+        long now = 100 * DAY;
+        PlayStats unrated = PlayStats.NONE;
+        PlayStats loved = PlayStats.NONE.rated(5);
+        PlayStats hated = PlayStats.NONE.rated(1);
+        assertEquals(unrated.weight(PlayStats.SHUFFLE_UNIFORM, now), loved.weight(PlayStats.SHUFFLE_UNIFORM, now));
+        assertTrue(loved.weight(PlayStats.SHUFFLE_FAVORITES, now) > unrated.weight(PlayStats.SHUFFLE_FAVORITES, now));
+        assertTrue(unrated.weight(PlayStats.SHUFFLE_FAVORITES, now) > hated.weight(PlayStats.SHUFFLE_FAVORITES, now));
+
+        PlayStats playedToday = unrated.played(now - DAY / 2);
+        PlayStats playedLongAgo = unrated.played(now - 30 * DAY);
+        assertEquals(1, playedToday.getPlayCount());
+        assertTrue(unrated.weight(PlayStats.SHUFFLE_FRESH, now) > playedLongAgo.weight(PlayStats.SHUFFLE_FRESH, now));
+        assertTrue(playedLongAgo.weight(PlayStats.SHUFFLE_FRESH, now) > playedToday.weight(PlayStats.SHUFFLE_FRESH, now));
+        assertTrue(playedToday.played(now).played(now).weight(PlayStats.SHUFFLE_FRESH, now) >= 1);
+    }
+}
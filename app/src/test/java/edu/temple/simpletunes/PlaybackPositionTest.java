@@ -0,0 +1,75 @@
+package edu.temple.simpletunes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests for the PlaybackPosition.
+ */
+public class PlaybackPositionTest {
+
+    @Test
+    public void startsUnknown() {
+        PlaybackPosition position = new PlaybackPosition();
+        assertEquals(0, position.getPosition(1000));
+        assertEquals(-1, position.getDuration());
+        assertFalse(position.isPlaying());
+    }
+
+    @Test
+    public void movesForwardWhilePlaying() {
+        PlaybackPosition position = new PlaybackPosition();
+        position.update(5000, 60000, true, 100);
+        assertEquals(5000, position.getPosition(100));
+        assertEquals(5250, position.getPosition(350));
+        // A clock read before the snapshot does not move it back.
+        assertEquals(5000, position.getPosition(50));
+        // It stops at the end of the track.
+        assertEquals(60000, position.getPosition(1000000));
+        assertTrue(position.isPlaying());
+    }
+
+    @Test
+    public void staysWhilePaused() {
+        PlaybackPosition position = new PlaybackPosition();
+        position.update(5000, 60000, false, 100);
+        assertEquals(5000, position.getPosition(10000));
+        position.update(7000, -1, true, 200);
+        // A track of unknown length is not clamped.
+        assertEquals(107000, position.getPosition(100200));
+    }
+
+    @Test
+    public void readersNeverSeeTornSnapshots() throws InterruptedException {
+        PlaybackPosition position = new PlaybackPosition();
+        int updates = 100000;
+        int scale = 1000;
+        Thread writer = new Thread(() -> {
+            // Read at time 0, snapshot i shows i * scale, mixing two snapshots is off the scale.
+            for(int i = 1; i <= updates; i++){
+                position.update(i, -1, true, -(long) i * (scale - 1));
+            }
+        });
+        boolean[] torn = {false};
+        Thread reader = new Thread(() -> {
+            int last = 0;
+            while(last < updates * scale){
+                int value = position.getPosition(0);
+                if(value % scale != 0 || value < last){
+                    torn[0] = true;
+                    return;
+                }
+                last = value;
+            }
+        });
+        reader.start();
+        writer.start();
+        writer.join();
+        reader.join(10000);
+        assertFalse(torn[0]);
+        assertEquals(updates * scale, position.getPosition(0));
+    }
+}
@@ -0,0 +1,141 @@
+package edu.temple.simpletunes;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Local unit tests for the ResumeStore file format.
+ */
+public class ResumeStoreTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static ResumeStore.State folderState(int position) {
+        // Slot 3 was added after the sort and reads as track 3 itself.
+        return new ResumeStore.State("content://doc/2", position, 1, PlayStats.SHUFFLE_UNIFORM,
+                SortOrders.ORDER_TITLE, 4, new int[]{0, 3, 1, 2}, 3, false, new int[]{1, 0, 2},
+                new int[]{2, 0}, 1, 42L);
+    }
+
+    private static MusicTrack[] tracks() {
+        MusicTrack[] tracks = new MusicTrack[4];
+        for(int i = 0; i < tracks.length; i++){
+            tracks[i] = new MusicTrack(null, "content://doc/" + i, i + ".mp3", "music", i, i, null);
+        }
+        return tracks;
+    }
+
+    @Test
+    public void folderRoundTrip() throws IOException {
+        File file = new File(folder.getRoot(), ResumeStore.STATE_FILE_NAME);
+        ResumeStore.writeState(file, folderState(61000));
+
+        ResumeStore.State state = ResumeStore.readState(file);
+        assertNotNull(state);
+        assertEquals(folderState(61000), state);
+        assertTrue(state.playingFolder);
+        assertEquals("content://doc/2", state.currentUri);
+        assertEquals(61000, state.position);
+        assertEquals(1, state.repeatStatus);
+        assertEquals(SortOrders.ORDER_TITLE, state.sortOrder);
+        assertArrayEquals(new int[]{0, 3, 1, 2}, state.queue);
+        assertEquals(3, state.queuePosition);
+        assertFalse(state.queueIsFolder);
+        assertArrayEquals(new int[]{1, 0, 2}, state.order);
+        assertArrayEquals(new int[]{2, 0}, state.shuffleHistory);
+        assertEquals(1, state.shufflePosition);
+        assertEquals(42L, state.shuffleSeed);
+        // Slot 2 is read through the order.
+        assertEquals(2, state.getCurrentId());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void singleTrackRoundTrip() throws IOException {
+        File file = new File(folder.getRoot(), ResumeStore.STATE_FILE_NAME);
+        ResumeStore.writeState(file, new ResumeStore.State("content://doc/ü", 500, 2,
+                PlayStats.SHUFFLE_UNIFORM, SortOrders.ORDER_TRACK));
+
+        ResumeStore.State state = ResumeStore.readState(file);
+        assertNotNull(state);
+        assertFalse(state.playingFolder);
+        assertEquals("content://doc/ü", state.currentUri);
+        assertEquals(500, state.position);
+        assertEquals(2, state.repeatStatus);
+        assertNull(state.shuffleHistory);
+        assertEquals(-1, state.getCurrentId());
+    }
+
+    @Test
+    public void damagedStateIsIgnored() throws IOException {
+        File file = new File(folder.getRoot(), ResumeStore.STATE_FILE_NAME);
+        assertNull(ResumeStore.readState(file));
+        ResumeStore.writeState(file, folderState(0));
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek(4);
+            out.writeInt(ResumeStore.VERSION + 1);
+        }
+        assertNull(ResumeStore.readState(file));
+
+        ResumeStore.writeState(file, folderState(0));
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.setLength(out.length() - 2);
+        }
+        assertNull(ResumeStore.readState(file));
+
+        // A queue pointing past the tracks is not trusted.
+        ResumeStore.writeState(file, new ResumeStore.State("content://doc/0", 0, 0, 0, 0, 2,
+                new int[]{0, 5}, 0, false, null, null, 0, 0));
+        assertNull(ResumeStore.readState(file));
+    }
+
+    @Test
+    public void saveWritesTracksAndState() throws InterruptedException {
+        ResumeStore store = new ResumeStore(folder.getRoot());
+        store.save(folderState(1000), tracks());
+        store.save(folderState(2000), null);
+        store.close();
+        waitForFile(new File(folder.getRoot(), ResumeStore.STATE_FILE_NAME), 2000);
+
+        ResumeStore reader = new ResumeStore(folder.getRoot());
+        ResumeStore.State state = reader.loadState();
+        assertNotNull(state);
+        assertEquals(2000, state.position);
+        MusicTrack[] tracks = reader.loadTracks(null, state);
+        assertNotNull(tracks);
+        assertEquals(4, tracks.length);
+        assertEquals("content://doc/2", tracks[state.getCurrentId()].getUriString());
+        assertEquals("3.mp3", tracks[3].getName());
+
+        // Tracks that do not belong to the state are not used.
+        ResumeStore.State other = new ResumeStore.State("content://doc/9", 0, 0, 0, 0, 4,
+                new int[]{0}, 0, true, null, null, 0, 0);
+        assertNull(reader.loadTracks(null, other));
+    }
+
+    /**
+     * Waits until the writer of a closed store wrote a file with the expected state.
+     */
+    private static void waitForFile(File file, int position) throws InterruptedException {
+        for(int i = 0; i < 500; i++){
+            ResumeStore.State state = ResumeStore.readState(file);
+            if(state != null && state.position == position){
+                return;
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package edu.temple.simpletunes;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests for the SearchIndex.
+ */
+public class SearchIndexTest {
+
+    private static SearchIndex sample() {
+        SearchIndex index = new SearchIndex();
+        index.add("Halo", "Beyoncé", "I Am... Sasha Fierce", "01 - Halo.mp3");
+        index.add("Hey Jude", "The Beatles", "1", "hey_jude.flac");
+        index.add(null, null, null, "Bohemian Rhapsody.m4a");
+        index.add("Yellow", "Coldplay", "Parachutes", "05 Yellow.ogg");
+        return index;
+    }
+
+    @Test
+    public void matchesCaseAndAccentsFolded() {
+        SearchIndex index = sample();
+        assertArrayEquals(new int[]{0}, index.search("BEYONCE", 10));
+        assertArrayEquals(new int[]{0}, index.search("beyoncé", 10));
+    }
+
+    @Test
+    public void matchesEveryWordAcrossFields() {
+        SearchIndex index = sample();
+        assertArrayEquals(new int[]{1}, index.search("jude beatles", 10));
+        assertArrayEquals(new int[]{3}, index.search("yellow parachutes", 10));
+        assertArrayEquals(new int[0], index.search("yellow beatles", 10));
+    }
+
+    @Test
+    public void shortWordsMatchWordStarts() {
+        SearchIndex index = sample();
+        assertArrayEquals(new int[]{0, 1}, index.search("h", 10));
+        assertArrayEquals(new int[]{1}, index.search("he", 10));
+        // "lo" is inside "Halo" and "Yellow" but starts no word.
+        assertArrayEquals(new int[0], index.search("lo", 10));
+    }
+
+    @Test
+    public void longWordsMatchInsideWords() {
+        SearchIndex index = sample();
+        assertArrayEquals(new int[]{2}, index.search("hemian", 10));
+        assertArrayEquals(new int[]{3}, index.search("llo", 10));
+        assertArrayEquals(new int[]{2}, index.search("rhaps", 10));
+    }
+
+    @Test
+    public void fileNamePunctuationIsIgnored() {
+        SearchIndex index = sample();
+        assertArrayEquals(new int[]{1}, index.search("hey-jude", 10));
+        assertArrayEquals(new int[]{2}, index.search("m4a", 10));
+    }
+
+    @Test
+    public void limitAndEmptyQueries() {
+        SearchIndex index = sample();
+        assertEquals(1, index.search("h", 1).length);
+        assertEquals(0, index.search("", 10).length);
+        assertEquals(0, index.search("  -- ", 10).length);
+        assertEquals(0, index.search("zzz", 10).length);
+    }
+
+    @Test
+    public void clearRestartsIds() {
+        SearchIndex index = sample();
+        index.clear();
+        assertEquals(0, index.size());
+        assertEquals(0, index.search("halo", 10).length);
+        assertEquals(0, index.add("Halo"));
+        assertArrayEquals(new int[]{0}, index.search("halo", 10));
+    }
+
+    @Test
+    public void largeLibrary() {
+        SearchIndex index = new SearchIndex();
+        for(int i = 0; i < 50000; i++){
+            index.add("Song " + i, "Artist " + (i % 500), "Album " + (i % 4000), String.format("%05d.mp3", i));
+        }
+        assertEquals(50000, index.size());
+        assertArrayEquals(new int[]{12345}, index.search("song 12345", 10));
+        int[] artist = index.search("artist 499", 1000);
+        assertEquals(499, artist[0]);
+        assertTrue(artist.length >= 100);
+        assertEquals(200, index.search("s", 200).length);
+    }
+}
@@ -0,0 +1,134 @@
+package edu.temple.simpletunes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Local unit tests for the ShuffleOrder.
+ */
+public class ShuffleOrderTest {
+
+    @Test
+    public void drawsEveryValueOnceStartingWithTheFirst() {
+        ShuffleOrder order = new ShuffleOrder(50, 17, 7);
+        assertEquals(17, order.get(0));
+        assertEquals(1, order.getDrawnCount());
+        Set<Integer> seen = new HashSet<>();
+        for(int i = 0; i < order.size(); i++){
+            int value = order.get(i);
+            assertTrue(value >= 0 && value < 50);
+            assertTrue(seen.add(value));
+            assertEquals(i, order.indexOf(value));
+        }
+    }
+
+    @Test
+    public void sameSeedGivesSameOrder() {
+        ShuffleOrder a = new ShuffleOrder(1000, 3, 42);
+        ShuffleOrder b = new ShuffleOrder(1000, 3, 42);
+        for(int i = 0; i < 20; i++){
+            assertEquals(a.get(i), b.get(i));
+        }
+        // Values are only drawn when they are needed.
+        assertEquals(20, a.getDrawnCount());
+    }
+
+    @Test
+    public void historyIsKeptForPrevious() {
+        ShuffleOrder order = new ShuffleOrder(100000, 0, 1);
+        int first = order.get(0);
+        int second = order.get(1);
+        order.setPosition(1);
+        order.setPosition(0);
+        assertEquals(first, order.get(order.getPosition()));
+        assertEquals(second, order.get(1));
+
+        // A value picked out of the pool follows the history.
+        int picked = second == 99999 ? 99998 : 99999;
+        assertEquals(2, order.indexOf(picked));
+        assertEquals(picked, order.get(2));
+    }
+
+    @Test
+    public void addAndRemove() {
+        ShuffleOrder order = new ShuffleOrder(5, 2, 9);
+        order.get(2);
+        order.setPosition(2);
+        int current = order.get(2);
+        order.remove(order.get(0));
+        assertEquals(1, order.getPosition());
+        assertEquals(current, order.get(1));
+        order.add(5);
+        order.add(6);
+        assertEquals(6, order.size());
+        order.remove(current);
+        assertEquals(5, order.size());
+        Set<Integer> seen = new HashSet<>();
+        for(int i = 0; i < order.size(); i++){
+            assertTrue(seen.add(order.get(i)));
+        }
+        assertTrue(seen.contains(5) && seen.contains(6));
+        assertFalse(seen.contains(current));
+    }
+
+    @Test
+    public void continuesFromHistory() {
+        ShuffleOrder order = new ShuffleOrder(20, 4, 11);
+        for(int i = 0; i < 6; i++){
+            order.get(i);
+        }
+        order.setPosition(3);
+        int[] history = order.getHistory();
+        assertEquals(6, history.length);
+
+        ShuffleOrder restored = new ShuffleOrder(20, history, 3, 11, null);
+        assertEquals(6, restored.getDrawnCount());
+        assertEquals(3, restored.getPosition());
+        for(int i = 0; i < history.length; i++){
+            assertEquals(history[i], restored.get(i));
+        }
+        Set<Integer> seen = new HashSet<>();
+        for(int i = 0; i < restored.size(); i++){
+            assertTrue(seen.add(restored.get(i)));
+        }
+        assertEquals(20, seen.size());
+    }
+
+    @Test
+    public void historyOfALargerQueueIsCut() {
+        // Value 12 is gone and 2 is repeated, the current value moves back with the rest.
+        ShuffleOrder restored = new ShuffleOrder(10, new int[]{5, 12, 2, 2, 7}, 4, 1, null);
+        assertEquals(3, restored.getDrawnCount());
+        assertEquals(2, restored.getPosition());
+        assertEquals(5, restored.get(0));
+        assertEquals(2, restored.get(1));
+        assertEquals(7, restored.get(2));
+    }
+
+    @Test
+    public void heavyValuesAreDrawnFirst() {
+        int early = 0;
+        Random seeds = new Random(3);
+        for(int run = 0; run < 200; run++){
+            // Value 9 weighs as much as the other eight values not played yet together.
+            ShuffleOrder order = new ShuffleOrder(10, 0, seeds.nextLong(), value -> value == 9 ? 8 : 1);
+            assertTrue(order.isWeighted());
+            if(order.get(1) == 9){
+                early++;
+            }
+            Set<Integer> seen = new HashSet<>();
+            for(int i = 0; i < order.size(); i++){
+                assertTrue(seen.add(order.get(i)));
+            }
+        }
+        // Drawn second half of the time instead of one time in nine.
+        assertTrue(early > 70 && early < 130);
+    }
+}
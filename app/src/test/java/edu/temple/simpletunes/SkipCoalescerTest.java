@@ -0,0 +1,83 @@
+package edu.temple.simpletunes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests for the SkipCoalescer.
+ */
+public class SkipCoalescerTest {
+
+    @Test
+    public void burstCollapsesIntoOneTarget() {
+        SkipCoalescer skips = new SkipCoalescer();
+        assertNull(skips.take(3, 10));
+        // Only the first request of a burst schedules a take.
+        assertTrue(skips.skipBy(1, 1));
+        for(int i = 0; i < 4; i++){
+            assertFalse(skips.skipBy(1, 2 + i));
+        }
+        assertFalse(skips.skipBy(-1, 9));
+        SkipCoalescer.Skip skip = skips.take(3, 10);
+        assertEquals(7, skip.target);
+        assertEquals(0, skip.overshoot);
+        assertFalse(skip.absolute);
+        assertEquals(9, skip.time);
+        assertFalse(skips.isPending());
+        assertNull(skips.take(7, 10));
+    }
+
+    @Test
+    public void latestPositionWins() {
+        SkipCoalescer skips = new SkipCoalescer();
+        skips.skipBy(5, 1);
+        skips.skipTo(2, 2);
+        skips.skipTo(8, 3);
+        skips.skipBy(-1, 4);
+        SkipCoalescer.Skip skip = skips.take(0, 10);
+        assertEquals(7, skip.target);
+        assertTrue(skip.absolute);
+    }
+
+    @Test
+    public void selectedPositionIsMappedToThePlayOrder() {
+        SkipCoalescer skips = new SkipCoalescer();
+        skips.skipTo(4, 1);
+        skips.skipBy(1, 2);
+        // The entry at position 4 is third in the play order.
+        SkipCoalescer.Skip skip = skips.take(0, 10, position -> position == 4 ? 2 : -1);
+        assertEquals(3, skip.target);
+        assertTrue(skip.absolute);
+    }
+
+    @Test
+    public void stalePositionIsKeptWithinTheQueue() {
+        SkipCoalescer skips = new SkipCoalescer();
+        // The entry was tapped before the queue shrank to 5 entries.
+        skips.skipTo(8, 1);
+        int[] shuffled = {3, 0, 4, 1, 2};
+        SkipCoalescer.Skip skip = skips.take(0, 5, position -> shuffled[position]);
+        assertEquals(2, skip.target);
+        assertEquals(0, skip.overshoot);
+        assertTrue(skip.absolute);
+    }
+
+    @Test
+    public void skipsStopAtTheEnds() {
+        SkipCoalescer skips = new SkipCoalescer();
+        for(int i = 0; i < 6; i++){
+            skips.skipBy(1, i);
+        }
+        SkipCoalescer.Skip skip = skips.take(7, 10);
+        assertEquals(9, skip.target);
+        assertEquals(4, skip.overshoot);
+        skips.skipBy(-1, 7);
+        skip = skips.take(0, 10);
+        assertEquals(0, skip.target);
+        assertEquals(-1, skip.overshoot);
+    }
+}
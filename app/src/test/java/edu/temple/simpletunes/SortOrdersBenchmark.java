@@ -0,0 +1,26 @@
+package edu.temple.simpletunes;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Times computing every sort order of a large folder. It is not part of the default unit
+ * test run.
+ */
+public class SortOrdersBenchmark {
+
+    @Test
+    public void computeTenThousandTracks() {
+        MusicTrack[] tracks = SortOrdersTest.randomTracks(10000, new Random(9));
+        long start = System.nanoTime();
+        SortOrders orders = SortOrders.compute(tracks, Locale.US);
+        long elapsed = System.nanoTime() - start;
+        System.out.println("SortOrders: " + elapsed / 1000000 + " ms for " + SortOrders.ORDER_COUNT
+                + " orders of 10k tracks");
+        assertEquals(tracks.length, orders.size());
+    }
+}
@@ -0,0 +1,90 @@
+package edu.temple.simpletunes;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Local unit tests for the SortOrders permutations.
+ */
+public class SortOrdersTest {
+
+    private static MusicTrack track(String name, String title, String number, String artist, String album,
+                                    long lastModified) {
+        TrackMetadata metadata = new TrackMetadata(title, number, artist, album, true);
+        return new MusicTrack(null, "content://test/Music/" + name, name, "Music", 0, lastModified, metadata);
+    }
+
+    @Test
+    public void everyOrderSortsTheTracks() {
+        MusicTrack[] tracks = {
+                track("b.mp3", "Zebra", "2", "Beta", "Two", 300),
+                track("a.mp3", "apple", "1", "Alpha", "One", 100),
+                track("10.mp3", null, null, null, null, 200),
+                track("2.mp3", "Mango", "1", "Beta", "Three", 400),
+        };
+        SortOrders orders = SortOrders.compute(tracks, Locale.US);
+        assertEquals(4, orders.size());
+        // Equal track numbers fall back to the file name, digits before letters.
+        assertArrayEquals(new int[]{3, 1, 0, 2}, orders.getPermutation(SortOrders.ORDER_TRACK));
+        // A track without a title sorts by its file name.
+        assertArrayEquals(new int[]{2, 1, 3, 0}, orders.getPermutation(SortOrders.ORDER_TITLE));
+        // Unknown artists and albums come last.
+        assertArrayEquals(new int[]{1, 3, 0, 2}, orders.getPermutation(SortOrders.ORDER_ARTIST));
+        assertArrayEquals(new int[]{1, 3, 0, 2}, orders.getPermutation(SortOrders.ORDER_ALBUM));
+        assertArrayEquals(new int[]{3, 2, 1, 0}, orders.getPermutation(SortOrders.ORDER_NAME));
+        assertArrayEquals(new int[]{3, 0, 2, 1}, orders.getPermutation(SortOrders.ORDER_MODIFIED));
+        assertEquals(3, orders.getRank(SortOrders.ORDER_MODIFIED, 1));
+        assertEquals(-1, orders.getRank(SortOrders.ORDER_NAME, 4));
+    }
+
+    @Test
+    public void interruptedComputationReturnsNull() {
+        MusicTrack[] tracks = {track("a.mp3", "a", "1", "a", "a", 0)};
+        Thread.currentThread().interrupt();
+        try {
+            assertEquals(null, SortOrders.compute(tracks, Locale.US));
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    public void permutationsAreCompleteAndRanked() {
+        MusicTrack[] tracks = randomTracks(1000, new Random(9));
+        SortOrders orders = SortOrders.compute(tracks, Locale.US);
+        for(int order = 0; order < SortOrders.ORDER_COUNT; order++){
+            int[] permutation = orders.getPermutation(order);
+            boolean[] seen = new boolean[tracks.length];
+            for(int i = 0; i < permutation.length; i++){
+                assertTrue(!seen[permutation[i]]);
+                seen[permutation[i]] = true;
+                assertEquals(i, orders.getRank(order, permutation[i]));
+            }
+        }
+        int[] byModified = orders.getPermutation(SortOrders.ORDER_MODIFIED);
+        for(int i = 1; i < byModified.length; i++){
+            assertTrue(tracks[byModified[i - 1]].getLastModified() >= tracks[byModified[i]].getLastModified());
+        }
+    }
+
+    /**
+     * The randomTracks method creates tagged tracks with repeating track numbers, artists
+     * and albums.
+     */
+    static MusicTrack[] randomTracks(int count, Random random) {
+        MusicTrack[] tracks = new MusicTrack[count];
+        for(int i = 0; i < tracks.length; i++){
+            int number = random.nextInt(20) + 1;
+            tracks[i] = track(number + " - Söng " + random.nextInt(count) + ".mp3", "Song " + random.nextInt(count / 2),
+                    Integer.toString(number), "Artist " + random.nextInt(300), "Album " + random.nextInt(900),
+                    random.nextInt(1000000));
+        }
+        return tracks;
+    }
+}
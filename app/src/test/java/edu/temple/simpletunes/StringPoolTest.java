@@ -0,0 +1,40 @@
+package edu.temple.simpletunes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * Local unit tests for the StringPool.
+ */
+public class StringPoolTest {
+
+    @Test
+    public void equalStringsShareOneInstance() {
+        StringPool pool = new StringPool();
+        String first = pool.intern(new String("Album"));
+        assertSame(first, pool.intern(new String("Album")));
+        assertNull(pool.intern(null));
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void documentUriPrefixEndsAtEncodedSeparator() {
+        String uri = "content://com.android.externalstorage.documents/tree/primary%3AMusic"
+                + "/document/primary%3AMusic%2FAlbum%2F01%20Intro.mp3";
+        StringPool pool = new StringPool();
+        String prefix = pool.uriPrefix(uri);
+        assertEquals("content://com.android.externalstorage.documents/tree/primary%3AMusic"
+                + "/document/primary%3AMusic%2FAlbum%2F", prefix);
+        assertSame(prefix, pool.uriPrefix(prefix + "02%20Outro.mp3"));
+    }
+
+    @Test
+    public void plainUriPrefixEndsAtSlash() {
+        assertEquals("file:///sdcard/Music/".length(), StringPool.uriPrefixLength("file:///sdcard/Music/a.mp3"));
+        assertEquals("content://media/audio%2f".length(), StringPool.uriPrefixLength("content://media/audio%2f12"));
+        assertEquals(0, StringPool.uriPrefixLength("track.mp3"));
+    }
+}
@@ -0,0 +1,307 @@
+package edu.temple.simpletunes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Local unit tests for the TagReader. Each fixture file is built byte by byte so the tests
+ * do not depend on binary resources.
+ */
+public class TagReaderTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final TagReader reader = new TagReader();
+
+    @Test
+    public void readsId3v23() throws IOException {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        frames.write(id3Frame("TIT2", latin1Text("Song")));
+        frames.write(id3Frame("TPE1", latin1Text("Artist")));
+        frames.write(id3Frame("APIC", new byte[5000]));
+        frames.write(id3Frame("TALB", latin1Text("Album")));
+        frames.write(id3Frame("TRCK", latin1Text("3/12")));
+        TrackMetadata m = read("song.mp3", concat(id3Tag(3, frames.toByteArray(), 64), mpegFrame()));
+
+        assertEquals("Song", m.getTitle());
+        assertEquals("Artist", m.getArtist());
+        assertEquals("Album", m.getAlbum());
+        assertEquals("3", m.getTrack());
+    }
+
+    @Test
+    public void readsId3v24Utf8AndUtf16() throws IOException {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        frames.write(id3Frame24("TIT2", concat(new byte[]{3}, "Ünïcödé".getBytes(StandardCharsets.UTF_8))));
+        byte[] utf16 = "Bjørk".getBytes(StandardCharsets.UTF_16); // With a byte order mark.
+        frames.write(id3Frame24("TPE1", concat(new byte[]{1}, utf16, new byte[]{0, 0})));
+        TrackMetadata m = read("song.mp3", id3Tag(4, frames.toByteArray(), 0));
+
+        assertEquals("Ünïcödé", m.getTitle());
+        assertEquals("Bjørk", m.getArtist());
+        assertNull(m.getAlbum());
+        assertNull(m.getTrack());
+    }
+
+    @Test
+    public void readsId3v1() throws IOException {
+        byte[] tag = new byte[128];
+        put(tag, 0, "TAG");
+        put(tag, 3, "Old Song");
+        put(tag, 33, "Old Artist");
+        put(tag, 63, "Old Album");
+        tag[126] = 7;
+        TrackMetadata m = read("old.mp3", concat(mpegFrame(), tag));
+
+        assertEquals("Old Song", m.getTitle());
+        assertEquals("Old Artist", m.getArtist());
+        assertEquals("Old Album", m.getAlbum());
+        assertEquals("7", m.getTrack());
+    }
+
+    @Test
+    public void readsFlacVorbisComment() throws IOException {
+        // 44.1 kHz, stereo, 16 bit and 61.5 s of samples.
+        ByteBuffer info = ByteBuffer.allocate(34);
+        info.putLong(10, (44100L << 44) | (1L << 41) | (15L << 36) | (44100L * 61 + 22050));
+        byte[] streamInfo = flacBlock(0, false, info.array());
+        byte[] comments = flacBlock(4, true, vorbisComment("TITLE=Flac Song", "artist=Flac Artist",
+                "ALBUM=Flac Album", "TRACKNUMBER=05/10"));
+        TrackMetadata m = read("song.flac", concat("fLaC".getBytes(StandardCharsets.US_ASCII), streamInfo, comments));
+
+        assertEquals("Flac Song", m.getTitle());
+        assertEquals("Flac Artist", m.getArtist());
+        assertEquals("Flac Album", m.getAlbum());
+        assertEquals("05", m.getTrack());
+        assertEquals(61500, m.getDuration());
+    }
+
+    @Test
+    public void readsOggVorbisCommentAcrossPages() throws IOException {
+        byte[] identification = concat(new byte[]{1}, "vorbis".getBytes(StandardCharsets.US_ASCII), new byte[23]);
+        // A large first comment forces the comment packet to continue on a second page.
+        byte[] comment = concat(new byte[]{3}, "vorbis".getBytes(StandardCharsets.US_ASCII),
+                vorbisComment("COMMENT=" + repeat('x', 600), "TITLE=Ogg Song", "ARTIST=Ogg Artist"));
+        byte[] firstPage = oggPage(0, identification);
+        byte[] commentPages = concat(oggPage(1, java.util.Arrays.copyOf(comment, 510)),
+                oggPage(2, java.util.Arrays.copyOfRange(comment, 510, comment.length)));
+        TrackMetadata m = read("song.ogg", concat(firstPage, commentPages));
+
+        assertEquals("Ogg Song", m.getTitle());
+        assertEquals("Ogg Artist", m.getArtist());
+        assertEquals(-1, m.getDuration());
+    }
+
+    @Test
+    public void oversizedOggCommentIsReadUpToTheCut() throws IOException {
+        byte[] identification = concat(new byte[]{1}, "vorbis".getBytes(StandardCharsets.US_ASCII), new byte[23]);
+        byte[] comment = concat(new byte[]{3}, "vorbis".getBytes(StandardCharsets.US_ASCII),
+                vorbisComment("TITLE=Ogg Song", "ARTIST=Ogg Artist", "COMMENT=" + repeat('x', 300 * 1024),
+                        "ALBUM=Ogg Album"));
+        // Full pages of 255 segments carry the packet, the last page ends it.
+        byte[] file = oggPage(0, identification);
+        int chunk = 255 * 255;
+        for(int from = 0, page = 1; from < comment.length; from += chunk, page++){
+            file = concat(file, oggPage(page, java.util.Arrays.copyOfRange(comment, from,
+                    Math.min(comment.length, from + chunk))));
+        }
+        TrackMetadata m = read("long.ogg", file);
+
+        assertEquals("Ogg Song", m.getTitle());
+        assertEquals("Ogg Artist", m.getArtist());
+        assertNull(m.getAlbum());
+    }
+
+    @Test
+    public void readsMp4Ilst() throws IOException {
+        byte[] ilst = atom("ilst", concat(
+                atom("©nam", dataAtom("Mp4 Song".getBytes(StandardCharsets.UTF_8))),
+                atom("covr", dataAtom(new byte[3000])),
+                atom("©ART", dataAtom("Mp4 Artist".getBytes(StandardCharsets.UTF_8))),
+                atom("©alb", dataAtom("Mp4 Album".getBytes(StandardCharsets.UTF_8))),
+                atom("trkn", dataAtom(new byte[]{0, 0, 0, 9, 0, 12, 0, 0}))));
+        byte[] meta = atom("meta", concat(new byte[4], atom("hdlr", new byte[25]), ilst));
+        // A version 0 movie header with a time scale of 600 and 3 minutes of media.
+        ByteBuffer mvhd = ByteBuffer.allocate(100);
+        mvhd.putInt(12, 600).putInt(16, 600 * 180);
+        byte[] moov = atom("moov", concat(atom("mvhd", mvhd.array()), atom("udta", meta)));
+        // The moov atom after a large mdat atom must be found without reading the media.
+        byte[] file = concat(atom("ftyp", "M4A ".getBytes(StandardCharsets.US_ASCII)),
+                atom("mdat", new byte[20000]), moov);
+        TrackMetadata m = read("song.m4a", file);
+
+        assertEquals("Mp4 Song", m.getTitle());
+        assertEquals("Mp4 Artist", m.getArtist());
+        assertEquals("Mp4 Album", m.getAlbum());
+        assertEquals("9", m.getTrack());
+        assertEquals(180000, m.getDuration());
+    }
+
+    @Test
+    public void readsMp4Version1Duration() throws IOException {
+        ByteBuffer mvhd = ByteBuffer.allocate(112);
+        mvhd.put(0, (byte) 1).putInt(20, 44100).putLong(24, 44100L * 3600 * 2);
+        byte[] file = concat(atom("ftyp", "M4A ".getBytes(StandardCharsets.US_ASCII)),
+                atom("moov", atom("mvhd", mvhd.array())));
+        TrackMetadata m = read("long.m4a", file);
+
+        assertNull(m.getTitle());
+        assertEquals(2 * 3600 * 1000, m.getDuration());
+    }
+
+    @Test
+    public void unknownFormatFallsBack() throws IOException {
+        byte[] wav = concat("RIFF".getBytes(StandardCharsets.US_ASCII), new byte[4],
+                "WAVE".getBytes(StandardCharsets.US_ASCII), new byte[100]);
+        assertNull(read("song.wav", wav));
+    }
+
+    @Test
+    public void unsynchronisedId3v2FallsBack() throws IOException {
+        byte[] tag = id3Tag(3, id3Frame("TIT2", latin1Text("Song")), 0);
+        tag[5] = (byte) 0x80;
+        assertNull(read("song.mp3", tag));
+    }
+
+    @Test
+    public void readerIsReusable() throws IOException {
+        TrackMetadata first = read("a.mp3", id3Tag(3, id3Frame("TIT2", latin1Text("First")), 0));
+        TrackMetadata second = read("b.mp3", id3Tag(3, id3Frame("TIT2", latin1Text("Second")), 0));
+        assertNotNull(first);
+        assertEquals("First", first.getTitle());
+        assertEquals("Second", second.getTitle());
+    }
+
+    private TrackMetadata read(String name, byte[] contents) throws IOException {
+        File file = folder.newFile(name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(contents);
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            return reader.read(in.getChannel());
+        }
+    }
+
+    private static byte[] id3Tag(int version, byte[] frames, int padding) {
+        int size = frames.length + padding;
+        byte[] header = {'I', 'D', '3', (byte) version, 0, 0,
+                (byte) ((size >> 21) & 0x7F), (byte) ((size >> 14) & 0x7F),
+                (byte) ((size >> 7) & 0x7F), (byte) (size & 0x7F)};
+        return concat(header, frames, new byte[padding]);
+    }
+
+    private static byte[] id3Frame(String id, byte[] payload) {
+        ByteBuffer b = ByteBuffer.allocate(10 + payload.length);
+        b.put(id.getBytes(StandardCharsets.US_ASCII)).putInt(payload.length).putShort((short) 0).put(payload);
+        return b.array();
+    }
+
+    private static byte[] id3Frame24(String id, byte[] payload) {
+        int size = payload.length;
+        ByteBuffer b = ByteBuffer.allocate(10 + size);
+        b.put(id.getBytes(StandardCharsets.US_ASCII))
+                .put((byte) ((size >> 21) & 0x7F)).put((byte) ((size >> 14) & 0x7F))
+                .put((byte) ((size >> 7) & 0x7F)).put((byte) (size & 0x7F))
+                .putShort((short) 0).put(payload);
+        return b.array();
+    }
+
+    private static byte[] latin1Text(String s) {
+        return concat(new byte[]{0}, s.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static byte[] mpegFrame() {
+        byte[] frame = new byte[417];
+        frame[0] = (byte) 0xFF;
+        frame[1] = (byte) 0xFB;
+        return frame;
+    }
+
+    private static byte[] flacBlock(int type, boolean last, byte[] data) {
+        byte[] header = {(byte) ((last ? 0x80 : 0) | type), (byte) (data.length >> 16),
+                (byte) (data.length >> 8), (byte) data.length};
+        return concat(header, data);
+    }
+
+    private static byte[] vorbisComment(String... comments) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] vendor = "test vendor".getBytes(StandardCharsets.UTF_8);
+        out.write(le(vendor.length), 0, 4);
+        out.write(vendor, 0, vendor.length);
+        out.write(le(comments.length), 0, 4);
+        for(String comment : comments){
+            byte[] bytes = comment.getBytes(StandardCharsets.UTF_8);
+            out.write(le(bytes.length), 0, 4);
+            out.write(bytes, 0, bytes.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] oggPage(int sequence, byte[] data) {
+        // Segments of 255 bytes continue the packet, a shorter last segment ends it. A page
+        // whose data is a multiple of 255 bytes leaves the packet open for the next page.
+        int full = data.length / 255;
+        int rest = data.length % 255;
+        boolean open = rest == 0 && data.length > 0;
+        int segments = full + (open ? 0 : 1);
+        ByteBuffer b = ByteBuffer.allocate(27 + segments + data.length).order(ByteOrder.LITTLE_ENDIAN);
+        b.put("OggS".getBytes(StandardCharsets.US_ASCII)).put((byte) 0).put((byte) 0)
+                .putLong(0).putInt(1).putInt(sequence).putInt(0).put((byte) segments);
+        for(int i = 0; i < full; i++){
+            b.put((byte) 255);
+        }
+        if(!open){
+            b.put((byte) rest);
+        }
+        b.put(data);
+        return b.array();
+    }
+
+    private static byte[] atom(String type, byte[] content) {
+        ByteBuffer b = ByteBuffer.allocate(8 + content.length);
+        b.putInt(8 + content.length).put(type.getBytes(StandardCharsets.ISO_8859_1)).put(content);
+        return b.array();
+    }
+
+    private static byte[] dataAtom(byte[] value) {
+        return atom("data", concat(new byte[]{0, 0, 0, 1, 0, 0, 0, 0}, value));
+    }
+
+    private static byte[] le(int value) {
+        return ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array();
+    }
+
+    private static void put(byte[] target, int offset, String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.ISO_8859_1);
+        System.arraycopy(bytes, 0, target, offset, bytes.length);
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        java.util.Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for(byte[] part : parts){
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+}
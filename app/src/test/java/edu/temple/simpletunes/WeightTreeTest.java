@@ -0,0 +1,58 @@
+package edu.temple.simpletunes;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Local unit tests for the WeightTree.
+ */
+public class WeightTreeTest {
+
+    @Test
+    public void findsTheIndexOfEachWeightRange() {
+        WeightTree tree = new WeightTree(new long[]{3, 0, 2, 5});
+        assertEquals(10, tree.total());
+        assertEquals(0, tree.find(0));
+        assertEquals(0, tree.find(2));
+        assertEquals(2, tree.find(3));
+        assertEquals(3, tree.find(5));
+        assertEquals(3, tree.find(9));
+        tree.set(0, 0);
+        assertEquals(2, tree.find(0));
+        assertEquals(5, tree.prefix(3) + 3);
+    }
+
+    @Test
+    public void matchesPrefixSumsUnderRandomEdits() {
+        Random random = new Random(5);
+        long[] weights = new long[37];
+        for(int i = 0; i < weights.length; i++){
+            weights[i] = random.nextInt(10);
+        }
+        WeightTree tree = new WeightTree(weights);
+        long[] expected = new long[200];
+        System.arraycopy(weights, 0, expected, 0, weights.length);
+        int size = weights.length;
+        for(int step = 0; step < 1000; step++){
+            if(random.nextInt(4) == 0 && size < expected.length){
+                expected[size] = random.nextInt(10);
+                assertEquals(size, tree.add(expected[size]));
+                size++;
+            }else{
+                int index = random.nextInt(size);
+                expected[index] = random.nextInt(10);
+                tree.set(index, expected[index]);
+            }
+            int count = random.nextInt(size + 1);
+            long sum = 0;
+            for(int i = 0; i < count; i++){
+                sum += expected[i];
+            }
+            assertEquals(sum, tree.prefix(count));
+        }
+        assertEquals(size, tree.size());
+    }
+}